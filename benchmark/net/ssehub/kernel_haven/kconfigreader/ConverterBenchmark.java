@@ -0,0 +1,268 @@
+/*
+ * Copyright 2020 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kconfigreader;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.ssehub.kernel_haven.util.FormatException;
+import net.ssehub.kernel_haven.util.Util;
+import net.ssehub.kernel_haven.variability_model.VariabilityModel;
+import net.ssehub.kernel_haven.variability_model.VariabilityVariable;
+
+/**
+ * JMH benchmarks for the hot paths of the {@link Converter}: the complete conversion, and the DIMACS header, the
+ * RSF structure and the constraint usage calculation on their own. The input is a synthetic KconfigReader output of
+ * Linux size. Run with <code>ant benchmark</code>, which also enables the GC profiler to report the allocation
+ * rate.
+ *
+ * @author Adam
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2G"})
+@State(Scope.Benchmark)
+public class ConverterBenchmark {
+
+    /**
+     * The number of Kconfig symbols in the synthetic input.
+     */
+    @Param({"20000"})
+    public int symbols;
+
+    private File dir;
+
+    private File outputBase;
+
+    private Converter rsfConverter;
+
+    private Map<String, VariabilityVariable> rsfVariables;
+
+    /**
+     * Writes the synthetic KconfigReader output.
+     *
+     * @throws IOException If writing fails.
+     * @throws FormatException If the synthetic output is invalid.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, FormatException {
+        dir = Files.createTempDirectory("converter-benchmark").toFile();
+        outputBase = new File(dir, "model");
+        writeSyntheticOutput(outputBase, symbols);
+
+        // the state for setUsedVariables()
+        rsfConverter = new Converter(outputBase);
+        rsfVariables = rsfConverter.readRsfVariables();
+    }
+
+    /**
+     * Deletes the synthetic KconfigReader output.
+     *
+     * @throws IOException If deleting fails.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Util.deleteFolder(dir);
+    }
+
+    /**
+     * Writes a synthetic KconfigReader output (<code>.rsf</code> and <code>.dimacs</code>) with nested submenus,
+     * choices, tristate and non-boolean symbols and constraints that reference other symbols.
+     *
+     * @param outputBase The base path of the output files.
+     * @param numSymbols The number of symbols.
+     *
+     * @throws IOException If writing fails.
+     */
+    static void writeSyntheticOutput(File outputBase, int numSymbols) throws IOException {
+        Random random = new Random(4711);
+        int[] ids = new int[numSymbols];
+        for (int i = 0; i < numSymbols; i++) {
+            ids[i] = (int) ((i + 1) * 2654435761L >>> 1) & Integer.MAX_VALUE;
+        }
+
+        StringBuilder dimacsHeader = new StringBuilder();
+        int number = 1;
+        int choices = 0;
+
+        File rsf = new File(outputBase.getPath() + ".rsf");
+        try (BufferedWriter out = Files.newBufferedWriter(rsf.toPath(), StandardCharsets.UTF_8)) {
+            out.write("\n.\n<submenu>\n");
+            int depth = 0;
+            for (int i = 0; i < numSymbols; i++) {
+                String name = "SYNTHETIC_" + i;
+                int kind = random.nextInt(20);
+                String type;
+                boolean choice = false;
+                if (kind < 9) {
+                    type = "tristate";
+                    dimacsHeader.append("c ").append(number++).append(' ').append(name).append('\n');
+                    dimacsHeader.append("c ").append(number++).append(' ').append(name).append("_MODULE\n");
+                } else if (kind < 17) {
+                    type = "boolean";
+                    dimacsHeader.append("c ").append(number++).append(' ').append(name).append('\n');
+                } else if (kind < 19) {
+                    type = "string";
+                    dimacsHeader.append("c ").append(number++).append(' ').append(name).append("=value ")
+                            .append(i).append('\n');
+                } else {
+                    type = "boolean";
+                    choice = true;
+                    choices++;
+                }
+
+                out.write("<menu flags=\"0\" file=\"drivers/synthetic" + (i / 10) + "/Kconfig\" line=\""
+                        + (i % 10 * 8 + 1) + "\">\n");
+                out.write("<symbol type=\"" + type + "\" flags=\"" + (choice ? 0x10 : 0) + "\" id=\"" + ids[i]
+                        + "\">\n");
+                if (!choice) {
+                    out.write("<name>" + name + "</name>\n");
+                }
+                out.write("<property type=\"prompt\"><text><![CDATA[Synthetic option " + i + "]]></text>"
+                        + "<visible><expr>y</expr></visible></property>\n");
+                if (i > 0) {
+                    out.write("<property type=\"default\"><expr>"
+                            + reference(ids, random, i) + " &amp;&amp; (" + reference(ids, random, i) + " || !"
+                            + reference(ids, random, i) + ")</expr><visible><expr>"
+                            + reference(ids, random, i) + "</expr></visible></property>\n");
+                }
+                out.write("</symbol>\n");
+                out.write("<dep>" + (i > 0 ? reference(ids, random, i) : "y") + "</dep>\n");
+                out.write("</menu>\n");
+
+                // nest up to 8 levels deep
+                int action = random.nextInt(10);
+                if (action == 0 && depth < 8) {
+                    out.write("<submenu>\n");
+                    depth++;
+                } else if (action == 1 && depth > 0) {
+                    out.write("</submenu>\n");
+                    depth--;
+                }
+            }
+            while (depth-- > 0) {
+                out.write("</submenu>\n");
+            }
+            out.write("</submenu>\n");
+        }
+
+        File dimacs = new File(outputBase.getPath() + ".dimacs");
+        try (BufferedWriter out = Files.newBufferedWriter(dimacs.toPath(), StandardCharsets.UTF_8)) {
+            out.write(dimacsHeader.toString());
+            int numVariables = number - 1;
+            int numClauses = numVariables * 3;
+            out.write("p cnf " + numVariables + " " + numClauses + "\n");
+            for (int i = 0; i < numClauses; i++) {
+                out.write("-" + (random.nextInt(numVariables) + 1) + " " + (random.nextInt(numVariables) + 1) + " "
+                        + (random.nextInt(numVariables) + 1) + " 0\n");
+            }
+        }
+
+        if (choices == 0) {
+            throw new IOException("No choices generated");
+        }
+    }
+
+    /**
+     * Creates a reference to a random, previous symbol, as dumpconf writes it in expressions.
+     *
+     * @param ids The IDs of the symbols.
+     * @param random The random generator.
+     * @param current The index of the current symbol.
+     *
+     * @return The reference.
+     */
+    private static String reference(int[] ids, Random random, int current) {
+        return "S@" + ids[random.nextInt(current)];
+    }
+
+    /**
+     * Measures the complete conversion, including copying the DIMACS file.
+     *
+     * @return The converted model.
+     *
+     * @throws IOException If reading fails.
+     * @throws FormatException If the input is invalid.
+     */
+    @Benchmark
+    public VariabilityModel convert() throws IOException, FormatException {
+        return new Converter(outputBase).convert();
+    }
+
+    /**
+     * Measures reading the variables from the DIMACS header.
+     *
+     * @return The variables.
+     *
+     * @throws IOException If reading fails.
+     * @throws FormatException If the input is invalid.
+     */
+    @Benchmark
+    public Set<VariabilityVariable> readDimacsVariables() throws IOException, FormatException {
+        return new DimacsHeaderParser(new File(outputBase.getPath() + ".dimacs")).parse();
+    }
+
+    /**
+     * Measures reading the variables, hierarchy and used IDs from the RSF structure.
+     *
+     * @return The variables.
+     *
+     * @throws IOException If reading fails.
+     * @throws FormatException If the input is invalid.
+     */
+    @Benchmark
+    public Map<String, VariabilityVariable> readRsfVariables() throws IOException, FormatException {
+        return new Converter(outputBase).readRsfVariables();
+    }
+
+    /**
+     * Measures resolving the used IDs to variables and calculating the reverse relation.
+     *
+     * @return The variables.
+     *
+     * @throws FormatException If an ID can't be resolved.
+     */
+    @Benchmark
+    public Map<String, VariabilityVariable> setUsedVariables() throws FormatException {
+        rsfConverter.setUsedVariables(rsfVariables);
+        return rsfVariables;
+    }
+
+}
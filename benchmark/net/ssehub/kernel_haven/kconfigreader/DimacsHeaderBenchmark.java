@@ -0,0 +1,193 @@
+/*
+ * Copyright 2020 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kconfigreader;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+
+import net.ssehub.kernel_haven.util.FormatException;
+import net.ssehub.kernel_haven.variability_model.VariabilityVariable;
+
+/**
+ * Compares the {@link DimacsHeaderParser} with the previous line-based implementation
+ * ({@link LegacyDimacsHeaderParser}) on a synthetic DIMACS file with 20 000 variables. Reports the time and (if the
+ * JVM supports it) the allocated memory per parsed file.
+ * <p>
+ * Usage: <code>java -cp &lt;KernelHaven.jar&gt;:&lt;classes&gt;
+ * net.ssehub.kernel_haven.kconfigreader.DimacsHeaderBenchmark [variables] [iterations]</code>
+ * </p>
+ *
+ * @author Adam
+ */
+public class DimacsHeaderBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 20;
+
+    /**
+     * A parser under test.
+     */
+    private static interface Parser {
+
+        /**
+         * Parses the given file.
+         *
+         * @param file The DIMACS file.
+         * @return The parsed variables.
+         *
+         * @throws IOException If reading fails.
+         * @throws FormatException If the file is invalid.
+         */
+        public Set<VariabilityVariable> parse(File file) throws IOException, FormatException;
+
+    }
+
+    /**
+     * Writes a synthetic DIMACS file, similar to the output of KconfigReader for a Linux architecture: mostly
+     * boolean and tristate variables, some non-boolean variables with values (which may contain spaces), and a
+     * clause body.
+     *
+     * @param file The file to write.
+     * @param numVariables The number of variables to create.
+     *
+     * @throws IOException If writing fails.
+     */
+    static void writeSyntheticDimacs(File file, int numVariables) throws IOException {
+        Random random = new Random(4711);
+        int number = 1;
+        try (BufferedWriter out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            for (int i = 0; i < numVariables; i++) {
+                String name = "SYNTHETIC_DRIVER_OPTION_" + i;
+                int kind = random.nextInt(10);
+                if (kind < 6) {
+                    out.write("c " + (number++) + " " + name + "\n");
+                } else if (kind < 9) {
+                    out.write("c " + (number++) + " " + name + "_MODULE\n");
+                    out.write("c " + (number++) + " " + name + "\n");
+                } else {
+                    out.write("c " + (number++) + " " + name + "=-fcall-saved-ecx -fcall-saved-edx " + i + "\n");
+                }
+            }
+            int numClauses = number * 4;
+            out.write("p cnf " + (number - 1) + " " + numClauses + "\n");
+            for (int i = 0; i < numClauses; i++) {
+                out.write("-" + (random.nextInt(number - 1) + 1) + " " + (random.nextInt(number - 1) + 1) + " 0\n");
+            }
+        }
+    }
+
+    /**
+     * Runs the benchmark for one parser.
+     *
+     * @param name The name of the parser to print.
+     * @param parser The parser.
+     * @param file The DIMACS file.
+     * @param iterations The number of measured iterations.
+     *
+     * @return The result of the last iteration.
+     *
+     * @throws IOException If reading fails.
+     * @throws FormatException If the file is invalid.
+     */
+    private static Set<VariabilityVariable> run(String name, Parser parser, File file, int iterations)
+            throws IOException, FormatException {
+
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            parser.parse(file);
+        }
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean allocations = null;
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            allocations = (com.sun.management.ThreadMXBean) threads;
+        }
+        long threadId = Thread.currentThread().getId();
+
+        long allocatedBefore = allocations != null ? allocations.getThreadAllocatedBytes(threadId) : 0;
+        long start = System.nanoTime();
+
+        Set<VariabilityVariable> result = null;
+        for (int i = 0; i < iterations; i++) {
+            result = parser.parse(file);
+        }
+
+        long time = System.nanoTime() - start;
+        long allocated = allocations != null ? allocations.getThreadAllocatedBytes(threadId) - allocatedBefore : 0;
+
+        System.out.printf("%-8s %10.3f ms/op %12s KiB/op%n", name, time / 1e6 / iterations,
+                allocations != null ? String.valueOf(allocated / 1024 / iterations) : "n/a");
+        return result;
+    }
+
+    /**
+     * Converts the parsed variables into a comparable form.
+     *
+     * @param variables The parsed variables.
+     * @return A sorted map from names to types and numbers.
+     */
+    private static TreeMap<String, String> describe(Set<VariabilityVariable> variables) {
+        TreeMap<String, String> result = new TreeMap<>();
+        for (VariabilityVariable var : variables) {
+            String description = var.getType() + " " + var.getDimacsNumber();
+            if (var instanceof TristateVariable) {
+                description += " " + ((TristateVariable) var).getModuleNumber();
+            }
+            result.put(var.getName(), description);
+        }
+        return result;
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args Optionally, the number of variables and the number of measured iterations.
+     *
+     * @throws IOException If writing or reading the synthetic file fails.
+     * @throws FormatException If the synthetic file is invalid.
+     */
+    public static void main(String[] args) throws IOException, FormatException {
+        int numVariables = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+
+        File file = File.createTempFile("benchmark", ".dimacs");
+        try {
+            writeSyntheticDimacs(file, numVariables);
+            System.out.println("Synthetic DIMACS file with " + numVariables + " variables, " + file.length()
+                    + " bytes, " + iterations + " iterations");
+
+            Set<VariabilityVariable> legacy = run("legacy", (f) -> new LegacyDimacsHeaderParser(f).parse(),
+                    file, iterations);
+            Set<VariabilityVariable> current = run("current", (f) -> new DimacsHeaderParser(f).parse(),
+                    file, iterations);
+
+            if (!describe(legacy).equals(describe(current))) {
+                System.out.println("ERROR: parsers produced different variables");
+                System.exit(1);
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2020 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kconfigreader;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import net.ssehub.kernel_haven.util.Util;
+
+/**
+ * Compares the {@link KconfigDefinitionScanner} with the previous regular expression based scanning of the
+ * extractor on a synthetic, kernel-sized corpus of Kconfig files (by default 1 600 files with 16 000 symbols, help
+ * texts and dependencies, about the size of the Kconfig files of a Linux tree). Reports the throughput in MB/s over
+ * the whole corpus; the files are read from the page cache after the warm-up.
+ * <p>
+ * Usage: <code>java -cp &lt;KernelHaven.jar&gt;:&lt;classes&gt;
+ * net.ssehub.kernel_haven.kconfigreader.KconfigScannerBenchmark [files] [symbols per file] [iterations]</code>
+ * </p>
+ *
+ * @author Adam
+ */
+public class KconfigScannerBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 5;
+
+    /**
+     * A scanner under test.
+     */
+    private static interface Scanner {
+
+        /**
+         * Scans the given file.
+         *
+         * @param file The Kconfig file.
+         * @param result The list to add "variable:line" strings for the found definitions to.
+         *
+         * @throws IOException If reading fails.
+         */
+        public void scan(File file, List<String> result) throws IOException;
+
+    }
+
+    /**
+     * The scanning of <code>KconfigReaderExtractor.useTheSourceLuke()</code> before it was replaced by the
+     * {@link KconfigDefinitionScanner}: a regular expression, compiled for each file, matched on each line read
+     * with the default charset.
+     *
+     * @param vars The variables to report.
+     * @param file The Kconfig file.
+     * @param result The list to add "variable:line" strings for the found definitions to.
+     *
+     * @throws IOException If reading fails.
+     */
+    private static void legacyScan(Map<String, Object> vars, File file, List<String> result) throws IOException {
+        Pattern pattern = Pattern.compile("^[^#]*config\\s*([A-Za-z0-9_]+)");
+        try (BufferedReader in = new BufferedReader(new FileReader(file))) {
+            String line;
+            int lineNo = 1;
+            while ((line = in.readLine()) != null) {
+                Matcher m = pattern.matcher(line);
+                if (m.matches()) {
+                    String varName = "CONFIG_" + m.group(1);
+                    if (vars.containsKey(varName)) {
+                        result.add(varName + ":" + lineNo);
+                    }
+                }
+                lineNo++;
+            }
+        }
+    }
+
+    /**
+     * Writes a synthetic corpus of Kconfig files.
+     *
+     * @param dir The directory to write the files to.
+     * @param numFiles The number of files.
+     * @param symbolsPerFile The number of symbols per file.
+     * @param vars The map to add every second variable to, so that half of the definitions are looked up.
+     *
+     * @return The total size of the corpus in bytes.
+     *
+     * @throws IOException If writing fails.
+     */
+    private static long writeCorpus(File dir, int numFiles, int symbolsPerFile, Map<String, Object> vars)
+            throws IOException {
+
+        Random random = new Random(4711);
+        long size = 0;
+        int symbol = 0;
+        for (int i = 0; i < numFiles; i++) {
+            File file = new File(dir, "drivers/subsystem" + (i / 50) + "/Kconfig" + (i % 50 == 0 ? "" : "." + i));
+            file.getParentFile().mkdirs();
+            try (BufferedWriter out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+                out.write("# SPDX-License-Identifier: GPL-2.0-only\n#\n# Synthetic driver configuration\n#\n\n");
+                for (int j = 0; j < symbolsPerFile; j++) {
+                    String name = "SYNTHETIC_DRIVER_" + (symbol++);
+                    if (symbol % 2 == 0) {
+                        vars.put("CONFIG_" + name, name);
+                    }
+                    out.write((random.nextInt(10) == 0 ? "menuconfig " : "config ") + name + "\n");
+                    out.write("\ttristate \"Support for the synthetic device " + name + "\"\n");
+                    out.write("\tdepends on PCI && (X86 || COMPILE_TEST)\n");
+                    if (random.nextBoolean()) {
+                        out.write("\tselect CRC32\n\tdefault m if EXPERT\n");
+                    }
+                    out.write("\thelp\n");
+                    int helpLines = 2 + random.nextInt(10);
+                    for (int k = 0; k < helpLines; k++) {
+                        out.write("\t  Say Y here if you have this synthetic device. To compile this driver as a "
+                                + "module, choose M.\n");
+                    }
+                    out.write("\n");
+                }
+            }
+            size += file.length();
+        }
+        return size;
+    }
+
+    /**
+     * Runs the benchmark for one scanner.
+     *
+     * @param name The name of the scanner to print.
+     * @param scanner The scanner.
+     * @param files The Kconfig files.
+     * @param corpusSize The total size of the files in bytes.
+     * @param iterations The number of measured iterations.
+     *
+     * @return The result of the last iteration.
+     *
+     * @throws IOException If reading fails.
+     */
+    private static List<String> run(String name, Scanner scanner, List<File> files, long corpusSize,
+            int iterations) throws IOException {
+
+        List<String> result = null;
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            result = new ArrayList<>();
+            for (File file : files) {
+                scanner.scan(file, result);
+            }
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            result = new ArrayList<>();
+            for (File file : files) {
+                scanner.scan(file, result);
+            }
+        }
+        long time = System.nanoTime() - start;
+
+        double seconds = time / 1e9 / iterations;
+        System.out.printf("%-8s %10.3f ms/op %10.1f MB/s%n", name, seconds * 1e3, corpusSize / 1e6 / seconds);
+        return result;
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args Optionally, the number of files, the number of symbols per file and the number of measured
+     *      iterations.
+     *
+     * @throws IOException If writing or reading the synthetic corpus fails.
+     */
+    public static void main(String[] args) throws IOException {
+        int numFiles = args.length > 0 ? Integer.parseInt(args[0]) : 1600;
+        int symbolsPerFile = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+        File dir = Files.createTempDirectory("kconfig-benchmark").toFile();
+        try {
+            Map<String, Object> vars = new HashMap<>();
+            long corpusSize = writeCorpus(dir, numFiles, symbolsPerFile, vars);
+
+            List<File> files = new ArrayList<>();
+            Files.walk(dir.toPath()).filter(Files::isRegularFile).sorted().forEach((path) -> files.add(path.toFile()));
+
+            System.out.println("Synthetic Kconfig corpus with " + files.size() + " files, "
+                    + (numFiles * symbolsPerFile) + " symbols, " + corpusSize + " bytes, " + iterations
+                    + " iterations");
+
+            List<String> legacy = run("legacy", (file, result) -> legacyScan(vars, file, result), files,
+                    corpusSize, iterations);
+
+            KconfigDefinitionScanner definitionScanner = new KconfigDefinitionScanner(vars.keySet());
+            List<String> current = run("current", (file, result) -> definitionScanner.scanFile(file,
+                (variable, line) -> result.add(variable + ":" + line)), files, corpusSize, iterations);
+
+            if (!legacy.equals(current)) {
+                System.out.println("ERROR: scanners found different definitions");
+                System.exit(1);
+            }
+        } finally {
+            Util.deleteFolder(dir);
+        }
+    }
+
+}
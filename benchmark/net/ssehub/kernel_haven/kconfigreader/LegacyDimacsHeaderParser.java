@@ -0,0 +1,183 @@
+/*
+ * Copyright 2020 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kconfigreader;
+
+import static net.ssehub.kernel_haven.util.null_checks.NullHelpers.notNull;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.LineNumberReader;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import net.ssehub.kernel_haven.util.FormatException;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.variability_model.HierarchicalVariable;
+import net.ssehub.kernel_haven.variability_model.VariabilityVariable;
+
+/**
+ * The line-based DIMACS header parsing of the {@link Converter} before it was replaced by the
+ * {@link DimacsHeaderParser}. Only kept as the baseline for the {@link DimacsHeaderBenchmark}.
+ *
+ * @author Adam
+ */
+final class LegacyDimacsHeaderParser {
+
+    private @NonNull File dimacsFile;
+
+    private Map<@NonNull String, VariabilityVariable> variableCache;
+
+    /**
+     * Creates a parser for the given file.
+     *
+     * @param dimacsFile The DIMACS file to read.
+     */
+    LegacyDimacsHeaderParser(@NonNull File dimacsFile) {
+        this.dimacsFile = dimacsFile;
+    }
+
+    /**
+     * Reads all variables from a DIMACS file created by KconfigReader. This
+     * reads the comment section at the top of the file and also considers the
+     * DIMACS number mapping.
+     *
+     * @return The variable read from the file. Never null.
+     * 
+     * @throws IOException
+     *             If reading the file fails.
+     * @throws FormatException
+     *             If the file has not the correct format.
+     */
+    @NonNull Set<@NonNull VariabilityVariable> parse() throws IOException, FormatException {
+        LineNumberReader in = null;
+        variableCache = new HashMap<>();
+
+        try {
+            in = new LineNumberReader(new BufferedReader(new FileReader(dimacsFile)));
+
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] elements = line.split(" ");
+
+                // check if we found the "p cnf" line; this is at the bottom of
+                // the comment section
+                // so we are done
+                if (elements.length == 4 && elements[0].equals("p")) {
+                    break;
+                }
+
+                if (!elements[0].equals("c")) {
+                    throw new FormatException("Expected comment line starting with \"c\" at line "
+                            + in.getLineNumber());
+                }
+                readDimacsVariable(elements, in.getLineNumber());
+
+            }
+        } finally {
+            if (in != null) {
+                in.close();
+            }
+
+        }
+        
+        Set<@NonNull VariabilityVariable> result = new HashSet<>();
+        
+        // search for tristate variables that are missing the non _MODULE part (the boolean part).
+        // this means, that we found a _MODULE variable, but no corresponding variable without _MODULE
+        // convert these variables back to boolean type with _MODULE (i.e. they are boolean variables that simply
+        // happen to have a name ending in _MODULE)
+        for (VariabilityVariable var : variableCache.values()) {
+            var = notNull(var);
+            
+            if (var instanceof TristateVariable) {
+                TristateVariable tri = (TristateVariable) var;
+                
+                if (tri.getDimacsNumber() == 0) { // if we haven't found the non _MODULE part
+                    // replace this variable with a boolean one
+                    VariabilityVariable newVar = new HierarchicalVariable(tri.getName() + "_MODULE", "bool",
+                            tri.getModuleNumber());
+                    var = newVar;
+                }
+            }
+            
+            result.add(var);
+        }
+        
+        variableCache = null;
+        
+        return result;
+    }
+
+    /**
+     * Reads the given line from the DIMACS file and adds the variable to the cache.
+     * 
+     * @param elements
+     *            The parts read from the line. Must not be null.
+     * @param currentLineNumber The current line number in the DIMACS file. used for error messages.
+     * 
+     * @throws FormatException
+     *             If the number is not parseable.
+     */
+    private void readDimacsVariable(@NonNull String @NonNull [] elements, int currentLineNumber)
+            throws FormatException {
+        int number = -1;
+        try {
+            number = Integer.parseInt(elements[1]);
+        } catch (NumberFormatException exc) {
+            throw new FormatException("Couldn't parse integer at line " + currentLineNumber + ": " + exc.getMessage());
+        }
+
+        String name = elements[2];
+        name = "CONFIG_" + name;
+
+        // apparently, names can contain spaces
+        for (int i = 3; i < elements.length; i++) {
+            name += " " + elements[i];
+        }
+
+        if (name.endsWith("_MODULE")) {
+            // we found the module part of a tristate variable
+            name = notNull(name.substring(0, name.length() - "_MODULE".length()));
+            int existingNumber = 0;
+            if (variableCache.containsKey(name)) {
+                // the boolean part was already found earlier, so we reuse its
+                // number
+                existingNumber = variableCache.get(name).getDimacsNumber();
+            }
+            variableCache.put(name, new TristateVariable(name, existingNumber, number));
+
+        } else {
+            // we found the boolean part of a variable
+
+            if (!variableCache.containsKey(name)) {
+                // we haven't found a module part yet, so we assume it is
+                // boolean for now
+                variableCache.put(name, new HierarchicalVariable(name, "bool", number));
+            } else {
+                // we already found the module part, so we just set the number
+                // for the boolean part
+                variableCache.get(name).setDimacsNumber(number);
+            }
+
+        }
+    }
+
+}
@@ -16,6 +16,9 @@
  *       LINUX or BUSYBOX).
  *     - These flags are used throughout this file where there need to be adaptations for different source tree types
  *     - The following lines make sure that exactly one correct value was passed to us. 
+ * - Source locations of menus
+ *     - Each <menu> has file and line attributes with the location of its definition, as known by the Kconfig
+ *       parser (menu->file and menu->lineno)
  */
 #if !defined(KH_COMPILE_FOR_LINUX) && !defined(KH_COMPILE_FOR_BUSYBOX)
 	#error Pass at least one correct KH_COMPILE_FOR_* flag with -D
@@ -194,11 +197,29 @@ void dumpsymbol(FILE *out, struct symbol *sym) {
 	//}
 }
 
+void dumpattr(FILE *out, const char *value) {
+	for (; *value; value++) {
+		switch (*value) {
+			case '&': fprintf(out, "&amp;"); break;
+			case '<': fprintf(out, "&lt;"); break;
+			case '>': fprintf(out, "&gt;"); break;
+			case '"': fprintf(out, "&quot;"); break;
+			default: fputc(*value, out);
+		}
+	}
+}
+
 void dumpmenu(FILE *out, struct menu *menu) {
 //	struct property *prop;
 	struct symbol *sym;
 
-	fprintf(out, "<menu flags=\"%d\">\n", menu->flags);
+	fprintf(out, "<menu flags=\"%d\"", menu->flags);
+	if (menu->file && menu->file->name) {
+		fprintf(out, " file=\"");
+		dumpattr(out, menu->file->name);
+		fprintf(out, "\" line=\"%d\"", menu->lineno);
+	}
+	fprintf(out, ">\n");
 	if ((sym = menu->sym))
 			dumpsymbol(out, sym);
 //	if ((prop = menu->prompt)) {
@@ -0,0 +1,409 @@
+/*
+ * Copyright 2020 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kconfigreader;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * Builds a formula in conjunctive normal form, using the Tseitin encoding for nested sub-formulas. Formulas are
+ * represented by DIMACS literals: a positive number is a variable, a negative number its negation. Each
+ * {@link #and(int...)} (and {@link #or(int...)}, which is an {@link #and(int...)} of the negated literals) is
+ * represented by a new auxiliary variable that is equivalent to the conjunction; structurally equal gates are
+ * created only once. Constants are folded before any gate is created, so that the constant literals {@link #TRUE}
+ * and {@link #FALSE} never appear in the clauses.
+ * <p>
+ * The clauses are stored in a single growing <code>int</code> array, each terminated by 0 like in DIMACS.
+ * </p>
+ *
+ * @author Adam
+ */
+final class CnfBuilder {
+
+    /**
+     * The constant literal for <code>true</code>.
+     */
+    static final int TRUE = Integer.MAX_VALUE;
+
+    /**
+     * The constant literal for <code>false</code>.
+     */
+    static final int FALSE = -TRUE;
+
+    /**
+     * The maximum number of literals for which {@link #addAtMostOne(int...)} uses the pairwise encoding.
+     */
+    private static final int PAIRWISE_LIMIT = 6;
+
+    /**
+     * The names of the variables; <code>null</code> for auxiliary variables. Index 0 is unused.
+     */
+    private final @NonNull List<@Nullable String> names = new ArrayList<>();
+
+    /**
+     * The literals of all clauses, each clause terminated by 0.
+     */
+    private int[] clauses = new int[1024];
+
+    private int clausesLength;
+
+    private int numClauses;
+
+    /**
+     * The existing gates: the sorted input literals -> the variable of the gate.
+     */
+    private final @NonNull Map<@NonNull GateKey, @NonNull Integer> gates = new HashMap<>();
+
+    /**
+     * The sorted input literals of a gate, as a key for {@link CnfBuilder#gates}.
+     */
+    private static final class GateKey {
+
+        private final int @NonNull [] inputs;
+
+        private final int hash;
+
+        /**
+         * Creates a key.
+         *
+         * @param inputs The sorted input literals of the gate.
+         */
+        GateKey(int @NonNull [] inputs) {
+            this.inputs = inputs;
+            this.hash = Arrays.hashCode(inputs);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(@Nullable Object obj) {
+            return obj instanceof GateKey && Arrays.equals(inputs, ((GateKey) obj).inputs);
+        }
+
+    }
+
+    /**
+     * Creates an empty formula.
+     */
+    CnfBuilder() {
+        names.add(null);
+    }
+
+    /**
+     * Creates a new variable.
+     *
+     * @param name The name of the variable, which is written as a comment to the DIMACS file. <code>null</code>
+     *      for an auxiliary variable without comment.
+     *
+     * @return The positive literal of the new variable.
+     */
+    int newVariable(@Nullable String name) {
+        names.add(name);
+        return names.size() - 1;
+    }
+
+    /**
+     * Returns the number of variables, including the auxiliary ones.
+     *
+     * @return The number of variables.
+     */
+    int getNumVariables() {
+        return names.size() - 1;
+    }
+
+    /**
+     * Returns the number of clauses.
+     *
+     * @return The number of clauses.
+     */
+    int getNumClauses() {
+        return numClauses;
+    }
+
+    /**
+     * Returns the negation of a literal.
+     *
+     * @param literal The literal to negate.
+     *
+     * @return The negated literal.
+     */
+    static int not(int literal) {
+        return -literal;
+    }
+
+    /**
+     * Returns a literal that is equivalent to the conjunction of the given literals.
+     *
+     * @param literals The literals to combine.
+     *
+     * @return The literal of the conjunction; a constant or one of the given literals, if the conjunction can be
+     *      simplified to it.
+     */
+    int and(int @NonNull ... literals) {
+        int[] inputs = Arrays.copyOf(literals, literals.length);
+        Arrays.sort(inputs);
+
+        int length = 0;
+        for (int i = 0; i < inputs.length; i++) {
+            int literal = inputs[i];
+            if (literal == FALSE) {
+                return FALSE;
+            }
+            if (literal != TRUE && (length == 0 || inputs[length - 1] != literal)) {
+                inputs[length++] = literal;
+            }
+        }
+
+        int result;
+        if (length == 0) {
+            result = TRUE;
+        } else if (length == 1) {
+            result = inputs[0];
+        } else {
+            inputs = Arrays.copyOf(inputs, length);
+            result = FALSE;
+            if (!containsComplement(inputs)) {
+                result = gates.computeIfAbsent(new GateKey(inputs), (key) -> createAndGate(key.inputs));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns a literal that is equivalent to the disjunction of the given literals.
+     *
+     * @param literals The literals to combine.
+     *
+     * @return The literal of the disjunction; a constant or one of the given literals, if the disjunction can be
+     *      simplified to it.
+     */
+    int or(int @NonNull ... literals) {
+        int[] negated = new int[literals.length];
+        for (int i = 0; i < literals.length; i++) {
+            negated[i] = -literals[i];
+        }
+        return -and(negated);
+    }
+
+    /**
+     * Returns a literal that is equivalent to <code>a &lt;-&gt; b</code>.
+     *
+     * @param a The first literal.
+     * @param b The second literal.
+     *
+     * @return The literal of the equivalence.
+     */
+    int iff(int a, int b) {
+        int result;
+        if (a == b) {
+            result = TRUE;
+        } else if (a == -b) {
+            result = FALSE;
+        } else {
+            result = or(and(a, b), and(-a, -b));
+        }
+        return result;
+    }
+
+    /**
+     * Returns a literal that is equivalent to <code>condition ? then : otherwise</code>.
+     *
+     * @param condition The condition literal.
+     * @param then The literal if the condition holds.
+     * @param otherwise The literal if the condition does not hold.
+     *
+     * @return The literal of the if-then-else.
+     */
+    int ite(int condition, int then, int otherwise) {
+        int result;
+        if (then == otherwise) {
+            result = then;
+        } else {
+            result = or(and(condition, then), and(-condition, otherwise));
+        }
+        return result;
+    }
+
+    /**
+     * Adds a clause. Clauses that are satisfied by a constant or contain a literal and its negation are dropped,
+     * constant <code>false</code> literals are removed. If only <code>false</code> literals are given, the empty
+     * clause is added, which makes the formula unsatisfiable.
+     *
+     * @param literals The literals of the clause.
+     */
+    void addClause(int @NonNull ... literals) {
+        int[] clause = Arrays.copyOf(literals, literals.length);
+        Arrays.sort(clause);
+
+        int length = 0;
+        for (int i = 0; i < clause.length; i++) {
+            int literal = clause[i];
+            if (literal == TRUE) {
+                return;
+            }
+            if (literal != FALSE && (length == 0 || clause[length - 1] != literal)) {
+                clause[length++] = literal;
+            }
+        }
+        if (containsComplement(Arrays.copyOf(clause, length))) {
+            return;
+        }
+
+        if (clausesLength + length + 1 > clauses.length) {
+            clauses = Arrays.copyOf(clauses, Math.max(clauses.length * 2, clausesLength + length + 1));
+        }
+        System.arraycopy(clause, 0, clauses, clausesLength, length);
+        clausesLength += length;
+        clauses[clausesLength++] = 0;
+        numClauses++;
+    }
+
+    /**
+     * Adds the clauses for <code>condition -&gt; (a -&gt; b)</code>.
+     *
+     * @param condition The condition; {@link #TRUE} for an unconditional implication.
+     * @param a The premise.
+     * @param b The conclusion.
+     */
+    void addImplication(int condition, int a, int b) {
+        addClause(-condition, -a, b);
+    }
+
+    /**
+     * Adds the clauses for "at most one of the given literals is true". Up to {@link #PAIRWISE_LIMIT} literals are
+     * encoded pairwise; more literals are encoded with the sequential counter, which needs linearly many clauses
+     * and auxiliary variables instead of quadratically many clauses.
+     *
+     * @param literals The literals of which at most one may be true.
+     */
+    void addAtMostOne(int @NonNull ... literals) {
+        if (literals.length <= PAIRWISE_LIMIT) {
+            for (int i = 0; i < literals.length; i++) {
+                for (int j = i + 1; j < literals.length; j++) {
+                    addClause(-literals[i], -literals[j]);
+                }
+            }
+        } else {
+            // s_i: one of the first i + 1 literals is true
+            int previous = newVariable(null);
+            addClause(-literals[0], previous);
+            for (int i = 1; i < literals.length; i++) {
+                addClause(-literals[i], -previous);
+                if (i < literals.length - 1) {
+                    int current = newVariable(null);
+                    addClause(-literals[i], current);
+                    addClause(-previous, current);
+                    previous = current;
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the formula as a DIMACS file. The named variables are listed in comments
+     * (<code>c &lt;number&gt; &lt;name&gt;</code>), like KconfigReader does (see {@link DimacsHeaderParser}).
+     *
+     * @param file The file to write to.
+     *
+     * @throws IOException If writing the file fails.
+     */
+    void write(@NonNull File file) throws IOException {
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file),
+                StandardCharsets.UTF_8), 64 * 1024)) {
+
+            for (int i = 1; i < names.size(); i++) {
+                String name = names.get(i);
+                if (name != null) {
+                    out.write("c ");
+                    out.write(Integer.toString(i));
+                    out.write(' ');
+                    out.write(name);
+                    out.write('\n');
+                }
+            }
+
+            out.write("p cnf " + getNumVariables() + " " + numClauses + "\n");
+
+            boolean lineStart = true;
+            for (int i = 0; i < clausesLength; i++) {
+                int literal = clauses[i];
+                if (!lineStart) {
+                    out.write(' ');
+                }
+                out.write(Integer.toString(literal));
+                lineStart = literal == 0;
+                if (lineStart) {
+                    out.write('\n');
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a new auxiliary variable <code>g</code> with the clauses for <code>g &lt;-&gt; (a1 &amp;&amp; ...
+     * &amp;&amp; an)</code>.
+     *
+     * @param inputs The input literals of the gate.
+     *
+     * @return The literal of the gate.
+     */
+    private int createAndGate(int @NonNull [] inputs) {
+        int gate = newVariable(null);
+
+        int[] backward = new int[inputs.length + 1];
+        for (int i = 0; i < inputs.length; i++) {
+            addClause(-gate, inputs[i]);
+            backward[i] = -inputs[i];
+        }
+        backward[inputs.length] = gate;
+        addClause(backward);
+
+        return gate;
+    }
+
+    /**
+     * Checks whether the given sorted literals contain a literal and its negation.
+     *
+     * @param sorted The sorted literals.
+     *
+     * @return Whether a literal and its negation are contained.
+     */
+    private static boolean containsComplement(int @NonNull [] sorted) {
+        boolean result = false;
+        for (int i = 0; i < sorted.length && sorted[i] < 0 && !result; i++) {
+            result = Arrays.binarySearch(sorted, -sorted[i]) >= 0;
+        }
+        return result;
+    }
+
+}
@@ -18,34 +18,29 @@ package net.ssehub.kernel_haven.kconfigreader;
 
 import static net.ssehub.kernel_haven.util.null_checks.NullHelpers.notNull;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.LineNumberReader;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
-import org.xml.sax.SAXException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import net.ssehub.kernel_haven.util.FormatException;
-import net.ssehub.kernel_haven.util.Util;
 import net.ssehub.kernel_haven.util.null_checks.NonNull;
 import net.ssehub.kernel_haven.util.null_checks.Nullable;
 import net.ssehub.kernel_haven.variability_model.HierarchicalVariable;
+import net.ssehub.kernel_haven.variability_model.SourceLocation;
 import net.ssehub.kernel_haven.variability_model.VariabilityModel;
 import net.ssehub.kernel_haven.variability_model.VariabilityModelDescriptor;
 import net.ssehub.kernel_haven.variability_model.VariabilityModelDescriptor.Attribute;
@@ -62,34 +57,41 @@ import net.ssehub.kernel_haven.variability_model.VariabilityVariable;
  */
 public class Converter {
     
-    private static final Pattern ID_PATTERN = Pattern.compile("S@[0-9]+");
-
     private @NonNull File dimacsFile;
 
     private @NonNull File rsfFile;
 
-    private int choiceId;
+    private boolean takeOwnership;
+    
+    private @Nullable DimacsStatistics dimacsStatistics;
 
+    private int choiceId;
+    
     /**
-     * A cache of the intermediate results for collecting the variables found in
-     * the comments. The types of these variables may be changed in the
-     * conversion process. This is only not <code>null</code>, if readVariables()
-     * is currently running.
+     * Maps the IDs used in conditions (e.g. 4543534 for "S@4543534") to indices in {@link #symbolNames}.
      */
-    private Map<@NonNull String, VariabilityVariable> variableCache;
+    private IntIntMap idToSymbol;
     
     /**
-     * Maps the IDs used in conditions (e.g. "@S4543534") to variable names.
+     * The variable names of the symbols found in the RSF file, in the order they were found.
      */
-    private Map<@NonNull String, String> idToName;
+    private List<@NonNull String> symbolNames;
     
     /**
-     * Maps variable names to a set of IDs that appear in the variable's conditions.
+     * The IDs that appear in the conditions of the symbols in {@link #symbolNames} (same indices).
      */
-    private Map<@NonNull String, Set<@NonNull String>> usedVariables;
+    private List<@NonNull IntSet> usedIds;
+    
+    private RsfIdScanner idScanner;
     
     private LinkedList<@Nullable HierarchicalVariable> submenuStack;
     
+    /**
+     * Variable name -> locations of its definitions, in the order of the RSF file.
+     */
+    private @NonNull Map<@NonNull String, @NonNull List<@NonNull SourceLocation>> sourceLocations
+            = new LinkedHashMap<>();
+    
     /**
      * Creates a new converter for the given DIMACS file.
      * 
@@ -99,8 +101,24 @@ public class Converter {
      *            Must not be <code>null</code>.
      */
     public Converter(@NonNull File outputBase) {
+        this(outputBase, false);
+    }
+    
+    /**
+     * Creates a new converter for the given DIMACS file.
+     * 
+     * @param outputBase
+     *            The base path to the output files of KconfigReader. Append
+     *            ".features", ".dimacs", etc. for the different output files.
+     *            Must not be <code>null</code>.
+     * @param takeOwnership
+     *            Whether the DIMACS file may be moved to become the constraint model of the result. If
+     *            <code>false</code>, it is copied.
+     */
+    public Converter(@NonNull File outputBase, boolean takeOwnership) {
         this.dimacsFile = new File(outputBase.getAbsolutePath() + ".dimacs");
         this.rsfFile = new File(outputBase.getAbsolutePath() + ".rsf");
+        this.takeOwnership = takeOwnership;
     }
 
     /**
@@ -115,10 +133,7 @@ public class Converter {
      *             If the DIMACS file has the wrong format.
      */
     public @NonNull VariabilityModel convert() throws IOException, FormatException {
-        Set<@NonNull VariabilityVariable> dimacsVars = readDimacsVariables();
-        idToName = new HashMap<>();
-        usedVariables = new HashMap<>();
-        submenuStack = new LinkedList<>();
+        Set<@NonNull VariabilityVariable> dimacsVars = new DimacsHeaderParser(dimacsFile).parse();
         Map<@NonNull String, VariabilityVariable> variables = readRsfVariables();
         
         // for every variable we found in the DIMACS file, search the variable found in RSF and set
@@ -160,13 +175,14 @@ public class Converter {
 
         setUsedVariables(variables);
         
-        // copy the DIMACS file, since the current temporary one will be deleted
-        File dimacsCopy = File.createTempFile("varmodel", ".dimacs");
-        dimacsCopy.delete();
-        Util.copyFile(dimacsFile, dimacsCopy);
-        dimacsCopy.deleteOnExit();
+        // move or copy the DIMACS file, since the current temporary one will be deleted
+        File constraintFile = ModelFileManager.newDimacsFile();
+        if (!takeOwnership || !ModelFileManager.moveOrLink(dimacsFile, constraintFile)) {
+            dimacsStatistics = DimacsStatistics.copy(dimacsFile, constraintFile);
+        }
         
-        VariabilityModel result = new VariabilityModel(dimacsCopy, variables);
+        VariabilityModel result = new VariabilityModel(constraintFile, variables);
+        ModelFileManager.track(result, constraintFile);
         VariabilityModelDescriptor descriptor = result.getDescriptor();
         descriptor.setVariableType(VariableType.BOOLEAN);
         descriptor.setConstraintFileType(ConstraintFileType.DIMACS);
@@ -176,31 +192,87 @@ public class Converter {
     }
     
     /**
-     * Calculates the used variables from {@link #usedVariables} and {@link #idToName} and sets it to the given
-     * variables.
+     * Converts only the RSF file into a {@link VariabilityModel}, without reading a DIMACS file. This is used if
+     * only dumpconf was executed, without KconfigReader. The variables have their types, hierarchy and constraint
+     * usage like in {@link #convert()}, but no DIMACS numbers; <code>CONFIG_MODULES</code> is only contained if it
+     * is defined in the Kconfig files.
+     *
+     * @return The {@link VariabilityModel} representing the given RSF file. It has no constraint model, which the
+     *      descriptor marks with {@link ConstraintFileType#UNKNOWN}. Never null.
+     *
+     * @throws IOException
+     *             If reading the RSF file fails.
+     * @throws FormatException
+     *             If the RSF file has the wrong format.
+     */
+    public @NonNull VariabilityModel convertRsf() throws IOException, FormatException {
+        Map<@NonNull String, VariabilityVariable> variables = readRsfVariables();
+        setUsedVariables(variables);
+
+        VariabilityModel result = new VariabilityModel(null, variables);
+        VariabilityModelDescriptor descriptor = result.getDescriptor();
+        descriptor.setVariableType(VariableType.BOOLEAN);
+        descriptor.setConstraintFileType(ConstraintFileType.UNKNOWN);
+        descriptor.addAttribute(Attribute.CONSTRAINT_USAGE);
+        descriptor.addAttribute(Attribute.HIERARCHICAL);
+        return result;
+    }
+
+    /**
+     * Returns the statistics of the DIMACS file, which are calculated if the DIMACS file is copied in
+     * {@link #convert()}. If the file was moved instead (see {@link #Converter(File, boolean)}), no statistics are
+     * calculated, to avoid reading the file.
+     * 
+     * @return The statistics of the DIMACS file, or <code>null</code> if not calculated.
+     */
+    public @Nullable DimacsStatistics getDimacsStatistics() {
+        return dimacsStatistics;
+    }
+    
+    /**
+     * Returns the locations of the symbol definitions, as written by dumpconf in the <code>file</code> and
+     * <code>line</code> attributes of the menus. The locations are not added to the variables of the model returned
+     * by {@link #convert()}; the paths are as the Kconfig parser saw them, i.e. usually relative to the source tree,
+     * except for the root Kconfig file.
+     * 
+     * @return Variable name -> locations of its definitions, in the order of the RSF file. Empty if the RSF file
+     *      contains no locations (e.g. if it was created by an older dumpconf) or {@link #convert()} was not called.
+     */
+    public @NonNull Map<@NonNull String, @NonNull List<@NonNull SourceLocation>> getSourceLocations() {
+        return sourceLocations;
+    }
+    
+    /**
+     * Calculates the used variables from {@link #usedIds} and {@link #idToSymbol} and sets it to the given
+     * variables. Requires a previous call to {@link #readRsfVariables()}. Package visibility for benchmarks.
      * 
      * @param variables The variables in the variability model.
      * 
      * @throws FormatException If any IDs could not be found.
      */
-    private void setUsedVariables(Map<@NonNull String, VariabilityVariable> variables) throws FormatException {
-        for (Map.Entry<@NonNull String, Set<@NonNull String>> entry : usedVariables.entrySet()) {
-            Set<@NonNull VariabilityVariable> usedVariables = new HashSet<>();
-            for (@NonNull String id : notNull(entry.getValue())) {
-                VariabilityVariable usedVar = variables.get(idToName.get(id));
-                if (usedVar != null) {
-                    usedVariables.add(usedVar);
+    void setUsedVariables(Map<@NonNull String, VariabilityVariable> variables) throws FormatException {
+        // resolve the symbols to variables once, so that IDs can be resolved by index
+        VariabilityVariable[] symbolVariables = new VariabilityVariable[symbolNames.size()];
+        for (int i = 0; i < symbolVariables.length; i++) {
+            symbolVariables[i] = variables.get(symbolNames.get(i));
+            if (symbolVariables[i] == null) {
+                throw new FormatException("Found no variable with name " + symbolNames.get(i));
+            }
+        }
+        
+        for (int i = 0; i < symbolVariables.length; i++) {
+            int[] ids = usedIds.get(i).toArray();
+            Set<@NonNull VariabilityVariable> usedVariables = new HashSet<>(ids.length * 2);
+            for (int id : ids) {
+                int symbol = idToSymbol.get(id, -1);
+                if (symbol != -1) {
+                    usedVariables.add(notNull(symbolVariables[symbol]));
                 } else {
-                    throw new FormatException("Found no variable for ID " + id);
+                    throw new FormatException("Found no variable for ID S@" + id);
                 }
             }
             
-            VariabilityVariable var = variables.get(entry.getKey());
-            if (var != null) {
-                var.setVariablesUsedInConstraints(usedVariables);
-            } else {
-                throw new FormatException("Found no variable with name " + entry.getKey());
-            }
+            symbolVariables[i].setVariablesUsedInConstraints(usedVariables);
         }
         
         // calculate the "reverse" for usedInConstraintsOfOtherVariables
@@ -229,38 +301,11 @@ public class Converter {
         }
     }
 
-    /**
-     * Returns an iterable object for the children of the given parent node.
-     * 
-     * @param parent
-     *            The parent node.
-     * @return An iterable object that returns iterators over the parent's
-     *         children.
-     */
-    private static @NonNull Iterable<Node> nodeIterator(@NonNull Node parent) {
-        return () -> {
-            return new Iterator<Node>() {
-
-                private int i = 0;
-
-                @Override
-                public boolean hasNext() {
-                    return parent.getChildNodes().getLength() > i;
-                }
-
-                @Override
-                public Node next() {
-                    return parent.getChildNodes().item(i++);
-                }
-            };
-        };
-    }
-
     /**
      * Checks if the given symbol has the flag set in the "flags" attribute.
      * 
-     * @param symbol
-     *            The symbol to check.
+     * @param flagsStr
+     *            The value of the "flags" attribute of the symbol. May be <code>null</code> if not present.
      * @param flag
      *            The flag to check.
      * @return Whether the flag is set or not.
@@ -269,39 +314,130 @@ public class Converter {
      *             If the symbol doesn't have a flags attribute, or it isn't an
      *             integer.
      */
-    private boolean hasRsfFlag(@NonNull Node symbol, int flag) throws FormatException {
+    private boolean hasRsfFlag(@Nullable String flagsStr, int flag) throws FormatException {
+        if (flagsStr == null) {
+            throw new FormatException("No flags attribute in <symbol>");
+        }
         try {
-            String flagsStr = symbol.getAttributes().getNamedItem("flags").getTextContent();
-
             int flags = Integer.parseInt(flagsStr);
 
             return (flags & flag) != 0;
 
         } catch (NumberFormatException e) {
             throw new FormatException("Invalid flags attribute in <symbol>");
-        } catch (NullPointerException e) {
-            throw new FormatException("No flags attribute in <symbol>");
         }
     }
     
     /**
-     * Reads a menu element and finds the symbol element in it.
+     * A consumer for the text of an XML element.
+     */
+    static interface RsfTextConsumer {
+        
+        /**
+         * Consumes a chunk of text.
+         * 
+         * @param chars The buffer containing the chunk.
+         * @param start The start index of the chunk in the buffer.
+         * @param length The length of the chunk.
+         * 
+         * @throws FormatException If the text has an invalid format.
+         */
+        public void accept(char[] chars, int start, int length) throws FormatException;
+        
+    }
+    
+    /**
+     * Reads the text content of the current element, i.e. all text nodes of the element and its descendants in
+     * document order. Afterwards, the reader is positioned at the end tag of the element.
      * 
-     * @param menu The menu to read.
-     * @return The symbol element inside of it; <code>null</code> if not present.
+     * @param reader The reader, positioned at the start tag of the element.
+     * @param consumer The consumer that gets passed the text.
      * 
-     * @throws FormatException If the menu element is invalid.
+     * @throws XMLStreamException If reading the XML fails.
+     * @throws FormatException If the consumer rejects the text.
      */
-    private @Nullable Node getRsfSymbol(@NonNull Node menu) throws FormatException {
-        Node symbol = null;
+    static void readRsfText(@NonNull XMLStreamReader reader, @NonNull RsfTextConsumer consumer)
+            throws XMLStreamException, FormatException {
+        int depth = 1;
+        while (depth > 0) {
+            switch (reader.next()) {
+            case XMLStreamConstants.START_ELEMENT:
+                depth++;
+                break;
+                
+            case XMLStreamConstants.END_ELEMENT:
+                depth--;
+                break;
+                
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+            case XMLStreamConstants.SPACE:
+                consumer.accept(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                break;
+                
+            default:
+                // ignore
+                break;
+            }
+        }
+    }
+    
+    /**
+     * Reads the text content of the current element, see {@link #readRsfText(XMLStreamReader, RsfTextConsumer)}.
+     * 
+     * @param reader The reader, positioned at the start tag of the element.
+     * @return The text content of the element.
+     * 
+     * @throws XMLStreamException If reading the XML fails.
+     * @throws FormatException Never.
+     */
+    static @NonNull String readRsfTextContent(@NonNull XMLStreamReader reader)
+            throws XMLStreamException, FormatException {
+        StringBuilder result = new StringBuilder();
+        readRsfText(reader, result::append);
+        return notNull(result.toString());
+    }
+    
+    /**
+     * Reads the given menu element.
+     * 
+     * @param reader
+     *            The reader, positioned at the start tag of the menu element. Afterwards, it is positioned at the
+     *            end tag.
+     * @param result
+     *            The result to add found variables to.
+     * @throws FormatException
+     *             If the format is invalid.
+     * @throws XMLStreamException
+     *             If reading the XML fails.
+     */
+    private void readRsfMenu(@NonNull XMLStreamReader reader,
+            @NonNull Map<@NonNull String, VariabilityVariable> result) throws FormatException, XMLStreamException {
         
-        for (Node menuChild : nodeIterator(menu)) {
-
-            switch (menuChild.getNodeName()) {
+        SourceLocation location = null;
+        String file = reader.getAttributeValue(null, "file");
+        if (file != null) {
+            String line = reader.getAttributeValue(null, "line");
+            try {
+                location = new SourceLocation(new File(file), Integer.parseInt(line));
+            } catch (NumberFormatException e) {
+                throw new FormatException("Invalid line attribute in <menu>: " + line);
+            }
+        }
+        
+        String symbolName = null;
+        
+        while (reader.next() != XMLStreamConstants.END_ELEMENT) {
+            if (reader.getEventType() != XMLStreamConstants.START_ELEMENT) {
+                // ignore text
+                continue;
+            }
+            
+            switch (reader.getLocalName()) {
 
             case "symbol":
-                if (symbol == null) {
-                    symbol = menuChild;
+                if (symbolName == null) {
+                    symbolName = readRsfSymbol(reader, result);
                 } else {
                     throw new FormatException("More than one symbol in <menu>");
                 }
@@ -309,63 +445,49 @@ public class Converter {
 
             case "dep":
                 // not needed for constraint analysis, since the dependency condition also appears properties
-                break;
-
-            case "#text":
-                // ignore
+                readRsfText(reader, (chars, start, length) -> { });
                 break;
 
             default:
-                throw new FormatException("Unexpected tag in <menu>: " + menuChild.getNodeName());
+                throw new FormatException("Unexpected tag in <menu>: " + reader.getLocalName());
             }
         }
-        return symbol;
-    }
-    
-    /**
-     * Finds all used variable IDs (e.g. "S@3432434") in the given text content of a condition.
-     * 
-     * @param textContent The text content to search the IDs in.
-     * @param currentId The ID of the variable that this condition is in. This will not be added to the result.
-     * 
-     * @return The used variable IDs.
-     */
-    private @NonNull Set<@NonNull String> readRsfUsedIds(@NonNull String textContent, @NonNull String currentId) {
-        Set<@NonNull String> result = new HashSet<>();
         
-        Matcher m = ID_PATTERN.matcher(textContent);
-        while (m.find()) {
-            String id = m.group();
-            if (!id.equals(currentId)) {
-                result.add(id);
-            }
+        if (location != null && symbolName != null) {
+            sourceLocations.computeIfAbsent(symbolName, (name) -> new ArrayList<>(1)).add(location);
         }
-        
-        return result;
     }
     
     /**
-     * Reads the given menu node.
+     * Reads the given symbol element.
      * 
-     * @param menu
-     *            The menu node.
+     * @param reader
+     *            The reader, positioned at the start tag of the symbol element. Afterwards, it is positioned at the
+     *            end tag.
      * @param result
      *            The result to add found variables to.
+     * @return The name of the found variable.
      * @throws FormatException
      *             If the format is invalid.
+     * @throws XMLStreamException
+     *             If reading the XML fails.
      */
-    private void readRsfMenu(@NonNull Node menu, @NonNull Map<@NonNull String, VariabilityVariable> result)
-            throws FormatException {
+    private @NonNull String readRsfSymbol(@NonNull XMLStreamReader reader,
+            @NonNull Map<@NonNull String, VariabilityVariable> result) throws FormatException, XMLStreamException {
         
-        Node symbol = getRsfSymbol(menu);
-        if (symbol == null) {
-            return;
-        }
-
         // attributes
-        String type = symbol.getAttributes().getNamedItem("type").getTextContent();
-        String id = "S@" + symbol.getAttributes().getNamedItem("id").getTextContent();
-        boolean choice = hasRsfFlag(symbol, 0x0010);
+        String type = reader.getAttributeValue(null, "type");
+        String idAttribute = reader.getAttributeValue(null, "id");
+        if (type == null || idAttribute == null) {
+            throw new FormatException("No type or id attribute in <symbol>");
+        }
+        int id;
+        try {
+            id = Integer.parseInt(idAttribute);
+        } catch (NumberFormatException e) {
+            throw new FormatException("Invalid id attribute in <symbol>");
+        }
+        boolean choice = hasRsfFlag(reader.getAttributeValue(null, "flags"), 0x0010);
         
         if (type.equals("boolean")) {
             type = "bool";
@@ -373,29 +495,32 @@ public class Converter {
 
         // children
         String name = null;
-        Set<@NonNull String> usedIds = new HashSet<>();
+        IntSet usedIds = new IntSet();
 
-        for (Node symbolChild : nodeIterator(symbol)) {
-            switch (symbolChild.getNodeName()) {
+        while (reader.next() != XMLStreamConstants.END_ELEMENT) {
+            if (reader.getEventType() != XMLStreamConstants.START_ELEMENT) {
+                // ignore text
+                continue;
+            }
+            
+            switch (reader.getLocalName()) {
 
             case "name":
                 if (name == null) {
-                    name = symbolChild.getTextContent();
+                    name = readRsfTextContent(reader);
                 } else {
                     throw new FormatException("More than one name for symbol " + name);
                 }
                 break;
 
             case "property":
-                usedIds.addAll(readRsfUsedIds(notNull(symbolChild.getTextContent()), id));
-                break;
-
-            case "#text":
-                // ignore
+                idScanner.reset(id, usedIds);
+                readRsfText(reader, idScanner::feed);
+                idScanner.finish();
                 break;
 
             default:
-                throw new FormatException("Unexpected tag in <symbol>: " + symbolChild.getNodeName());
+                throw new FormatException("Unexpected tag in <symbol>: " + reader.getLocalName());
             }
         }
 
@@ -411,10 +536,11 @@ public class Converter {
 
         name = "CONFIG_" + name;
         createRsfVariable(id, name, type, usedIds, result);
+        return name;
     }
     
     /**
-     * Called by {@link #readRsfMenu(Node, Map)} when a variable is found.
+     * Called by {@link #readRsfSymbol(XMLStreamReader, Map)} when a variable is found.
      * 
      * @param id The ID of the variable.
      * @param name The name of the variable.
@@ -422,10 +548,11 @@ public class Converter {
      * @param usedIds The IDs used in the constraints of this variable.
      * @param result The result map to add the created variable to.
      */
-    private void createRsfVariable(@NonNull String id, @NonNull String name, @NonNull String type,
-            @NonNull Set<@NonNull String> usedIds, @NonNull Map<@NonNull String, VariabilityVariable> result) {
-        idToName.put(id, name);
-        usedVariables.put(name, usedIds);
+    private void createRsfVariable(int id, @NonNull String name, @NonNull String type,
+            @NonNull IntSet usedIds, @NonNull Map<@NonNull String, VariabilityVariable> result) {
+        idToSymbol.put(id, symbolNames.size());
+        symbolNames.add(name);
+        this.usedIds.add(usedIds);
 
         HierarchicalVariable var;
         if (type.equals("tristate")) {
@@ -447,43 +574,67 @@ public class Converter {
     }
 
     /**
-     * Reads the given submenu node.
+     * Reads the given submenu element.
      * 
-     * @param submenu
-     *            The submenu node.
+     * @param reader
+     *            The reader, positioned at the start tag of the submenu element. Afterwards, it is positioned at the
+     *            end tag.
      * @param result
      *            The result to add found variables to.
      * @throws FormatException
      *             If the format is invalid.
+     * @throws XMLStreamException
+     *             If reading the XML fails.
      */
-    private void readRsfSubMenu(@NonNull Node submenu, @NonNull Map<@NonNull String, VariabilityVariable> result)
-            throws FormatException {
+    private void readRsfSubMenu(@NonNull XMLStreamReader reader,
+            @NonNull Map<@NonNull String, VariabilityVariable> result) throws FormatException, XMLStreamException {
         
         submenuStack.push(null);
-        for (Node node : nodeIterator(submenu)) {
+        while (reader.next() != XMLStreamConstants.END_ELEMENT) {
+            if (reader.getEventType() != XMLStreamConstants.START_ELEMENT) {
+                // ignore text
+                continue;
+            }
 
-            switch (node.getNodeName()) {
+            switch (reader.getLocalName()) {
             case "submenu":
-                readRsfSubMenu(node, result);
+                readRsfSubMenu(reader, result);
                 break;
 
             case "menu":
-                readRsfMenu(node, result);
-                break;
-
-            case "#text":
-                // ignore
+                readRsfMenu(reader, result);
                 break;
 
             default:
-                throw new FormatException("Unexpected tag in structure: " + node.getNodeName());
+                throw new FormatException("Unexpected tag in structure: " + reader.getLocalName());
             }
         }
         submenuStack.pop();
     }
 
     /**
-     * Reads the XML RSF structure.
+     * Skips everything before the XML structure of an RSF file, i.e. everything until the <code>"\n.\n"</code>.
+     * 
+     * @param in The stream of the RSF file. Afterwards, it is positioned at the start of the XML structure.
+     * 
+     * @throws IOException If reading the stream fails.
+     * @throws FormatException If the stream does not contain <code>"\n.\n"</code>.
+     */
+    static void skipRsfHeader(@NonNull InputStream in) throws IOException, FormatException {
+        char[] lastThree = {' ', ' ', ' '};
+        int index = 0;
+        while (lastThree[0] != '\n' || lastThree[1] != '.' || lastThree[2] != '\n') {
+            int read = in.read();
+            if (read == -1) {
+                throw new FormatException("Expected rsf file to begin with \"\\n.\\n\"");
+            }
+            lastThree[index] = (char) read;
+            index = (index + 1) % lastThree.length;
+        }
+    }
+    
+    /**
+     * Reads the XML RSF structure. Package visibility for benchmarks.
      * 
      * @return The variables read from the XML structure.
      * 
@@ -492,43 +643,44 @@ public class Converter {
      * @throws FormatException
      *             If the format of the file is invalid.
      */
-    private @NonNull Map<@NonNull String, VariabilityVariable> readRsfVariables() throws IOException, FormatException {
+    @NonNull Map<@NonNull String, VariabilityVariable> readRsfVariables() throws IOException, FormatException {
         choiceId = 1;
+        idToSymbol = new IntIntMap(1024);
+        symbolNames = new ArrayList<>();
+        usedIds = new ArrayList<>();
+        idScanner = new RsfIdScanner();
+        submenuStack = new LinkedList<>();
+        sourceLocations = new LinkedHashMap<>();
         
         Map<@NonNull String, VariabilityVariable> result = new HashMap<>();
 
         try (FileInputStream in = new FileInputStream(rsfFile)) {
-            // skip everything until the "\n.\n"
-            char[] lastThree = {' ', ' ', ' '};
-            int index = 0;
-            while (lastThree[0] != '\n' || lastThree[1] != '.' || lastThree[2] != '\n') {
-                int read = in.read();
-                if (read == -1) {
-                    throw new FormatException("Expected rsf file to begin with \"\\n.\\n\"");
-                }
-                lastThree[index] = (char) read;
-                index = (index + 1) % lastThree.length;
-            }
+            skipRsfHeader(in);
 
             try {
-                DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-
-                Document doc = builder.parse(in);
-
-                Node element = doc.getDocumentElement();
-
-                if (!element.getNodeName().equals("submenu")) {
-                    throw new FormatException("Top level element is not a submenu");
+                // the XML is streamed, so that memory usage is bounded by the nesting depth of the menus
+                XMLInputFactory factory = XMLInputFactory.newInstance();
+                factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+                XMLStreamReader reader = factory.createXMLStreamReader(in);
+                
+                try {
+                    reader.nextTag();
+                    if (!reader.getLocalName().equals("submenu")) {
+                        throw new FormatException("Top level element is not a submenu");
+                    }
+                    
+                    readRsfSubMenu(notNull(reader), result);
+                    
+                    // make sure that the rest of the document is well-formed
+                    while (reader.hasNext()) {
+                        reader.next();
+                    }
+                    
+                } finally {
+                    reader.close();
                 }
 
-                readRsfSubMenu(element, result);
-
-//                ByteArrayOutputStream out = new ByteArrayOutputStream();
-//                Transformer t = TransformerFactory.newInstance().newTransformer();
-//                t.transform(new DOMSource(doc), new StreamResult(out));
-//                System.out.println(out.toString().trim());
-
-            } catch (ParserConfigurationException | SAXException e) {
+            } catch (XMLStreamException e) {
                 throw new FormatException(e);
             }
 
@@ -537,130 +689,4 @@ public class Converter {
         return result;
     }
 
-    /**
-     * Reads all variables from a DIMACS file created by KconfigReader. This
-     * reads the comment section at the top of the file and also considers the
-     * DIMACS number mapping.
-     *
-     * @return The variable read from the file. Never null.
-     * 
-     * @throws IOException
-     *             If reading the file fails.
-     * @throws FormatException
-     *             If the file has not the correct format.
-     */
-    private @NonNull Set<@NonNull VariabilityVariable> readDimacsVariables() throws IOException, FormatException {
-        LineNumberReader in = null;
-        variableCache = new HashMap<>();
-
-        try {
-            in = new LineNumberReader(new BufferedReader(new FileReader(dimacsFile)));
-
-            String line;
-            while ((line = in.readLine()) != null) {
-                String[] elements = line.split(" ");
-
-                // check if we found the "p cnf" line; this is at the bottom of
-                // the comment section
-                // so we are done
-                if (elements.length == 4 && elements[0].equals("p")) {
-                    break;
-                }
-
-                if (!elements[0].equals("c")) {
-                    throw new FormatException("Expected comment line starting with \"c\" at line "
-                            + in.getLineNumber());
-                }
-                readDimacsVariable(elements, in.getLineNumber());
-
-            }
-        } finally {
-            if (in != null) {
-                in.close();
-            }
-
-        }
-        
-        Set<@NonNull VariabilityVariable> result = new HashSet<>();
-        
-        // search for tristate variables that are missing the non _MODULE part (the boolean part).
-        // this means, that we found a _MODULE variable, but no corresponding variable without _MODULE
-        // convert these variables back to boolean type with _MODULE (i.e. they are boolean variables that simply
-        // happen to have a name ending in _MODULE)
-        for (VariabilityVariable var : variableCache.values()) {
-            var = notNull(var);
-            
-            if (var instanceof TristateVariable) {
-                TristateVariable tri = (TristateVariable) var;
-                
-                if (tri.getDimacsNumber() == 0) { // if we haven't found the non _MODULE part
-                    // replace this variable with a boolean one
-                    VariabilityVariable newVar = new HierarchicalVariable(tri.getName() + "_MODULE", "bool",
-                            tri.getModuleNumber());
-                    var = newVar;
-                }
-            }
-            
-            result.add(var);
-        }
-        
-        variableCache = null;
-        
-        return result;
-    }
-
-    /**
-     * Reads the given line from the DIMACS file and adds the variable to the cache.
-     * 
-     * @param elements
-     *            The parts read from the line. Must not be null.
-     * @param currentLineNumber The current line number in the DIMACS file. used for error messages.
-     * 
-     * @throws FormatException
-     *             If the number is not parseable.
-     */
-    private void readDimacsVariable(@NonNull String @NonNull [] elements, int currentLineNumber)
-            throws FormatException {
-        int number = -1;
-        try {
-            number = Integer.parseInt(elements[1]);
-        } catch (NumberFormatException exc) {
-            throw new FormatException("Couldn't parse integer at line " + currentLineNumber + ": " + exc.getMessage());
-        }
-
-        String name = elements[2];
-        name = "CONFIG_" + name;
-
-        // apparently, names can contain spaces
-        for (int i = 3; i < elements.length; i++) {
-            name += " " + elements[i];
-        }
-
-        if (name.endsWith("_MODULE")) {
-            // we found the module part of a tristate variable
-            name = notNull(name.substring(0, name.length() - "_MODULE".length()));
-            int existingNumber = 0;
-            if (variableCache.containsKey(name)) {
-                // the boolean part was already found earlier, so we reuse its
-                // number
-                existingNumber = variableCache.get(name).getDimacsNumber();
-            }
-            variableCache.put(name, new TristateVariable(name, existingNumber, number));
-
-        } else {
-            // we found the boolean part of a variable
-
-            if (!variableCache.containsKey(name)) {
-                // we haven't found a module part yet, so we assume it is
-                // boolean for now
-                variableCache.put(name, new HierarchicalVariable(name, "bool", number));
-            } else {
-                // we already found the module part, so we just set the number
-                // for the boolean part
-                variableCache.get(name).setDimacsNumber(number);
-            }
-
-        }
-    }
-
 }
@@ -0,0 +1,313 @@
+/*
+ * Copyright 2020 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kconfigreader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import net.ssehub.kernel_haven.util.FormatException;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.variability_model.HierarchicalVariable;
+import net.ssehub.kernel_haven.variability_model.VariabilityVariable;
+
+/**
+ * Reads the variables from the comment section at the top of a DIMACS file created by KconfigReader. Each comment
+ * line has the form <code>c &lt;number&gt; &lt;name&gt;</code>; the section ends with the <code>p cnf</code> line.
+ * The clauses after it are not read.
+ * <p>
+ * The file is parsed on byte level with a reused buffer: numbers are parsed without intermediate strings and each
+ * name is decoded into exactly one string (including the <code>CONFIG_</code> prefix).
+ * </p>
+ *
+ * @author Adam
+ */
+final class DimacsHeaderParser {
+
+    private static final byte @NonNull [] PREFIX = "CONFIG_".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte @NonNull [] MODULE_SUFFIX = "_MODULE".getBytes(StandardCharsets.US_ASCII);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private @NonNull File dimacsFile;
+
+    /**
+     * The line that is currently read. Grows if a line is longer.
+     */
+    private byte @NonNull [] line = new byte[256];
+
+    private int lineLength;
+
+    private int lineNumber;
+
+    /**
+     * The buffer for decoding names. Always starts with {@link #PREFIX}.
+     */
+    private byte @NonNull [] name = new byte[256];
+
+    /**
+     * The variables that were found so far. The types of these variables may be changed if a corresponding
+     * <code>_MODULE</code> variable is found.
+     */
+    private @NonNull Map<@NonNull String, VariabilityVariable> variables = new HashMap<>();
+
+    /**
+     * Creates a parser for the given file.
+     *
+     * @param dimacsFile The DIMACS file to read.
+     */
+    DimacsHeaderParser(@NonNull File dimacsFile) {
+        this.dimacsFile = dimacsFile;
+        System.arraycopy(PREFIX, 0, name, 0, PREFIX.length);
+    }
+
+    /**
+     * Reads all variables from the DIMACS file. This reads the comment section at the top of the file and also
+     * considers the DIMACS number mapping.
+     *
+     * @return The variable read from the file. Never null.
+     *
+     * @throws IOException
+     *             If reading the file fails.
+     * @throws FormatException
+     *             If the file has not the correct format.
+     */
+    @NonNull Set<@NonNull VariabilityVariable> parse() throws IOException, FormatException {
+        try (InputStream in = new FileInputStream(dimacsFile)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            boolean done = false;
+            int read;
+            while (!done && (read = in.read(buffer)) != -1) {
+                int lineStart = 0;
+                for (int i = 0; i < read && !done; i++) {
+                    if (buffer[i] == '\n') {
+                        appendToLine(buffer, lineStart, i - lineStart);
+                        done = !readLine();
+                        lineStart = i + 1;
+                    }
+                }
+                if (!done) {
+                    appendToLine(buffer, lineStart, read - lineStart);
+                }
+            }
+
+            if (!done && lineLength > 0) {
+                // last line without line break
+                readLine();
+            }
+        }
+
+        Set<@NonNull VariabilityVariable> result = new HashSet<>();
+
+        // search for tristate variables that are missing the non _MODULE part (the boolean part).
+        // this means, that we found a _MODULE variable, but no corresponding variable without _MODULE
+        // convert these variables back to boolean type with _MODULE (i.e. they are boolean variables that simply
+        // happen to have a name ending in _MODULE)
+        for (VariabilityVariable var : variables.values()) {
+            if (var instanceof TristateVariable) {
+                TristateVariable tri = (TristateVariable) var;
+
+                if (tri.getDimacsNumber() == 0) { // if we haven't found the non _MODULE part
+                    // replace this variable with a boolean one
+                    var = new HierarchicalVariable(tri.getName() + "_MODULE", "bool", tri.getModuleNumber());
+                }
+            }
+
+            result.add(var);
+        }
+
+        return result;
+    }
+
+    /**
+     * Appends bytes to the current line.
+     *
+     * @param bytes The buffer to copy from.
+     * @param start The start index in the buffer.
+     * @param length The number of bytes to copy.
+     */
+    private void appendToLine(byte @NonNull [] bytes, int start, int length) {
+        if (lineLength + length > line.length) {
+            byte[] newLine = new byte[Math.max(line.length * 2, lineLength + length)];
+            System.arraycopy(line, 0, newLine, 0, lineLength);
+            line = newLine;
+        }
+        System.arraycopy(bytes, start, line, lineLength, length);
+        lineLength += length;
+    }
+
+    /**
+     * Reads the current line and adds the variable to the cache. Afterwards, the current line is cleared.
+     *
+     * @return <code>false</code> if this line is the <code>p cnf</code> line, i.e. the comment section is finished.
+     *
+     * @throws FormatException If the line has an invalid format.
+     */
+    private boolean readLine() throws FormatException {
+        lineNumber++;
+        int length = lineLength;
+        lineLength = 0;
+
+        // strip trailing \r and spaces
+        while (length > 0 && (line[length - 1] == '\r' || line[length - 1] == ' ')) {
+            length--;
+        }
+
+        boolean singleCharToken = length == 1 || (length > 1 && line[1] == ' ');
+
+        // check if we found the "p cnf" line; this is at the bottom of the comment section so we are done
+        if (singleCharToken && line[0] == 'p') {
+            return false;
+        }
+
+        if (!singleCharToken || line[0] != 'c') {
+            throw new FormatException("Expected comment line starting with \"c\" at line " + lineNumber);
+        }
+
+        // number
+        int pos = 2;
+        int numberStart = pos;
+        boolean negative = pos < length && line[pos] == '-';
+        if (negative) {
+            pos++;
+        }
+        long number = 0;
+        while (pos < length && line[pos] != ' ') {
+            byte b = line[pos];
+            if (b < '0' || b > '9' || number > Integer.MAX_VALUE) {
+                number = -1;
+                break;
+            }
+            number = number * 10 + (b - '0');
+            pos++;
+        }
+        if (number < 0 || number > Integer.MAX_VALUE || pos == numberStart + (negative ? 1 : 0)) {
+            int numberEnd = numberStart;
+            while (numberEnd < length && line[numberEnd] != ' ') {
+                numberEnd++;
+            }
+            throw new FormatException("Couldn't parse integer at line " + lineNumber + ": For input string: \""
+                    + new String(line, numberStart, numberEnd - numberStart, StandardCharsets.UTF_8) + "\"");
+        }
+        if (negative) {
+            number = -number;
+        }
+
+        // name; apparently, names can contain spaces
+        pos++;
+        if (pos >= length) {
+            throw new FormatException("Missing variable name at line " + lineNumber);
+        }
+        addVariable(pos, length, (int) number);
+
+        return true;
+    }
+
+    /**
+     * Adds the variable with the name in the given range of the current line.
+     *
+     * @param nameStart The start index of the name in the current line.
+     * @param nameEnd The end index (exclusive) of the name in the current line.
+     * @param number The DIMACS number of the variable.
+     */
+    private void addVariable(int nameStart, int nameEnd, int number) {
+        boolean module = endsWithModule(nameStart, nameEnd);
+        if (module) {
+            nameEnd -= MODULE_SUFFIX.length;
+        }
+
+        String varName = decodeName(nameStart, nameEnd);
+
+        VariabilityVariable existing = variables.get(varName);
+        if (module) {
+            // we found the module part of a tristate variable
+            int existingNumber = 0;
+            if (existing != null) {
+                // the boolean part was already found earlier, so we reuse its number
+                existingNumber = existing.getDimacsNumber();
+            }
+            variables.put(varName, new TristateVariable(varName, existingNumber, number));
+
+        } else {
+            // we found the boolean part of a variable
+            if (existing == null) {
+                // we haven't found a module part yet, so we assume it is boolean for now
+                variables.put(varName, new HierarchicalVariable(varName, "bool", number));
+            } else {
+                // we already found the module part, so we just set the number for the boolean part
+                existing.setDimacsNumber(number);
+            }
+        }
+    }
+
+    /**
+     * Checks whether the given range of the current line ends with <code>_MODULE</code>.
+     *
+     * @param start The start index in the current line.
+     * @param end The end index (exclusive) in the current line.
+     *
+     * @return Whether the range ends with <code>_MODULE</code>.
+     */
+    private boolean endsWithModule(int start, int end) {
+        if (end - start < MODULE_SUFFIX.length) {
+            return false;
+        }
+        int offset = end - MODULE_SUFFIX.length;
+        for (int i = 0; i < MODULE_SUFFIX.length; i++) {
+            if (line[offset + i] != MODULE_SUFFIX[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes the name in the given range of the current line and adds the <code>CONFIG_</code> prefix.
+     *
+     * @param start The start index in the current line.
+     * @param end The end index (exclusive) in the current line.
+     *
+     * @return The prefixed name.
+     */
+    private @NonNull String decodeName(int start, int end) {
+        int length = end - start;
+        if (PREFIX.length + length > name.length) {
+            byte[] newName = new byte[Math.max(name.length * 2, PREFIX.length + length)];
+            System.arraycopy(PREFIX, 0, newName, 0, PREFIX.length);
+            name = newName;
+        }
+
+        boolean ascii = true;
+        for (int i = 0; i < length; i++) {
+            byte b = line[start + i];
+            ascii &= b >= 0;
+            name[PREFIX.length + i] = b;
+        }
+
+        // names are usually ASCII, which can be decoded directly; values of string variables may contain UTF-8
+        return new String(name, 0, PREFIX.length + length,
+                ascii ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+    }
+
+}
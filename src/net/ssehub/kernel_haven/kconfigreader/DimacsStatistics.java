@@ -0,0 +1,234 @@
+/*
+ * Copyright 2020 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kconfigreader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+
+/**
+ * Statistics about the clauses of a DIMACS file: the number of clauses, the maximum clause width and how often each
+ * variable occurs in the clauses. The statistics are calculated while the file is copied, so that the file is only
+ * read once.
+ *
+ * @author Adam
+ */
+public class DimacsStatistics {
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private int numVariables;
+
+    private int numClauses;
+
+    private int maxClauseWidth;
+
+    private int @NonNull [] occurrences = new int[1];
+
+    /*
+     * Parser state; a buffer may end in the middle of a line or number.
+     */
+
+    private boolean atLineStart = true;
+
+    private boolean inComment;
+
+    private boolean inProblemLine;
+
+    private boolean inNumber;
+
+    private int number;
+
+    private int clauseWidth;
+
+    /**
+     * Creates empty statistics; use {@link #copy(File, File)}.
+     */
+    private DimacsStatistics() {
+    }
+
+    /**
+     * Copies the given DIMACS file and calculates the statistics in the same pass.
+     *
+     * @param source The DIMACS file to copy.
+     * @param target The target file.
+     *
+     * @return The statistics of the DIMACS file.
+     *
+     * @throws IOException If reading or writing fails.
+     */
+    public static @NonNull DimacsStatistics copy(@NonNull File source, @NonNull File target) throws IOException {
+        DimacsStatistics result = new DimacsStatistics();
+
+        try (FileChannel in = new FileInputStream(source).getChannel();
+                FileChannel out = new FileOutputStream(target).getChannel()) {
+
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            byte[] bytes = buffer.array();
+            while (in.read(buffer) != -1) {
+                buffer.flip();
+                result.scan(bytes, buffer.limit());
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                buffer.clear();
+            }
+        }
+
+        result.finish();
+        return result;
+    }
+
+    /**
+     * Scans a chunk of the DIMACS file.
+     *
+     * @param bytes The buffer containing the chunk.
+     * @param length The length of the chunk.
+     */
+    private void scan(byte @NonNull [] bytes, int length) {
+        for (int i = 0; i < length; i++) {
+            byte b = bytes[i];
+
+            if (b == '\n') {
+                endNumber();
+                atLineStart = true;
+                inComment = false;
+                inProblemLine = false;
+                continue;
+            }
+
+            if (atLineStart) {
+                atLineStart = false;
+                if (b == 'c') {
+                    inComment = true;
+                } else if (b == 'p') {
+                    inProblemLine = true;
+                }
+            }
+            if (inComment) {
+                continue;
+            }
+
+            // the sign of literals is not relevant, so '-' is handled like a separator
+            if (b >= '0' && b <= '9') {
+                number = inNumber ? number * 10 + (b - '0') : b - '0';
+                inNumber = true;
+            } else {
+                endNumber();
+            }
+        }
+    }
+
+    /**
+     * Called at the end of the file.
+     */
+    private void finish() {
+        endNumber();
+        if (clauseWidth > 0) {
+            // last clause is not terminated with 0
+            endClause();
+        }
+    }
+
+    /**
+     * Called after a number was read completely.
+     */
+    private void endNumber() {
+        if (!inNumber) {
+            return;
+        }
+        inNumber = false;
+
+        if (inProblemLine) {
+            // "p cnf <variables> <clauses>": the first number is the number of variables
+            if (numVariables == 0 && number > 0) {
+                numVariables = number;
+                occurrences = Arrays.copyOf(occurrences, Math.max(occurrences.length, number + 1));
+            }
+
+        } else if (number == 0) {
+            endClause();
+
+        } else {
+            if (number >= occurrences.length) {
+                occurrences = Arrays.copyOf(occurrences, Math.max(number + 1, occurrences.length * 2));
+            }
+            occurrences[number]++;
+            clauseWidth++;
+        }
+    }
+
+    /**
+     * Called after a clause was read completely.
+     */
+    private void endClause() {
+        numClauses++;
+        maxClauseWidth = Math.max(maxClauseWidth, clauseWidth);
+        clauseWidth = 0;
+    }
+
+    /**
+     * Returns the number of variables, as declared in the <code>p cnf</code> line.
+     *
+     * @return The number of variables.
+     */
+    public int getNumVariables() {
+        return numVariables;
+    }
+
+    /**
+     * Returns the number of clauses.
+     *
+     * @return The number of clauses.
+     */
+    public int getNumClauses() {
+        return numClauses;
+    }
+
+    /**
+     * Returns the maximum number of literals in a clause.
+     *
+     * @return The maximum clause width.
+     */
+    public int getMaxClauseWidth() {
+        return maxClauseWidth;
+    }
+
+    /**
+     * Returns how often the given variable occurs (positive or negated) in the clauses.
+     *
+     * @param variable The DIMACS number of the variable.
+     *
+     * @return The number of occurrences.
+     */
+    public int getOccurrences(int variable) {
+        return variable > 0 && variable < occurrences.length ? occurrences[variable] : 0;
+    }
+
+    @Override
+    public @NonNull String toString() {
+        return "DimacsStatistics[variables=" + numVariables + ", clauses=" + numClauses + ", maxClauseWidth="
+                + maxClauseWidth + "]";
+    }
+
+}
@@ -0,0 +1,376 @@
+/*
+ * Copyright 2020 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kconfigreader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import net.ssehub.kernel_haven.util.io.json.JsonBoolean;
+import net.ssehub.kernel_haven.util.io.json.JsonList;
+import net.ssehub.kernel_haven.util.io.json.JsonNumber;
+import net.ssehub.kernel_haven.util.io.json.JsonObject;
+import net.ssehub.kernel_haven.util.io.json.JsonString;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+
+/**
+ * A report of a single extraction of an architecture: the wall time of each phase, the fixes of the source tree
+ * that were attempted, and the resource usage of each child process. The report is written as JSON (see
+ * {@link #toJson()}); all times are in milliseconds, all memory sizes in bytes.
+ * <p>
+ * The CPU time and peak memory usage of the child processes are sampled from <code>/proc</code> (see
+ * {@link ProcessTreeTracker}); they are -1 if this is not supported on the host.
+ * </p>
+ *
+ * @author Adam
+ */
+public class ExtractionReport {
+
+    /**
+     * The wall time of a phase of the extraction.
+     */
+    private static final class Phase {
+
+        private final @NonNull String name;
+
+        private final long wallTime;
+
+        /**
+         * Creates a phase.
+         *
+         * @param name The name of the phase.
+         * @param wallTime The wall time in milliseconds.
+         */
+        private Phase(@NonNull String name, long wallTime) {
+            this.name = name;
+            this.wallTime = wallTime;
+        }
+
+    }
+
+    /**
+     * An attempted fix of the source tree or retry of a step.
+     */
+    private static final class Fix {
+
+        private final @NonNull String name;
+
+        private final boolean success;
+
+        /**
+         * Creates a fix.
+         *
+         * @param name The name of the fix.
+         * @param success Whether the step succeeded after the fix.
+         */
+        private Fix(@NonNull String name, boolean success) {
+            this.name = name;
+            this.success = success;
+        }
+
+    }
+
+    /**
+     * The resource usage of a child process, including all of its descendants.
+     */
+    static final class ProcessRecord {
+
+        private final @NonNull String name;
+
+        private final @NonNull List<@NonNull String> command;
+
+        private final boolean success;
+
+        private final long wallTime;
+
+        private final long cpuTime;
+
+        private final long peakResidentSetSize;
+
+        /**
+         * Creates a process record.
+         *
+         * @param name The name of the process, e.g. <code>make</code>.
+         * @param command The command line of the process.
+         * @param success Whether the process finished successfully.
+         * @param wallTime The wall time in milliseconds.
+         * @param cpuTime The CPU time in milliseconds; -1 if unknown.
+         * @param peakResidentSetSize The peak resident set size in bytes; -1 if unknown.
+         */
+        ProcessRecord(@NonNull String name, @NonNull List<@NonNull String> command, boolean success, long wallTime,
+                long cpuTime, long peakResidentSetSize) {
+            this.name = name;
+            this.command = command;
+            this.success = success;
+            this.wallTime = wallTime;
+            this.cpuTime = cpuTime;
+            this.peakResidentSetSize = peakResidentSetSize;
+        }
+
+        /**
+         * Returns whether the process finished successfully.
+         *
+         * @return Whether the process was successful.
+         */
+        boolean isSuccess() {
+            return success;
+        }
+
+        /**
+         * Returns the CPU time of the process tree.
+         *
+         * @return The CPU time in milliseconds; -1 if unknown.
+         */
+        long getCpuTime() {
+            return cpuTime;
+        }
+
+        /**
+         * Returns the peak memory usage of the process tree.
+         *
+         * @return The largest peak resident set size of the processes in bytes; -1 if unknown.
+         */
+        long getPeakResidentSetSize() {
+            return peakResidentSetSize;
+        }
+
+    }
+
+    private final @NonNull String arch;
+
+    private final @NonNull File sourceTree;
+
+    private final long startTime;
+
+    private final long startNanos;
+
+    private long wallTime = -1;
+
+    private boolean cached;
+
+    private boolean success;
+
+    private final @NonNull List<@NonNull Phase> phases = new ArrayList<>();
+
+    private final @NonNull List<@NonNull Fix> fixes = new ArrayList<>();
+
+    private final @NonNull List<@NonNull ProcessRecord> processes = new ArrayList<>();
+
+    /**
+     * Creates a report for an extraction that starts now.
+     *
+     * @param arch The extracted architecture; empty for steps that are shared by several architectures.
+     * @param sourceTree The source tree that is extracted.
+     */
+    public ExtractionReport(@NonNull String arch, @NonNull File sourceTree) {
+        this.arch = arch;
+        this.sourceTree = sourceTree;
+        this.startTime = System.currentTimeMillis();
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * Returns the current time for measuring a phase with {@link #addPhase(String, long)}.
+     *
+     * @return The current value of {@link System#nanoTime()}.
+     */
+    public static long now() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Records a phase that ends now.
+     *
+     * @param name The name of the phase.
+     * @param start The start of the phase, as returned by {@link #now()}.
+     */
+    public synchronized void addPhase(@NonNull String name, long start) {
+        phases.add(new Phase(name, (now() - start) / 1000000));
+    }
+
+    /**
+     * Records an attempted fix of the source tree, or a retry of a failed step.
+     *
+     * @param name The name of the fix.
+     * @param success Whether the step succeeded after the fix.
+     */
+    public synchronized void addFix(@NonNull String name, boolean success) {
+        fixes.add(new Fix(name, success));
+    }
+
+    /**
+     * Records a finished child process.
+     *
+     * @param process The resource usage of the process.
+     */
+    synchronized void addProcess(@NonNull ProcessRecord process) {
+        processes.add(process);
+    }
+
+    /**
+     * Adds the phases, fixes and processes of another report to this one. This is used for the steps that are
+     * shared by the extractions of several architectures (preparing the source tree and compiling dumpconf).
+     *
+     * @param other The report to include.
+     */
+    public synchronized void include(@NonNull ExtractionReport other) {
+        synchronized (other) {
+            phases.addAll(other.phases);
+            fixes.addAll(other.fixes);
+            processes.addAll(other.processes);
+        }
+    }
+
+    /**
+     * Sets whether the model was read from the model cache.
+     *
+     * @param cached Whether the model was cached.
+     */
+    public synchronized void setCached(boolean cached) {
+        this.cached = cached;
+    }
+
+    /**
+     * Finishes the report; the total wall time ends now.
+     *
+     * @param success Whether the extraction was successful.
+     */
+    public synchronized void finish(boolean success) {
+        this.success = success;
+        this.wallTime = (now() - startNanos) / 1000000;
+    }
+
+    /**
+     * Returns the extracted architecture.
+     *
+     * @return The architecture.
+     */
+    public @NonNull String getArch() {
+        return arch;
+    }
+
+    /**
+     * Returns the total wall time of the extraction.
+     *
+     * @return The wall time in milliseconds; -1 if the report is not {@link #finish(boolean) finished}.
+     */
+    public synchronized long getWallTime() {
+        return wallTime;
+    }
+
+    /**
+     * Returns the wall time of a phase. If the phase occurred several times, the times are summed up.
+     *
+     * @param name The name of the phase.
+     *
+     * @return The wall time in milliseconds; -1 if the phase did not occur.
+     */
+    public synchronized long getPhaseTime(@NonNull String name) {
+        long result = -1;
+        for (Phase phase : phases) {
+            if (phase.name.equals(name)) {
+                result = Math.max(result, 0) + phase.wallTime;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Converts this report to JSON.
+     *
+     * @return The JSON representation of this report.
+     */
+    public synchronized @NonNull JsonObject toJson() {
+        JsonObject result = new JsonObject();
+        result.putElement("arch", new JsonString(arch));
+        result.putElement("sourceTree", new JsonString(sourceTree.getAbsolutePath()));
+        result.putElement("start", new JsonString(new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ")
+                .format(new Date(startTime))));
+        result.putElement("success", JsonBoolean.get(success));
+        result.putElement("cached", JsonBoolean.get(cached));
+        result.putElement("wallTimeMs", new JsonNumber(wallTime));
+
+        JsonList phaseList = new JsonList();
+        for (Phase phase : phases) {
+            JsonObject element = new JsonObject();
+            element.putElement("name", new JsonString(phase.name));
+            element.putElement("wallTimeMs", new JsonNumber(phase.wallTime));
+            phaseList.addElement(element);
+        }
+        result.putElement("phases", phaseList);
+
+        JsonList fixList = new JsonList();
+        for (Fix fix : fixes) {
+            JsonObject element = new JsonObject();
+            element.putElement("name", new JsonString(fix.name));
+            element.putElement("success", JsonBoolean.get(fix.success));
+            fixList.addElement(element);
+        }
+        result.putElement("fixes", fixList);
+
+        JsonList processList = new JsonList();
+        for (ProcessRecord process : processes) {
+            JsonObject element = new JsonObject();
+            element.putElement("name", new JsonString(process.name));
+            JsonList command = new JsonList();
+            for (String argument : process.command) {
+                command.addElement(new JsonString(argument));
+            }
+            element.putElement("command", command);
+            element.putElement("success", JsonBoolean.get(process.success));
+            element.putElement("wallTimeMs", new JsonNumber(process.wallTime));
+            element.putElement("cpuTimeMs", new JsonNumber(process.cpuTime));
+            element.putElement("peakRssBytes", new JsonNumber(process.peakResidentSetSize));
+            processList.addElement(element);
+        }
+        result.putElement("processes", processList);
+
+        return result;
+    }
+
+    /**
+     * Writes this report as JSON to the given file. The file is replaced atomically.
+     *
+     * @param file The file to write to.
+     *
+     * @throws IOException If writing the file fails.
+     */
+    public void write(@NonNull File file) throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        dir.mkdirs();
+        File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+        try {
+            Files.write(tmp.toPath(), toJson().toString().getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    @Override
+    public @NonNull String toString() {
+        return toJson().toString();
+    }
+
+}
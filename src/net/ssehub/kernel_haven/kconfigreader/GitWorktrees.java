@@ -0,0 +1,200 @@
+/*
+ * Copyright 2020 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kconfigreader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.ssehub.kernel_haven.util.Logger;
+import net.ssehub.kernel_haven.util.Util;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+
+/**
+ * Manages a fixed number of git worktrees of a repository, which are used to extract many revisions without
+ * separate checkouts. Each worktree is a numbered slot in a private directory; a slot is created on its first use and
+ * re-used for the following revisions by checking them out in place, so that only the changed files are written.
+ * Worktrees are detached, so no branches of the repository are touched.
+ * <p>
+ * Different slots may be used concurrently; a single slot must only be used by one thread at a time.
+ * </p>
+ *
+ * @author Adam
+ */
+final class GitWorktrees {
+
+    private static final Logger LOGGER = Logger.get();
+
+    private final @NonNull File repository;
+
+    private final @NonNull File directory;
+
+    /**
+     * Creates the worktree manager.
+     *
+     * @param repository The git repository (or any of its worktrees).
+     * @param directory The private directory to create the worktrees in.
+     */
+    GitWorktrees(@NonNull File repository, @NonNull File directory) {
+        this.repository = repository.getAbsoluteFile();
+        this.directory = directory.getAbsoluteFile();
+    }
+
+    /**
+     * Resolves the given revisions into a list of revisions to extract. Ranges (<code>a..b</code>) are expanded into
+     * their commits, from the oldest to the newest (like <code>git rev-list --reverse a..b</code>); other entries are
+     * kept as they are.
+     *
+     * @param revisions The revisions and revision ranges.
+     *
+     * @return The revisions to extract, in order.
+     *
+     * @throws IOException If resolving a range fails.
+     */
+    @NonNull List<@NonNull String> resolve(@NonNull List<@NonNull String> revisions) throws IOException {
+        List<@NonNull String> result = new ArrayList<>();
+        for (String revision : revisions) {
+            if (revision.contains("..")) {
+                for (String commit : git(repository, "rev-list", "--reverse", revision).split("\n")) {
+                    if (!commit.trim().isEmpty()) {
+                        result.add(commit.trim());
+                    }
+                }
+            } else {
+                result.add(revision);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Lists the files that differ between two revisions. Renamed files are listed with both, their old and their new
+     * path.
+     *
+     * @param from The previous revision.
+     * @param to The new revision.
+     *
+     * @return The paths of the changed files, relative to the root of the repository.
+     *
+     * @throws IOException If git fails, e.g. because a revision does not exist.
+     */
+    @NonNull List<@NonNull String> getChangedFiles(@NonNull String from, @NonNull String to) throws IOException {
+        List<@NonNull String> result = new ArrayList<>();
+        for (String path : git(repository, "diff", "--name-only", "--no-renames", "-z", from, to).split("\0")) {
+            if (!path.isEmpty()) {
+                result.add(path);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Checks out a revision in the given slot. The worktree of the slot is created if it does not exist yet;
+     * otherwise, the revision is checked out in place and all files that are not part of the revision (e.g. build
+     * output of the previous revision) are removed.
+     *
+     * @param slot The number of the slot.
+     * @param revision The revision to check out.
+     *
+     * @return The root directory of the worktree.
+     *
+     * @throws IOException If the checkout fails.
+     */
+    @NonNull File checkout(int slot, @NonNull String revision) throws IOException {
+        File worktree = getWorktree(slot);
+        if (new File(worktree, ".git").exists()) {
+            git(worktree, "checkout", "--quiet", "--force", "--detach", revision);
+            git(worktree, "clean", "--quiet", "-d", "-x", "--force");
+
+        } else {
+            // the metadata of worktrees in the repository is shared, so they are added one after another
+            synchronized (this) {
+                // a previous run may have left the directory behind
+                ShadowTree.deleteRecursively(worktree);
+                git(repository, "worktree", "prune");
+                git(repository, "worktree", "add", "--detach", worktree.getPath(), revision);
+            }
+        }
+        return worktree;
+    }
+
+    /**
+     * Removes the worktree of the given slot, if it exists. The slot may be used again afterwards.
+     *
+     * @param slot The number of the slot.
+     *
+     * @throws IOException If removing the worktree fails.
+     */
+    void remove(int slot) throws IOException {
+        File worktree = getWorktree(slot);
+        if (worktree.exists()) {
+            synchronized (this) {
+                try {
+                    git(repository, "worktree", "remove", "--force", worktree.getPath());
+                } finally {
+                    ShadowTree.deleteRecursively(worktree);
+                    git(repository, "worktree", "prune");
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the directory of the worktree of the given slot.
+     *
+     * @param slot The number of the slot.
+     *
+     * @return The root directory of the worktree; it may not exist.
+     */
+    @NonNull File getWorktree(int slot) {
+        return new File(directory, Integer.toString(slot));
+    }
+
+    /**
+     * Executes a git command.
+     *
+     * @param workingDir The directory to execute git in.
+     * @param arguments The arguments for git.
+     *
+     * @return The standard output of git.
+     *
+     * @throws IOException If git fails.
+     */
+    private static @NonNull String git(@NonNull File workingDir, @NonNull String... arguments) throws IOException {
+        List<@NonNull String> command = new ArrayList<>(arguments.length + 1);
+        command.add("git");
+        command.addAll(Arrays.asList(arguments));
+
+        ProcessBuilder processBuilder = new ProcessBuilder(command);
+        processBuilder.directory(workingDir);
+
+        ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+        ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+        boolean success = Util.executeProcess(processBuilder, "git", stdout, stderr, 0);
+        if (!success) {
+            throw new IOException("git " + String.join(" ", arguments) + " failed in " + workingDir + ": "
+                    + stderr.toString().trim());
+        }
+
+        LOGGER.logDebug2("Executed git ", String.join(" ", arguments), " in ", workingDir);
+        return stdout.toString();
+    }
+
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2020 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kconfigreader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+
+/**
+ * Helper methods for computing the digests that are used as keys of the different caches of this extractor.
+ *
+ * @author Adam
+ */
+final class HashUtil {
+
+    /**
+     * Don't allow any instances.
+     */
+    private HashUtil() {
+    }
+
+    /**
+     * Creates a new SHA-256 digest.
+     *
+     * @return The digest.
+     */
+    static @NonNull MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-256
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Adds a string to the digest. The string is terminated by a 0 byte, so that the concatenation of different
+     * strings can't result in the same digest.
+     *
+     * @param digest The digest to update.
+     * @param value The string to add.
+     */
+    static void update(@NonNull MessageDigest digest, @NonNull String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    /**
+     * Adds the path and the content of a file to the digest. A missing file is added as a marker, so that creating
+     * the file changes the digest.
+     *
+     * @param digest The digest to update.
+     * @param baseDir The directory that the path is relative to.
+     * @param path The path of the file, relative to the base directory.
+     *
+     * @throws IOException If reading the file fails.
+     */
+    static void updateWithFile(@NonNull MessageDigest digest, @NonNull File baseDir, @NonNull String path)
+            throws IOException {
+
+        update(digest, path);
+        File file = new File(baseDir, path);
+        if (file.isFile()) {
+            update(digest, Long.toString(file.length()));
+            try (InputStream in = new FileInputStream(file)) {
+                updateWithStream(digest, in);
+            }
+        } else {
+            update(digest, "<missing>");
+        }
+    }
+
+    /**
+     * Adds the remaining content of the given stream to the digest.
+     *
+     * @param digest The digest to update.
+     * @param in The stream to read. Not closed by this method.
+     *
+     * @throws IOException If reading the stream fails.
+     */
+    static void updateWithStream(@NonNull MessageDigest digest, @NonNull InputStream in) throws IOException {
+        @SuppressWarnings("resource") // the caller closes the stream
+        DigestInputStream digestIn = new DigestInputStream(in, digest);
+        byte[] buffer = new byte[8192];
+        while (digestIn.read(buffer) != -1) {
+            // only read, the DigestInputStream calculates the digest
+        }
+    }
+
+    /**
+     * Converts the given bytes to a hexadecimal string.
+     *
+     * @param bytes The bytes to convert.
+     *
+     * @return The hexadecimal string.
+     */
+    static @NonNull String toHex(byte @NonNull [] bytes) {
+        StringBuilder result = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            result.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return result.toString();
+    }
+
+}
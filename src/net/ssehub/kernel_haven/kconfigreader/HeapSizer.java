@@ -0,0 +1,316 @@
+/*
+ * Copyright 2020 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kconfigreader;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Properties;
+
+import net.ssehub.kernel_haven.util.Logger;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+
+/**
+ * Calculates the maximum heap size for the KconfigReader process. The heap is sized from the peak memory usage of
+ * previous runs on the same source tree and architecture, if known. Otherwise, it is estimated from the number of
+ * Kconfig symbols. In both cases, it is limited by the share of the memory available on the host that each of the
+ * concurrent KconfigReader runs may use. If KconfigReader runs out of memory anyway, {@link #getRetryHeap(long)}
+ * gives a larger heap size.
+ * <p>
+ * The peak memory usages are stored in the resource directory, so that they are available for later runs. The peak
+ * is the resident set size of the whole JVM, which also contains memory outside of the heap and grows with the
+ * heap; therefore, the heap for a later run is never larger than the heap of the recorded run, only smaller if that
+ * run needed clearly less memory.
+ * </p>
+ *
+ * @author Adam
+ */
+public class HeapSizer {
+
+    private static final Logger LOGGER = Logger.get();
+
+    /**
+     * The minimum heap size in MiB.
+     */
+    static final long MIN_HEAP = 256;
+
+    /**
+     * The estimated heap that KconfigReader needs per Kconfig symbol, in KiB. The Linux x86 model with about
+     * 15 000 symbols needs close to 2 GiB.
+     */
+    static final long HEAP_PER_SYMBOL = 120;
+
+    /**
+     * The safety margin (in percent) added to a previously recorded peak memory usage.
+     */
+    private static final long PEAK_MARGIN = 25;
+
+    /**
+     * The message that a JVM prints if it runs out of memory.
+     */
+    static final @NonNull String OUT_OF_MEMORY = "java.lang.OutOfMemoryError";
+
+    private static final @NonNull String PEAK_FILE = "kconfigreader_peak_memory.properties";
+
+    /**
+     * The suffix of the keys in the peak file that store the heap size of the recorded run.
+     */
+    private static final @NonNull String HEAP_SUFFIX = ".heap";
+
+    private static final @NonNull Object PEAK_FILE_LOCK = new Object();
+
+    private @NonNull File resourceDir;
+
+    private @NonNull File sourceTree;
+
+    private int concurrentRuns;
+
+    private long maxHeap;
+
+    /**
+     * Creates a heap sizer for the given source tree, for a single KconfigReader run at a time.
+     *
+     * @param resourceDir The resource directory to store the recorded peak memory usages in.
+     * @param sourceTree The source tree that is analyzed.
+     */
+    public HeapSizer(@NonNull File resourceDir, @NonNull File sourceTree) {
+        this(resourceDir, sourceTree, 1);
+    }
+
+    /**
+     * Creates a heap sizer for the given source tree.
+     *
+     * @param resourceDir The resource directory to store the recorded peak memory usages in.
+     * @param sourceTree The source tree that is analyzed.
+     * @param concurrentRuns The maximum number of KconfigReader runs that share the memory of the host at the same
+     *      time.
+     */
+    public HeapSizer(@NonNull File resourceDir, @NonNull File sourceTree, int concurrentRuns) {
+        this.resourceDir = resourceDir;
+        this.sourceTree = sourceTree;
+        this.concurrentRuns = Math.max(concurrentRuns, 1);
+    }
+
+    /**
+     * Calculates the heap size for the first run of KconfigReader for the given architecture.
+     *
+     * @param arch The architecture to analyze.
+     *
+     * @return The heap size in MiB.
+     */
+    public long getInitialHeap(@NonNull String arch) {
+        long heap;
+        long peak = readValue(getKey(arch));
+        if (peak > 0) {
+            heap = peak * (100 + PEAK_MARGIN) / 100;
+            long previousHeap = readValue(getKey(arch) + HEAP_SUFFIX);
+            if (previousHeap > 0) {
+                heap = Math.min(heap, previousHeap);
+            }
+            LOGGER.logDebug2("Sizing KconfigReader heap from previous peak usage of ", peak, " MiB");
+        } else {
+            long symbols = estimateSymbols(arch);
+            heap = MIN_HEAP + symbols * HEAP_PER_SYMBOL / 1024;
+            LOGGER.logDebug2("Sizing KconfigReader heap for about ", symbols, " Kconfig symbols");
+        }
+        return Math.max(MIN_HEAP, Math.min(heap, getMaxHeap()));
+    }
+
+    /**
+     * Calculates the heap size for a retry, after KconfigReader ran out of memory.
+     *
+     * @param previousHeap The heap size of the failed run, in MiB.
+     *
+     * @return The larger heap size in MiB, or -1 if the heap can't be increased.
+     */
+    public long getRetryHeap(long previousHeap) {
+        long heap = Math.min(previousHeap * 2, getMaxHeap());
+        return heap > previousHeap ? heap : -1;
+    }
+
+    /**
+     * Returns the largest heap size that the host can provide for one of the concurrent runs: 90% of the memory
+     * that is available when this is first called on this instance, divided by the number of concurrent runs.
+     *
+     * @return The maximum heap size in MiB. {@link Long#MAX_VALUE} if the available memory is not known.
+     */
+    public long getMaxHeap() {
+        if (maxHeap == 0) {
+            maxHeap = computeMaxHeap(getAvailableMemory(), concurrentRuns);
+        }
+        return maxHeap;
+    }
+
+    /**
+     * Calculates the largest heap size for one of several concurrent runs.
+     *
+     * @param available The available memory in bytes; -1 if it is not known.
+     * @param concurrentRuns The number of concurrent runs that share the available memory.
+     *
+     * @return The maximum heap size in MiB. {@link Long#MAX_VALUE} if the available memory is not known.
+     */
+    static long computeMaxHeap(long available, int concurrentRuns) {
+        long result = Long.MAX_VALUE;
+        if (available > 0) {
+            result = Math.max(MIN_HEAP, available * 9 / 10 / Math.max(concurrentRuns, 1) / (1024 * 1024));
+        }
+        return result;
+    }
+
+    /**
+     * Records the peak memory usage of a successful KconfigReader run, so that later runs on the same source tree
+     * and architecture start with a fitting heap size.
+     *
+     * @param arch The analyzed architecture.
+     * @param peakBytes The peak memory usage (resident set size) of the KconfigReader process in bytes.
+     * @param heap The heap size of the KconfigReader process in MiB. Later runs don't get a larger heap than this.
+     */
+    public void recordPeak(@NonNull String arch, long peakBytes, long heap) {
+        if (peakBytes <= 0) {
+            return;
+        }
+        synchronized (PEAK_FILE_LOCK) {
+            Properties peaks = readPeaks();
+            peaks.setProperty(getKey(arch), Long.toString(peakBytes / (1024 * 1024)));
+            peaks.setProperty(getKey(arch) + HEAP_SUFFIX, Long.toString(heap));
+            File file = new File(resourceDir, PEAK_FILE);
+            try (OutputStream out = new FileOutputStream(file)) {
+                peaks.store(out, "Peak memory usage (MiB) of KconfigReader per source tree and architecture");
+            } catch (IOException e) {
+                LOGGER.logException("Can't write " + file, e);
+            }
+        }
+    }
+
+    /**
+     * Reads a recorded value from the peak file.
+     *
+     * @param key The key of the value.
+     *
+     * @return The value in MiB, or 0 if none is recorded.
+     */
+    private long readValue(@NonNull String key) {
+        long result = 0;
+        synchronized (PEAK_FILE_LOCK) {
+            String value = readPeaks().getProperty(key);
+            if (value != null) {
+                try {
+                    result = Long.parseLong(value);
+                } catch (NumberFormatException e) {
+                    // ignore invalid entry
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reads all recorded peak memory usages.
+     *
+     * @return The recorded peaks; empty if none are recorded.
+     */
+    private @NonNull Properties readPeaks() {
+        Properties result = new Properties();
+        File file = new File(resourceDir, PEAK_FILE);
+        if (file.isFile()) {
+            try (InputStream in = new FileInputStream(file)) {
+                result.load(in);
+            } catch (IOException e) {
+                LOGGER.logException("Can't read " + file, e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the key of the given architecture of this source tree in the peak file.
+     *
+     * @param arch The architecture.
+     *
+     * @return The key.
+     */
+    private @NonNull String getKey(@NonNull String arch) {
+        return sourceTree.getAbsolutePath() + ":" + arch;
+    }
+
+    /**
+     * Estimates the number of Kconfig symbols by counting the <code>config</code> and <code>menuconfig</code>
+     * entries in all Kconfig files that are reachable for the given architecture.
+     *
+     * @param arch The architecture.
+     *
+     * @return The estimated number of symbols.
+     */
+    long estimateSymbols(@NonNull String arch) {
+        long result = 0;
+        try {
+            for (String path : new KconfigSourceCollector(sourceTree, arch).collect()) {
+                File file = new File(sourceTree, path);
+                if (!file.isFile()) {
+                    continue;
+                }
+                try (BufferedReader in = new BufferedReader(
+                        new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = in.readLine()) != null) {
+                        line = line.trim();
+                        if (line.startsWith("config ") || line.startsWith("menuconfig ")) {
+                            result++;
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.logException("Can't estimate number of Kconfig symbols", e);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the memory that is available for new processes on this host (<code>MemAvailable</code> in
+     * <code>/proc/meminfo</code>).
+     *
+     * @return The available memory in bytes, or -1 if it is not known.
+     */
+    static long getAvailableMemory() {
+        long result = -1;
+        File meminfo = new File("/proc/meminfo");
+        if (meminfo.isFile()) {
+            try {
+                for (String line : Files.readAllLines(meminfo.toPath(), StandardCharsets.UTF_8)) {
+                    // e.g. "MemAvailable:   12345678 kB"
+                    if (line.startsWith("MemAvailable:")) {
+                        String[] parts = line.substring("MemAvailable:".length()).trim().split("\\s+");
+                        result = Long.parseLong(parts[0]) * 1024;
+                        break;
+                    }
+                }
+            } catch (IOException | NumberFormatException e) {
+                LOGGER.logException("Can't read " + meminfo, e);
+            }
+        }
+        return result;
+    }
+
+}
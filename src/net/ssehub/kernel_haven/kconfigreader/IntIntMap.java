@@ -0,0 +1,129 @@
+/*
+ * Copyright 2020 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kconfigreader;
+
+/**
+ * A hash map from primitive <code>int</code> keys to <code>int</code> values, using open addressing with linear
+ * probing. This avoids boxing keys and values into {@link Integer}s.
+ *
+ * @author Adam
+ */
+final class IntIntMap {
+
+    private int[] keys;
+
+    private int[] values;
+
+    private boolean[] used;
+
+    private int size;
+
+    /**
+     * Creates an empty map.
+     *
+     * @param expectedSize The expected number of entries; the map grows if more are added.
+     */
+    IntIntMap(int expectedSize) {
+        int capacity = IntSet.tableSizeFor(expectedSize);
+        keys = new int[capacity];
+        values = new int[capacity];
+        used = new boolean[capacity];
+    }
+
+    /**
+     * Associates the given value with the given key. A previous value of the key is replaced.
+     *
+     * @param key The key.
+     * @param value The value.
+     */
+    void put(int key, int value) {
+        int slot = findSlot(keys, used, key);
+        if (!used[slot]) {
+            if ((size + 1) * 2 > keys.length) {
+                grow();
+                slot = findSlot(keys, used, key);
+            }
+            used[slot] = true;
+            keys[slot] = key;
+            size++;
+        }
+        values[slot] = value;
+    }
+
+    /**
+     * Returns the value associated with the given key.
+     *
+     * @param key The key.
+     * @param defaultValue The value to return if the key is not contained in this map.
+     *
+     * @return The value of the key, or <code>defaultValue</code>.
+     */
+    int get(int key, int defaultValue) {
+        int slot = findSlot(keys, used, key);
+        return used[slot] ? values[slot] : defaultValue;
+    }
+
+    /**
+     * Returns the number of entries in this map.
+     *
+     * @return The number of entries.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Doubles the capacity of the table.
+     */
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        boolean[] oldUsed = used;
+
+        keys = new int[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        used = new boolean[oldKeys.length * 2];
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) {
+                int slot = findSlot(keys, used, oldKeys[i]);
+                used[slot] = true;
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * Finds the slot of the given key, or the free slot where it would be inserted.
+     *
+     * @param keys The key table.
+     * @param used Which slots of the table are used.
+     * @param key The key to search.
+     *
+     * @return The slot index.
+     */
+    private static int findSlot(int[] keys, boolean[] used, int key) {
+        int mask = keys.length - 1;
+        int slot = IntSet.hash(key) & mask;
+        while (used[slot] && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2020 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kconfigreader;
+
+/**
+ * A hash set of primitive <code>int</code> values, using open addressing with linear probing. This avoids boxing the
+ * values into {@link Integer}s.
+ *
+ * @author Adam
+ */
+final class IntSet {
+
+    private static final int MIN_CAPACITY = 4;
+
+    private int[] elements;
+
+    private boolean[] used;
+
+    private int size;
+
+    /**
+     * Creates an empty set.
+     */
+    IntSet() {
+        elements = new int[MIN_CAPACITY];
+        used = new boolean[MIN_CAPACITY];
+    }
+
+    /**
+     * Adds the given value to this set.
+     *
+     * @param value The value to add.
+     *
+     * @return <code>true</code> if the value was not contained in this set before.
+     */
+    boolean add(int value) {
+        int slot = findSlot(elements, used, value);
+        if (used[slot]) {
+            return false;
+        }
+
+        if ((size + 1) * 2 > elements.length) {
+            grow();
+            slot = findSlot(elements, used, value);
+        }
+        used[slot] = true;
+        elements[slot] = value;
+        size++;
+        return true;
+    }
+
+    /**
+     * Checks whether the given value is contained in this set.
+     *
+     * @param value The value to check.
+     *
+     * @return Whether the value is contained.
+     */
+    boolean contains(int value) {
+        return used[findSlot(elements, used, value)];
+    }
+
+    /**
+     * Returns the number of values in this set.
+     *
+     * @return The number of values.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the values of this set, in no particular order.
+     *
+     * @return A new array containing all values of this set.
+     */
+    int[] toArray() {
+        int[] result = new int[size];
+        int index = 0;
+        for (int i = 0; i < elements.length; i++) {
+            if (used[i]) {
+                result[index++] = elements[i];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Doubles the capacity of the table.
+     */
+    private void grow() {
+        int[] oldElements = elements;
+        boolean[] oldUsed = used;
+
+        elements = new int[oldElements.length * 2];
+        used = new boolean[oldElements.length * 2];
+
+        for (int i = 0; i < oldElements.length; i++) {
+            if (oldUsed[i]) {
+                int slot = findSlot(elements, used, oldElements[i]);
+                used[slot] = true;
+                elements[slot] = oldElements[i];
+            }
+        }
+    }
+
+    /**
+     * Finds the slot of the given value, or the free slot where it would be inserted.
+     *
+     * @param elements The element table.
+     * @param used Which slots of the table are used.
+     * @param value The value to search.
+     *
+     * @return The slot index.
+     */
+    private static int findSlot(int[] elements, boolean[] used, int value) {
+        int mask = elements.length - 1;
+        int slot = hash(value) & mask;
+        while (used[slot] && elements[slot] != value) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Spreads the bits of an <code>int</code> value, so that sequential and clustered values are distributed over
+     * the table.
+     *
+     * @param value The value to hash.
+     *
+     * @return The hash of the value.
+     */
+    static int hash(int value) {
+        int h = value * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Calculates the table size (a power of two) for the given number of expected elements, so that the table is at
+     * most half full.
+     *
+     * @param expectedSize The expected number of elements.
+     *
+     * @return The table size.
+     */
+    static int tableSizeFor(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize * 2 && capacity < (1 << 30)) {
+            capacity *= 2;
+        }
+        return capacity;
+    }
+
+}
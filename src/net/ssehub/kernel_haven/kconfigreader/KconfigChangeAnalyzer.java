@@ -0,0 +1,125 @@
+/*
+ * Copyright 2020 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kconfigreader;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * Decides whether a change of a source tree can affect its variability model. This allows to re-use the model of a
+ * previous revision, if none of the files that changed since then are relevant for the model of the architecture.
+ * Relevant are:
+ * <ul>
+ *     <li>all Kconfig files that are reachable from the root Kconfig file by following the <code>source</code>
+ *         statements (see {@link KconfigSourceCollector}), including sourced files that do not exist (yet),</li>
+ *     <li>the top level <code>Kconfig</code> file, even if the root is the Kconfig file of the architecture,</li>
+ *     <li>the Kconfig parser in <code>scripts/kconfig</code>, which dumpconf is compiled against,</li>
+ *     <li>the top level <code>Makefile</code> and the <code>Makefile</code> of the architecture, which define
+ *         <code>SRCARCH</code> and the preparation of the tree.</li>
+ * </ul>
+ * The Kconfig files are collected from the new revision; a file that was sourced only by the previous revision can
+ * only be dropped by changing a relevant file, so this is detected, too.
+ *
+ * @author Adam
+ */
+public class KconfigChangeAnalyzer {
+
+    private static final @NonNull String KCONFIG_PARSER = "scripts/kconfig/";
+
+    private final @NonNull File sourceTree;
+
+    private final @NonNull String arch;
+
+    private @Nullable Set<@NonNull String> relevantFiles;
+
+    /**
+     * Creates an analyzer for the given source tree.
+     *
+     * @param sourceTree The source tree of the new revision.
+     * @param arch The architecture that the model is extracted for.
+     */
+    public KconfigChangeAnalyzer(@NonNull File sourceTree, @NonNull String arch) {
+        this.sourceTree = sourceTree;
+        this.arch = arch;
+    }
+
+    /**
+     * Returns the files that are relevant for the variability model, except for the files in
+     * <code>scripts/kconfig</code>. The files are collected on the first call.
+     *
+     * @return The paths of the relevant files, relative to the source tree.
+     *
+     * @throws IOException If reading a Kconfig file fails.
+     */
+    public @NonNull Set<@NonNull String> getRelevantFiles() throws IOException {
+        Set<@NonNull String> result = relevantFiles;
+        if (result == null) {
+            result = new TreeSet<>(new KconfigSourceCollector(sourceTree, arch).collect());
+            result.add("Kconfig");
+            result.add("Makefile");
+            result.add("arch/" + arch + "/Makefile");
+            relevantFiles = result;
+        }
+        return result;
+    }
+
+    /**
+     * Checks whether a change of the given file can affect the variability model.
+     *
+     * @param path The path of the file, relative to the source tree (as reported by e.g. <code>git diff</code>).
+     *
+     * @return Whether the file is relevant for the variability model.
+     *
+     * @throws IOException If reading a Kconfig file fails.
+     */
+    public boolean isRelevant(@NonNull String path) throws IOException {
+        String normalized = new File(path).toPath().normalize().toString().replace(File.separatorChar, '/');
+        return normalized.startsWith(KCONFIG_PARSER) || getRelevantFiles().contains(normalized);
+    }
+
+    /**
+     * Returns the changed files that can affect the variability model. If this is empty, the model of the previous
+     * revision can be re-used unchanged.
+     *
+     * @param changedFiles The files that changed between the previous and the new revision, relative to the source
+     *      tree. Renamed files must be contained with both, their old and new path.
+     *
+     * @return The relevant changed files, in the order of the given collection.
+     *
+     * @throws IOException If reading a Kconfig file fails.
+     */
+    public @NonNull List<@NonNull String> getRelevantChanges(@NonNull Collection<@NonNull String> changedFiles)
+            throws IOException {
+
+        List<@NonNull String> result = new ArrayList<>();
+        for (String path : changedFiles) {
+            if (isRelevant(path)) {
+                result.add(path);
+            }
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,1033 @@
+/*
+ * Copyright 2020 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kconfigreader;
+
+import static net.ssehub.kernel_haven.util.null_checks.NullHelpers.notNull;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import net.ssehub.kernel_haven.util.FormatException;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * Encodes the RSF output of dumpconf into a DIMACS file, without running KconfigReader. The DIMACS file has the
+ * same variables and comments as the one of KconfigReader: <code>c &lt;number&gt; NAME</code> for boolean symbols
+ * and the <code>y</code> value of tristate symbols, <code>NAME_MODULE</code> for the <code>m</code> value,
+ * <code>NAME=value</code> for values of non-boolean symbols that appear in comparisons, and <code>MODULES</code>,
+ * which is <code>false</code> if it is not defined in the Kconfig files. Unnamed choices are called
+ * <code>CHOICE_&lt;n&gt;</code>, like in the {@link Converter}. Additional variables of the Tseitin encoding have no
+ * comment.
+ * <p>
+ * Each boolean or tristate symbol gets the value that the Kconfig semantics allow: if one of its prompts is
+ * visible, any value between its reverse dependency (selects) and the prompt visibility; otherwise, the first
+ * default whose condition holds, raised to its reverse dependency. The values of a choice require the choice to be
+ * at least their value; if the choice is <code>y</code>, exactly one value is <code>y</code> and the others are
+ * <code>n</code>. A visible, non-optional choice is selected.
+ * Expressions are encoded with two literals per tristate value (at least <code>m</code>, exactly <code>y</code>),
+ * so <code>&amp;&amp;</code> and <code>||</code> are plain conjunctions and disjunctions of these.
+ * </p>
+ * <p>
+ * Non-boolean symbols are over-approximated: each compared value is a free variable, at most one per symbol is
+ * true; defaults, ranges and comparisons of two non-boolean symbols do not constrain the model. <code>imply</code>
+ * is ignored, since it only changes the default of the implied symbol.
+ * </p>
+ *
+ * @author Adam
+ */
+public class KconfigCnfEncoder {
+
+    /**
+     * Increase this, if the encoding changes. This is part of the key of cached models.
+     */
+    static final @NonNull String VERSION = "2";
+
+    private static final int FLAG_CHOICE = 0x0010;
+
+    private static final int FLAG_OPTIONAL = 0x0100;
+
+    /**
+     * A tristate value, encoded as two literals of a {@link CnfBuilder}.
+     */
+    private static final class Value {
+
+        private static final @NonNull Value Y = new Value(CnfBuilder.TRUE, CnfBuilder.TRUE);
+
+        private static final @NonNull Value M = new Value(CnfBuilder.TRUE, CnfBuilder.FALSE);
+
+        private static final @NonNull Value N = new Value(CnfBuilder.FALSE, CnfBuilder.FALSE);
+
+        /**
+         * True if the value is <code>m</code> or <code>y</code>.
+         */
+        private final int atLeastM;
+
+        /**
+         * True if the value is <code>y</code>. Implies {@link #atLeastM}.
+         */
+        private final int isY;
+
+        /**
+         * Creates a value.
+         *
+         * @param atLeastM The literal that is true if the value is <code>m</code> or <code>y</code>.
+         * @param isY The literal that is true if the value is <code>y</code>.
+         */
+        Value(int atLeastM, int isY) {
+            this.atLeastM = atLeastM;
+            this.isY = isY;
+        }
+
+    }
+
+    /**
+     * A symbol found in the RSF file, with the unparsed expressions of its properties.
+     */
+    private static final class Symbol {
+
+        private final @NonNull String name;
+
+        private final @NonNull String type;
+
+        private final int flags;
+
+        /**
+         * The visibility conditions of the prompts; <code>null</code> elements for prompts without condition.
+         */
+        private final @NonNull List<@Nullable String> prompts = new ArrayList<>(1);
+
+        /**
+         * The defaults, each as a pair of value and condition (<code>null</code> if unconditional).
+         */
+        private final @NonNull List<@Nullable String @NonNull []> defaults = new ArrayList<>(1);
+
+        /**
+         * The symbols that this symbol selects, each as a pair of the target and the condition (<code>null</code>
+         * if unconditional).
+         */
+        private final @NonNull List<@Nullable String @NonNull []> selects = new ArrayList<>(1);
+
+        /**
+         * The choice values, if this is a choice.
+         */
+        private @Nullable String choiceValues;
+
+        /**
+         * The variable of this symbol, or of its <code>y</code> value for tristate symbols. 0 for non-boolean
+         * symbols.
+         */
+        private int variable;
+
+        /**
+         * The variable of the <code>m</code> value of tristate symbols; {@link CnfBuilder#FALSE} for others.
+         */
+        private int moduleVariable = CnfBuilder.FALSE;
+
+        /**
+         * The variables for the compared values of non-boolean symbols.
+         */
+        private @Nullable Map<@NonNull String, @NonNull Integer> valueVariables;
+
+        /**
+         * Reverse dependency: the symbols that select this symbol, each as a pair of the selecting symbol and the
+         * select condition (<code>null</code> if unconditional).
+         */
+        private final @NonNull List<@NonNull Object @NonNull []> selectedBy = new ArrayList<>(0);
+
+        /**
+         * Creates a symbol.
+         *
+         * @param name The name of the symbol, without <code>CONFIG_</code> prefix.
+         * @param type The type of the symbol, as written by dumpconf.
+         * @param flags The flags of the symbol.
+         */
+        Symbol(@NonNull String name, @NonNull String type, int flags) {
+            this.name = name;
+            this.type = type;
+            this.flags = flags;
+        }
+
+        /**
+         * Returns whether this symbol is boolean or tristate.
+         *
+         * @return Whether this symbol has a tristate value.
+         */
+        boolean isBoolean() {
+            return type.equals("boolean") || type.equals("tristate");
+        }
+
+        /**
+         * Returns whether this symbol is a choice.
+         *
+         * @return Whether this is a choice.
+         */
+        boolean isChoice() {
+            return (flags & FLAG_CHOICE) != 0;
+        }
+
+    }
+
+    private @NonNull File rsfFile;
+
+    private @NonNull CnfBuilder cnf = new CnfBuilder();
+
+    /**
+     * ID -> symbol, in the order of the RSF file.
+     */
+    private @NonNull Map<@NonNull Integer, @NonNull Symbol> symbols = new LinkedHashMap<>();
+
+    /**
+     * The literal of <code>MODULES</code>; {@link CnfBuilder#FALSE} if it is not defined.
+     */
+    private int modules;
+
+    private int choiceId;
+
+    /**
+     * The expression that is currently parsed.
+     */
+    private @NonNull String expression = "";
+
+    private int position;
+
+    /**
+     * Creates an encoder for the given RSF file.
+     *
+     * @param rsfFile The RSF file written by dumpconf.
+     */
+    public KconfigCnfEncoder(@NonNull File rsfFile) {
+        this.rsfFile = rsfFile;
+    }
+
+    /**
+     * Reads the RSF file and writes its constraints as a DIMACS file.
+     *
+     * @param dimacsFile The DIMACS file to write.
+     *
+     * @throws IOException If reading the RSF file or writing the DIMACS file fails.
+     * @throws FormatException If the RSF file has an invalid format.
+     */
+    public void encode(@NonNull File dimacsFile) throws IOException, FormatException {
+        cnf = new CnfBuilder();
+        symbols = new LinkedHashMap<>();
+        choiceId = 1;
+
+        readRsf();
+        createVariables();
+
+        for (Symbol symbol : symbols.values()) {
+            if (symbol.isBoolean()) {
+                if (symbol.isChoice()) {
+                    encodeChoice(symbol);
+                } else if (!isChoiceValue(symbol)) {
+                    encodeSymbol(symbol);
+                }
+            }
+        }
+
+        // a non-boolean symbol has exactly one value
+        for (Symbol symbol : symbols.values()) {
+            Map<@NonNull String, @NonNull Integer> values = symbol.valueVariables;
+            if (values != null && values.size() > 1) {
+                int[] literals = new int[values.size()];
+                int i = 0;
+                for (Integer variable : values.values()) {
+                    literals[i++] = variable;
+                }
+                cnf.addAtMostOne(literals);
+            }
+        }
+
+        cnf.write(dimacsFile);
+    }
+
+    /**
+     * Returns the number of variables of the last encoded model, including the auxiliary ones.
+     *
+     * @return The number of variables.
+     */
+    public int getNumVariables() {
+        return cnf.getNumVariables();
+    }
+
+    /**
+     * Returns the number of clauses of the last encoded model.
+     *
+     * @return The number of clauses.
+     */
+    public int getNumClauses() {
+        return cnf.getNumClauses();
+    }
+
+    /**
+     * Creates the variables of all boolean and tristate symbols, and of <code>MODULES</code>.
+     */
+    private void createVariables() {
+        Symbol modulesSymbol = null;
+        for (Symbol symbol : symbols.values()) {
+            if (symbol.isBoolean()) {
+                symbol.variable = cnf.newVariable(symbol.name);
+                if (symbol.type.equals("tristate")) {
+                    symbol.moduleVariable = cnf.newVariable(symbol.name + "_MODULE");
+                    cnf.addClause(-symbol.variable, -symbol.moduleVariable);
+                }
+                if (symbol.name.equals("MODULES")) {
+                    modulesSymbol = symbol;
+                }
+            }
+        }
+
+        if (modulesSymbol != null) {
+            modules = modulesSymbol.variable;
+        } else {
+            // like KconfigReader, always list MODULES; it is false since it is not defined
+            cnf.addClause(-cnf.newVariable("MODULES"));
+            modules = CnfBuilder.FALSE;
+        }
+
+        for (Symbol symbol : symbols.values()) {
+            if (symbol.moduleVariable != CnfBuilder.FALSE) {
+                cnf.addClause(-symbol.moduleVariable, modules);
+            }
+        }
+    }
+
+    /**
+     * Adds the constraints of a boolean or tristate symbol that is not part of a choice.
+     *
+     * @param symbol The symbol.
+     *
+     * @throws FormatException If an expression of the symbol has an invalid format.
+     */
+    private void encodeSymbol(@NonNull Symbol symbol) throws FormatException {
+        Value value = valueOf(symbol);
+        Value prompt = promptVisibility(symbol);
+
+        Value reverse = Value.N;
+        for (Object[] select : symbol.selectedBy) {
+            Value selector = valueOf((Symbol) notNull(select[0]));
+            reverse = or(reverse, and(selector, parseCondition((String) select[1])));
+        }
+        reverse = limitToType(symbol, reverse);
+
+        Value defaultValue = Value.N;
+        for (int i = symbol.defaults.size() - 1; i >= 0; i--) {
+            String[] def = symbol.defaults.get(i);
+            Value condition = parseCondition(def[1]);
+            Value defaultExpression = and(parse(notNull(def[0])), condition);
+            defaultValue = ite(condition.atLeastM, defaultExpression, defaultValue);
+        }
+        defaultValue = limitToType(symbol, defaultValue);
+
+        // visible: the user may choose any value between the reverse dependency and the visibility
+        int visible = prompt.atLeastM;
+        addAtLeast(CnfBuilder.TRUE, value, reverse);
+        addAtMost(visible, value, or(limitToType(symbol, prompt), reverse));
+
+        // invisible: the default, raised to the reverse dependency
+        Value invisibleValue = or(defaultValue, reverse);
+        addAtMost(-visible, value, invisibleValue);
+        addAtLeast(-visible, value, invisibleValue);
+    }
+
+    /**
+     * Adds the constraints of a choice and its values.
+     *
+     * @param choice The choice symbol.
+     *
+     * @throws FormatException If an expression of the choice or its values has an invalid format.
+     */
+    private void encodeChoice(@NonNull Symbol choice) throws FormatException {
+        Value value = valueOf(choice);
+        Value prompt = promptVisibility(choice);
+
+        addAtMost(CnfBuilder.TRUE, value, limitToType(choice, prompt));
+        if ((choice.flags & FLAG_OPTIONAL) == 0) {
+            // a visible, non-optional choice is selected
+            cnf.addImplication(CnfBuilder.TRUE, prompt.atLeastM, value.atLeastM);
+        }
+
+        List<@NonNull Symbol> choiceValues = getChoiceValues(choice);
+        int[] selected = new int[choiceValues.size()];
+        for (int i = 0; i < selected.length; i++) {
+            Symbol choiceValue = notNull(choiceValues.get(i));
+            Value current = valueOf(choiceValue);
+            addAtMost(CnfBuilder.TRUE, current, limitToType(choiceValue, promptVisibility(choiceValue)));
+            addAtMost(CnfBuilder.TRUE, current, value);
+            // in y mode, the values are either y or n
+            cnf.addImplication(value.isY, current.atLeastM, current.isY);
+            selected[i] = current.isY;
+        }
+
+        // in y mode, exactly one value is selected; in m mode, any number of values may be m
+        cnf.addClause(-value.isY, cnf.or(selected));
+        cnf.addAtMostOne(selected);
+    }
+
+    /**
+     * Returns the boolean and tristate values of a choice.
+     *
+     * @param choice The choice symbol.
+     *
+     * @return The values of the choice, in the order of the RSF file.
+     *
+     * @throws FormatException If the choice property has an invalid format.
+     */
+    private @NonNull List<@NonNull Symbol> getChoiceValues(@NonNull Symbol choice) throws FormatException {
+        List<@NonNull Symbol> result = new ArrayList<>();
+        String choiceValues = choice.choiceValues;
+        if (choiceValues != null) {
+            // (S@1 ^ (S@2 ^ (S@3)))
+            startParsing(choiceValues);
+            int depth = 0;
+            do {
+                expect('(');
+                depth++;
+                Symbol symbol = parseReference();
+                if (symbol != null && symbol.isBoolean()) {
+                    result.add(symbol);
+                }
+                skipSpaces();
+            } while (consume('^'));
+            for (int i = 0; i < depth; i++) {
+                expect(')');
+            }
+            expectEnd();
+        }
+        return result;
+    }
+
+    /**
+     * Checks whether the given symbol is a value of a choice, i.e. has a choice property that names its choice.
+     *
+     * @param symbol The symbol to check.
+     *
+     * @return Whether the symbol is a value of a choice.
+     */
+    private boolean isChoiceValue(@NonNull Symbol symbol) {
+        return !symbol.isChoice() && symbol.choiceValues != null;
+    }
+
+    /**
+     * Returns the combined visibility of the prompts of a symbol.
+     *
+     * @param symbol The symbol.
+     *
+     * @return The visibility; <code>n</code> if the symbol has no prompt.
+     *
+     * @throws FormatException If a visibility condition has an invalid format.
+     */
+    private @NonNull Value promptVisibility(@NonNull Symbol symbol) throws FormatException {
+        Value result = Value.N;
+        for (String condition : symbol.prompts) {
+            result = or(result, parseCondition(condition));
+        }
+        return result;
+    }
+
+    /**
+     * Adds the constraints for <code>condition -&gt; value &lt;= bound</code>.
+     *
+     * @param condition The condition literal.
+     * @param value The value to bound.
+     * @param bound The upper bound.
+     */
+    private void addAtMost(int condition, @NonNull Value value, @NonNull Value bound) {
+        cnf.addImplication(condition, value.atLeastM, bound.atLeastM);
+        if (value.isY != value.atLeastM || bound.isY != bound.atLeastM) {
+            cnf.addImplication(condition, value.isY, bound.isY);
+        }
+    }
+
+    /**
+     * Adds the constraints for <code>condition -&gt; value &gt;= bound</code>.
+     *
+     * @param condition The condition literal.
+     * @param value The value to bound.
+     * @param bound The lower bound.
+     */
+    private void addAtLeast(int condition, @NonNull Value value, @NonNull Value bound) {
+        cnf.addImplication(condition, bound.atLeastM, value.atLeastM);
+        if (value.isY != value.atLeastM || bound.isY != bound.atLeastM) {
+            cnf.addImplication(condition, bound.isY, value.isY);
+        }
+    }
+
+    /**
+     * Limits a value to the values that a symbol can have: boolean symbols (and tristate symbols, if
+     * <code>MODULES</code> is not selected) turn <code>m</code> into <code>y</code>.
+     *
+     * @param symbol The symbol that gets the value.
+     * @param value The value.
+     *
+     * @return The limited value.
+     */
+    private @NonNull Value limitToType(@NonNull Symbol symbol, @NonNull Value value) {
+        Value result;
+        if (symbol.type.equals("tristate") && modules != CnfBuilder.FALSE) {
+            result = new Value(value.atLeastM, cnf.or(value.isY, cnf.and(-modules, value.atLeastM)));
+        } else {
+            result = new Value(value.atLeastM, value.atLeastM);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the value of a symbol in an expression.
+     *
+     * @param symbol The symbol.
+     *
+     * @return The value of the symbol; <code>n</code> for non-boolean symbols.
+     */
+    private @NonNull Value valueOf(@NonNull Symbol symbol) {
+        Value result;
+        if (!symbol.isBoolean()) {
+            result = Value.N;
+        } else if (symbol.moduleVariable == CnfBuilder.FALSE) {
+            result = new Value(symbol.variable, symbol.variable);
+        } else {
+            result = new Value(cnf.or(symbol.variable, symbol.moduleVariable), symbol.variable);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the tristate value of a constant.
+     *
+     * @param constant The constant.
+     *
+     * @return The value; <code>n</code> for anything but <code>y</code> and <code>m</code>.
+     */
+    private static @NonNull Value valueOf(@NonNull String constant) {
+        Value result;
+        switch (constant) {
+        case "y":
+            result = Value.Y;
+            break;
+        case "m":
+            result = Value.M;
+            break;
+        default:
+            result = Value.N;
+            break;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the minimum of two values.
+     *
+     * @param a The first value.
+     * @param b The second value.
+     *
+     * @return The value of <code>a &amp;&amp; b</code>.
+     */
+    private @NonNull Value and(@NonNull Value a, @NonNull Value b) {
+        return new Value(cnf.and(a.atLeastM, b.atLeastM), cnf.and(a.isY, b.isY));
+    }
+
+    /**
+     * Returns the maximum of two values.
+     *
+     * @param a The first value.
+     * @param b The second value.
+     *
+     * @return The value of <code>a || b</code>.
+     */
+    private @NonNull Value or(@NonNull Value a, @NonNull Value b) {
+        return new Value(cnf.or(a.atLeastM, b.atLeastM), cnf.or(a.isY, b.isY));
+    }
+
+    /**
+     * Returns <code>condition ? then : otherwise</code>.
+     *
+     * @param condition The condition literal.
+     * @param then The value if the condition holds.
+     * @param otherwise The value if the condition does not hold.
+     *
+     * @return The selected value.
+     */
+    private @NonNull Value ite(int condition, @NonNull Value then, @NonNull Value otherwise) {
+        return new Value(cnf.ite(condition, then.atLeastM, otherwise.atLeastM),
+                cnf.ite(condition, then.isY, otherwise.isY));
+    }
+
+    /**
+     * Parses a condition.
+     *
+     * @param condition The condition; <code>null</code> for an unconditional property.
+     *
+     * @return The value of the condition; <code>y</code> if it is <code>null</code>.
+     *
+     * @throws FormatException If the condition has an invalid format.
+     */
+    private @NonNull Value parseCondition(@Nullable String condition) throws FormatException {
+        Value result = Value.Y;
+        if (condition != null) {
+            result = parse(condition);
+        }
+        return result;
+    }
+
+    /**
+     * Parses an expression as written by <code>dumpexpr()</code> of dumpconf.
+     *
+     * @param expression The expression.
+     *
+     * @return The value of the expression.
+     *
+     * @throws FormatException If the expression has an invalid format.
+     */
+    private @NonNull Value parse(@NonNull String expression) throws FormatException {
+        startParsing(expression);
+        Value result = parseExpression();
+        expectEnd();
+        return result;
+    }
+
+    /**
+     * Parses a sub-expression at the current position.
+     *
+     * @return The value of the sub-expression.
+     *
+     * @throws FormatException If the expression has an invalid format.
+     */
+    private @NonNull Value parseExpression() throws FormatException {
+        skipSpaces();
+        Value result;
+        if (position < expression.length() && expression.charAt(position) == '!') {
+            position++;
+            Value negated = parseExpression();
+            result = new Value(-negated.isY, -negated.atLeastM);
+
+        } else if (consume('(')) {
+            int start = position;
+            if (isComparison()) {
+                position = start;
+                result = parseComparison();
+            } else {
+                position = start;
+                result = parseExpression();
+                skipSpaces();
+                if (consume('|')) {
+                    expect('|');
+                    result = or(result, parseExpression());
+                } else if (consume('&')) {
+                    expect('&');
+                    result = and(result, parseExpression());
+                }
+            }
+            expect(')');
+
+        } else {
+            int start = position;
+            Symbol symbol = parseReference();
+            result = symbol != null ? valueOf(symbol) : valueOf(notNull(expression.substring(start, position)
+                    .replace("'", "")));
+        }
+        return result;
+    }
+
+    /**
+     * Checks whether the current position (after an opening bracket) starts a comparison of two references.
+     * Moves the current position.
+     *
+     * @return Whether the current position starts a comparison.
+     *
+     * @throws FormatException If the expression has an invalid format.
+     */
+    private boolean isComparison() throws FormatException {
+        boolean result = false;
+        skipSpaces();
+        if (position < expression.length() && expression.charAt(position) != '('
+                && expression.charAt(position) != '!') {
+            parseReference();
+            skipSpaces();
+            result = position < expression.length() && (expression.charAt(position) == '='
+                    || expression.startsWith("!=", position));
+        }
+        return result;
+    }
+
+    /**
+     * Parses a comparison <code>a=b</code> or <code>a!=b</code> at the current position, without the brackets.
+     *
+     * @return The (boolean) value of the comparison.
+     *
+     * @throws FormatException If the expression has an invalid format.
+     */
+    private @NonNull Value parseComparison() throws FormatException {
+        skipSpaces();
+        int leftStart = position;
+        Symbol left = parseReference();
+        String leftConstant = notNull(expression.substring(leftStart, position).replace("'", ""));
+        skipSpaces();
+        boolean negated = consume('!');
+        expect('=');
+        skipSpaces();
+        int rightStart = position;
+        Symbol right = parseReference();
+        String rightConstant = notNull(expression.substring(rightStart, position).replace("'", ""));
+
+        int equal;
+        if (left != null && !left.isBoolean()) {
+            equal = right == null ? getValueVariable(left, rightConstant) : cnf.newVariable(null);
+        } else if (right != null && !right.isBoolean()) {
+            equal = left == null ? getValueVariable(right, leftConstant) : cnf.newVariable(null);
+        } else {
+            Value a = left != null ? valueOf(left) : valueOf(leftConstant);
+            Value b = right != null ? valueOf(right) : valueOf(rightConstant);
+            equal = cnf.and(cnf.iff(a.atLeastM, b.atLeastM), cnf.iff(a.isY, b.isY));
+        }
+
+        if (negated) {
+            equal = -equal;
+        }
+        return new Value(equal, equal);
+    }
+
+    /**
+     * Returns the variable that is true if the given non-boolean symbol has the given value. Creates it, if
+     * necessary.
+     *
+     * @param symbol The non-boolean symbol.
+     * @param value The value.
+     *
+     * @return The variable for the value.
+     */
+    private int getValueVariable(@NonNull Symbol symbol, @NonNull String value) {
+        Map<@NonNull String, @NonNull Integer> values = symbol.valueVariables;
+        if (values == null) {
+            values = new LinkedHashMap<>();
+            symbol.valueVariables = values;
+        }
+        return values.computeIfAbsent(value, (v) -> cnf.newVariable(symbol.name + "=" + v));
+    }
+
+    /**
+     * Parses a symbol reference at the current position: <code>S@&lt;id&gt;</code>, a quoted constant,
+     * <code>y</code>, <code>m</code>, <code>n</code> or <code>IGNORE</code>.
+     *
+     * @return The referenced symbol; <code>null</code> if a constant was parsed.
+     *
+     * @throws FormatException If there is no valid reference at the current position.
+     */
+    private @Nullable Symbol parseReference() throws FormatException {
+        Symbol result = null;
+        int length = expression.length();
+        if (expression.startsWith("S@", position)) {
+            position += 2;
+            int id = 0;
+            int start = position;
+            while (position < length && Character.isDigit(expression.charAt(position))) {
+                id = id * 10 + (expression.charAt(position) - '0');
+                position++;
+            }
+            if (position == start) {
+                throw new FormatException("Invalid symbol reference in " + expression);
+            }
+            result = symbols.get(id);
+            if (result == null) {
+                throw new FormatException("Found no variable for ID S@" + id);
+            }
+
+        } else if (position < length && expression.charAt(position) == '\'') {
+            int end = expression.indexOf('\'', position + 1);
+            if (end == -1) {
+                throw new FormatException("Unterminated constant in " + expression);
+            }
+            position = end + 1;
+
+        } else {
+            int start = position;
+            while (position < length && Character.isLetter(expression.charAt(position))) {
+                position++;
+            }
+            String constant = expression.substring(start, position);
+            if (!constant.equals("y") && !constant.equals("m") && !constant.equals("n")
+                    && !constant.equals("IGNORE")) {
+                throw new FormatException("Unexpected \"" + constant + "\" at " + start + " in " + expression);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Starts parsing the given expression.
+     *
+     * @param expression The expression to parse.
+     */
+    private void startParsing(@NonNull String expression) {
+        this.expression = expression;
+        this.position = 0;
+    }
+
+    /**
+     * Skips spaces at the current position.
+     */
+    private void skipSpaces() {
+        while (position < expression.length() && Character.isWhitespace(expression.charAt(position))) {
+            position++;
+        }
+    }
+
+    /**
+     * Consumes the given character, if it is at the current position (after spaces).
+     *
+     * @param expected The expected character.
+     *
+     * @return Whether the character was found and consumed.
+     */
+    private boolean consume(char expected) {
+        skipSpaces();
+        boolean result = position < expression.length() && expression.charAt(position) == expected;
+        if (result) {
+            position++;
+        }
+        return result;
+    }
+
+    /**
+     * Consumes the given character at the current position (after spaces).
+     *
+     * @param expected The expected character.
+     *
+     * @throws FormatException If the character is not at the current position.
+     */
+    private void expect(char expected) throws FormatException {
+        if (!consume(expected)) {
+            throw new FormatException("Expected '" + expected + "' at " + position + " in " + expression);
+        }
+    }
+
+    /**
+     * Checks that the whole expression was parsed.
+     *
+     * @throws FormatException If the expression continues.
+     */
+    private void expectEnd() throws FormatException {
+        skipSpaces();
+        if (position != expression.length()) {
+            throw new FormatException("Unexpected '" + expression.charAt(position) + "' at " + position + " in "
+                    + expression);
+        }
+    }
+
+    /**
+     * Reads all symbols and their properties from the RSF file. Afterwards, the targets of the selects are resolved
+     * (see {@link Symbol#selectedBy}).
+     *
+     * @throws IOException If reading the file fails.
+     * @throws FormatException If the file has an invalid format.
+     */
+    private void readRsf() throws IOException, FormatException {
+        try (FileInputStream in = new FileInputStream(rsfFile)) {
+            Converter.skipRsfHeader(in);
+
+            try {
+                XMLInputFactory factory = XMLInputFactory.newInstance();
+                factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+                XMLStreamReader reader = factory.createXMLStreamReader(in);
+
+                try {
+                    // the menu structure is not needed, since the menu dependencies are part of the properties
+                    while (reader.hasNext()) {
+                        if (reader.next() == XMLStreamConstants.START_ELEMENT
+                                && reader.getLocalName().equals("symbol")) {
+                            readSymbol(notNull(reader));
+                        }
+                    }
+                } finally {
+                    reader.close();
+                }
+
+            } catch (XMLStreamException e) {
+                throw new FormatException(e);
+            }
+        }
+
+        for (Symbol symbol : symbols.values()) {
+            for (String[] select : symbol.selects) {
+                startParsing(notNull(select[0]));
+                Symbol target = parseReference();
+                expectEnd();
+                if (target != null) {
+                    target.selectedBy.add(new Object[] {symbol, select[1]});
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads a symbol element. Symbols that are defined several times are only read at their first definition,
+     * since dumpconf writes all properties of the symbol at each definition.
+     *
+     * @param reader The reader, positioned at the start tag of the symbol element. Afterwards, it is positioned at
+     *      the end tag.
+     *
+     * @throws FormatException If the format is invalid.
+     * @throws XMLStreamException If reading the XML fails.
+     */
+    private void readSymbol(@NonNull XMLStreamReader reader) throws FormatException, XMLStreamException {
+        String type = reader.getAttributeValue(null, "type");
+        String idAttribute = reader.getAttributeValue(null, "id");
+        String flagsAttribute = reader.getAttributeValue(null, "flags");
+        if (type == null || idAttribute == null || flagsAttribute == null) {
+            throw new FormatException("No type, id or flags attribute in <symbol>");
+        }
+        int id;
+        int flags;
+        try {
+            id = Integer.parseInt(idAttribute);
+            flags = Integer.parseInt(flagsAttribute);
+        } catch (NumberFormatException e) {
+            throw new FormatException("Invalid id or flags attribute in <symbol>");
+        }
+
+        String name = null;
+        List<@Nullable String @NonNull []> properties = new ArrayList<>();
+
+        while (reader.next() != XMLStreamConstants.END_ELEMENT) {
+            if (reader.getEventType() != XMLStreamConstants.START_ELEMENT) {
+                // ignore text
+                continue;
+            }
+
+            switch (reader.getLocalName()) {
+            case "name":
+                name = Converter.readRsfTextContent(reader);
+                break;
+
+            case "property":
+                properties.add(readProperty(reader));
+                break;
+
+            default:
+                throw new FormatException("Unexpected tag in <symbol>: " + reader.getLocalName());
+            }
+        }
+
+        if (name == null) {
+            if ((flags & FLAG_CHOICE) == 0) {
+                throw new FormatException("No name found in symbol");
+            }
+            name = "CHOICE_" + (choiceId++);
+        }
+
+        if (!symbols.containsKey(id)) {
+            Symbol symbol = new Symbol(name, type, flags);
+            for (String[] property : properties) {
+                addProperty(symbol, property);
+            }
+            symbols.put(id, symbol);
+        }
+    }
+
+    /**
+     * Reads a property element.
+     *
+     * @param reader The reader, positioned at the start tag of the property element. Afterwards, it is positioned
+     *      at the end tag.
+     *
+     * @return The type, the expression (empty if not present) and the visibility condition (<code>null</code> if not
+     *      present) of the property.
+     *
+     * @throws FormatException If the format is invalid.
+     * @throws XMLStreamException If reading the XML fails.
+     */
+    private @Nullable String @NonNull [] readProperty(@NonNull XMLStreamReader reader)
+            throws FormatException, XMLStreamException {
+
+        String type = reader.getAttributeValue(null, "type");
+        if (type == null) {
+            throw new FormatException("No type attribute in <property>");
+        }
+        String expression = "";
+        String visible = null;
+
+        while (reader.next() != XMLStreamConstants.END_ELEMENT) {
+            if (reader.getEventType() != XMLStreamConstants.START_ELEMENT) {
+                // ignore text
+                continue;
+            }
+
+            switch (reader.getLocalName()) {
+            case "text":
+                Converter.readRsfText(reader, (chars, start, length) -> { });
+                break;
+
+            case "expr":
+                expression = Converter.readRsfTextContent(reader);
+                break;
+
+            case "visible":
+                visible = Converter.readRsfTextContent(reader);
+                break;
+
+            default:
+                throw new FormatException("Unexpected tag in <property>: " + reader.getLocalName());
+            }
+        }
+
+        return new @Nullable String[] {type, expression, visible};
+    }
+
+    /**
+     * Adds a property to a symbol.
+     *
+     * @param symbol The symbol.
+     * @param property The type, expression and visibility condition of the property (see
+     *      {@link #readProperty(XMLStreamReader)}).
+     */
+    private static void addProperty(@NonNull Symbol symbol, @Nullable String @NonNull [] property) {
+        String expression = notNull(property[1]);
+        String visible = property[2];
+        switch (notNull(property[0])) {
+        case "prompt":
+            symbol.prompts.add(visible);
+            break;
+
+        case "default":
+            symbol.defaults.add(new @Nullable String[] {expression, visible});
+            break;
+
+        case "select":
+            symbol.selects.add(new @Nullable String[] {expression, visible});
+            break;
+
+        case "choice":
+            symbol.choiceValues = expression;
+            break;
+
+        default:
+            // "?" (the symbol itself or an imply), range, env, ...: no constraints
+            break;
+        }
+    }
+
+}
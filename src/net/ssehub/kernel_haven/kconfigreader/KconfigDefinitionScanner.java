@@ -0,0 +1,395 @@
+/*
+ * Copyright 2020 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kconfigreader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * Finds the <code>config</code> and <code>menuconfig</code> definitions in the raw bytes of a Kconfig file. The
+ * keywords are only recognized as the first token of a line; comments and help texts are skipped (a help text ends
+ * at the first non-empty line that is indented less than its first line, as in the Kconfig lexer).
+ * <p>
+ * If the scanner is created for a set of variables, the symbol names are looked up directly on the bytes in a hash
+ * table, so that no objects are allocated for symbols that are not of interest. Instances are immutable and can be
+ * shared between threads.
+ * </p>
+ *
+ * @author Adam
+ */
+class KconfigDefinitionScanner {
+
+    /**
+     * Receives the definitions found by the scanner.
+     */
+    static interface DefinitionConsumer {
+
+        /**
+         * Called for each definition.
+         *
+         * @param variable The name of the defined variable, including the <code>CONFIG_</code> prefix.
+         * @param line The line number of the definition, starting at 1.
+         */
+        public void accept(@NonNull String variable, int line);
+
+    }
+
+    private static final @NonNull String PREFIX = "CONFIG_";
+
+    /**
+     * Files that are at least this large are memory-mapped; smaller ones (most Kconfig files) are cheaper to read.
+     */
+    private static final int MAP_THRESHOLD = 64 * 1024;
+
+    private static final byte @NonNull [] CONFIG = bytes("config");
+
+    private static final byte @NonNull [] MENUCONFIG = bytes("menuconfig");
+
+    private static final byte @NonNull [] HELP = bytes("help");
+
+    private static final byte @NonNull [] OLD_HELP = bytes("---help---");
+
+    /**
+     * Symbol names (without prefix) of the variables to report, in an open addressing hash table. <code>null</code>
+     * if all definitions are reported.
+     */
+    private final byte @Nullable [] @Nullable [] names;
+
+    private final @Nullable String @Nullable [] variables;
+
+    private final int mask;
+
+    /**
+     * Creates a scanner that reports all definitions.
+     */
+    KconfigDefinitionScanner() {
+        this.names = null;
+        this.variables = null;
+        this.mask = 0;
+    }
+
+    /**
+     * Creates a scanner that only reports definitions of the given variables.
+     *
+     * @param variables The names of the variables to report, including the <code>CONFIG_</code> prefix. Names
+     *      without this prefix are ignored.
+     */
+    KconfigDefinitionScanner(@NonNull Collection<@NonNull String> variables) {
+        int capacity = IntSet.tableSizeFor(variables.size());
+        byte[][] names = new byte[capacity][];
+        String[] values = new String[capacity];
+        int mask = capacity - 1;
+
+        for (String variable : variables) {
+            if (!variable.startsWith(PREFIX)) {
+                continue;
+            }
+            byte[] name = bytes(variable.substring(PREFIX.length()));
+            int slot = hash(name, 0, name.length) & mask;
+            while (names[slot] != null && !regionEquals(names[slot], name, 0, name.length)) {
+                slot = (slot + 1) & mask;
+            }
+            names[slot] = name;
+            values[slot] = variable;
+        }
+
+        this.names = names;
+        this.variables = values;
+        this.mask = mask;
+    }
+
+    /**
+     * Scans a Kconfig file. Large files are memory-mapped.
+     *
+     * @param file The Kconfig file.
+     * @param consumer The consumer for the found definitions, in the order of the file.
+     *
+     * @throws IOException If reading the file fails.
+     */
+    void scanFile(@NonNull File file, @NonNull DefinitionConsumer consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(file + " is too large");
+            }
+
+            ByteBuffer content;
+            if (size >= MAP_THRESHOLD) {
+                content = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } else {
+                content = ByteBuffer.allocate((int) size);
+                while (content.hasRemaining() && channel.read(content) != -1) {
+                    // read until full
+                }
+                content.flip();
+            }
+            scan(content, consumer);
+        }
+    }
+
+    /**
+     * Scans the content of a Kconfig file. The position of the buffer is not changed.
+     *
+     * @param content The content, from its position to its limit.
+     * @param consumer The consumer for the found definitions, in the order of the content.
+     */
+    void scan(@NonNull ByteBuffer content, @NonNull DefinitionConsumer consumer) {
+        int end = content.limit();
+        int pos = content.position();
+        int line = 1;
+
+        // -1: no help text; 0: after a help keyword, before the first help line; > 0: indentation of the help text
+        int helpIndent = -1;
+
+        while (pos < end) {
+            // measure the indentation, as the Kconfig lexer does (tabs advance to the next multiple of 8)
+            int indent = 0;
+            byte b = 0;
+            while (pos < end) {
+                b = content.get(pos);
+                if (b == ' ') {
+                    indent++;
+                } else if (b == '\t') {
+                    indent = (indent & ~7) + 8;
+                } else {
+                    break;
+                }
+                pos++;
+            }
+
+            boolean blank = pos >= end || b == '\n' || b == '\r';
+            boolean skip = blank;
+            if (helpIndent >= 0 && !blank) {
+                if (helpIndent == 0 && indent > 0) {
+                    helpIndent = indent;
+                }
+                if (helpIndent > 0 && indent >= helpIndent) {
+                    skip = true;
+                } else {
+                    helpIndent = -1;
+                }
+            }
+
+            if (!skip && b != '#') {
+                int tokenStart = pos;
+                while (pos < end && isTokenChar(content.get(pos))) {
+                    pos++;
+                }
+
+                if (matches(content, tokenStart, pos, CONFIG) || matches(content, tokenStart, pos, MENUCONFIG)) {
+                    pos = readDefinition(content, pos, end, line, consumer);
+
+                } else if (matches(content, tokenStart, pos, HELP) || matches(content, tokenStart, pos, OLD_HELP)) {
+                    helpIndent = 0;
+                }
+            }
+
+            // skip the rest of the line
+            while (pos < end && content.get(pos) != '\n') {
+                pos++;
+            }
+            pos++;
+            line++;
+        }
+    }
+
+    /**
+     * Reads the symbol name after a <code>config</code> or <code>menuconfig</code> keyword and reports it.
+     *
+     * @param content The content.
+     * @param pos The position directly after the keyword.
+     * @param end The end of the content.
+     * @param line The current line number.
+     * @param consumer The consumer to report the definition to.
+     *
+     * @return The position after the symbol name.
+     */
+    private int readDefinition(@NonNull ByteBuffer content, int pos, int end, int line,
+            @NonNull DefinitionConsumer consumer) {
+
+        int nameStart = pos;
+        while (pos < end && (content.get(pos) == ' ' || content.get(pos) == '\t')) {
+            pos++;
+        }
+        if (pos == nameStart) {
+            // no whitespace after the keyword
+            return pos;
+        }
+
+        nameStart = pos;
+        while (pos < end && isNameChar(content.get(pos))) {
+            pos++;
+        }
+        if (pos > nameStart) {
+            String variable = lookup(content, nameStart, pos);
+            if (variable != null) {
+                consumer.accept(variable, line);
+            }
+        }
+        return pos;
+    }
+
+    /**
+     * Looks up the variable for the given symbol name.
+     *
+     * @param content The content.
+     * @param start The start of the name.
+     * @param end The end of the name (exclusive).
+     *
+     * @return The variable name, or <code>null</code> if the variable should not be reported.
+     */
+    private @Nullable String lookup(@NonNull ByteBuffer content, int start, int end) {
+        byte[][] names = this.names;
+        String[] variables = this.variables;
+        if (names == null || variables == null) {
+            byte[] name = new byte[end - start];
+            for (int i = 0; i < name.length; i++) {
+                name[i] = content.get(start + i);
+            }
+            return PREFIX + new String(name, StandardCharsets.ISO_8859_1);
+        }
+
+        int slot = hash(content, start, end) & mask;
+        byte[] candidate;
+        while ((candidate = names[slot]) != null) {
+            if (regionEquals(candidate, content, start, end)) {
+                return variables[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Checks whether the given byte can be part of a keyword.
+     *
+     * @param b The byte.
+     * @return Whether it is a letter, digit, <code>_</code> or <code>-</code>.
+     */
+    private static boolean isTokenChar(byte b) {
+        return isNameChar(b) || b == '-';
+    }
+
+    /**
+     * Checks whether the given byte can be part of a symbol name.
+     *
+     * @param b The byte.
+     * @return Whether it is a letter, digit or <code>_</code>.
+     */
+    private static boolean isNameChar(byte b) {
+        return (b >= 'A' && b <= 'Z') || (b >= 'a' && b <= 'z') || (b >= '0' && b <= '9') || b == '_';
+    }
+
+    /**
+     * Checks whether a region of the content equals the given keyword.
+     *
+     * @param content The content.
+     * @param start The start of the region.
+     * @param end The end of the region (exclusive).
+     * @param keyword The keyword.
+     *
+     * @return Whether the region is the keyword.
+     */
+    private static boolean matches(@NonNull ByteBuffer content, int start, int end, byte @NonNull [] keyword) {
+        return regionEquals(keyword, content, start, end);
+    }
+
+    /**
+     * Checks whether a region of the content equals the given bytes.
+     *
+     * @param bytes The bytes.
+     * @param content The content.
+     * @param start The start of the region.
+     * @param end The end of the region (exclusive).
+     *
+     * @return Whether the region is equal to the bytes.
+     */
+    private static boolean regionEquals(byte @NonNull [] bytes, @NonNull ByteBuffer content, int start, int end) {
+        if (end - start != bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (content.get(start + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether a region of an array equals the given bytes.
+     *
+     * @param bytes The bytes.
+     * @param array The array.
+     * @param start The start of the region.
+     * @param end The end of the region (exclusive).
+     *
+     * @return Whether the region is equal to the bytes.
+     */
+    private static boolean regionEquals(byte @NonNull [] bytes, byte @NonNull [] array, int start, int end) {
+        return regionEquals(bytes, ByteBuffer.wrap(array), start, end);
+    }
+
+    /**
+     * Hashes a region of the content.
+     *
+     * @param content The content.
+     * @param start The start of the region.
+     * @param end The end of the region (exclusive).
+     *
+     * @return The hash.
+     */
+    private static int hash(@NonNull ByteBuffer content, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + content.get(i);
+        }
+        return IntSet.hash(h);
+    }
+
+    /**
+     * Hashes a region of an array, consistent with {@link #hash(ByteBuffer, int, int)}.
+     *
+     * @param array The array.
+     * @param start The start of the region.
+     * @param end The end of the region (exclusive).
+     *
+     * @return The hash.
+     */
+    private static int hash(byte @NonNull [] array, int start, int end) {
+        return hash(ByteBuffer.wrap(array), start, end);
+    }
+
+    /**
+     * Converts an ASCII string to bytes.
+     *
+     * @param value The string.
+     * @return The bytes.
+     */
+    private static byte @NonNull [] bytes(@NonNull String value) {
+        return value.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+}
@@ -0,0 +1,297 @@
+/*
+ * Copyright 2020 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kconfigreader;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.ssehub.kernel_haven.kconfigreader.SourceLocationFinder.Definition;
+import net.ssehub.kernel_haven.util.Logger;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.variability_model.SourceLocation;
+
+/**
+ * A persisted index of the symbol definitions in the Kconfig files of a source tree, used by the
+ * {@link SourceLocationFinder}. For each Kconfig file, the index stores its size, modification time and content
+ * hash together with the definitions found in it. A file is only read again if its size or modification time
+ * changed; if only the modification time changed, the content hash decides whether the file needs to be parsed
+ * again.
+ * <p>
+ * The index is stored per source tree in the resource directory. It can be used concurrently by several threads
+ * while walking the source tree; {@link #beginRun()} must be called before and {@link #save()} after each walk.
+ * </p>
+ *
+ * @author Adam
+ */
+class KconfigLocationIndex {
+
+    private static final Logger LOGGER = Logger.get();
+
+    private static final int FORMAT_VERSION = 2;
+
+    /**
+     * Files that were modified less than this many milliseconds before they were indexed may be modified again
+     * without a visible change of the modification time (file systems with a coarse timestamp granularity). For
+     * these, no modification time is stored, so that their content hash is checked the next time.
+     */
+    private static final long RACY_INTERVAL = 2000;
+
+    /**
+     * The indexed state of a single Kconfig file.
+     */
+    private static final class Entry {
+
+        private final long size;
+
+        private final long modified;
+
+        private final byte @NonNull [] hash;
+
+        private final @NonNull List<@NonNull Definition> definitions;
+
+        /**
+         * Creates an entry.
+         *
+         * @param size The size of the file in bytes.
+         * @param modified The modification time of the file.
+         * @param hash The SHA-256 hash of the file content.
+         * @param definitions The definitions in the file.
+         */
+        Entry(long size, long modified, byte @NonNull [] hash, @NonNull List<@NonNull Definition> definitions) {
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+            this.definitions = definitions;
+        }
+
+    }
+
+    private final @NonNull File indexFile;
+
+    private final @NonNull Map<@NonNull String, @NonNull Entry> entries;
+
+    private final @NonNull Set<@NonNull String> visited;
+
+    private final @NonNull AtomicInteger readFiles;
+
+    private volatile boolean changed;
+
+    /**
+     * Creates an index that is stored in the given file.
+     *
+     * @param indexFile The file that the index is stored in. The index is empty if this does not exist.
+     */
+    private KconfigLocationIndex(@NonNull File indexFile) {
+        this.indexFile = indexFile;
+        this.entries = new ConcurrentHashMap<>();
+        this.visited = ConcurrentHashMap.newKeySet();
+        this.readFiles = new AtomicInteger();
+    }
+
+    /**
+     * Loads the index of the given source tree. If no index exists or it can't be read, an empty index is returned.
+     *
+     * @param resourceDir The resource directory that the indices are stored in.
+     * @param sourceTree The source tree.
+     *
+     * @return The index of the source tree.
+     */
+    static @NonNull KconfigLocationIndex load(@NonNull File resourceDir, @NonNull File sourceTree) {
+        MessageDigest digest = HashUtil.createDigest();
+        HashUtil.update(digest, sourceTree.getAbsoluteFile().toPath().normalize().toString());
+        File indexFile = new File(new File(resourceDir, "location_index"),
+                HashUtil.toHex(digest.digest()) + ".idx");
+
+        KconfigLocationIndex result = new KconfigLocationIndex(indexFile);
+        if (indexFile.isFile()) {
+            try {
+                result.read();
+            } catch (IOException e) {
+                LOGGER.logException("Could not read Kconfig location index " + indexFile + "; rebuilding it", e);
+                result.entries.clear();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reads the index file.
+     *
+     * @throws IOException If reading the file fails or it has an unknown format.
+     */
+    private void read() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                throw new IOException("Unknown index format");
+            }
+
+            int numFiles = in.readInt();
+            for (int i = 0; i < numFiles; i++) {
+                String path = in.readUTF();
+                long size = in.readLong();
+                long modified = in.readLong();
+                byte[] hash = new byte[in.readUnsignedByte()];
+                in.readFully(hash);
+
+                File location = new File(path);
+                int numDefinitions = in.readInt();
+                List<@NonNull Definition> definitions = new ArrayList<>(numDefinitions);
+                for (int j = 0; j < numDefinitions; j++) {
+                    String variable = in.readUTF();
+                    int line = in.readInt();
+                    definitions.add(new Definition(variable, new SourceLocation(location, line)));
+                }
+
+                entries.put(path, new Entry(size, modified, hash, definitions));
+            }
+        }
+    }
+
+    /**
+     * Returns the definitions in the given Kconfig file. The file is only read if it changed since it was indexed.
+     * Can be called concurrently.
+     *
+     * @param file The Kconfig file.
+     * @param relativePath The path of the file relative to the source tree.
+     *
+     * @return The definitions in the file, ordered by line number.
+     *
+     * @throws IOException If reading the file fails.
+     */
+    @NonNull List<@NonNull Definition> getDefinitions(@NonNull File file, @NonNull String relativePath)
+            throws IOException {
+
+        visited.add(relativePath);
+
+        long size = file.length();
+        long modified = file.lastModified();
+        Entry entry = entries.get(relativePath);
+        if (entry != null && entry.size == size && entry.modified == modified) {
+            return entry.definitions;
+        }
+
+        byte[] content = Files.readAllBytes(file.toPath());
+        readFiles.incrementAndGet();
+        MessageDigest digest = HashUtil.createDigest();
+        byte[] hash = digest.digest(content);
+
+        List<@NonNull Definition> definitions;
+        if (entry != null && entry.size == content.length && Arrays.equals(entry.hash, hash)) {
+            // only touched; the definitions are still valid
+            definitions = entry.definitions;
+        } else {
+            definitions = SourceLocationFinder.scan(ByteBuffer.wrap(content), relativePath);
+        }
+
+        if (System.currentTimeMillis() - modified < RACY_INTERVAL) {
+            modified = 0;
+        }
+        entries.put(relativePath, new Entry(content.length, modified, hash, definitions));
+        changed = true;
+        return definitions;
+    }
+
+    /**
+     * Starts a walk over the source tree. The index may be kept for several walks (e.g. for several architectures),
+     * so this resets the files that were looked up and the number of read files of the previous walk.
+     */
+    void beginRun() {
+        visited.clear();
+        readFiles.set(0);
+    }
+
+    /**
+     * Returns the number of Kconfig files that were read in the current walk (since {@link #beginRun()}), because
+     * they were not indexed or changed.
+     *
+     * @return The number of read files.
+     */
+    int getReadFiles() {
+        return readFiles.get();
+    }
+
+    /**
+     * Writes the index, if it changed. Files that were not looked up via
+     * {@link #getDefinitions(File, String)} in the current walk are removed from the index, since they do not exist
+     * anymore.
+     *
+     * @throws IOException If writing the index fails.
+     */
+    void save() throws IOException {
+        if (entries.keySet().retainAll(visited)) {
+            changed = true;
+        }
+        if (!changed) {
+            return;
+        }
+
+        File dir = indexFile.getParentFile();
+        dir.mkdirs();
+        File tmpFile = File.createTempFile(".tmp-", ".idx", dir);
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+
+                out.writeInt(FORMAT_VERSION);
+
+                // sorted, so that the same index always results in the same file
+                Map<@NonNull String, @NonNull Entry> sorted = new TreeMap<>(entries);
+                out.writeInt(sorted.size());
+                for (Map.Entry<@NonNull String, @NonNull Entry> fileEntry : sorted.entrySet()) {
+                    Entry entry = fileEntry.getValue();
+                    out.writeUTF(fileEntry.getKey());
+                    out.writeLong(entry.size);
+                    out.writeLong(entry.modified);
+                    out.writeByte(entry.hash.length);
+                    out.write(entry.hash);
+
+                    out.writeInt(entry.definitions.size());
+                    for (Definition definition : entry.definitions) {
+                        out.writeUTF(definition.getVariable());
+                        out.writeInt(definition.getLocation().getLineNumber());
+                    }
+                }
+            }
+
+            Files.move(tmpFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            changed = false;
+
+        } finally {
+            tmpFile.delete();
+        }
+    }
+
+}
@@ -18,15 +18,31 @@ package net.ssehub.kernel_haven.kconfigreader;
 
 import static net.ssehub.kernel_haven.util.null_checks.NullHelpers.notNull;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.text.SimpleDateFormat;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import net.ssehub.kernel_haven.SetUpException;
 import net.ssehub.kernel_haven.config.Configuration;
@@ -40,6 +56,7 @@ import net.ssehub.kernel_haven.util.FormatException;
 import net.ssehub.kernel_haven.util.Logger;
 import net.ssehub.kernel_haven.util.Util;
 import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
 import net.ssehub.kernel_haven.variability_model.AbstractVariabilityModelExtractor;
 import net.ssehub.kernel_haven.variability_model.SourceLocation;
 import net.ssehub.kernel_haven.variability_model.VariabilityModel;
@@ -88,6 +105,51 @@ public class KconfigReaderExtractor extends AbstractVariabilityModelExtractor {
         
     }
     
+    /**
+     * Different ways to prepare the source tree before dumpconf is compiled.
+     */
+    public static enum PrepareMode {
+        
+        /**
+         * Runs <code>make allyesconfig prepare</code>.
+         */
+        FULL,
+        
+        /**
+         * Only builds the Kconfig parser objects required by dumpconf, if they are not up to date. Falls back to
+         * {@link #FULL} if this fails.
+         */
+        KCONFIG_ONLY;
+        
+    }
+    
+    /**
+     * Receives the results of {@link KconfigReaderExtractor#runOnRevisions(File, List, RevisionConsumer)}, in the
+     * order of the revisions.
+     */
+    public static interface RevisionConsumer {
+        
+        /**
+         * Called with the extracted model of a revision.
+         * 
+         * @param revision The revision.
+         * @param model The variability model of the revision.
+         */
+        public void accept(@NonNull String revision, @NonNull VariabilityModel model);
+        
+        /**
+         * Called if the extraction of a revision failed. The other revisions are still extracted. By default, the
+         * failure is logged.
+         * 
+         * @param revision The revision.
+         * @param exception The reason of the failure.
+         */
+        public default void failed(@NonNull String revision, @NonNull ExtractorException exception) {
+            LOGGER.logException("Extraction of revision " + revision + " failed", exception);
+        }
+        
+    }
+    
     
     /**
      * A setting that specifies which dumpconf.c to use.
@@ -103,6 +165,141 @@ public class KconfigReaderExtractor extends AbstractVariabilityModelExtractor {
                     + " 'allyesconfig prepare'. For example, you could set this to \"CC=gcc-4.8\" to set a specific "
                     + "compiler to use (only for the 'make allyesconfig prepare' call!).");
     
+    /**
+     * A setting that specifies how the source tree is prepared.
+     */
+    public static final @NonNull EnumSetting<@NonNull PrepareMode> PREPARE_MODE
+            = new EnumSetting<>("variability.extractor.prepare_mode", PrepareMode.class, true,
+                    PrepareMode.FULL, "Defines how the source tree is prepared before dumpconf is compiled. FULL runs "
+                    + "'make allyesconfig prepare'. KCONFIG_ONLY only builds the Kconfig parser, skips this if it is "
+                    + "already up to date, and falls back to FULL if building the parser fails.");
+    
+    /**
+     * A setting that specifies how long temporary fixes of the source tree are kept at most.
+     */
+    public static final @NonNull Setting<@NonNull Integer> UNDO_TIMEOUT
+            = new Setting<>("variability.extractor.undo_timeout", Type.INTEGER, true, "120000", "Temporary fixes "
+                    + "of old source trees are reverted as soon as all processes that use them have terminated. This "
+                    + "setting defines the maximum time in milliseconds to wait for this (e.g. if the processes can't "
+                    + "be tracked on this system).");
+    
+    /**
+     * A setting that specifies whether the source tree may be modified.
+     */
+    public static final @NonNull Setting<@NonNull Boolean> READ_ONLY_SOURCE_TREE
+            = new Setting<>("variability.extractor.read_only_source_tree", Type.BOOLEAN, true, "false", "If set to "
+                    + "true, the source tree is not modified: make builds into a private output directory (O=) in "
+                    + "the resource directory, and fixes of old source trees (Makefile rewrite, top level Kconfig "
+                    + "file) are applied to a private shadow of the source tree. This allows several extractions "
+                    + "to run concurrently on one shared or read-only checkout.");
+    
+    /**
+     * A setting that specifies whether KconfigReader runs in a persistent JVM.
+     */
+    public static final @NonNull Setting<@NonNull Boolean> PERSISTENT_JVM
+            = new Setting<>("variability.extractor.persistent_jvm", Type.BOOLEAN, true, "false", "If set to true, "
+                    + "KconfigReader runs in worker JVMs that are re-used for later extractions, instead of starting "
+                    + "a new JVM for each extraction. This saves the JVM startup and lets the JIT warm up. Concurrent "
+                    + "extractions use separate workers; idle workers stay alive until KernelHaven exits. The heap "
+                    + "of the workers is sized like the one of new JVMs, and a worker that runs out of memory is "
+                    + "replaced by one with a larger heap.");
+    
+    /**
+     * A setting that specifies the heap size of the KconfigReader JVM.
+     */
+    public static final @NonNull Setting<@NonNull Integer> HEAP_SIZE
+            = new Setting<>("variability.extractor.heap_size", Type.INTEGER, true, "0", "The maximum heap size in "
+                    + "MiB for the JVM that runs KconfigReader. If set to 0, the heap is sized from the peak memory "
+                    + "usage of previous runs on the same source tree and architecture, or from the number of Kconfig "
+                    + "symbols, limited by the available memory of the host. If KconfigReader then runs out of "
+                    + "memory, it is retried with a larger heap.");
+    
+    /**
+     * A setting that specifies whether only dumpconf is executed, without KconfigReader.
+     */
+    public static final @NonNull Setting<@NonNull Boolean> DUMPCONF_ONLY
+            = new Setting<>("variability.extractor.dumpconf_only", Type.BOOLEAN, true, "false", "If set to true, "
+                    + "only dumpconf is executed and its output is converted, without running KconfigReader. This "
+                    + "takes seconds instead of minutes, but the resulting model has no constraint model (DIMACS "
+                    + "file): it only contains the variables with their types, hierarchy, constraint usage and "
+                    + "(optionally) source locations. Such models are not stored in the model cache.");
+    
+    /**
+     * A setting that specifies whether the constraint model is encoded in Java instead of by KconfigReader.
+     */
+    public static final @NonNull Setting<@NonNull Boolean> JAVA_CNF_ENCODER
+            = new Setting<>("variability.extractor.java_cnf_encoder", Type.BOOLEAN, true, "false", "If set to "
+                    + "true, KconfigReader is not executed: dumpconf runs directly and its output is encoded into "
+                    + "the DIMACS constraint model in the JVM of KernelHaven. The DIMACS file has the same named "
+                    + "variables as the one of KconfigReader, plus unnamed auxiliary variables; non-boolean symbols "
+                    + "are only over-approximated. Ignored if " + DUMPCONF_ONLY.getKey() + " is set.");
+    
+    /**
+     * A setting that specifies a list of architectures to extract in a single run.
+     */
+    public static final @NonNull ListSetting<@NonNull String> ARCHITECTURES
+            = new ListSetting<>("variability.extractor.archs", Type.STRING, false, "Defines a list of "
+                    + "architectures that runOnArchitectures() extracts in a single run. The source tree is prepared "
+                    + "and dumpconf is compiled only once, afterwards KconfigReader runs for the different "
+                    + "architectures in parallel. If not specified, only the architecture specified by the arch "
+                    + "setting is extracted.");
+    
+    /**
+     * A setting that specifies how many architectures may be extracted in parallel.
+     */
+    public static final @NonNull Setting<@NonNull Integer> MAX_PARALLEL_ARCHITECTURES
+            = new Setting<>("variability.extractor.max_parallel_archs", Type.INTEGER, true, "2", "Defines how many "
+                    + "KconfigReader runs may be executed in parallel when extracting several architectures via "
+                    + "runOnArchitectures(). Unless heap_size is set, the heap of each run is sized from its recorded "
+                    + "peak memory usage or its number of Kconfig symbols, and is capped at the available memory of "
+                    + "the host divided by the number of concurrent runs.");
+    
+    /**
+     * A setting that specifies a list of git revisions to extract in a single run.
+     */
+    public static final @NonNull ListSetting<@NonNull String> REVISIONS
+            = new ListSetting<>("variability.extractor.revisions", Type.STRING, false, "Defines a list of git "
+                    + "revisions of the source tree that runOnRevisions() extracts in a single run. Entries may be "
+                    + "revision ranges (a..b), which are expanded into their commits from the oldest to the newest. "
+                    + "Each revision is checked out in a private worktree of the repository; the source tree itself "
+                    + "is not modified.");
+    
+    /**
+     * A setting that specifies how many revisions may be extracted in parallel.
+     */
+    public static final @NonNull Setting<@NonNull Integer> MAX_PARALLEL_REVISIONS
+            = new Setting<>("variability.extractor.max_parallel_revisions", Type.INTEGER, true, "2", "Defines how "
+                    + "many revisions may be extracted in parallel by runOnRevisions(). Each parallel extraction "
+                    + "uses its own git worktree, which is re-used for the following revisions.");
+    
+    /**
+     * A setting that specifies whether models of previous revisions are re-used.
+     */
+    public static final @NonNull Setting<@NonNull Boolean> INCREMENTAL_REVISIONS
+            = new Setting<>("variability.extractor.incremental_revisions", Type.BOOLEAN, true, "false", "If set to "
+                    + "true, runOnRevisions() re-uses the model of the previous revision, if none of the files that "
+                    + "changed between the two revisions is relevant for the variability model: the Kconfig files "
+                    + "reachable from the root Kconfig file via source statements, the Kconfig parser and the top "
+                    + "level and architecture Makefiles. The same model object is then passed on for both revisions.");
+    
+    /**
+     * A setting that specifies whether extracted models should be cached.
+     */
+    public static final @NonNull Setting<@NonNull Boolean> MODEL_CACHE
+            = new Setting<>("variability.extractor.model_cache", Type.BOOLEAN, true, "false", "If set to true, "
+                    + "extracted models are stored in a persistent cache in the resource directory of this extractor. "
+                    + "The cache key is a digest of all Kconfig files reachable from the root Kconfig file, the "
+                    + "Kconfig parser sources, the architecture, the dumpconf version, the extra make parameters "
+                    + "and the bundled tools. If an entry exists, the extraction is skipped completely.");
+    
+    /**
+     * A setting that specifies the maximum size of the model cache.
+     */
+    public static final @NonNull Setting<@NonNull Integer> MODEL_CACHE_SIZE
+            = new Setting<>("variability.extractor.model_cache_size", Type.INTEGER, true, "1024", "The maximum size "
+                    + "of the model cache (see " + MODEL_CACHE.getKey() + ") in MiB. If the cache grows larger, the "
+                    + "least recently used entries are removed.");
+    
     /**
      * A setting that specifies whether to find code locations of the variables or not.
      */
@@ -112,6 +309,15 @@ public class KconfigReaderExtractor extends AbstractVariabilityModelExtractor {
                     + "occurences of the variable in the files that kconfigreader used for generating the "
                     + "VariabilityModel.");
     
+    /**
+     * A setting that specifies whether extraction reports are written.
+     */
+    public static final @NonNull Setting<@NonNull Boolean> WRITE_REPORTS
+            = new Setting<>("variability.extractor.write_reports", Type.BOOLEAN, true, "false", "If set to true, a "
+                    + "report of each extraction is written as JSON to the reports directory in the resource "
+                    + "directory of this extractor. The report contains the wall time of each phase, the attempted "
+                    + "fixes of the source tree, and the CPU time and peak memory usage of each child process.");
+    
     private static final Logger LOGGER = Logger.get();
     
     /**
@@ -130,17 +336,64 @@ public class KconfigReaderExtractor extends AbstractVariabilityModelExtractor {
      */
     private @NonNull String arch = ""; // will be initialized in init()
     
+    /**
+     * The architectures to analyze in {@link #runOnArchitectures()}.
+     */
+    private @NonNull List<@NonNull String> architectures = new LinkedList<>(); // will be initialized in init()
+    
+    private int maxParallelArchitectures; // will be initialized in init()
+    
+    /**
+     * The revisions to analyze in {@link #runOnRevisions(RevisionConsumer)}.
+     */
+    private @NonNull List<@NonNull String> revisions = new LinkedList<>(); // will be initialized in init()
+    
+    private int maxParallelRevisions; // will be initialized in init()
+    
+    private boolean incrementalRevisions; // will be initialized in init()
+    
     /**
      * The directory where this extractor can store its resources. Not null.
      */
     private @NonNull File resourceDir = new File("");  // will be initialized in init()
     
+    /**
+     * The Kconfig location index of each source tree, loaded on first use.
+     */
+    private final @NonNull Map<@NonNull File, @NonNull KconfigLocationIndex> locationIndices = new HashMap<>();
+    
+    /**
+     * The reports of the last extraction of each architecture.
+     */
+    private final @NonNull Map<@NonNull String, @NonNull ExtractionReport> reports = new ConcurrentHashMap<>();
+    
+    private boolean writeReports;
+    
     private @NonNull DumpconfVersion dumpconfVersion = DumpconfVersion.LINUX; // will be initialized in init()
     
     private @NonNull List<@NonNull String> extraMakeParameters = new LinkedList<>(); // will be initialized in init()
     
+    private @NonNull PrepareMode prepareMode = PrepareMode.FULL; // will be initialized in init()
+    
+    private long undoTimeout;
+    
+    private boolean readOnlySourceTree;
+    
+    private boolean persistentJvm;
+    
+    private int heapSize;
+    
+    private boolean dumpconfOnly;
+    
+    private boolean javaCnfEncoder;
+    
     private long timeout;
     
+    /**
+     * The cache for extracted models. <code>null</code> if caching is disabled.
+     */
+    private @Nullable ModelCache modelCache; // will be initialized in init()
+    
     @Override
     protected void init(@NonNull Configuration config) throws SetUpException {
         linuxSourceTree = config.getValue(DefaultSettings.SOURCE_TREE);
@@ -150,6 +403,31 @@ public class KconfigReaderExtractor extends AbstractVariabilityModelExtractor {
         }
         this.arch = arch;
         
+        config.registerSetting(ARCHITECTURES);
+        architectures = config.getValue(ARCHITECTURES);
+        if (architectures.isEmpty()) {
+            architectures = new LinkedList<>();
+            architectures.add(arch);
+        }
+        
+        config.registerSetting(MAX_PARALLEL_ARCHITECTURES);
+        maxParallelArchitectures = config.getValue(MAX_PARALLEL_ARCHITECTURES);
+        if (maxParallelArchitectures < 1) {
+            throw new SetUpException(MAX_PARALLEL_ARCHITECTURES.getKey() + " must be at least 1");
+        }
+        
+        config.registerSetting(REVISIONS);
+        revisions = config.getValue(REVISIONS);
+        
+        config.registerSetting(MAX_PARALLEL_REVISIONS);
+        maxParallelRevisions = config.getValue(MAX_PARALLEL_REVISIONS);
+        if (maxParallelRevisions < 1) {
+            throw new SetUpException(MAX_PARALLEL_REVISIONS.getKey() + " must be at least 1");
+        }
+        
+        config.registerSetting(INCREMENTAL_REVISIONS);
+        incrementalRevisions = config.getValue(INCREMENTAL_REVISIONS);
+        
         config.registerSetting(FIND_LOCATIONS);
         findSourceLocations = config.getValue(FIND_LOCATIONS);
         
@@ -158,9 +436,40 @@ public class KconfigReaderExtractor extends AbstractVariabilityModelExtractor {
         
         config.registerSetting(EXTRA_MAKE_PARAMETERS);
         extraMakeParameters = config.getValue(EXTRA_MAKE_PARAMETERS);
+        
+        config.registerSetting(PREPARE_MODE);
+        prepareMode = config.getValue(PREPARE_MODE);
+        
+        config.registerSetting(UNDO_TIMEOUT);
+        undoTimeout = config.getValue(UNDO_TIMEOUT);
+        
+        config.registerSetting(READ_ONLY_SOURCE_TREE);
+        readOnlySourceTree = config.getValue(READ_ONLY_SOURCE_TREE);
+        
+        config.registerSetting(PERSISTENT_JVM);
+        persistentJvm = config.getValue(PERSISTENT_JVM);
+        
+        config.registerSetting(HEAP_SIZE);
+        heapSize = config.getValue(HEAP_SIZE);
+        
+        config.registerSetting(DUMPCONF_ONLY);
+        dumpconfOnly = config.getValue(DUMPCONF_ONLY);
+        
+        config.registerSetting(JAVA_CNF_ENCODER);
+        javaCnfEncoder = config.getValue(JAVA_CNF_ENCODER);
+        
+        config.registerSetting(WRITE_REPORTS);
+        writeReports = config.getValue(WRITE_REPORTS);
 
         resourceDir = Util.getExtractorResourceDir(config, getClass());
         
+        config.registerSetting(MODEL_CACHE);
+        config.registerSetting(MODEL_CACHE_SIZE);
+        if (config.getValue(MODEL_CACHE)) {
+            modelCache = new ModelCache(new File(resourceDir, "model_cache"),
+                    config.getValue(MODEL_CACHE_SIZE) * 1024L * 1024L);
+        }
+        
         // Use for the process the same timeout as for the calling provider (0 = no timeout)
         config.registerSetting(DefaultSettings.VARIABILITY_PROVIDER_TIMEOUT);
         timeout = config.getValue(DefaultSettings.VARIABILITY_PROVIDER_TIMEOUT);
@@ -169,60 +478,806 @@ public class KconfigReaderExtractor extends AbstractVariabilityModelExtractor {
     @Override
     protected @NonNull VariabilityModel runOnFile(@NonNull File target) throws ExtractorException {
         LOGGER.logDebug("Starting extraction");
-
-        File outputBase = null;
-
+        
+        return extractTree(linuxSourceTree, arch, 1);
+    }
+    
+    /**
+     * Extracts the variability model of the source tree, unless it can be re-used from a previous revision. The
+     * model is re-used if none of the changed files is relevant for the variability model of the architecture (see
+     * {@link KconfigChangeAnalyzer}).
+     * 
+     * @param previous The variability model of the previous revision of the source tree.
+     * @param changedFiles The files that changed since the previous revision, relative to the source tree (e.g. from
+     *      <code>git diff --name-only --no-renames</code>).
+     * 
+     * @return The given previous model, if it can be re-used; otherwise the newly extracted model.
+     * 
+     * @throws ExtractorException If the extraction fails.
+     */
+    public @NonNull VariabilityModel runIncrementally(@NonNull VariabilityModel previous,
+            @NonNull Collection<@NonNull String> changedFiles) throws ExtractorException {
+        
+        List<@NonNull String> relevant;
         try {
-            KconfigReaderWrapper wrapper = new KconfigReaderWrapper(resourceDir, linuxSourceTree, dumpconfVersion);
-            wrapper.setExtraMakeParameters(extraMakeParameters);
-
-            boolean makeSuccess = wrapper.prepareLinux();
+            relevant = new KconfigChangeAnalyzer(linuxSourceTree, arch).getRelevantChanges(changedFiles);
+        } catch (IOException e) {
+            throw new ExtractorException(e);
+        }
+        
+        VariabilityModel result;
+        if (relevant.isEmpty()) {
+            LOGGER.logInfo2("None of the ", changedFiles.size(), " changed files is relevant for the variability "
+                    + "model; re-using the previous model");
+            result = previous;
+        } else {
+            LOGGER.logDebug2("Changed files relevant for the variability model: ", relevant);
+            result = runOnFile(linuxSourceTree);
+        }
+        return result;
+    }
+    
+    /**
+     * Extracts the variability model of a single architecture of the given source tree, using the model cache if it
+     * is enabled.
+     * 
+     * @param sourceTree The source tree to extract.
+     * @param arch The architecture to extract.
+     * @param concurrentRuns The maximum number of extractions that run at the same time as this one (including
+     *      this one); see {@link KconfigReaderWrapper#setConcurrentRuns(int)}.
+     * 
+     * @return The extracted variability model.
+     * 
+     * @throws ExtractorException If the extraction fails.
+     */
+    private @NonNull VariabilityModel extractTree(@NonNull File sourceTree, @NonNull String arch,
+            int concurrentRuns) throws ExtractorException {
+        
+        ExtractionReport report = new ExtractionReport(arch, sourceTree);
+        VariabilityModel result = null;
+        try {
+            long start = ExtractionReport.now();
+            String cacheKey = getCacheKey(sourceTree, arch);
+            result = readCache(cacheKey);
+            report.addPhase("cache_lookup", start);
+            
+            if (result == null) {
+                KconfigReaderWrapper wrapper = createWrapper(sourceTree, concurrentRuns);
+                try {
+                    File dumpconfExe = prepare(wrapper, report);
+                    result = extract(wrapper, dumpconfExe, sourceTree, arch, cacheKey, report);
+                } finally {
+                    cleanUp(wrapper);
+                }
+            } else {
+                report.setCached(true);
+                // cached models are stored without source locations
+                addSourceLocations(result, sourceTree, null, report);
+            }
+            
+        } finally {
+            finishReport(report, result != null);
+        }
+        
+        return result;
+    }
+    
+    /**
+     * Extracts the variability models of all architectures specified in {@link #ARCHITECTURES}. See
+     * {@link #runOnArchitectures(List)}.
+     * 
+     * @return A map of architecture names to the extracted variability models, in the order of the setting.
+     * 
+     * @throws ExtractorException If the extraction of any architecture fails.
+     */
+    public @NonNull Map<@NonNull String, @NonNull VariabilityModel> runOnArchitectures() throws ExtractorException {
+        return runOnArchitectures(architectures);
+    }
+    
+    /**
+     * Extracts the variability models of several architectures of the same source tree. The source tree is
+     * prepared and dumpconf is compiled only once; afterwards, KconfigReader and the {@link Converter} run for the
+     * different architectures in parallel (at most {@link #MAX_PARALLEL_ARCHITECTURES} at the same time).
+     * 
+     * @param archs The architectures to extract.
+     * 
+     * @return A map of architecture names to the extracted variability models, in the order of the given list.
+     * 
+     * @throws ExtractorException If the extraction of any architecture fails.
+     */
+    public @NonNull Map<@NonNull String, @NonNull VariabilityModel> runOnArchitectures(
+            @NonNull List<@NonNull String> archs) throws ExtractorException {
+        
+        LOGGER.logDebug("Starting extraction for architectures " + archs);
+        
+        // first look up all architectures in the cache; only the missing ones need a KconfigReader run
+        Map<@NonNull String, @Nullable VariabilityModel> cached = new LinkedHashMap<>();
+        Map<@NonNull String, @Nullable String> cacheKeys = new HashMap<>();
+        Map<@NonNull String, @NonNull ExtractionReport> archReports = new LinkedHashMap<>();
+        List<@NonNull String> toExtract = new LinkedList<>();
+        for (@NonNull String arch : new LinkedHashSet<>(archs)) {
+            ExtractionReport report = new ExtractionReport(arch, linuxSourceTree);
+            archReports.put(arch, report);
+            
+            long start = ExtractionReport.now();
+            String cacheKey = getCacheKey(linuxSourceTree, arch);
+            cacheKeys.put(arch, cacheKey);
+            VariabilityModel model = readCache(cacheKey);
+            report.addPhase("cache_lookup", start);
+            
+            cached.put(arch, model);
+            if (model == null) {
+                toExtract.add(arch);
+            } else {
+                report.setCached(true);
+            }
+        }
+        
+        try {
+            if (!toExtract.isEmpty()) {
+                int numWorkers = Math.min(maxParallelArchitectures, toExtract.size());
+                KconfigReaderWrapper wrapper = createWrapper(linuxSourceTree, numWorkers);
+                try {
+                    // preparing is shared by all architectures, so it is part of all of their reports
+                    ExtractionReport prepareReport = new ExtractionReport("", linuxSourceTree);
+                    File dumpconfExe;
+                    try {
+                        dumpconfExe = prepare(wrapper, prepareReport);
+                    } finally {
+                        for (@NonNull String arch : toExtract) {
+                            notNull(archReports.get(arch)).include(prepareReport);
+                        }
+                    }
+                    
+                    Map<@NonNull String, Future<@NonNull VariabilityModel>> futures = new HashMap<>();
+                    ExecutorService executor = Executors.newFixedThreadPool(numWorkers);
+                    try {
+                        for (@NonNull String arch : toExtract) {
+                            String cacheKey = cacheKeys.get(arch);
+                            ExtractionReport report = notNull(archReports.get(arch));
+                            futures.put(arch, executor.submit(
+                                () -> extract(wrapper, dumpconfExe, linuxSourceTree, arch, cacheKey, report)));
+                        }
+                        
+                        for (@NonNull String arch : toExtract) {
+                            cached.put(arch, getResult(notNull(futures.get(arch))));
+                        }
+                        
+                    } finally {
+                        executor.shutdownNow();
+                    }
+                } finally {
+                    cleanUp(wrapper);
+                }
+            }
+            
+            for (Map.Entry<@NonNull String, @Nullable VariabilityModel> entry : cached.entrySet()) {
+                if (!toExtract.contains(entry.getKey())) {
+                    // cached models are stored without source locations
+                    addSourceLocations(notNull(entry.getValue()), linuxSourceTree, null,
+                            notNull(archReports.get(entry.getKey())));
+                }
+            }
+            
+        } finally {
+            for (Map.Entry<@NonNull String, @NonNull ExtractionReport> entry : archReports.entrySet()) {
+                finishReport(notNull(entry.getValue()), cached.get(entry.getKey()) != null);
+            }
+        }
+        
+        Map<@NonNull String, @NonNull VariabilityModel> result = new LinkedHashMap<>();
+        for (Map.Entry<@NonNull String, @Nullable VariabilityModel> entry : cached.entrySet()) {
+            result.put(notNull(entry.getKey()), notNull(entry.getValue()));
+        }
+        
+        return result;
+    }
+    
+    /**
+     * Extracts the variability models of all revisions specified in {@link #REVISIONS} of the source tree, which
+     * must be a git repository. See {@link #runOnRevisions(File, List, RevisionConsumer)}.
+     * 
+     * @param consumer The consumer of the extracted models.
+     * 
+     * @throws ExtractorException If the revisions can't be resolved or the worktrees can't be managed.
+     */
+    public void runOnRevisions(@NonNull RevisionConsumer consumer) throws ExtractorException {
+        runOnRevisions(linuxSourceTree, revisions, consumer);
+    }
+    
+    /**
+     * Extracts the variability models of many revisions of a git repository. Each revision is checked out in a
+     * private git worktree and extracted like a single source tree (see {@link #runOnFile(File)}); the repository
+     * itself is not modified. At most {@link #MAX_PARALLEL_REVISIONS} revisions are extracted at the same time. Each
+     * worker owns a worktree, which it re-uses for its next revision and removes as soon as no revisions are left;
+     * so checking out, extracting and removing worktrees of different revisions overlap.
+     * <p>
+     * If {@link #INCREMENTAL_REVISIONS} is enabled, a revision that changes no file that is relevant for the
+     * variability model (see {@link KconfigChangeAnalyzer}) gets the model of the previous revision, without running
+     * KconfigReader.
+     * </p>
+     * <p>
+     * The results are passed to the consumer in the thread of the caller, in the order of the revisions, as soon as
+     * they and all previous ones are finished. To bound the memory usage, the workers only run ahead of the
+     * consumer by a few revisions. A failed revision does not abort the batch, it is passed to
+     * {@link RevisionConsumer#failed(String, ExtractorException)}.
+     * </p>
+     * 
+     * @param repository The git repository (or any of its worktrees).
+     * @param revisions The revisions to extract. Entries may be ranges (<code>a..b</code>), which are expanded
+     *      into their commits from the oldest to the newest.
+     * @param consumer The consumer of the extracted models.
+     * 
+     * @throws ExtractorException If the revisions can't be resolved or the worktrees can't be managed.
+     */
+    public void runOnRevisions(@NonNull File repository, @NonNull List<@NonNull String> revisions,
+            @NonNull RevisionConsumer consumer) throws ExtractorException {
+        
+        LOGGER.logDebug("Starting extraction for revisions " + revisions);
+        
+        MessageDigest digest = HashUtil.createDigest();
+        HashUtil.update(digest, repository.getAbsoluteFile().toPath().normalize().toString());
+        File worktreeDir = new File(new File(resourceDir, "worktrees"), HashUtil.toHex(digest.digest()));
+        worktreeDir.mkdirs();
+        
+        // the worktrees are at fixed paths (so that e.g. the Kconfig location indices are re-used), so only one
+        // batch may use them at the same time
+        try (FileChannel lockFile = FileChannel.open(new File(worktreeDir, "lock").toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE); FileLock lock = lockFile.tryLock()) {
+            
+            if (lock == null) {
+                throw new ExtractorException("Another extraction of revisions of " + repository + " is running");
+            }
+            
+            GitWorktrees worktrees = new GitWorktrees(repository, worktreeDir);
+            List<@NonNull String> resolved = worktrees.resolve(revisions);
+            runOnRevisions(worktrees, resolved, consumer);
+            
+        } catch (IOException | OverlappingFileLockException e) {
+            throw new ExtractorException(e);
+        }
+    }
+    
+    /**
+     * Extracts the given revisions in parallel worktrees and passes the results to the consumer, in order. See
+     * {@link #runOnRevisions(File, List, RevisionConsumer)}.
+     * 
+     * @param worktrees The worktrees to use.
+     * @param revisions The resolved revisions to extract.
+     * @param consumer The consumer of the extracted models.
+     * 
+     * @throws ExtractorException If waiting for the results was interrupted.
+     */
+    private void runOnRevisions(@NonNull GitWorktrees worktrees, @NonNull List<@NonNull String> revisions,
+            @NonNull RevisionConsumer consumer) throws ExtractorException {
+        
+        int numWorkers = Math.min(maxParallelRevisions, revisions.size());
+        Map<Integer, CompletableFuture<@NonNull VariabilityModel>> results = new ConcurrentHashMap<>();
+        AtomicInteger next = new AtomicInteger();
+        // each worker may run ahead of the consumer by two revisions
+        Semaphore window = new Semaphore(2 * numWorkers);
+        
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(numWorkers, 1));
+        try {
+            for (int slot = 0; slot < numWorkers; slot++) {
+                int workerSlot = slot;
+                executor.submit(() -> extractRevisions(worktrees, workerSlot, revisions, next, window, results));
+            }
+            
+            for (int i = 0; i < revisions.size(); i++) {
+                String revision = notNull(revisions.get(i));
+                try {
+                    consumer.accept(revision,
+                            getResult(notNull(results.computeIfAbsent(i, (index) -> new CompletableFuture<>()))));
+                    LOGGER.logInfo2("Extracted revision ", revision, " (", i + 1, "/", revisions.size(), ")");
+                    
+                } catch (ExtractorException e) {
+                    if (e.getCause() instanceof InterruptedException) {
+                        throw e;
+                    }
+                    consumer.failed(revision, e);
+                }
+                // the result is kept until the next revision is finished, since it may re-use it
+                results.remove(i - 1);
+                window.release();
+            }
+            
+        } finally {
+            // workers that are still running are interrupted; they remove their worktrees themselves
+            executor.shutdownNow();
+        }
+    }
+    
+    /**
+     * The loop of a worker of {@link #runOnRevisions(GitWorktrees, List, RevisionConsumer)}: extracts the next
+     * revision in the worktree of this worker, until no revisions are left. The worktree is removed afterwards.
+     * 
+     * @param worktrees The worktrees to use.
+     * @param slot The worktree slot of this worker.
+     * @param revisions The revisions to extract.
+     * @param next The index of the next revision to extract.
+     * @param window The permits to start the extraction of a revision; released by the consumer.
+     * @param results The futures for the results, by the index of the revision.
+     */
+    private void extractRevisions(@NonNull GitWorktrees worktrees, int slot, @NonNull List<@NonNull String> revisions,
+            @NonNull AtomicInteger next, @NonNull Semaphore window,
+            @NonNull Map<Integer, CompletableFuture<@NonNull VariabilityModel>> results) {
+        
+        try {
+            while (true) {
+                // the permit must be acquired before the index, so that the permits are held by the lowest indices
+                window.acquire();
+                int index = next.getAndIncrement();
+                if (index >= revisions.size()) {
+                    break;
+                }
+                
+                CompletableFuture<@NonNull VariabilityModel> result
+                        = notNull(results.computeIfAbsent(index, (i) -> new CompletableFuture<>()));
+                String revision = notNull(revisions.get(index));
+                try {
+                    File worktree = worktrees.checkout(slot, revision);
+                    VariabilityModel model = null;
+                    if (incrementalRevisions && index > 0) {
+                        model = getUnchangedModel(worktrees, worktree, notNull(revisions.get(index - 1)), revision,
+                                notNull(results.computeIfAbsent(index - 1, (i) -> new CompletableFuture<>())));
+                    }
+                    if (model == null) {
+                        model = extractTree(worktree, arch, Math.min(maxParallelRevisions, revisions.size()));
+                    }
+                    result.complete(model);
+                    
+                } catch (IOException e) {
+                    result.completeExceptionally(new ExtractorException("Could not check out " + revision + ": "
+                            + e.getMessage()));
+                } catch (ExtractorException | RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            }
+            
+        } catch (InterruptedException e) {
+            // the batch was aborted
+            
+        } finally {
+            try {
+                worktrees.remove(slot);
+            } catch (IOException e) {
+                LOGGER.logException("Could not remove worktree " + worktrees.getWorktree(slot), e);
+            }
+        }
+    }
+    
+    /**
+     * Returns the model of the previous revision, if it can be re-used for the given revision, because none of the
+     * changed files is relevant for the variability model. Waits for the previous revision to be extracted.
+     * 
+     * @param worktrees The worktrees to use.
+     * @param worktree The worktree that the revision is checked out in.
+     * @param previous The previous revision.
+     * @param revision The revision to extract.
+     * @param previousResult The future for the result of the previous revision.
+     * 
+     * @return The model of the previous revision; <code>null</code> if the revision needs to be extracted.
+     * 
+     * @throws InterruptedException If waiting for the previous revision is interrupted.
+     */
+    private @Nullable VariabilityModel getUnchangedModel(@NonNull GitWorktrees worktrees, @NonNull File worktree,
+            @NonNull String previous, @NonNull String revision,
+            @NonNull CompletableFuture<@NonNull VariabilityModel> previousResult) throws InterruptedException {
+        
+        VariabilityModel result = null;
+        try {
+            List<@NonNull String> changedFiles = worktrees.getChangedFiles(previous, revision);
+            List<@NonNull String> relevant = new KconfigChangeAnalyzer(worktree, arch).getRelevantChanges(changedFiles);
+            if (relevant.isEmpty()) {
+                result = previousResult.get();
+                LOGGER.logDebug2("Revision ", revision, " changes no file relevant for the variability model; "
+                        + "re-using the model of ", previous);
+            } else {
+                LOGGER.logDebug2("Revision ", revision, " changes files relevant for the variability model: ",
+                        relevant);
+            }
+            
+        } catch (IOException e) {
+            LOGGER.logExceptionDebug("Could not compare " + revision + " with " + previous, e);
+        } catch (ExecutionException e) {
+            LOGGER.logDebug2("Previous revision ", previous, " failed, extracting ", revision);
+        }
+        return result;
+    }
+    
+    /**
+     * Waits for the result of an extraction that runs in a separate thread.
+     * 
+     * @param future The future of the extraction.
+     * 
+     * @return The extracted model.
+     * 
+     * @throws ExtractorException If the extraction failed or waiting was interrupted.
+     */
+    private static @NonNull VariabilityModel getResult(@NonNull Future<@NonNull VariabilityModel> future)
+            throws ExtractorException {
+        
+        try {
+            return notNull(future.get());
+            
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ExtractorException) {
+                throw (ExtractorException) cause;
+            }
+            throw new ExtractorException(cause);
+            
+        } catch (InterruptedException e) {
+            throw new ExtractorException(e);
+        }
+    }
+    
+    /**
+     * Computes the key of the model cache entry for the given architecture.
+     * 
+     * @param sourceTree The source tree to extract.
+     * @param arch The architecture to extract.
+     * 
+     * @return The cache key; <code>null</code> if caching is disabled or the key could not be computed.
+     */
+    private @Nullable String getCacheKey(@NonNull File sourceTree, @NonNull String arch) {
+        String result = null;
+        // models without constraint model can't be cached; running dumpconf is about as fast as a cache lookup
+        if (modelCache != null && !dumpconfOnly) {
+            try {
+                result = ModelCache.computeKey(sourceTree, arch, dumpconfVersion, extraMakeParameters,
+                        javaCnfEncoder);
+            } catch (IOException e) {
+                LOGGER.logException("Could not compute model cache key; not using the cache", e);
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Reads a model from the model cache.
+     * 
+     * @param cacheKey The key of the entry; may be <code>null</code>.
+     * 
+     * @return The cached model; <code>null</code> if caching is disabled or no entry exists.
+     */
+    private @Nullable VariabilityModel readCache(@Nullable String cacheKey) {
+        VariabilityModel result = null;
+        ModelCache modelCache = this.modelCache;
+        if (modelCache != null && cacheKey != null) {
+            result = modelCache.read(cacheKey);
+            if (result != null) {
+                LOGGER.logInfo("Using cached variability model " + cacheKey);
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Creates a {@link KconfigReaderWrapper} for the given source tree.
+     * 
+     * @param sourceTree The source tree to extract.
+     * @param concurrentRuns The maximum number of KconfigReader runs at the same time.
+     * 
+     * @return The wrapper to use for an extraction.
+     */
+    private @NonNull KconfigReaderWrapper createWrapper(@NonNull File sourceTree, int concurrentRuns) {
+        KconfigReaderWrapper wrapper = new KconfigReaderWrapper(resourceDir, sourceTree, dumpconfVersion);
+        wrapper.setExtraMakeParameters(extraMakeParameters);
+        wrapper.setPrepareMode(prepareMode);
+        wrapper.setUndoTimeout(undoTimeout);
+        wrapper.setReadOnlySourceTree(readOnlySourceTree);
+        wrapper.setPersistentJvm(persistentJvm);
+        wrapper.setHeapSize(heapSize);
+        wrapper.setConcurrentRuns(concurrentRuns);
+        return wrapper;
+    }
+    
+    /**
+     * Deletes the private files of a wrapper after the extraction. Failures are only logged, since the extraction
+     * itself is not affected.
+     * 
+     * @param wrapper The wrapper that is not used anymore.
+     */
+    private static void cleanUp(@NonNull KconfigReaderWrapper wrapper) {
+        try {
+            wrapper.cleanUp();
+        } catch (IOException e) {
+            LOGGER.logException("Could not delete the working directory of the extraction", e);
+        }
+    }
+    
+    /**
+     * Executes the architecture independent steps of the extraction: prepares the source tree and compiles
+     * dumpconf.
+     * 
+     * @param wrapper The wrapper to use.
+     * @param report The report to record the phases in.
+     * 
+     * @return The compiled dumpconf executable.
+     * 
+     * @throws ExtractorException If preparing the source tree or compiling dumpconf fails.
+     */
+    private @NonNull File prepare(@NonNull KconfigReaderWrapper wrapper, @NonNull ExtractionReport report)
+            throws ExtractorException {
+        try {
+            long start = ExtractionReport.now();
+            boolean makeSuccess = wrapper.prepareLinux(report);
+            report.addPhase("prepare", start);
             if (!makeSuccess) {
-                throw new ExtractorException("'make allyesconfig prepare' failed to execute");
+                throw new ExtractorException("Preparing the source tree with make failed");
             }
             
-            File dumpconfExe = wrapper.compileDumpconf();
+            start = ExtractionReport.now();
+            File dumpconfExe = wrapper.compileDumpconf(report);
+            report.addPhase("compile_dumpconf", start);
             if (dumpconfExe == null) {
                 throw new ExtractorException("Compiling dumpconf failed");
             }
-            dumpconfExe.deleteOnExit();
+            return dumpconfExe;
+            
+        } catch (IOException e) {
+            throw new ExtractorException(e);
+        }
+    }
+    
+    /**
+     * Runs KconfigReader for a single architecture and converts its output into a {@link VariabilityModel}. If
+     * {@link #DUMPCONF_ONLY} is enabled, only dumpconf is executed instead (see
+     * {@link #extractDumpconfOnly(KconfigReaderWrapper, File, File, String, ExtractionReport)}). If
+     * {@link #JAVA_CNF_ENCODER} is enabled, the output of dumpconf is encoded in Java instead of running
+     * KconfigReader (see {@link #runJavaCnfEncoder(KconfigReaderWrapper, File, String, ExtractionReport)}).
+     * Can be called concurrently for different architectures with the same wrapper.
+     * 
+     * @param wrapper The wrapper to use.
+     * @param dumpconfExe The compiled dumpconf executable (see
+     *      {@link #prepare(KconfigReaderWrapper, ExtractionReport)}).
+     * @param sourceTree The source tree of the wrapper.
+     * @param arch The architecture to extract.
+     * @param cacheKey The key to store the result in the model cache with. <code>null</code> if the result should
+     *      not be cached.
+     * @param report The report to record the phases in.
+     * 
+     * @return The extracted variability model, with source locations if {@link #FIND_LOCATIONS} is enabled.
+     * 
+     * @throws ExtractorException If running KconfigReader or converting its output fails.
+     */
+    private @NonNull VariabilityModel extract(@NonNull KconfigReaderWrapper wrapper, @NonNull File dumpconfExe,
+            @NonNull File sourceTree, @NonNull String arch, @Nullable String cacheKey, @NonNull ExtractionReport report)
+            throws ExtractorException {
+        
+        if (dumpconfOnly) {
+            return extractDumpconfOnly(wrapper, dumpconfExe, sourceTree, arch, report);
+        }
+        
+        File outputBase;
+        long start;
+        if (javaCnfEncoder) {
+            outputBase = runJavaCnfEncoder(wrapper, dumpconfExe, arch, report);
             
-            outputBase = wrapper.runKconfigReader(dumpconfExe, arch, timeout);
-            dumpconfExe.delete();
+        } else {
+            start = ExtractionReport.now();
+            try {
+                outputBase = wrapper.runKconfigReader(dumpconfExe, arch, timeout, report);
+            } catch (IOException e) {
+                // outputBase can only be null here; no cleanup needed
+                
+                throw new ExtractorException(e);
+            } finally {
+                report.addPhase("kconfigreader", start);
+            }
             
             if (outputBase == null) {
                 throw new ExtractorException("KconfigReader run not succesful");
             }
             
-        } catch (IOException e) {
-            // outputBase can only be null here; no cleanup needed
+            LOGGER.logDebug("KconfigReader run successful", "Output is at: " + outputBase.getAbsolutePath());
+        }
+
+        // the output files are deleted afterwards, so the converter may take the DIMACS file
+        Converter converter = new Converter(outputBase, true);
+        VariabilityModel result = null;
+        start = ExtractionReport.now();
+        try {
+            result = converter.convert();
+            
+            DimacsStatistics statistics = converter.getDimacsStatistics();
+            if (statistics != null) {
+                LOGGER.logDebug2("Constraint model: ", statistics);
+            }
             
+        } catch (IOException | FormatException e) {
+            LOGGER.logException("Exception while parsing KconfigReader output", e);
             throw new ExtractorException(e);
+            
+        } finally {
+            deleteAllFiles(outputBase);
+            report.addPhase("convert", start);
         }
         
-        LOGGER.logDebug("KconfigReader run successful", "Output is at: " + outputBase.getAbsolutePath());
+        ModelCache modelCache = this.modelCache;
+        if (modelCache != null && cacheKey != null) {
+            start = ExtractionReport.now();
+            try {
+                modelCache.write(cacheKey, result);
+            } catch (IOException e) {
+                LOGGER.logException("Could not store variability model in cache", e);
+            }
+            report.addPhase("cache_write", start);
+        }
+
+        // the model is cached without source locations, so that the cache does not depend on FIND_LOCATIONS
+        addSourceLocations(result, sourceTree, converter.getSourceLocations(), report);
 
+        return result;
+    }
+    
+    /**
+     * Runs dumpconf for a single architecture and encodes its RSF output into a DIMACS file with the
+     * {@link KconfigCnfEncoder}, instead of running KconfigReader.
+     * 
+     * @param wrapper The wrapper to use.
+     * @param dumpconfExe The compiled dumpconf executable (see
+     *      {@link #prepare(KconfigReaderWrapper, ExtractionReport)}).
+     * @param arch The architecture to extract.
+     * @param report The report to record the phases in.
+     * 
+     * @return The base path to the output files: append ".rsf" and ".dimacs", like for the output of KconfigReader.
+     * 
+     * @throws ExtractorException If running dumpconf or encoding its output fails.
+     */
+    private @NonNull File runJavaCnfEncoder(@NonNull KconfigReaderWrapper wrapper, @NonNull File dumpconfExe,
+            @NonNull String arch, @NonNull ExtractionReport report) throws ExtractorException {
+        
+        File outputBase;
+        long start = ExtractionReport.now();
+        try {
+            outputBase = wrapper.runDumpconf(dumpconfExe, arch, timeout, report);
+        } catch (IOException e) {
+            throw new ExtractorException(e);
+        } finally {
+            report.addPhase("dumpconf", start);
+        }
+        
+        if (outputBase == null) {
+            throw new ExtractorException("dumpconf run not succesful");
+        }
+        
+        start = ExtractionReport.now();
+        try {
+            KconfigCnfEncoder encoder = new KconfigCnfEncoder(new File(outputBase.getPath() + ".rsf"));
+            encoder.encode(new File(outputBase.getPath() + ".dimacs"));
+            LOGGER.logDebug("Encoded constraint model with " + encoder.getNumVariables() + " variables and "
+                    + encoder.getNumClauses() + " clauses");
+            
+        } catch (IOException | FormatException e) {
+            LOGGER.logException("Exception while encoding dumpconf output", e);
+            deleteAllFiles(outputBase);
+            throw new ExtractorException(e);
+            
+        } finally {
+            report.addPhase("cnf_encoder", start);
+        }
+        
+        return outputBase;
+    }
+    
+    /**
+     * Runs only dumpconf for a single architecture and converts its RSF output into a {@link VariabilityModel}
+     * without constraint model (see {@link Converter#convertRsf()}).
+     * 
+     * @param wrapper The wrapper to use.
+     * @param dumpconfExe The compiled dumpconf executable (see
+     *      {@link #prepare(KconfigReaderWrapper, ExtractionReport)}).
+     * @param sourceTree The source tree of the wrapper.
+     * @param arch The architecture to extract.
+     * @param report The report to record the phases in.
+     * 
+     * @return The extracted variability model, with source locations if {@link #FIND_LOCATIONS} is enabled.
+     * 
+     * @throws ExtractorException If running dumpconf or converting its output fails.
+     */
+    private @NonNull VariabilityModel extractDumpconfOnly(@NonNull KconfigReaderWrapper wrapper,
+            @NonNull File dumpconfExe, @NonNull File sourceTree, @NonNull String arch,
+            @NonNull ExtractionReport report) throws ExtractorException {
+        
+        File outputBase;
+        long start = ExtractionReport.now();
+        try {
+            outputBase = wrapper.runDumpconf(dumpconfExe, arch, timeout, report);
+        } catch (IOException e) {
+            throw new ExtractorException(e);
+        } finally {
+            report.addPhase("dumpconf", start);
+        }
+        
+        if (outputBase == null) {
+            throw new ExtractorException("dumpconf run not succesful");
+        }
+        
         Converter converter = new Converter(outputBase);
-        VariabilityModel result = null;
+        VariabilityModel result;
+        start = ExtractionReport.now();
         try {
-            result = converter.convert();
+            result = converter.convertRsf();
             
         } catch (IOException | FormatException e) {
-            LOGGER.logException("Exception while parsing KconfigReader output", e);
+            LOGGER.logException("Exception while parsing dumpconf output", e);
             throw new ExtractorException(e);
             
         } finally {
             deleteAllFiles(outputBase);
+            report.addPhase("convert", start);
         }
         
+        addSourceLocations(result, sourceTree, converter.getSourceLocations(), report);
+        
+        return result;
+    }
+    
+    /**
+     * Adds the source locations to the variables of the given model, if {@link #FIND_LOCATIONS} is enabled. If
+     * dumpconf reported the locations, these are used; otherwise, the Kconfig files are scanned (see
+     * {@link #findSourceLocations(VariabilityModel, File)}).
+     * 
+     * @param model The model to add the source locations to.
+     * @param sourceTree The source tree that the model was extracted from.
+     * @param dumpconfLocations The locations reported by dumpconf (see {@link Converter#getSourceLocations()}).
+     *      <code>null</code> or empty if not available.
+     * @param report The report to record the phase in.
+     */
+    private void addSourceLocations(@NonNull VariabilityModel model, @NonNull File sourceTree,
+            @Nullable Map<@NonNull String, @NonNull List<@NonNull SourceLocation>> dumpconfLocations,
+            @NonNull ExtractionReport report) {
+        
         if (findSourceLocations) {
-            findSourceLocations(result);
+            long start = ExtractionReport.now();
+            if (dumpconfLocations != null && !dumpconfLocations.isEmpty()) {
+                addDumpconfLocations(model, sourceTree, dumpconfLocations);
+            } else {
+                findSourceLocations(model, sourceTree);
+            }
+            
+            report.addPhase("source_locations", start);
             
-            VariabilityModelDescriptor descriptor = result.getDescriptor();
+            VariabilityModelDescriptor descriptor = model.getDescriptor();
             descriptor.addAttribute(Attribute.SOURCE_LOCATIONS);
         }
-
-        return result;
+    }
+    
+    /**
+     * Finishes the report of an extraction: stores it as the last report of its architecture, logs it and writes it
+     * to the reports directory, if {@link #WRITE_REPORTS} is enabled.
+     * 
+     * @param report The report to finish.
+     * @param success Whether the extraction was successful.
+     */
+    private void finishReport(@NonNull ExtractionReport report, boolean success) {
+        report.finish(success);
+        reports.put(report.getArch(), report);
+        LOGGER.logDebug2("Extraction report: ", report);
+        
+        if (writeReports) {
+            String name = new SimpleDateFormat("yyyyMMdd-HHmmss-SSS").format(new Date()) + "_" + report.getArch()
+                    + ".json";
+            try {
+                report.write(new File(new File(resourceDir, "reports"), name));
+            } catch (IOException e) {
+                LOGGER.logException("Could not write extraction report", e);
+            }
+        }
+    }
+    
+    /**
+     * Returns the report of the last extraction of the given architecture by this extractor.
+     * 
+     * @param arch The architecture.
+     * 
+     * @return The report; <code>null</code> if the architecture was not extracted yet.
+     */
+    public @Nullable ExtractionReport getReport(@NonNull String arch) {
+        return reports.get(arch);
     }
     
     /**
@@ -244,78 +1299,75 @@ public class KconfigReaderExtractor extends AbstractVariabilityModelExtractor {
     }
     
     /**
+     * Adds the locations reported by dumpconf to the variables of the given model. Paths are made relative to the
+     * source tree, like the ones found by {@link #findSourceLocations(VariabilityModel, File)}.
      * 
-     * Finds the corresponding location in the sourcefiles for the variables
-     * contained in the VariabilityModel.
-     * 
-     * @param vm
-     *            the VariabilityModel.
+     * @param vm The model to add the source locations to.
+     * @param sourceTreeDir The source tree that the model was extracted from.
+     * @param dumpconfLocations The locations reported by dumpconf.
      */
-    void findSourceLocations(@NonNull VariabilityModel vm) {
+    void addDumpconfLocations(@NonNull VariabilityModel vm, @NonNull File sourceTreeDir,
+            @NonNull Map<@NonNull String, @NonNull List<@NonNull SourceLocation>> dumpconfLocations) {
+        
+        Path sourceTree = sourceTreeDir.getAbsoluteFile().toPath().normalize();
         Map<@NonNull String, VariabilityVariable> vars = vm.getVariableMap();
-        lukeFilewalker(vars, notNull(linuxSourceTree));
+        for (Map.Entry<@NonNull String, @NonNull List<@NonNull SourceLocation>> entry : dumpconfLocations.entrySet()) {
+            VariabilityVariable var = vars.get(entry.getKey());
+            if (var == null) {
+                continue;
+            }
+            for (SourceLocation location : entry.getValue()) {
+                Path path = location.getSource().toPath().normalize();
+                if (path.isAbsolute() && path.startsWith(sourceTree)) {
+                    location = new SourceLocation(notNull(sourceTree.relativize(path).toFile()),
+                            location.getLineNumber());
+                }
+                var.addLocation(location);
+            }
+        }
     }
-
+    
     /**
-     * Use the Source Luke. Recursively ...
      * 
-     * @param vars
-     *            the variables to find the location for.
-     * @param dir
-     *            the directory to use for finding the location.
+     * Finds the corresponding location in the sourcefiles for the variables
+     * contained in the VariabilityModel. The Kconfig files are scanned in parallel (see
+     * {@link SourceLocationFinder}); the locations are added in the order of the file paths and line numbers. Only
+     * the Kconfig files that changed since the last run on the same source tree are read (see
+     * {@link KconfigLocationIndex}).
+     * 
+     * @param vm
+     *            the VariabilityModel.
      */
-    private void lukeFilewalker(@NonNull Map<@NonNull String, VariabilityVariable> vars, @NonNull File dir) {
-        for (File file : dir.listFiles()) {
-            if (file.isDirectory() && !file.getName().startsWith(".")) {
-                lukeFilewalker(vars, file);
-            } else if (file.getName().startsWith("Kconfig")) {
-                useTheSourceLuke(vars, file);
-            }
-
-        }
+    void findSourceLocations(@NonNull VariabilityModel vm) {
+        findSourceLocations(vm, linuxSourceTree);
     }
-
+    
     /**
+     * Finds the locations of the variables in the Kconfig files of the given source tree, like
+     * {@link #findSourceLocations(VariabilityModel)}.
      * 
-     * Finds variability variables in kconfig-files and stores them in the
-     * according VariabilityVariable.
-     * 
-     * @param vars
-     *            the variables to find the location for.
-     * @param file
-     *            the kconfig-file.
+     * @param vm The VariabilityModel.
+     * @param sourceTree The source tree that the model was extracted from.
      */
-    private void useTheSourceLuke(@NonNull Map<@NonNull String, VariabilityVariable> vars, @NonNull File file) {
-
-        Pattern pattern = Pattern.compile("^[^#]*config\\s*([A-Za-z0-9_]+)");
-
-        BufferedReader in = null;
-        try {
-            in = new BufferedReader(new FileReader(file));
-            String line;
-            int lineNo = 1;
-            while ((line = in.readLine()) != null) {
-                Matcher m = pattern.matcher(line);
-                if (m.matches()) {
-                    String varName = "CONFIG_" + m.group(1);
-                    if (vars.containsKey(varName)) {
-                        vars.get(varName).addLocation(new SourceLocation(
-                                notNull(linuxSourceTree.toPath().relativize(file.toPath()).toFile()), lineNo));
-                    }
-                }
-
-                lineNo++;
+    private void findSourceLocations(@NonNull VariabilityModel vm, @NonNull File sourceTree) {
+        Map<@NonNull String, VariabilityVariable> vars = vm.getVariableMap();
+        
+        synchronized (this) {
+            KconfigLocationIndex locationIndex = locationIndices.get(sourceTree);
+            if (locationIndex == null) {
+                locationIndex = KconfigLocationIndex.load(resourceDir, sourceTree);
+                locationIndices.put(sourceTree, locationIndex);
             }
-
-        } catch (IOException e) {
-            LOGGER.logException("Could not read kconfig-file", e);
-        } finally {
-            if (in != null) {
-                try {
-                    in.close();
-                } catch (IOException e) {
-                    // Nothing to do here.
-                }
+            
+            locationIndex.beginRun();
+            SourceLocationFinder finder = new SourceLocationFinder(sourceTree, vars, locationIndex);
+            SourceLocationFinder.addLocations(finder.find(), vars);
+            LOGGER.logDebug2("Read ", locationIndex.getReadFiles(), " changed Kconfig files to find source locations");
+            
+            try {
+                locationIndex.save();
+            } catch (IOException e) {
+                LOGGER.logException("Could not store Kconfig location index", e);
             }
         }
     }
@@ -0,0 +1,369 @@
+/*
+ * Copyright 2020 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kconfigreader;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.security.CodeSource;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.ssehub.kernel_haven.kconfigreader.ExtractionReport.ProcessRecord;
+import net.ssehub.kernel_haven.util.Logger;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * A persistent JVM that runs KconfigReader several times (see {@link KconfigReaderWorkerMain}). This saves the JVM
+ * startup and class loading of KconfigReader for all but the first run, and lets the JIT warm up over several runs.
+ * The worker is a child process, so KconfigReader can neither exit nor write into the JVM of KernelHaven, and a run
+ * that does not finish in time is stopped by killing the worker.
+ * <p>
+ * Idle workers are kept in a pool per KconfigReader jar. Each run takes its own worker, so concurrent runs start
+ * additional workers; the pool holds at most as many workers as runs were executed at the same time. A worker only
+ * takes runs that need at most the heap it was started with; if all idle workers are too small, one of them is
+ * replaced by a worker with the larger heap. After a failed run (e.g. one that ran out of memory), the worker is
+ * discarded, since KconfigReader may have left its static state inconsistent.
+ * Idle workers exit when KernelHaven exits, since their standard input is closed then.
+ * </p>
+ *
+ * @author Adam
+ */
+final class KconfigReaderWorker {
+
+    private static final Logger LOGGER = Logger.get();
+
+    /**
+     * The idle workers, by the absolute path of their KconfigReader jar.
+     */
+    private static final @NonNull Map<@NonNull String, @NonNull Deque<@NonNull KconfigReaderWorker>> IDLE
+            = new HashMap<>();
+
+    private final @NonNull String key;
+
+    private final @NonNull String marker;
+
+    private final long heap;
+
+    private final @NonNull List<@NonNull String> command;
+
+    private final @NonNull Process process;
+
+    private final @NonNull ProcessTreeTracker tracker;
+
+    private final @NonNull Writer stdin;
+
+    private final @NonNull InputStream stdout;
+
+    private final @NonNull InputStream stderr;
+
+    /**
+     * Starts a worker.
+     *
+     * @param key The key of the pool of this worker.
+     * @param kconfigReaderJar The KconfigReader jar.
+     * @param heap The maximum heap size in MiB; 0 for the default of the JVM.
+     *
+     * @throws IOException If starting the worker JVM fails.
+     */
+    private KconfigReaderWorker(@NonNull String key, @NonNull File kconfigReaderJar, long heap) throws IOException {
+        this.key = key;
+        this.marker = "KCONFIGREADER_WORKER_" + UUID.randomUUID();
+        this.heap = heap;
+
+        List<@NonNull String> command = new ArrayList<>();
+        command.add("java");
+        if (heap > 0) {
+            command.add("-Xmx" + heap + "m");
+        }
+        command.add("-cp");
+        command.add(getOwnClassPath() + File.pathSeparator + kconfigReaderJar.getAbsolutePath());
+        command.add(KconfigReaderWorkerMain.class.getName());
+        command.add(marker);
+        this.command = command;
+
+        ProcessBuilder processBuilder = new ProcessBuilder(command);
+        this.tracker = new ProcessTreeTracker();
+        tracker.tag(processBuilder);
+        this.process = processBuilder.start();
+        this.stdin = new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8);
+        this.stdout = new BufferedInputStream(process.getInputStream());
+        this.stderr = new BufferedInputStream(process.getErrorStream());
+    }
+
+    /**
+     * Takes an idle worker with a large enough heap from the pool, or starts a new one if there is none. The worker
+     * must be used for exactly one {@link #run(List, OutputMonitor, long) run}, which returns it to the pool.
+     *
+     * @param kconfigReaderJar The KconfigReader jar.
+     * @param heap The maximum heap size in MiB that the run needs; 0 for the default of the JVM.
+     *
+     * @return The worker. Its {@link #getHeap() heap} may be larger than the given one.
+     *
+     * @throws IOException If starting a worker fails.
+     */
+    static @NonNull KconfigReaderWorker acquire(@NonNull File kconfigReaderJar, long heap) throws IOException {
+        String key = kconfigReaderJar.getAbsolutePath();
+        KconfigReaderWorker idleWorker = null;
+        KconfigReaderWorker tooSmall = null;
+        synchronized (IDLE) {
+            Deque<@NonNull KconfigReaderWorker> idle = IDLE.get(key);
+            if (idle != null) {
+                Iterator<@NonNull KconfigReaderWorker> iterator = idle.iterator();
+                while (idleWorker == null && iterator.hasNext()) {
+                    KconfigReaderWorker candidate = iterator.next();
+                    if (!candidate.process.isAlive()) {
+                        iterator.remove();
+                    } else if (candidate.heap == heap || heap > 0 && candidate.heap >= heap) {
+                        iterator.remove();
+                        idleWorker = candidate;
+                    } else if (tooSmall == null) {
+                        tooSmall = candidate;
+                    }
+                }
+                if (idleWorker == null && tooSmall != null) {
+                    // replace the worker by one with the larger heap, so that the pool doesn't grow
+                    idle.remove(tooSmall);
+                } else {
+                    tooSmall = null;
+                }
+            }
+        }
+        if (tooSmall != null) {
+            tooSmall.kill();
+        }
+        if (idleWorker != null) {
+            return idleWorker;
+        }
+        LOGGER.logDebug2("Starting new KconfigReader worker with a heap of ", heap, " MiB");
+        return new KconfigReaderWorker(key, kconfigReaderJar, heap);
+    }
+
+    /**
+     * Returns the heap size that this worker was started with.
+     *
+     * @return The maximum heap size in MiB; 0 for the default of the JVM.
+     */
+    long getHeap() {
+        return heap;
+    }
+
+    /**
+     * Runs KconfigReader in this worker. Afterwards, the worker is returned to the pool, or killed if the run failed.
+     *
+     * @param args The command line arguments for KconfigReader. Must not contain line breaks or empty arguments.
+     * @param monitor The monitor for the output of KconfigReader. If it aborts, the worker is killed.
+     * @param timeout The timeout in ms (0 = no timeout). If the timeout is exceeded, the worker is killed and the run
+     *      is reported as failed.
+     *
+     * @return The resource usage of the run. Its peak memory usage is the one of the worker since it was started,
+     *      which includes earlier runs in the same worker.
+     *
+     * @throws IOException If passing the arguments to the worker fails.
+     */
+    @NonNull ProcessRecord run(@NonNull List<@NonNull String> args, @NonNull OutputMonitor monitor, long timeout)
+            throws IOException {
+
+        ProcessRecord result = null;
+        try {
+            result = execute(args, monitor, timeout);
+        } finally {
+            if (result != null && result.isSuccess() && process.isAlive()) {
+                synchronized (IDLE) {
+                    IDLE.computeIfAbsent(key, (k) -> new ArrayDeque<>()).push(this);
+                }
+            } else {
+                kill();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Executes a single run of KconfigReader in this worker.
+     *
+     * @param args The command line arguments for KconfigReader.
+     * @param monitor The monitor for the output of KconfigReader.
+     * @param timeout The timeout in ms (0 = no timeout).
+     *
+     * @return The resource usage of the run. It is not successful if the run was aborted or timed out.
+     *
+     * @throws IOException If passing the arguments to the worker fails.
+     */
+    private @NonNull ProcessRecord execute(@NonNull List<@NonNull String> args, @NonNull OutputMonitor monitor,
+            long timeout) throws IOException {
+
+        boolean sampled = ProcessTreeTracker.isSupported();
+        long cpuTimeBefore = sampled ? tracker.getCpuTime() : 0;
+        ProcessTreeTracker.Sampler sampler = new ProcessTreeTracker.Sampler(tracker);
+        long start = ExtractionReport.now();
+
+        AtomicInteger status = new AtomicInteger(-1);
+        boolean success;
+        monitor.setAbortHandler(this::kill);
+        try {
+            for (String arg : args) {
+                stdin.write(arg);
+                stdin.write('\n');
+            }
+            stdin.write('\n');
+            stdin.flush();
+
+            Thread stdoutPump = pump(stdout, monitor.getStdout(), status);
+            Thread stderrPump = pump(stderr, monitor.getStderr(), null);
+            boolean finished;
+            try {
+                long deadline = System.currentTimeMillis() + timeout;
+                stdoutPump.join(timeout);
+                stderrPump.join(timeout > 0 ? Math.max(deadline - System.currentTimeMillis(), 1) : 0);
+                finished = !stdoutPump.isAlive() && !stderrPump.isAlive();
+
+                if (!finished) {
+                    LOGGER.logWarning("KconfigReader did not finish within " + timeout + " ms; killing its worker");
+                    kill();
+                }
+                stdoutPump.join();
+                stderrPump.join();
+
+            } catch (InterruptedException e) {
+                kill();
+                throw new IOException("Interrupted while waiting for KconfigReader", e);
+            }
+
+            if (finished && status.get() < 0) {
+                // KconfigReader exited the worker JVM
+                try {
+                    status.set(process.waitFor());
+                } catch (InterruptedException e) {
+                    kill();
+                    throw new IOException("Interrupted while waiting for KconfigReader", e);
+                }
+            }
+
+            success = finished && !monitor.isAborted() && status.get() == 0;
+
+        } finally {
+            monitor.setAbortHandler(null);
+            monitor.finish();
+            sampler.stopSampling();
+        }
+        long wallTime = (ExtractionReport.now() - start) / 1000000;
+
+        List<@NonNull String> runCommand = new ArrayList<>(command);
+        runCommand.addAll(args);
+        return new ProcessRecord("KconfigReader", runCommand, success, wallTime,
+                sampled ? sampler.getCpuTime() - cpuTimeBefore : -1, sampled ? sampler.getPeakResidentSetSize() : -1);
+    }
+
+    /**
+     * Starts a thread that copies the output of a single run of the worker, until the line with the marker or the
+     * end of the stream.
+     *
+     * @param in The output of the worker.
+     * @param out The stream to copy the output to.
+     * @param status Is set to the exit status of the run, if the marker line contains it; <code>null</code> for the
+     *      error output, where the marker line has no status.
+     *
+     * @return The started thread.
+     */
+    private @NonNull Thread pump(@NonNull InputStream in, @NonNull OutputStream out,
+            @Nullable AtomicInteger status) {
+
+        Thread thread = new Thread(() -> {
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            try {
+                int read;
+                while ((read = in.read()) != -1) {
+                    if (read != '\n') {
+                        line.write(read);
+                        continue;
+                    }
+
+                    String text = new String(line.toByteArray(), StandardCharsets.UTF_8);
+                    line.reset();
+                    int index = text.indexOf(marker);
+                    if (index >= 0) {
+                        // output of KconfigReader that is not terminated by a line break is in front of the marker
+                        out.write(text.substring(0, index).getBytes(StandardCharsets.UTF_8));
+                        if (status != null) {
+                            status.set(Integer.parseInt(text.substring(index + marker.length()).trim()));
+                        }
+                        break;
+                    }
+                    out.write(text.getBytes(StandardCharsets.UTF_8));
+                    out.write('\n');
+                }
+                line.writeTo(out);
+            } catch (IOException | NumberFormatException e) {
+                // the worker was killed
+            }
+        }, "KconfigReader worker output");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Kills the worker and all of its descendants (e.g. dumpconf).
+     */
+    private void kill() {
+        if (ProcessTreeTracker.isSupported()) {
+            try {
+                tracker.kill();
+            } catch (IOException e) {
+                LOGGER.logException("Could not kill the descendants of the KconfigReader worker", e);
+            }
+        }
+        process.destroyForcibly();
+    }
+
+    /**
+     * Returns the class path entry that contains the classes of this plugin, which the worker JVM needs for
+     * {@link KconfigReaderWorkerMain}.
+     *
+     * @return The jar or directory with the classes of this plugin.
+     *
+     * @throws IOException If the location of the classes is not known.
+     */
+    private static @NonNull String getOwnClassPath() throws IOException {
+        CodeSource codeSource = KconfigReaderWorkerMain.class.getProtectionDomain().getCodeSource();
+        if (codeSource == null) {
+            throw new IOException("Can't find the location of " + KconfigReaderWorkerMain.class.getName());
+        }
+        try {
+            return new File(codeSource.getLocation().toURI()).getAbsolutePath();
+        } catch (URISyntaxException e) {
+            throw new IOException("Can't find the location of " + KconfigReaderWorkerMain.class.getName(), e);
+        }
+    }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2020 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kconfigreader;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The main class of a {@link KconfigReaderWorker} JVM. Reads the arguments of KconfigReader runs from the standard
+ * input (one argument per line, each run terminated by an empty line) and runs the main method of KconfigReader
+ * for each of them, one after another. After each run, a line with the marker (the first command line argument)
+ * and the exit status is written to the standard output, and a line with the marker to the error output. The
+ * worker exits at the end of the standard input, i.e. when the parent process closes it or dies.
+ * <p>
+ * This class runs without KernelHaven on the class path, so it may only use the Java runtime. If KconfigReader
+ * calls {@link System#exit(int)}, the worker exits with that status.
+ * </p>
+ *
+ * @author Adam
+ */
+final class KconfigReaderWorkerMain {
+
+    /**
+     * The main class of KconfigReader.
+     */
+    static final String MAIN_CLASS = "de.fosd.typechef.kconfig.KConfigReader";
+
+    /**
+     * Don't allow any instances.
+     */
+    private KconfigReaderWorkerMain() {
+    }
+
+    /**
+     * Runs the worker.
+     *
+     * @param args The marker that is written after each run.
+     *
+     * @throws IOException If reading the standard input fails.
+     * @throws ReflectiveOperationException If KconfigReader is not on the class path.
+     */
+    public static void main(String[] args) throws IOException, ReflectiveOperationException {
+        String marker = args[0];
+        Method main = Class.forName(MAIN_CLASS).getMethod("main", String[].class);
+
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        List<String> arguments = new ArrayList<>();
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (!line.isEmpty()) {
+                arguments.add(line);
+                continue;
+            }
+
+            int status = 0;
+            try {
+                main.invoke(null, (Object) arguments.toArray(new String[0]));
+            } catch (InvocationTargetException e) {
+                // print like the JVM does for uncaught exceptions, so that the output can be checked
+                System.err.print("Exception in thread \"main\" ");
+                e.getCause().printStackTrace();
+                status = 1;
+            }
+            arguments.clear();
+
+            System.out.println(marker + " " + status);
+            System.err.println(marker);
+        }
+    }
+
+}
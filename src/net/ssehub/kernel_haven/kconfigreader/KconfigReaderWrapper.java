@@ -16,16 +16,29 @@
  */
 package net.ssehub.kernel_haven.kconfigreader;
 
-import java.io.ByteArrayOutputStream;
+import static net.ssehub.kernel_haven.util.null_checks.NullHelpers.notNull;
+
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import net.ssehub.kernel_haven.kconfigreader.ExtractionReport.ProcessRecord;
 import net.ssehub.kernel_haven.kconfigreader.KconfigReaderExtractor.DumpconfVersion;
+import net.ssehub.kernel_haven.kconfigreader.KconfigReaderExtractor.PrepareMode;
+import net.ssehub.kernel_haven.kconfigreader.SourceTreeAnalyzer.TreeType;
 import net.ssehub.kernel_haven.util.Logger;
 import net.ssehub.kernel_haven.util.Util;
 import net.ssehub.kernel_haven.util.null_checks.NonNull;
@@ -35,6 +48,7 @@ import net.ssehub.kernel_haven.util.null_checks.Nullable;
  * Methods for running the Linux processes required for KconfigReader.
  * All these methods only work on a Linux system, which has a gcc compiler installed.
  * Needs the resources from the {@link net.ssehub.kernel_haven.kconfigreader.res} package.
+ * {@link #runKconfigReader(File, String, long)} may be called concurrently for different architectures.
  * 
  * @author Adam
  * @author Johannes
@@ -47,6 +61,22 @@ public class KconfigReaderWrapper {
     private static final String OBSOLETE_KCONFIG_GRAMMAR_ENV = "P_ENV";
     private static final String OBSOLETE_KCONFIG_GRAMMAR_LIST = "E_LIST";
     private static final String OBSOLETE_MAKE_SYNTAX = "*** mixed implicit and normal rules: deprecated syntax";
+    
+    /**
+     * The files of the source tree that the compiled dumpconf depends on.
+     */
+    private static final @NonNull String @NonNull [] DUMPCONF_INPUTS = {
+        "scripts/kconfig/zconf.tab.o",
+        "scripts/kconfig/lkc.h",
+        "scripts/kconfig/expr.h",
+        "scripts/kconfig/lkc_proto.h",
+        "scripts/kconfig/list.h",
+    };
+    
+    /**
+     * The maximum number of compiled dumpconf executables to keep in the resource directory.
+     */
+    private static final int MAX_CACHED_DUMPCONFS = 32;
 
     private @NonNull DumpconfVersion dumpconfVersion;
     
@@ -56,6 +86,28 @@ public class KconfigReaderWrapper {
     
     private @NonNull List<@NonNull String> extraMakeParameters;
     
+    private @NonNull PrepareMode prepareMode;
+    
+    private long undoTimeout;
+    
+    private boolean persistentJvm;
+    
+    private long heapSize;
+    
+    private int concurrentRuns;
+    
+    private boolean readOnlySourceTree;
+    
+    private @Nullable File workDir;
+    
+    /**
+     * Guards temporary modifications of the source tree: KconfigReader runs hold the read lock, fixes that modify
+     * the source tree (e.g. copying the Kconfig file of an architecture) hold the write lock.
+     */
+    private final @NonNull ReadWriteLock sourceTreeLock = new ReentrantReadWriteLock();
+    
+    private @Nullable SourceTreeAnalyzer analyzer;
+    
     /**
      * Creates a new KconfigReaderWrapper.
      * 
@@ -69,6 +121,9 @@ public class KconfigReaderWrapper {
         this.linuxSourceTree = linuxSourceTree;
         this.dumpconfVersion = dumpconfVersion;
         this.extraMakeParameters = new LinkedList<>();
+        this.prepareMode = PrepareMode.FULL;
+        this.undoTimeout = 120000;
+        this.concurrentRuns = 1;
     }
     
     /**
@@ -82,110 +137,391 @@ public class KconfigReaderWrapper {
     }
     
     /**
-     * Prepares the Linux source tree by executing <code>make allyesconfig prepare</code> on it.
+     * Sets how the Linux source tree is prepared in {@link #prepareLinux()}. Default is {@link PrepareMode#FULL}.
+     * 
+     * @param prepareMode The preparation mode to use.
+     */
+    public void setPrepareMode(@NonNull PrepareMode prepareMode) {
+        this.prepareMode = prepareMode;
+    }
+    
+    /**
+     * Sets a fixed maximum heap size for the KconfigReader JVM. If this is 0 (the default), the heap is sized
+     * adaptively by the {@link HeapSizer}.
+     * 
+     * @param heapSize The maximum heap size in MiB; 0 for adaptive sizing.
+     */
+    public void setHeapSize(long heapSize) {
+        this.heapSize = heapSize;
+    }
+    
+    /**
+     * Sets how many KconfigReader runs may execute at the same time on this host. The adaptively sized heap of each
+     * run is limited to this share of the available memory. Default is 1.
+     * 
+     * @param concurrentRuns The maximum number of concurrent KconfigReader runs.
+     */
+    public void setConcurrentRuns(int concurrentRuns) {
+        this.concurrentRuns = concurrentRuns;
+    }
+    
+    /**
+     * Sets whether KconfigReader is executed in a persistent {@link KconfigReaderWorker worker JVM}, which is
+     * re-used for later runs, instead of a new JVM for each run. Default is <code>false</code>.
+     * 
+     * @param persistentJvm Whether to run KconfigReader in a persistent JVM.
+     */
+    public void setPersistentJvm(boolean persistentJvm) {
+        this.persistentJvm = persistentJvm;
+    }
+    
+    /**
+     * Sets the safety timeout for reverting temporary fixes of the source tree. Fixes are reverted as soon as the
+     * processes that use them have terminated, but at the latest after this timeout. Default is 120 000 ms.
+     * 
+     * @param undoTimeout The maximum time (in ms) to wait before reverting a temporary fix.
+     */
+    public void setUndoTimeout(long undoTimeout) {
+        this.undoTimeout = undoTimeout;
+    }
+    
+    /**
+     * Sets whether the source tree must not be modified. If set, make builds into a private output directory
+     * (<code>O=</code>) and fixes for old trees are applied to a private {@link ShadowTree} instead of the source
+     * tree; so several extractions can run concurrently on one (possibly read-only) checkout. Default is
+     * <code>false</code>.
+     * 
+     * @param readOnlySourceTree Whether the source tree must not be modified.
+     */
+    public void setReadOnlySourceTree(boolean readOnlySourceTree) {
+        this.readOnlySourceTree = readOnlySourceTree;
+    }
+    
+    /**
+     * Returns the private working directory for {@link #setReadOnlySourceTree(boolean) read-only source trees}. It
+     * contains the output directory of make and the shadows of the source tree. The directory is unique for this
+     * wrapper and deleted by {@link #cleanUp()}.
+     * 
+     * @return The private working directory.
+     * 
+     * @throws IOException If creating the directory fails.
+     */
+    private synchronized @NonNull File getWorkDir() throws IOException {
+        File result = workDir;
+        if (result == null) {
+            File parent = new File(resourceDir, "out_of_tree");
+            parent.mkdirs();
+            result = Files.createTempDirectory(parent.toPath(), "tree").toFile();
+            workDir = result;
+        }
+        return result;
+    }
+    
+    /**
+     * Deletes the private working directory of {@link #setReadOnlySourceTree(boolean) read-only source trees}, if it
+     * has been created. Must be called after the last extraction with this wrapper. The working directory contains
+     * links into the source tree, so it must not be deleted with a plain recursive delete.
+     * 
+     * @throws IOException If deleting the working directory fails.
+     */
+    public synchronized void cleanUp() throws IOException {
+        File dir = workDir;
+        if (dir != null) {
+            ShadowTree.deleteRecursively(dir);
+            workDir = null;
+        }
+    }
+    
+    /**
+     * Returns the output directory of make for {@link #setReadOnlySourceTree(boolean) read-only source trees}.
+     * 
+     * @return The output directory in the private working directory.
+     * 
+     * @throws IOException If creating the working directory fails.
+     */
+    private @NonNull File getBuildDir() throws IOException {
+        return new File(getWorkDir(), "build");
+    }
+    
+    /**
+     * Returns the directory that contains the compiled Kconfig parser (<code>scripts/kconfig/zconf.tab.o</code>).
+     * This is the source tree, unless the source tree is {@link #setReadOnlySourceTree(boolean) read-only} and the
+     * parser has been built into the private output directory.
+     * 
+     * @return The base directory of the compiled Kconfig parser.
+     * 
+     * @throws IOException If creating the working directory fails.
+     */
+    private @NonNull File getKconfigParserBase() throws IOException {
+        File result = linuxSourceTree;
+        if (readOnlySourceTree && new File(getBuildDir(), "scripts/kconfig/zconf.tab.o").isFile()) {
+            result = getBuildDir();
+        }
+        return result;
+    }
+    
+    /**
+     * Returns the analysis of the source tree, which is used to apply fixes for old trees before running the
+     * processes, instead of waiting for them to fail. The tree is analyzed once, before any fix modifies it.
+     * 
+     * @return The analysis of the source tree.
+     */
+    synchronized @NonNull SourceTreeAnalyzer getSourceTreeAnalyzer() {
+        SourceTreeAnalyzer result = analyzer;
+        if (result == null) {
+            sourceTreeLock.readLock().lock();
+            try {
+                result = new SourceTreeAnalyzer(linuxSourceTree);
+            } finally {
+                sourceTreeLock.readLock().unlock();
+            }
+            LOGGER.logDebug2("Analyzed source tree: ", result);
+            analyzer = result;
+        }
+        return result;
+    }
+    
+    /**
+     * Prepares the Linux source tree, so that dumpconf can be compiled against it. In {@link PrepareMode#FULL}, this
+     * executes <code>make allyesconfig prepare</code>. In {@link PrepareMode#KCONFIG_ONLY}, nothing is done if the
+     * Kconfig parser objects are up to date, otherwise only <code>make allyesconfig</code> is executed (which builds
+     * the Kconfig parser). If this fails, the full preparation is done instead.
      * 
      * @return <code>true</code> is succesful; <code>false</code> otherwise.
      * 
      * @throws IOException If executing make fails.
      */
     public boolean prepareLinux() throws IOException {
+        return prepareLinux(null);
+    }
+    
+    /**
+     * Prepares the Linux source tree, like {@link #prepareLinux()}, and records the executed processes and fixes in
+     * the given report.
+     * 
+     * @param report The report to record the processes and fixes in; <code>null</code> if not needed.
+     * 
+     * @return <code>true</code> is succesful; <code>false</code> otherwise.
+     * 
+     * @throws IOException If executing make fails.
+     */
+    public boolean prepareLinux(@Nullable ExtractionReport report) throws IOException {
         LOGGER.logDebug("prepareLinux() called");
         
-        List<@NonNull String> parameters = new ArrayList<>(Arrays.asList("make", "allyesconfig", "prepare"));
-        if (!extraMakeParameters.isEmpty()) {
-            parameters.addAll(1, extraMakeParameters);
+        SourceTreeAnalyzer analysis = getSourceTreeAnalyzer();
+        if (analysis.getTreeType() == TreeType.UNKNOWN) {
+            LOGGER.logWarning2(linuxSourceTree, " does not look like a Linux or BusyBox source tree");
+        } else if (analysis.getTreeType() == TreeType.BUSYBOX && dumpconfVersion == DumpconfVersion.LINUX) {
+            LOGGER.logWarning2(linuxSourceTree, " looks like a BusyBox source tree, but dumpconf version ",
+                    dumpconfVersion, " is configured");
         }
-        ProcessBuilder processBuilder = createPrepareProcess(parameters);
-        ByteArrayOutputStream stdout = new ByteArrayOutputStream();
-        ByteArrayOutputStream stderr = new ByteArrayOutputStream();
-        boolean success = Util.executeProcess(processBuilder, "make", stdout, stderr, 0);
         
-        if (!success && dumpconfVersion == DumpconfVersion.LINUX) {
-            // Old Linux versions may use an obsolete MAKE syntax, try to fix them according to
-            // https://www.programmersought.com/article/88083080956/
-            if (checkForOccurence(stdout, stderr, OBSOLETE_MAKE_SYNTAX)) {
-                LOGGER.logInfo2("Linux preparation crashed since the Makefile uses a deprecated syntax, "
-                    + "try to fix it.");
-                
-                File makeFile = new File(linuxSourceTree, "Makefile");
-                String content = new String(Files.readAllBytes(makeFile.toPath()));
-                String modifiedContent = content.replace("config %config:", "%config %config:");
-                modifiedContent = modifiedContent.replace("/ %/: prepare scripts FORCE", "%/: prepare scripts FORCE");
-                Files.write(makeFile.toPath(), modifiedContent.getBytes());
-                
-                success = !content.equals(modifiedContent);
-                
-                if (success) {
-                    LOGGER.logDebug(("Rewritten Makefile:\n" + modifiedContent).split("\n"));
-                    processBuilder = createPrepareProcess(parameters);
-                    UndoThread fileRevert = new UndoThread(15000) {
-                        
-                        @Override
-                        public void revertOperation() {
-                            try {
-                                Files.write(makeFile.toPath(), content.getBytes());
-                            } catch (IOException e) {
-                                LOGGER.logException("Could not revert " + makeFile.getAbsolutePath(), e);
-                            }
-                        }
-                    };
-                    
-                    // Try make script again and revert it afterwards
-                    try {
-                        success = Util.executeProcess(processBuilder, "make");
-                    } finally {
-                        fileRevert.runAndJoin();
+        if (prepareMode == PrepareMode.KCONFIG_ONLY) {
+            if (isKconfigParserUpToDate()) {
+                LOGGER.logDebug("Kconfig parser is up to date, skipping preparation");
+                return true;
+            }
+            
+            if (runMake(report, "allyesconfig") && isKconfigParserUpToDate()) {
+                return true;
+            }
+            LOGGER.logInfo("Building only the Kconfig parser failed, falling back to full preparation");
+            boolean success = runMake(report, "allyesconfig", "prepare");
+            if (report != null) {
+                report.addFix("full_prepare_fallback", success);
+            }
+            return success;
+        }
+        
+        return runMake(report, "allyesconfig", "prepare");
+    }
+    
+    /**
+     * Checks whether the compiled Kconfig parser (<code>scripts/kconfig/zconf.tab.o</code>) exists and is newer
+     * than all sources in <code>scripts/kconfig</code>.
+     * 
+     * @return Whether the Kconfig parser needs not to be built.
+     * 
+     * @throws IOException If creating the working directory fails.
+     */
+    private boolean isKconfigParserUpToDate() throws IOException {
+        File kconfigDir = new File(linuxSourceTree, "scripts/kconfig");
+        File parser = new File(getKconfigParserBase(), "scripts/kconfig/zconf.tab.o");
+        boolean upToDate = parser.isFile();
+        
+        if (upToDate) {
+            File[] sources = kconfigDir.listFiles((dir, name) -> name.equals("Makefile") || name.endsWith(".c")
+                    || name.endsWith(".h") || name.endsWith(".y") || name.endsWith(".l") || name.endsWith(".gperf"));
+            if (sources != null) {
+                long parserModified = parser.lastModified();
+                for (File source : sources) {
+                    if (source.lastModified() > parserModified) {
+                        LOGGER.logDebug2("Kconfig parser is older than ", source);
+                        upToDate = false;
+                        break;
                     }
-                } else {
-                    LOGGER.logWarning2("Could not detect any errors in ", makeFile.getAbsoluteFile());
                 }
             }
         }
+        
+        return upToDate;
+    }
+    
+    /**
+     * Executes make with the given targets on the Linux source tree. The {@link #setExtraMakeParameters(List) extra
+     * parameters} are inserted between 'make' and the targets.
+     * 
+     * @param report The report to record the processes and fixes in; <code>null</code> if not needed.
+     * @param targets The make targets to build.
+     * 
+     * @return <code>true</code> is succesful; <code>false</code> otherwise.
+     * 
+     * @throws IOException If executing make fails.
+     */
+    private boolean runMake(@Nullable ExtractionReport report, @NonNull String... targets) throws IOException {
+        List<@NonNull String> parameters = new ArrayList<>();
+        parameters.add("make");
+        parameters.addAll(extraMakeParameters);
+        if (readOnlySourceTree) {
+            // old Linux versions require that the output directory exists
+            File buildDir = getBuildDir();
+            buildDir.mkdirs();
+            parameters.add("O=" + buildDir.getAbsolutePath());
+        }
+        parameters.addAll(Arrays.asList(targets));
+        
+        if (dumpconfVersion == DumpconfVersion.LINUX && getSourceTreeAnalyzer().hasObsoleteMakeSyntax()) {
+            LOGGER.logInfo2("Makefile uses a deprecated syntax, fixing it before running make");
+            return runMakeWithFixedMakefile(parameters, report);
+        }
+        
+        ProcessBuilder processBuilder = createPrepareProcess(parameters, linuxSourceTree);
+        OutputMonitor monitor = new OutputMonitor();
+        if (dumpconfVersion == DumpconfVersion.LINUX) {
+            monitor.abortOn(OBSOLETE_MAKE_SYNTAX);
+        }
+        boolean success = executeProcess(processBuilder, "make", monitor, 0, null, report).isSuccess();
+        
+        // the analysis may miss variants of the obsolete syntax, so still check the output of make
+        if (!success && dumpconfVersion == DumpconfVersion.LINUX && monitor.hasSeen(OBSOLETE_MAKE_SYNTAX)) {
+            LOGGER.logInfo2("Linux preparation crashed since the Makefile uses a deprecated syntax, "
+                + "try to fix it.");
+            success = runMakeWithFixedMakefile(parameters, report);
+        }
 
         return success;
     }
     
+    /**
+     * Temporarily rewrites the obsolete syntax of old Linux Makefiles and executes make. The original Makefile is
+     * restored afterwards. For {@link #setReadOnlySourceTree(boolean) read-only source trees}, the rewritten Makefile
+     * is placed in a shadow of the source tree instead, and make runs there. The fix follows
+     * https://www.programmersought.com/article/88083080956/
+     * 
+     * @param parameters The command to execute.
+     * @param report The report to record the processes and fixes in; <code>null</code> if not needed.
+     * 
+     * @return <code>true</code> is succesful; <code>false</code> otherwise.
+     * 
+     * @throws IOException If rewriting the Makefile or executing make fails.
+     */
+    private boolean runMakeWithFixedMakefile(@NonNull List<@NonNull String> parameters,
+            @Nullable ExtractionReport report) throws IOException {
+        
+        File makeFile = new File(linuxSourceTree, "Makefile");
+        String content = new String(Files.readAllBytes(makeFile.toPath()));
+        String modifiedContent = content.replace("config %config:", "%config %config:");
+        modifiedContent = modifiedContent.replace("/ %/: prepare scripts FORCE", "%/: prepare scripts FORCE");
+        
+        if (content.equals(modifiedContent)) {
+            LOGGER.logWarning2("Could not detect any errors in ", makeFile.getAbsoluteFile());
+            return false;
+        }
+        
+        LOGGER.logDebug(("Rewritten Makefile:\n" + modifiedContent).split("\n"));
+        
+        boolean success;
+        if (readOnlySourceTree) {
+            // the shadow is kept, since the output directory of make refers to it
+            ShadowTree shadow = new ShadowTree(linuxSourceTree, new File(getWorkDir(), "make_shadow"));
+            shadow.override("Makefile", modifiedContent.getBytes());
+            success = executeProcess(createPrepareProcess(parameters, shadow.create()), "make", new OutputMonitor(),
+                    0, null, report).isSuccess();
+            if (report != null) {
+                report.addFix("makefile_rewrite", success);
+            }
+            return success;
+        }
+        
+        Files.write(makeFile.toPath(), modifiedContent.getBytes());
+        ProcessTreeTracker tracker = new ProcessTreeTracker();
+        UndoThread fileRevert = new UndoThread(tracker, undoTimeout) {
+            
+            @Override
+            public void revertOperation() {
+                try {
+                    Files.write(makeFile.toPath(), content.getBytes());
+                } catch (IOException e) {
+                    LOGGER.logException("Could not revert " + makeFile.getAbsolutePath(), e);
+                }
+            }
+        };
+        
+        // Run make on the rewritten Makefile and revert it afterwards
+        try {
+            success = executeProcess(createPrepareProcess(parameters, linuxSourceTree), "make", new OutputMonitor(),
+                    0, tracker, report).isSuccess();
+        } finally {
+            fileRevert.runAndJoin();
+        }
+        if (report != null) {
+            report.addFix("makefile_rewrite", success);
+        }
+        
+        return success;
+    }
+    
     /**
      * Creates a {@link ProcessBuilder} to prepare Linux, which is required to be able to compile dumpconf.
      * @param parameters The command to execute
+     * @param directory The directory to run make in: the source tree or a shadow of it.
      * @return The {@link ProcessBuilder} to create the process.
      */
-    private @NonNull ProcessBuilder createPrepareProcess(List<@NonNull String> parameters) {
+    private @NonNull ProcessBuilder createPrepareProcess(List<@NonNull String> parameters, @NonNull File directory) {
         ProcessBuilder processBuilder = new ProcessBuilder(parameters.toArray(new String[0]));
-        processBuilder.directory(linuxSourceTree);
+        processBuilder.directory(directory);
         
         return processBuilder;
     }
     
     /**
-     * Checks that all searches <tt>elements</tt> are entailed either in <tt>stdout</tt> or <tt>stderr</tt>.
-     * @param stdout The standard output of an executed process.
-     * @param stderr The error output of an executed process.
-     * @param elements The elements to search
-     * @return <tt>true</tt> if all elements where found or if elements was empty, <tt>false</tt> otherwise.
+     * Compiles dumpconf against the Linux tree. Compiled executables are cached in the resource directory, keyed by
+     * the Kconfig parser of the tree (<code>zconf.tab.o</code> and the Kconfig headers), <code>dumpconf.c</code>
+     * and the compile flag. gcc only runs if no executable for the same inputs was compiled before. If the
+     * {@link DumpconfVersion#LINUX} version could only be compiled with the {@link DumpconfVersion#BUSYBOX} flag, this
+     * is remembered, too, so that the failing compilation is not repeated.
+     * 
+     * @return The compiled dumpconf executable file. <code>null</code> if compilation was not
+     *          successful. The file belongs to the cache and must not be deleted by the caller.
+     * 
+     * @throws IOException If executing dumpconf fails.
      */
-    private boolean checkForOccurence(ByteArrayOutputStream stdout, ByteArrayOutputStream stderr, String... elements) {
-        String out = stdout.toString();
-        String err = stderr.toString();
-        boolean result = true;
-        if (null != elements && elements.length > 0) {
-            for (int i = 0; i < elements.length && result; i++) {
-                result = out.contains(elements[i]) || err.contains(elements[i]);
-            }
-        }
-        
-        return result;
+    public @Nullable File compileDumpconf() throws IOException {
+        return compileDumpconf(null);
     }
     
     /**
-     * Compiles dumpconf against the Linux tree.
+     * Compiles dumpconf against the Linux tree, like {@link #compileDumpconf()}, and records the executed processes
+     * and fixes in the given report.
+     * 
+     * @param report The report to record the processes and fixes in; <code>null</code> if not needed.
      * 
      * @return The compiled dumpconf executable file. <code>null</code> if compilation was not
-     *          successful.
+     *          successful. The file belongs to the cache and must not be deleted by the caller.
      * 
      * @throws IOException If executing dumpconf fails.
      */
-    public @Nullable File compileDumpconf() throws IOException {
+    public @Nullable File compileDumpconf(@Nullable ExtractionReport report) throws IOException {
         LOGGER.logDebug("compileDumpconf() called");
         
         // extract dumpconf.c to temporary file
@@ -193,30 +529,123 @@ public class KconfigReaderWrapper {
         if (!dumpconfSource.isFile()) {
             Util.extractJarResourceToFile("net/ssehub/kernel_haven/kconfigreader/res/dumpconf.c", dumpconfSource);
         }
-        File dumpconfExe = File.createTempFile("dumpconf", ".exe");
         
-        ProcessBuilder processBuilder = createCompilationProcess(dumpconfSource, dumpconfExe, dumpconfVersion);
-        ByteArrayOutputStream stdout = new ByteArrayOutputStream();
-        ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+        File cacheDir = new File(resourceDir, "dumpconf_cache");
+        cacheDir.mkdirs();
+        String inputKey = computeDumpconfInputKey(dumpconfSource);
         
-        boolean success = Util.executeProcess(processBuilder, "gcc", stdout, stderr, 0);
-        if (!success && dumpconfVersion == DumpconfVersion.LINUX) {
+        // a previous compilation may have shown that this Kconfig parser needs another dumpconf version
+        DumpconfVersion version = dumpconfVersion;
+        File fallbackMarker = new File(cacheDir, getDumpconfKey(inputKey, dumpconfVersion) + ".fallback");
+        if (fallbackMarker.isFile()) {
+            version = DumpconfVersion.valueOf(new String(Files.readAllBytes(fallbackMarker.toPath())).trim());
+            LOGGER.logDebug2("Previous compilation showed that dumpconf must be compiled for ", version);
+        } else if (version == DumpconfVersion.LINUX && getSourceTreeAnalyzer().hasObsoleteKconfigGrammar()) {
+            version = getSourceTreeAnalyzer().getDumpconfVersion(version);
+            LOGGER.logInfo2("Kconfig parser uses an old grammar, compiling dumpconf for ", version);
+        }
+        
+        File cachedExe = new File(cacheDir, getDumpconfKey(inputKey, version) + ".exe");
+        if (cachedExe.canExecute()) {
+            LOGGER.logDebug2("Using cached dumpconf executable ", cachedExe);
+            cachedExe.setLastModified(System.currentTimeMillis());
+            return cachedExe;
+        }
+        
+        File dumpconfExe = File.createTempFile("dumpconf", ".exe", cacheDir);
+        
+        ProcessBuilder processBuilder = createCompilationProcess(dumpconfSource, dumpconfExe, version);
+        OutputMonitor monitor = new OutputMonitor();
+        if (version == DumpconfVersion.LINUX) {
+            monitor.abortOn(OBSOLETE_KCONFIG_GRAMMAR_ENV, OBSOLETE_KCONFIG_GRAMMAR_LIST);
+        }
+        
+        boolean success = executeProcess(processBuilder, "gcc", monitor, 0, null, report).isSuccess();
+        if (version != dumpconfVersion && !fallbackMarker.isFile() && report != null) {
+            report.addFix("busybox_dumpconf", success);
+        }
+        if (!success && version == DumpconfVersion.LINUX) {
             // Old Linux versions may use an old Kconfig grammar, not supported by the the Linux version of dumpconf
-            if (checkForOccurence(stdout, stderr, OBSOLETE_KCONFIG_GRAMMAR_ENV, OBSOLETE_KCONFIG_GRAMMAR_LIST)) {
+            if (monitor.hasSeen(OBSOLETE_KCONFIG_GRAMMAR_ENV) && monitor.hasSeen(OBSOLETE_KCONFIG_GRAMMAR_LIST)) {
                 LOGGER.logInfo2("Dumpconf compilation crashed since the Kconfig uses an old syntax, "
                     + "try to fix it.");
                 
                 // The old grammar is still used by Busybox -> Try to use its Dumpconf version
-                processBuilder = createCompilationProcess(dumpconfSource, dumpconfExe, DumpconfVersion.BUSYBOX);
-                success = Util.executeProcess(processBuilder, "gcc");
+                version = DumpconfVersion.BUSYBOX;
+                processBuilder = createCompilationProcess(dumpconfSource, dumpconfExe, version);
+                success = executeProcess(processBuilder, "gcc", new OutputMonitor(), 0, null, report).isSuccess();
+                if (report != null) {
+                    report.addFix("busybox_dumpconf", success);
+                }
             }
         }
         
-        if (!success) {
+        File result = null;
+        if (success) {
+            result = new File(cacheDir, getDumpconfKey(inputKey, version) + ".exe");
+            Files.move(dumpconfExe.toPath(), result.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            
+            if (version != dumpconfVersion) {
+                Files.write(fallbackMarker.toPath(), version.name().getBytes());
+            }
+            
+            pruneDumpconfCache(cacheDir);
+            
+        } else {
             dumpconfExe.delete();
         }
 
-        return success ? dumpconfExe : null;
+        return result;
+    }
+    
+    /**
+     * Computes a digest of all inputs of the dumpconf compilation, except the compile flag.
+     * 
+     * @param dumpconfSource The dumpconf.c source file.
+     * 
+     * @return The digest as a hexadecimal string.
+     * 
+     * @throws IOException If reading the input files fails.
+     */
+    private @NonNull String computeDumpconfInputKey(@NonNull File dumpconfSource) throws IOException {
+        MessageDigest digest = HashUtil.createDigest();
+        File parserBase = getKconfigParserBase();
+        for (String input : DUMPCONF_INPUTS) {
+            HashUtil.updateWithFile(digest, input.endsWith(".o") ? parserBase : linuxSourceTree, input);
+        }
+        HashUtil.updateWithFile(digest, notNull(dumpconfSource.getParentFile()), dumpconfSource.getName());
+        return HashUtil.toHex(digest.digest());
+    }
+    
+    /**
+     * Computes the key of a cached dumpconf executable.
+     * 
+     * @param inputKey The digest of the inputs, see {@link #computeDumpconfInputKey(File)}.
+     * @param version The dumpconf version to compile for.
+     * 
+     * @return The key as a hexadecimal string.
+     */
+    private static @NonNull String getDumpconfKey(@NonNull String inputKey, @NonNull DumpconfVersion version) {
+        MessageDigest digest = HashUtil.createDigest();
+        HashUtil.update(digest, inputKey);
+        HashUtil.update(digest, "-D" + version.getCompileFlag());
+        return HashUtil.toHex(digest.digest());
+    }
+    
+    /**
+     * Removes the least recently used dumpconf executables, if more than {@link #MAX_CACHED_DUMPCONFS} are cached.
+     * 
+     * @param cacheDir The directory of the cached executables.
+     */
+    private static void pruneDumpconfCache(@NonNull File cacheDir) {
+        File[] executables = cacheDir.listFiles((dir, name) -> name.endsWith(".exe") && !name.startsWith("dumpconf"));
+        if (executables != null && executables.length > MAX_CACHED_DUMPCONFS) {
+            Arrays.sort(executables, (f1, f2) -> Long.compare(f1.lastModified(), f2.lastModified()));
+            for (int i = 0; i < executables.length - MAX_CACHED_DUMPCONFS; i++) {
+                executables[i].delete();
+            }
+        }
     }
 
     /**
@@ -226,20 +655,29 @@ public class KconfigReaderWrapper {
      * @param dumpconfVersion The version (preprocessor definitions) to sue for the compilation.
      * 
      * @return The {@link ProcessBuilder} to create the process.
+     * 
+     * @throws IOException If creating the working directory fails.
      */
     private @NonNull ProcessBuilder createCompilationProcess(File dumpconfSource, File dumpconfExe,
-        DumpconfVersion dumpconfVersion) {
+        DumpconfVersion dumpconfVersion) throws IOException {
         
-        ProcessBuilder processBuilder = new ProcessBuilder("gcc",
-            "-D" + dumpconfVersion.getCompileFlag(),
-            "-fPIC",
-            "-I", linuxSourceTree.getAbsolutePath() + "/scripts/kconfig/",
-            "-o", dumpconfExe.getAbsolutePath(),
-            linuxSourceTree.getAbsolutePath() + "/scripts/kconfig/zconf.tab.o",
-            dumpconfSource.getAbsolutePath()
-        );
+        List<@NonNull String> command = new ArrayList<>();
+        command.add("gcc");
+        command.add("-D" + dumpconfVersion.getCompileFlag());
+        command.add("-fPIC");
+        if (readOnlySourceTree) {
+            // generated headers are in the output directory of make
+            command.add("-I");
+            command.add(getBuildDir().getAbsolutePath() + "/scripts/kconfig/");
+        }
+        command.add("-I");
+        command.add(linuxSourceTree.getAbsolutePath() + "/scripts/kconfig/");
+        command.add("-o");
+        command.add(dumpconfExe.getAbsolutePath());
+        command.add(getKconfigParserBase().getAbsolutePath() + "/scripts/kconfig/zconf.tab.o");
+        command.add(dumpconfSource.getAbsolutePath());
         
-        return processBuilder;
+        return new ProcessBuilder(command);
     }
     
     /**
@@ -257,93 +695,523 @@ public class KconfigReaderWrapper {
     public @Nullable File runKconfigReader(File dumpconfExe, String arch, long timeout)
         throws IOException {
         
+        return runKconfigReader(dumpconfExe, arch, timeout, null);
+    }
+    
+    /**
+     * Runs KconfigReader on the Linux tree, like {@link #runKconfigReader(File, String, long)}, and records the
+     * executed processes and fixes in the given report.
+     * 
+     * @param dumpconfExe The compiled dumpconf executable file. Must not be <code>null</code>.
+     * @param arch The architecture to analyze. Must not be <code>null</code>.
+     * @param timeout An optional timeout (in ms) for the process to stop (0 = no timeout).
+     * @param report The report to record the processes and fixes in; <code>null</code> if not needed.
+     * 
+     * @return The base path to the output files of KconfigReader. Append ".features", ".dimacs",
+     *      etc. for the different output files. <code>null</code> if not successful.
+     * 
+     * @throws IOException If executing KconfigReader fails.
+     */
+    public @Nullable File runKconfigReader(File dumpconfExe, String arch, long timeout,
+            @Nullable ExtractionReport report) throws IOException {
+        
         LOGGER.logDebug("runKconfigReader() called");
         
-        // extract jar to run kconfigreader
+        File kconfigReaderJar = getKconfigReaderJar();
+        
+        File outputBase = File.createTempFile("kconfigreader_output", "");
+        outputBase.delete();
+        
+        OutputMonitor monitor = new OutputMonitor();
+        if (dumpconfVersion == DumpconfVersion.LINUX) {
+            monitor.abortOn(MISSING_KCONFIG_FILE);
+        }
+        
+        boolean success = false;
+        boolean needsArchKconfig = dumpconfVersion == DumpconfVersion.LINUX
+                && getSourceTreeAnalyzer().needsArchKconfig(arch);
+        if (needsArchKconfig) {
+            LOGGER.logInfo2("There is no Kconfig file in root directory, "
+                + "copying Kconfig file from arch directory to root.");
+        } else {
+            sourceTreeLock.readLock().lock();
+            try {
+                success = executeKconfigReader(dumpconfExe, arch, kconfigReaderJar, linuxSourceTree, outputBase,
+                        null, monitor, timeout, report);
+            } finally {
+                sourceTreeLock.readLock().unlock();
+            }
+        }
+        
+        if (!success && dumpconfVersion == DumpconfVersion.LINUX) {
+            // Old Linux versions may not have a top level Kconfig file, check if this was the case
+            if (needsArchKconfig || monitor.hasSeen(MISSING_KCONFIG_FILE)) {
+                if (!needsArchKconfig) {
+                    LOGGER.logInfo2("KconfigReader crashed since there is no Kconfig file in root directory, "
+                        + "copying Kconfig file from arch directory to root.");
+                }
+                // a shadow of a read-only tree does not modify the source tree, so concurrent runs are fine
+                Lock lock = readOnlySourceTree ? sourceTreeLock.readLock() : sourceTreeLock.writeLock();
+                lock.lock();
+                try {
+                    success = runWithArchKconfig(dumpconfExe, arch, kconfigReaderJar, outputBase, timeout, report);
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+        
+        
+        if (!success) {
+            KconfigReaderExtractor.deleteAllFiles(outputBase);
+        }
+        
+        return success ? outputBase : null;
+    }
+    
+    /**
+     * Runs only dumpconf on the Linux tree, without KconfigReader. This is much faster than
+     * {@link #runKconfigReader(File, String, long, ExtractionReport)}, but only produces the RSF file; no
+     * constraint model is calculated. Old Linux versions without a top level Kconfig file are parsed starting at the
+     * Kconfig file of the architecture, so the source tree is never modified.
+     *
+     * @param dumpconfExe The compiled dumpconf executable file. Must not be <code>null</code>.
+     * @param arch The architecture to analyze. Must not be <code>null</code>.
+     * @param timeout An optional timeout (in ms) for the process to stop (0 = no timeout).
+     * @param report The report to record the process in; <code>null</code> if not needed.
+     *
+     * @return The base path to the output file of dumpconf. Append ".rsf" for the RSF file (the other output files
+     *      of KconfigReader are not created). <code>null</code> if not successful.
+     *
+     * @throws IOException If executing dumpconf fails.
+     */
+    public @Nullable File runDumpconf(@NonNull File dumpconfExe, @NonNull String arch, long timeout,
+            @Nullable ExtractionReport report) throws IOException {
+        
+        LOGGER.logDebug("runDumpconf() called");
+        
+        File outputBase = File.createTempFile("dumpconf_output", "");
+        outputBase.delete();
+        File rsfFile = new File(outputBase.getAbsolutePath() + ".rsf");
+        
+        boolean success;
+        sourceTreeLock.readLock().lock();
+        try {
+            // Kconfig resolves source statements relative to the working directory, so the root Kconfig file can be
+            // passed relative to the source tree, too
+            String kconfig = "Kconfig";
+            if (dumpconfVersion == DumpconfVersion.LINUX && getSourceTreeAnalyzer().needsArchKconfig(arch)) {
+                LOGGER.logInfo2("There is no Kconfig file in root directory, using the Kconfig file of the "
+                        + "arch directory as root");
+                kconfig = "arch/" + arch + "/Kconfig";
+            }
+            
+            ProcessBuilder processBuilder = new ProcessBuilder(dumpconfExe.getAbsolutePath(), kconfig);
+            processBuilder.directory(linuxSourceTree);
+            processBuilder.environment().put("ARCH", arch);
+            processBuilder.environment().put("SRCARCH", arch);
+            processBuilder.redirectOutput(rsfFile);
+            
+            success = executeProcess(processBuilder, "dumpconf", new OutputMonitor(), timeout, null, report)
+                    .isSuccess();
+        
+        } finally {
+            sourceTreeLock.readLock().unlock();
+        }
+        
+        if (!success) {
+            KconfigReaderExtractor.deleteAllFiles(outputBase);
+        }
+        
+        return success ? outputBase : null;
+    }
+    
+    /**
+     * Extracts the bundled KconfigReader jar to the resource directory, if not already done.
+     * 
+     * @return The KconfigReader jar in the resource directory.
+     * 
+     * @throws IOException If extracting the jar fails.
+     */
+    private synchronized @NonNull File getKconfigReaderJar() throws IOException {
         File kconfigReaderJar = new File(resourceDir, "kconfigreader.jar");
         if (!kconfigReaderJar.isFile()) {
             Util.extractJarResourceToFile("net/ssehub/kernel_haven/kconfigreader/res/kconfigreader.jar",
                     kconfigReaderJar);
         }
+        return kconfigReaderJar;
+    }
+    
+    /**
+     * Runs KconfigReader after temporarily copying the Kconfig file of the architecture to the root of the
+     * source tree. Old Linux versions do not have a top level Kconfig file. Must only be called while holding the
+     * write lock of {@link #sourceTreeLock}. For {@link #setReadOnlySourceTree(boolean) read-only source trees}, the
+     * Kconfig file is copied to a private shadow of the tree instead, which only requires the read lock.
+     * 
+     * @param dumpconfExe The compiled dumpconf executable file.
+     * @param arch The architecture to analyze.
+     * @param kconfigReaderJar The KconfigReader executable to use.
+     * @param outputBase The destination of the produced output.
+     * @param timeout An optional timeout (in ms) for the process to stop (0 = no timeout).
+     * @param report The report to record the processes and fixes in; <code>null</code> if not needed.
+     * 
+     * @return Whether the KconfigReader run was successful.
+     * 
+     * @throws IOException If executing KconfigReader fails.
+     */
+    private boolean runWithArchKconfig(File dumpconfExe, String arch, File kconfigReaderJar, File outputBase,
+            long timeout, @Nullable ExtractionReport report) throws IOException {
         
-        File outputBase = File.createTempFile("kconfigreader_output", "");
-        outputBase.delete();
+        boolean success = false;
         
-        ProcessBuilder processBuilder = createKcReaderProcess(dumpconfExe, arch, kconfigReaderJar, outputBase);       
-        ByteArrayOutputStream stdout = new ByteArrayOutputStream();
-        ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+        File kconfigSrc = new File(linuxSourceTree, "arch/" + arch + "/Kconfig");
+        if (readOnlySourceTree) {
+            if (!kconfigSrc.isFile()) {
+                LOGGER.logDebug2("Did not copy ", kconfigSrc.getAbsolutePath());
+                return false;
+            }
+            
+            ShadowTree shadow = new ShadowTree(linuxSourceTree,
+                    Files.createTempDirectory(getWorkDir().toPath(), "kconfig_" + arch).toFile());
+            shadow.override("Kconfig", Files.readAllBytes(kconfigSrc.toPath()));
+            try {
+                success = executeKconfigReader(dumpconfExe, arch, kconfigReaderJar, shadow.create(), outputBase,
+                        null, new OutputMonitor(), timeout, report);
+            } finally {
+                shadow.delete();
+            }
+            if (report != null) {
+                report.addFix("arch_kconfig_copy", success);
+            }
+            return success;
+        }
         
-        boolean success = Util.executeProcess(processBuilder, "KconfigReader", stdout, stderr, timeout);
+        // Copy Kconfig file from arch folder and try again
+        File kconfigTrg = new File(linuxSourceTree, "Kconfig");
+        boolean copied = false;
+        if (kconfigSrc.exists() && !kconfigTrg.exists()) {
+            try {
+                Files.copy(kconfigSrc.toPath(), kconfigTrg.toPath());
+            } catch (IOException e) {
+                LOGGER.logException("Could not copy " + kconfigSrc.getAbsolutePath() + " to " + kconfigTrg, e);
+            }
+            
+            copied = kconfigTrg.exists();
+        }
         
-        if (!success && dumpconfVersion == DumpconfVersion.LINUX) {
-            // Old Linux versions may not have a top level Kconfig file, check if this was the case
-            if (checkForOccurence(stdout, stderr, MISSING_KCONFIG_FILE)) {
-                LOGGER.logInfo2("KconfigReader crashed since there is no Kconfig file in root directory, "
-                    + "copying Kconfig file from arch directory to root.");
+        if (copied) {
+            LOGGER.logDebug2("Created ", kconfigTrg.getAbsolutePath());
+            ProcessTreeTracker tracker = new ProcessTreeTracker();
+            UndoThread fileRevert = new UndoThread(tracker, undoTimeout) {
                 
-                // Copy Kconfig file from arch folder and try again
-                File kconfigSrc = new File(linuxSourceTree, "arch/" + arch + "/Kconfig");
-                File kconfigTrg = new File(linuxSourceTree, "Kconfig");
-                boolean copied = false;
-                if (kconfigSrc.exists() && !kconfigTrg.exists()) {
-                    try {
-                        Files.copy(kconfigSrc.toPath(), kconfigTrg.toPath());
-                    } catch (IOException e) {
-                        LOGGER.logException("Could not copy " + kconfigSrc.getAbsolutePath() + " to " + kconfigTrg, e);
+                @Override
+                public void revertOperation() {
+                    kconfigTrg.delete();
+                }
+            };
+            
+            // Try again
+            try {
+                success = executeKconfigReader(dumpconfExe, arch, kconfigReaderJar, linuxSourceTree, outputBase,
+                        tracker, new OutputMonitor(), timeout, report);
+            } finally {
+                fileRevert.runAndJoin();
+            }
+            if (report != null) {
+                report.addFix("arch_kconfig_copy", success);
+            }
+        } else {
+            LOGGER.logDebug2("Did not copy ", kconfigSrc.getAbsolutePath());
+        }
+
+        return success;
+    }
+
+    /**
+     * Executes KconfigReader, either in a {@link #setPersistentJvm(boolean) persistent JVM} or in a new JVM. The heap
+     * of the JVM is sized by the {@link HeapSizer}, unless a fixed {@link #setHeapSize(long) heap size} is set; if
+     * KconfigReader runs out of memory, it is retried with a larger heap (in a new worker, if a persistent JVM is
+     * used). The peak memory usage of successful runs is recorded for later runs. When running adaptively, a run that
+     * prints an {@link OutOfMemoryError} is aborted right away, instead of waiting for the JVM to exit.
+     * 
+     * @param dumpconfExe The pre-compiled dumpconf to be used ({@link #compileDumpconf()}).
+     * @param arch The architecture to extract.
+     * @param kconfigReaderJar The KconfigReader executable to use.
+     * @param sourceTree The source tree to run on: the source tree itself or a shadow of it.
+     * @param outputBase The destination folder of the produced output
+     * @param tracker An optional tracker to tag the started process with. Not used for a persistent JVM, which has a
+     *      tracker of its own.
+     * @param monitor The monitor for the output of KconfigReader.
+     * @param timeout An optional timeout (in ms) for KconfigReader to stop (0 = no timeout).
+     * @param report The report to record the processes and fixes in; <code>null</code> if not needed.
+     * 
+     * @return Whether KconfigReader finished successfully.
+     * 
+     * @throws IOException If executing KconfigReader fails.
+     */
+    private boolean executeKconfigReader(File dumpconfExe, String arch, File kconfigReaderJar, File sourceTree,
+            File outputBase, @Nullable ProcessTreeTracker tracker, @NonNull OutputMonitor monitor, long timeout,
+            @Nullable ExtractionReport report) throws IOException {
+        
+        HeapSizer heapSizer = new HeapSizer(resourceDir, linuxSourceTree, concurrentRuns);
+        long heap = heapSize > 0 ? heapSize : heapSizer.getInitialHeap(arch);
+        if (heapSize <= 0) {
+            monitor.abortOn(HeapSizer.OUT_OF_MEMORY);
+        }
+        
+        // a worker runs several architectures, so dumpconf is called through a script that sets ARCH and SRCARCH
+        File dumpconfScript = persistentJvm ? createDumpconfScript(dumpconfExe, arch) : null;
+        boolean success;
+        try {
+            boolean retry;
+            do {
+                ProcessRecord process;
+                if (dumpconfScript != null) {
+                    KconfigReaderWorker worker = KconfigReaderWorker.acquire(kconfigReaderJar, heap);
+                    // an idle worker may have a larger heap, which is then the one to record or to increase
+                    heap = worker.getHeap();
+                    process = worker.run(createKcReaderArguments(dumpconfScript, sourceTree, outputBase), monitor,
+                            timeout);
+                    LOGGER.logDebug(("KconfigReader output:\n" + monitor.getOutput()).split("\n"));
+                    if (report != null) {
+                        report.addProcess(process);
                     }
-                    
-                    copied = kconfigTrg.exists();
+                } else {
+                    ProcessBuilder processBuilder = createKcReaderProcess(dumpconfExe, arch, kconfigReaderJar,
+                            sourceTree, outputBase, heap);
+                    process = executeProcess(processBuilder, "KconfigReader", monitor, timeout, tracker, report);
+                }
+                success = process.isSuccess();
+                long peak = Math.max(process.getPeakResidentSetSize(), 0);
+                LOGGER.logDebug2("KconfigReader peak memory usage: ", peak / (1024 * 1024), " MiB with a heap of ",
+                        heap, " MiB");
+                if (success && heapSize <= 0) {
+                    heapSizer.recordPeak(arch, peak, heap);
                 }
                 
-                if (copied) {
-                    LOGGER.logDebug2("Created ", kconfigTrg.getAbsolutePath());
-                    UndoThread fileRevert = new UndoThread(120000) {
-                        
-                        @Override
-                        public void revertOperation() {
-                            kconfigTrg.delete();
+                retry = false;
+                if (!success && heapSize <= 0 && monitor.hasSeen(HeapSizer.OUT_OF_MEMORY)) {
+                    long newHeap = heapSizer.getRetryHeap(heap);
+                    if (newHeap > 0) {
+                        LOGGER.logInfo2("KconfigReader ran out of memory with ", heap, " MiB heap, retrying with ",
+                                newHeap, " MiB");
+                        if (report != null) {
+                            report.addFix("heap_retry", true);
                         }
-                    };
-                    
-                    // Try again
-                    try {
-                        processBuilder = createKcReaderProcess(dumpconfExe, arch, kconfigReaderJar, outputBase);
-                        success = Util.executeProcess(processBuilder, "KconfigReader", timeout);
-                    } finally {
-                        fileRevert.runAndJoin();
+                        heap = newHeap;
+                        monitor.reset();
+                        KconfigReaderExtractor.deleteAllFiles(outputBase);
+                        retry = true;
+                    } else {
+                        LOGGER.logWarning2("KconfigReader ran out of memory with ", heap, " MiB heap, which is the "
+                                + "maximum that this host can provide");
                     }
+                }
+            } while (retry);
+            
+        } finally {
+            if (dumpconfScript != null) {
+                dumpconfScript.delete();
+            }
+        }
+        
+        return success;
+    }
+    
+    /**
+     * Executes a process and records its wall time, CPU time and peak memory usage in the given report. The CPU
+     * time and memory usage include all descendants of the process and are sampled from <code>/proc</code>; they
+     * are -1 if this is not {@link ProcessTreeTracker#isSupported() supported}.
+     * <p>
+     * The output of the process is streamed through the given {@link OutputMonitor}. If the monitor detects a known
+     * failure signature, the process and all of its descendants are killed right away. The retained output is
+     * logged afterwards.
+     * </p>
+     * 
+     * @param processBuilder The process to execute.
+     * @param name The name of the process, for logging and the report.
+     * @param monitor The monitor for the output of the process.
+     * @param timeout An optional timeout (in ms) for the process to stop (0 = no timeout).
+     * @param tracker An optional tracker to tag the started process with.
+     * @param report The report to record the process in; <code>null</code> if not needed.
+     * 
+     * @return The resource usage of the process. It is not successful if the process was aborted or timed out.
+     * 
+     * @throws IOException If executing the process fails.
+     */
+    private static @NonNull ProcessRecord executeProcess(@NonNull ProcessBuilder processBuilder, @NonNull String name,
+            @NonNull OutputMonitor monitor, long timeout, @Nullable ProcessTreeTracker tracker,
+            @Nullable ExtractionReport report) throws IOException {
+        
+        ProcessTreeTracker processTracker = tracker != null ? tracker : new ProcessTreeTracker();
+        processTracker.tag(processBuilder);
+        
+        ProcessTreeTracker.Sampler sampler = new ProcessTreeTracker.Sampler(processTracker);
+        long start = ExtractionReport.now();
+        boolean success = false;
+        try {
+            Process process = processBuilder.start();
+            monitor.setAbortHandler(() -> kill(process, processTracker));
+            
+            Thread stdoutPump = pump(process.getInputStream(), monitor.getStdout(), name);
+            Thread stderrPump = pump(process.getErrorStream(), monitor.getStderr(), name);
+            try {
+                boolean finished;
+                if (timeout > 0) {
+                    finished = process.waitFor(timeout, TimeUnit.MILLISECONDS);
                 } else {
-                    LOGGER.logDebug2("Did not copy ", kconfigSrc.getAbsolutePath());
+                    process.waitFor();
+                    finished = true;
                 }
+                
+                if (!finished) {
+                    LOGGER.logWarning(name + " did not finish within " + timeout + " ms; killing it");
+                    kill(process, processTracker);
+                    process.waitFor();
+                }
+                stdoutPump.join();
+                stderrPump.join();
+                
+                success = finished && !monitor.isAborted() && process.exitValue() == 0;
+                
+            } catch (InterruptedException e) {
+                kill(process, processTracker);
+                throw new IOException("Interrupted while waiting for " + name, e);
             }
+            
+        } finally {
+            monitor.setAbortHandler(null);
+            monitor.finish();
+            sampler.stopSampling();
         }
+        long wallTime = (ExtractionReport.now() - start) / 1000000;
         
+        LOGGER.logDebug((name + " output:\n" + monitor.getOutput()).split("\n"));
         
-        if (!success) {
-            KconfigReaderExtractor.deleteAllFiles(outputBase);
+        boolean sampled = ProcessTreeTracker.isSupported();
+        ProcessRecord result = new ProcessRecord(name, notNull(processBuilder.command()), success, wallTime,
+                sampled ? sampler.getCpuTime() : -1, sampled ? sampler.getPeakResidentSetSize() : -1);
+        if (report != null) {
+            report.addProcess(result);
+        }
+        return result;
+    }
+    
+    /**
+     * Starts a thread that copies the given output of a process to the given stream, until the output is closed.
+     * 
+     * @param in The output of the process.
+     * @param out The stream to copy the output to.
+     * @param name The name of the process.
+     * 
+     * @return The started thread.
+     */
+    private static @NonNull Thread pump(@NonNull InputStream in, @NonNull OutputStream out, @NonNull String name) {
+        Thread thread = new Thread(() -> {
+            byte[] buffer = new byte[8192];
+            try {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+            } catch (IOException e) {
+                // the process was killed
+            }
+        }, name + " output");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+    
+    /**
+     * Kills a process and all of its descendants.
+     * 
+     * @param process The process to kill.
+     * @param tracker The tracker that the process is tagged with.
+     */
+    private static void kill(@NonNull Process process, @NonNull ProcessTreeTracker tracker) {
+        if (ProcessTreeTracker.isSupported()) {
+            try {
+                tracker.kill();
+            } catch (IOException e) {
+                LOGGER.logException("Could not kill the descendants of the process", e);
+            }
+        }
+        process.destroyForcibly();
+    }
+    
+    /**
+     * Creates a shell script that executes dumpconf with the <code>ARCH</code> and <code>SRCARCH</code> environment
+     * variables set to the given architecture, like
+     * {@link #createKcReaderProcess(File, String, File, File, File, long)} does for the KconfigReader process.
+     * 
+     * @param dumpconfExe The compiled dumpconf executable.
+     * @param arch The architecture to set.
+     * 
+     * @return The executable script. Should be deleted after use.
+     * 
+     * @throws IOException If creating the script fails.
+     */
+    private @NonNull File createDumpconfScript(@NonNull File dumpconfExe, @NonNull String arch) throws IOException {
+        File script = File.createTempFile("dumpconf_" + arch, ".sh", resourceDir);
+        String content = "#!/bin/sh\n"
+                + "ARCH=" + shellQuote(arch) + " SRCARCH=" + shellQuote(arch)
+                + " exec " + shellQuote(dumpconfExe.getAbsolutePath()) + " \"$@\"\n";
+        Files.write(script.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        if (!script.setExecutable(true)) {
+            script.delete();
+            throw new IOException("Can't make " + script + " executable");
         }
+        return script;
+    }
+    
+    /**
+     * Quotes the given string for a POSIX shell.
+     * 
+     * @param value The string to quote.
+     * @return The quoted string.
+     */
+    private static @NonNull String shellQuote(@NonNull String value) {
+        return "'" + value.replace("'", "'\\''") + "'";
+    }
+    
+    /**
+     * Creates the command line arguments for KconfigReader (without the java command and class path).
+     * 
+     * @param dumpconf The dumpconf executable to be used.
+     * @param sourceTree The source tree to run on: the source tree itself or a shadow of it.
+     * @param outputBase The destination folder of the produced output
+     * 
+     * @return The arguments for the main class of KconfigReader.
+     */
+    private @NonNull List<@NonNull String> createKcReaderArguments(@NonNull File dumpconf, @NonNull File sourceTree,
+            @NonNull File outputBase) {
         
-        return success ? outputBase : null;
+        return Arrays.asList(
+            "--writeDimacs",
+            "--fast",
+            "--dumpconf", dumpconf.getAbsolutePath(),
+            sourceTree.getAbsolutePath() + "/Kconfig",
+            outputBase.getAbsolutePath());
     }
-
+    
     /**
      * Creates a {@link ProcessBuilder} to execute KconfigReader.
      * @param dumpconfExe The pre-compiled dumpconf to be used ({@link #compileDumpconf()}).
      * @param arch The architecture to extract.
      * @param kconfigReaderJar The KconfigReader executable to use.
+     * @param sourceTree The source tree to run on: the source tree itself or a shadow of it.
      * @param outputBase The destination folder of the produced output
+     * @param heap The maximum heap size for the JVM in MiB.
      * @return The {@link ProcessBuilder} to create the process.
      */
     private @NonNull ProcessBuilder createKcReaderProcess(File dumpconfExe, String arch, File kconfigReaderJar,
-        File outputBase) {
+        File sourceTree, File outputBase, long heap) {
         
-        ProcessBuilder processBuilder = new ProcessBuilder("java", "-Xmx2G", "-cp",
-            kconfigReaderJar.getAbsolutePath(), "de.fosd.typechef.kconfig.KConfigReader",
-            "--writeDimacs",
-            "--fast",
-            "--dumpconf", dumpconfExe.getAbsolutePath(),
-            linuxSourceTree.getAbsolutePath() + "/Kconfig",
-            outputBase.getAbsolutePath());
+        List<@NonNull String> command = new ArrayList<>(Arrays.asList("java", "-Xmx" + heap + "m", "-cp",
+            kconfigReaderJar.getAbsolutePath(), "de.fosd.typechef.kconfig.KConfigReader"));
+        command.addAll(createKcReaderArguments(dumpconfExe, sourceTree, outputBase));
+        ProcessBuilder processBuilder = new ProcessBuilder(command);
         
         processBuilder.environment().put("ARCH", arch);
         processBuilder.environment().put("SRCARCH", arch);
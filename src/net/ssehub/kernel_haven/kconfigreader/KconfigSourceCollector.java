@@ -0,0 +1,154 @@
+/*
+ * Copyright 2020 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kconfigreader;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * Collects all Kconfig files that are reachable from the root Kconfig file of a source tree by following the
+ * <code>source</code> statements. The paths are relative to the source tree; the environment variables
+ * <code>ARCH</code> and <code>SRCARCH</code> are replaced by the analyzed architecture, as Kconfig does.
+ *
+ * @author Adam
+ */
+public class KconfigSourceCollector {
+
+    /**
+     * Matches <code>source</code>, <code>rsource</code>, <code>osource</code> and <code>orsource</code> statements.
+     * Group 1 is the keyword, group 2 the (optionally quoted) path.
+     */
+    private static final Pattern SOURCE_PATTERN
+            = Pattern.compile("^\\s*(o?r?source)\\s+(?:\"([^\"]*)\"|(\\S+))");
+
+    private static final Pattern VARIABLE_PATTERN
+            = Pattern.compile("\\$(?:\\((ARCH|SRCARCH)\\)|\\{(ARCH|SRCARCH)\\}|(ARCH|SRCARCH)(?![A-Za-z0-9_]))");
+
+    private @NonNull File sourceTree;
+
+    private @NonNull String arch;
+
+    /**
+     * Creates a collector for the given source tree.
+     *
+     * @param sourceTree The root of the source tree.
+     * @param arch The architecture to analyze; this is used for <code>$ARCH</code> and <code>$SRCARCH</code>.
+     */
+    public KconfigSourceCollector(@NonNull File sourceTree, @NonNull String arch) {
+        this.sourceTree = sourceTree;
+        this.arch = arch;
+    }
+
+    /**
+     * Returns the path of the root Kconfig file, relative to the source tree. Old Linux versions have no top level
+     * Kconfig file; for these, the Kconfig file of the architecture is the root (see
+     * {@link KconfigReaderWrapper#runKconfigReader(File, String, long)}).
+     *
+     * @return The relative path of the root Kconfig file.
+     */
+    public @NonNull String getRootKconfig() {
+        String result = "Kconfig";
+        if (!new File(sourceTree, result).isFile()) {
+            result = "arch/" + arch + "/Kconfig";
+        }
+        return result;
+    }
+
+    /**
+     * Collects all Kconfig files reachable from the root Kconfig file. Paths that are referenced by
+     * <code>source</code> statements but do not exist are contained in the result, too, since creating them would
+     * change the variability model.
+     *
+     * @return The paths of all reachable Kconfig files, relative to the source tree, in sorted order.
+     *
+     * @throws IOException If reading a Kconfig file fails.
+     */
+    public @NonNull Set<@NonNull String> collect() throws IOException {
+        Set<@NonNull String> result = new TreeSet<>();
+        Deque<@NonNull String> toVisit = new ArrayDeque<>();
+
+        String root = getRootKconfig();
+        result.add(root);
+        toVisit.add(root);
+
+        while (!toVisit.isEmpty()) {
+            String path = toVisit.poll();
+            File file = new File(sourceTree, path);
+            if (!file.isFile()) {
+                continue;
+            }
+
+            try (BufferedReader in = new BufferedReader(
+                    new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+
+                String line;
+                while ((line = in.readLine()) != null) {
+                    String sourced = getSourcedPath(line, path);
+                    if (sourced != null && result.add(sourced)) {
+                        toVisit.add(sourced);
+                    }
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Parses a <code>source</code> statement.
+     *
+     * @param line The line of the Kconfig file.
+     * @param currentFile The path of the Kconfig file that contains the line, relative to the source tree.
+     *
+     * @return The sourced path relative to the source tree, or <code>null</code> if the line is no
+     *      <code>source</code> statement.
+     */
+    @Nullable String getSourcedPath(@NonNull String line, @NonNull String currentFile) {
+        Matcher m = SOURCE_PATTERN.matcher(line);
+        if (!m.find()) {
+            return null;
+        }
+
+        String path = m.group(2) != null ? m.group(2) : m.group(3);
+        path = VARIABLE_PATTERN.matcher(path).replaceAll(Matcher.quoteReplacement(arch));
+
+        String keyword = m.group(1);
+        if (keyword.equals("rsource") || keyword.equals("orsource")) {
+            // rsource and orsource are relative to the directory of the current file
+            int lastSlash = currentFile.lastIndexOf('/');
+            if (lastSlash != -1) {
+                path = currentFile.substring(0, lastSlash + 1) + path;
+            }
+        }
+
+        return new File(path).toPath().normalize().toString().replace(File.separatorChar, '/');
+    }
+
+}
@@ -0,0 +1,365 @@
+/*
+ * Copyright 2020 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kconfigreader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.ssehub.kernel_haven.kconfigreader.KconfigReaderExtractor.DumpconfVersion;
+import net.ssehub.kernel_haven.util.FormatException;
+import net.ssehub.kernel_haven.util.Logger;
+import net.ssehub.kernel_haven.util.Util;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+import net.ssehub.kernel_haven.variability_model.JsonVariabilityModelCache;
+import net.ssehub.kernel_haven.variability_model.VariabilityModel;
+import net.ssehub.kernel_haven.variability_model.VariabilityModelDescriptor;
+import net.ssehub.kernel_haven.variability_model.VariabilityModelDescriptor.Attribute;
+
+/**
+ * A persistent, content-addressed cache of extracted {@link VariabilityModel}s. The key of an entry is a digest of
+ * all inputs that influence the result of KconfigReader (see
+ * {@link #computeKey(File, String, DumpconfVersion, List)}). Each entry is a directory containing the
+ * {@link VariabilityModel} (as written by {@link JsonVariabilityModelCache}) and its DIMACS file. If the cache grows
+ * larger than its maximum size, the least recently used entries are removed.
+ *
+ * @author Adam
+ */
+public class ModelCache {
+
+    private static final Logger LOGGER = Logger.get();
+
+    /**
+     * Increase this, if the format of the entries or the computation of the keys changes.
+     */
+    private static final @NonNull String FORMAT_VERSION = "1";
+
+    private static final @NonNull String DIMACS_FILE = "model.dimacs";
+
+    private static final @NonNull String RESOURCE_PACKAGE = "net/ssehub/kernel_haven/kconfigreader/res/";
+
+    /**
+     * Files in <code>scripts/kconfig</code> that are generated by <code>make</code>. These are not hashed, since
+     * they do not exist before the first extraction.
+     */
+    private static final @NonNull Set<@NonNull String> GENERATED_KCONFIG_FILES = new HashSet<>(Arrays.asList(
+            "zconf.tab.c", "zconf.tab.h", "zconf.hash.c", "zconf.lex.c", "lex.zconf.c", "lkc_defs.h",
+            "parser.tab.c", "parser.tab.h", "lexer.lex.c"));
+
+    /**
+     * Digests of the bundled resources; these do not change while running.
+     */
+    private static final @NonNull Map<@NonNull String, byte[]> RESOURCE_DIGESTS = new HashMap<>();
+
+    private @NonNull File cacheDir;
+
+    private long maxSize;
+
+    /**
+     * Creates a model cache.
+     *
+     * @param cacheDir The directory to store the entries in. Will be created if it does not exist.
+     * @param maxSize The maximum size of all entries in bytes.
+     */
+    public ModelCache(@NonNull File cacheDir, long maxSize) {
+        this.cacheDir = cacheDir;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Computes the key for the cache entry of the given extraction. The key is a digest of the content of all Kconfig
+     * files reachable from the root Kconfig file (see {@link KconfigSourceCollector}), the sources of the Kconfig
+     * parser in <code>scripts/kconfig</code>, the architecture, the dumpconf version, the extra make parameters and
+     * the bundled <code>dumpconf.c</code> and <code>kconfigreader.jar</code>.
+     *
+     * @param sourceTree The source tree to extract.
+     * @param arch The architecture to extract.
+     * @param dumpconfVersion The dumpconf version used for the extraction.
+     * @param extraMakeParameters The extra parameters passed to make.
+     *
+     * @return The key as a hexadecimal string.
+     *
+     * @throws IOException If reading the input files fails.
+     */
+    public static @NonNull String computeKey(@NonNull File sourceTree, @NonNull String arch,
+            @NonNull DumpconfVersion dumpconfVersion, @NonNull List<@NonNull String> extraMakeParameters)
+            throws IOException {
+        return computeKey(sourceTree, arch, dumpconfVersion, extraMakeParameters, false);
+    }
+
+    /**
+     * Computes the key for the cache entry of the given extraction, like
+     * {@link #computeKey(File, String, DumpconfVersion, List)}. If the constraint model is encoded by the
+     * {@link KconfigCnfEncoder}, the version of the encoder is part of the key instead of
+     * <code>kconfigreader.jar</code>.
+     *
+     * @param sourceTree The source tree to extract.
+     * @param arch The architecture to extract.
+     * @param dumpconfVersion The dumpconf version used for the extraction.
+     * @param extraMakeParameters The extra parameters passed to make.
+     * @param javaCnfEncoder Whether the constraint model is encoded by the {@link KconfigCnfEncoder}.
+     *
+     * @return The key as a hexadecimal string.
+     *
+     * @throws IOException If reading the input files fails.
+     */
+    public static @NonNull String computeKey(@NonNull File sourceTree, @NonNull String arch,
+            @NonNull DumpconfVersion dumpconfVersion, @NonNull List<@NonNull String> extraMakeParameters,
+            boolean javaCnfEncoder) throws IOException {
+
+        MessageDigest digest = HashUtil.createDigest();
+        HashUtil.update(digest, FORMAT_VERSION);
+        HashUtil.update(digest, arch);
+        HashUtil.update(digest, dumpconfVersion.name());
+        HashUtil.update(digest, String.join(" ", extraMakeParameters));
+        digest.update(getResourceDigest("dumpconf.c"));
+        if (javaCnfEncoder) {
+            HashUtil.update(digest, "KconfigCnfEncoder " + KconfigCnfEncoder.VERSION);
+        } else {
+            digest.update(getResourceDigest("kconfigreader.jar"));
+        }
+
+        for (String path : new KconfigSourceCollector(sourceTree, arch).collect()) {
+            HashUtil.updateWithFile(digest, sourceTree, path);
+        }
+
+        File[] parserFiles = new File(sourceTree, "scripts/kconfig").listFiles();
+        if (parserFiles != null) {
+            Arrays.sort(parserFiles);
+            for (File file : parserFiles) {
+                if (file.isFile() && isKconfigParserSource(file.getName())) {
+                    HashUtil.updateWithFile(digest, sourceTree, "scripts/kconfig/" + file.getName());
+                }
+            }
+        }
+
+        return HashUtil.toHex(digest.digest());
+    }
+
+    /**
+     * Checks whether the given file in <code>scripts/kconfig</code> is a (non-generated) source of the Kconfig
+     * parser.
+     *
+     * @param name The name of the file.
+     *
+     * @return Whether the file is a source of the Kconfig parser.
+     */
+    private static boolean isKconfigParserSource(@NonNull String name) {
+        return !GENERATED_KCONFIG_FILES.contains(name)
+                && (name.endsWith(".c") || name.endsWith(".h") || name.endsWith(".y") || name.endsWith(".l")
+                || name.endsWith(".gperf") || name.endsWith("_shipped"));
+    }
+
+    /**
+     * Reads the entry for the given key.
+     *
+     * @param key The key of the entry, as computed by {@link #computeKey(File, String, DumpconfVersion, List)}.
+     *
+     * @return The cached model, or <code>null</code> if there is no entry for the key. The DIMACS file of the
+     *      returned model is a temporary copy (or hard link), which is not affected by later evictions.
+     */
+    public synchronized @Nullable VariabilityModel read(@NonNull String key) {
+        File entry = new File(cacheDir, key);
+        File dimacs = new File(entry, DIMACS_FILE);
+        if (!dimacs.isFile()) {
+            return null;
+        }
+
+        VariabilityModel result = null;
+        try {
+            VariabilityModel cached = new JsonVariabilityModelCache(entry).read(dimacs);
+            if (cached != null) {
+                // a hard link is not affected by evictions, too
+                File dimacsCopy = ModelFileManager.newDimacsFile();
+                if (!ModelFileManager.link(dimacs, dimacsCopy)) {
+                    Util.copyFile(dimacs, dimacsCopy);
+                }
+
+                result = new VariabilityModel(dimacsCopy, cached.getVariableMap());
+                copyDescriptor(cached.getDescriptor(), result.getDescriptor());
+                ModelFileManager.track(result, dimacsCopy);
+
+                // mark as recently used
+                entry.setLastModified(System.currentTimeMillis());
+            }
+
+        } catch (IOException | FormatException e) {
+            LOGGER.logException("Could not read model cache entry " + entry + "; removing it", e);
+            try {
+                Util.deleteFolder(entry);
+            } catch (IOException e1) {
+                LOGGER.logException("Could not remove model cache entry " + entry, e1);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Stores the given model in the cache. Afterwards, least recently used entries are removed if the cache is
+     * larger than its maximum size.
+     *
+     * @param key The key of the entry, as computed by {@link #computeKey(File, String, DumpconfVersion, List)}.
+     * @param model The model to store. Must have a DIMACS constraint model.
+     *
+     * @throws IOException If writing the entry fails.
+     */
+    public synchronized void write(@NonNull String key, @NonNull VariabilityModel model) throws IOException {
+        File constraintModel = model.getConstraintModel();
+        if (constraintModel == null) {
+            throw new IOException("Can't cache a model without constraint file");
+        }
+
+        cacheDir.mkdirs();
+        File entry = new File(cacheDir, key);
+        File tmpEntry = Files.createTempDirectory(cacheDir.toPath(), ".tmp-" + key).toFile();
+        try {
+            Util.copyFile(constraintModel, new File(tmpEntry, DIMACS_FILE));
+
+            // the stored model points to the final location of the DIMACS file
+            VariabilityModel stored = new VariabilityModel(new File(entry, DIMACS_FILE), model.getVariableMap());
+            copyDescriptor(model.getDescriptor(), stored.getDescriptor());
+            new JsonVariabilityModelCache(tmpEntry).write(stored);
+
+            if (!tmpEntry.renameTo(entry)) {
+                // another process stored the same entry concurrently
+                LOGGER.logDebug("Model cache entry " + key + " already exists");
+            }
+
+        } finally {
+            if (tmpEntry.exists()) {
+                Util.deleteFolder(tmpEntry);
+            }
+        }
+
+        evict(entry);
+    }
+
+    /**
+     * Removes the least recently used entries until the cache is not larger than its maximum size.
+     *
+     * @param keep An entry that should not be removed (the one just written).
+     */
+    private void evict(@NonNull File keep) {
+        File[] entries = cacheDir.listFiles((file) -> file.isDirectory() && !file.getName().startsWith("."));
+        if (entries == null) {
+            return;
+        }
+
+        List<@NonNull File> candidates = new ArrayList<>(entries.length);
+        Map<File, Long> sizes = new HashMap<>();
+        long totalSize = 0;
+        for (File entry : entries) {
+            long size = getSize(entry);
+            sizes.put(entry, size);
+            totalSize += size;
+            if (!entry.equals(keep)) {
+                candidates.add(entry);
+            }
+        }
+
+        candidates.sort((e1, e2) -> Long.compare(e1.lastModified(), e2.lastModified()));
+        for (int i = 0; i < candidates.size() && totalSize > maxSize; i++) {
+            File entry = candidates.get(i);
+            LOGGER.logDebug("Evicting model cache entry " + entry.getName());
+            try {
+                Util.deleteFolder(entry);
+                totalSize -= sizes.get(entry);
+            } catch (IOException e) {
+                LOGGER.logException("Could not remove model cache entry " + entry, e);
+            }
+        }
+    }
+
+    /**
+     * Calculates the size of all files in the given directory.
+     *
+     * @param dir The directory.
+     *
+     * @return The size in bytes.
+     */
+    private static long getSize(@NonNull File dir) {
+        long result = 0;
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                result += file.isDirectory() ? getSize(file) : file.length();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Copies the descriptor of a variability model to another model.
+     *
+     * @param from The descriptor to copy.
+     * @param to The descriptor to copy to.
+     */
+    private static void copyDescriptor(@NonNull VariabilityModelDescriptor from,
+            @NonNull VariabilityModelDescriptor to) {
+
+        to.setVariableType(from.getVariableType());
+        to.setConstraintFileType(from.getConstraintFileType());
+        for (Attribute attribute : Attribute.values()) {
+            if (from.hasAttribute(attribute)) {
+                to.addAttribute(attribute);
+            }
+        }
+    }
+
+    /**
+     * Returns the digest of one of the bundled resources.
+     *
+     * @param name The name of the resource in the <code>res</code> package.
+     *
+     * @return The digest of the resource; the digest of an empty input if the resource doesn't exist.
+     *
+     * @throws IOException If reading the resource fails.
+     */
+    private static byte[] getResourceDigest(@NonNull String name) throws IOException {
+        synchronized (RESOURCE_DIGESTS) {
+            byte[] result = RESOURCE_DIGESTS.get(name);
+            if (result == null) {
+                MessageDigest digest = HashUtil.createDigest();
+                InputStream in = ModelCache.class.getClassLoader().getResourceAsStream(RESOURCE_PACKAGE + name);
+                if (in != null) {
+                    try {
+                        HashUtil.updateWithStream(digest, in);
+                    } finally {
+                        in.close();
+                    }
+                } else {
+                    LOGGER.logWarning("Resource " + name + " not found for computing model cache keys");
+                }
+                result = digest.digest();
+                RESOURCE_DIGESTS.put(name, result);
+            }
+            return result;
+        }
+    }
+
+}
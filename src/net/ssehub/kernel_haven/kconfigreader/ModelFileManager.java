@@ -0,0 +1,165 @@
+/*
+ * Copyright 2020 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kconfigreader;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.ssehub.kernel_haven.util.Logger;
+import net.ssehub.kernel_haven.util.Util;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.variability_model.VariabilityModel;
+
+/**
+ * Manages the constraint files of the {@link VariabilityModel}s created by this extractor. All files are stored in
+ * one temporary directory, which is deleted by a single shutdown hook. A file is deleted as soon as its
+ * {@link #track(VariabilityModel, File) model} is garbage collected, so that long-running JVMs do not pile up
+ * temporary files.
+ *
+ * @author Adam
+ */
+final class ModelFileManager {
+
+    private static final Logger LOGGER = Logger.get();
+
+    private static File directory;
+
+    private static final @NonNull ReferenceQueue<VariabilityModel> QUEUE = new ReferenceQueue<>();
+
+    /**
+     * The files of the tracked models. This also keeps the {@link PhantomReference}s reachable.
+     */
+    private static final @NonNull Map<Reference<VariabilityModel>, File> TRACKED = new ConcurrentHashMap<>();
+
+    /**
+     * Don't allow any instances.
+     */
+    private ModelFileManager() {
+    }
+
+    /**
+     * Returns the managed directory. Creates it and registers the shutdown hook on the first call.
+     *
+     * @return The managed directory.
+     *
+     * @throws IOException If creating the directory fails.
+     */
+    private static synchronized @NonNull File getDirectory() throws IOException {
+        File result = directory;
+        if (result == null) {
+            result = Files.createTempDirectory("kconfigreader_models").toFile();
+            File toDelete = result;
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    Util.deleteFolder(toDelete);
+                } catch (IOException e) {
+                    // ignore, we are shutting down
+                }
+            }));
+            directory = result;
+        }
+        return result;
+    }
+
+    /**
+     * Creates a new, unique path for a DIMACS file in the managed directory. The file itself is not created.
+     *
+     * @return The path for a new file.
+     *
+     * @throws IOException If creating the managed directory fails.
+     */
+    static @NonNull File newDimacsFile() throws IOException {
+        deleteCollectedFiles();
+        return new File(getDirectory(), "varmodel_" + UUID.randomUUID() + ".dimacs");
+    }
+
+    /**
+     * Moves the given file to the target, without copying its content. This tries an atomic move first; if that is
+     * not possible (e.g. because the managed directory is on another file system), a hard link is created
+     * instead, and the source is deleted.
+     *
+     * @param source The file to take ownership of.
+     * @param target The target, as created by {@link #newDimacsFile()}.
+     *
+     * @return <code>true</code> if the file was moved; <code>false</code> if it must be copied instead.
+     */
+    static boolean moveOrLink(@NonNull File source, @NonNull File target) {
+        boolean success = false;
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            success = true;
+        } catch (IOException | UnsupportedOperationException e) {
+            success = link(source, target);
+            if (success) {
+                source.delete();
+            }
+        }
+        return success;
+    }
+
+    /**
+     * Creates a hard link to the given file, without copying its content.
+     *
+     * @param source The file to link to.
+     * @param target The target, as created by {@link #newDimacsFile()}.
+     *
+     * @return <code>true</code> if the link was created; <code>false</code> if the file must be copied instead.
+     */
+    static boolean link(@NonNull File source, @NonNull File target) {
+        boolean success = false;
+        try {
+            Files.createLink(target.toPath(), source.toPath());
+            success = true;
+        } catch (IOException | UnsupportedOperationException e) {
+            LOGGER.logDebug2("Can't link ", source, " to ", target, ": ", e.getMessage());
+        }
+        return success;
+    }
+
+    /**
+     * Deletes the given file as soon as the given model is garbage collected.
+     *
+     * @param model The model that uses the file as constraint model.
+     * @param file The file in the managed directory.
+     */
+    static void track(@NonNull VariabilityModel model, @NonNull File file) {
+        deleteCollectedFiles();
+        TRACKED.put(new PhantomReference<>(model, QUEUE), file);
+    }
+
+    /**
+     * Deletes the files of all models that were garbage collected.
+     */
+    private static void deleteCollectedFiles() {
+        Reference<? extends VariabilityModel> reference;
+        while ((reference = QUEUE.poll()) != null) {
+            File file = TRACKED.remove(reference);
+            if (file != null) {
+                file.delete();
+            }
+        }
+    }
+
+}
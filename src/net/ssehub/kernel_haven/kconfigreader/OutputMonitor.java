@@ -0,0 +1,323 @@
+/*
+ * Copyright 2020 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kconfigreader;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import net.ssehub.kernel_haven.util.Logger;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * Monitors the output of a process while it is running. The output is scanned line by line for known signatures,
+ * e.g. error messages that show that a fix of the source tree is required. If all signatures of an
+ * {@link #abortOn(String...) abort condition} have been seen, the abort handler is called (once), which kills the
+ * process; so a run that is known to fail does not need to be waited for.
+ * <p>
+ * Memory usage is bounded: only about the last {@link #MAX_RETAINED} characters of each stream are retained for
+ * logging (see {@link #getOutput()}), and overlong lines are scanned in chunks.
+ * </p>
+ *
+ * @author Adam
+ */
+class OutputMonitor {
+
+    /**
+     * The number of characters of each stream that are retained for {@link #getOutput()}.
+     */
+    static final int MAX_RETAINED = 64 * 1024;
+
+    /**
+     * The maximum length of a line; longer lines are scanned in chunks of this length, which overlap by the length
+     * of the longest signature.
+     */
+    static final int MAX_LINE = 8 * 1024;
+
+    private static final Logger LOGGER = Logger.get();
+
+    /**
+     * Scans a single output stream line by line.
+     */
+    private final class LineScanner extends OutputStream {
+
+        private final byte @NonNull [] line = new byte[MAX_LINE];
+
+        private int lineLength;
+
+        private final @NonNull Deque<@NonNull String> retained = new ArrayDeque<>();
+
+        private int retainedLength;
+
+        @Override
+        public synchronized void write(int b) {
+            if (b == '\n') {
+                endLine(true);
+            } else {
+                if (lineLength == line.length) {
+                    endLine(false);
+                }
+                line[lineLength++] = (byte) b;
+            }
+        }
+
+        @Override
+        public synchronized void write(byte @NonNull [] buffer, int offset, int length) {
+            for (int i = offset; i < offset + length; i++) {
+                write(buffer[i]);
+            }
+        }
+
+        @Override
+        public synchronized void flush() {
+            if (lineLength > 0) {
+                endLine(true);
+            }
+        }
+
+        /**
+         * Scans and retains the current line.
+         *
+         * @param complete Whether the line is complete. If not, the end of the line is kept, so that signatures
+         *      that span over the chunks of the line are found, too.
+         */
+        private void endLine(boolean complete) {
+            String text = new String(line, 0, lineLength, StandardCharsets.UTF_8);
+            scan(text);
+
+            int keep = complete ? 0 : Math.min(getOverlap(), lineLength);
+            retain(complete ? text : new String(line, 0, lineLength - keep, StandardCharsets.UTF_8), complete);
+            System.arraycopy(line, lineLength - keep, line, 0, keep);
+            lineLength = keep;
+        }
+
+        /**
+         * Retains the given text, dropping the oldest lines if more than {@link #MAX_RETAINED} characters are
+         * retained.
+         *
+         * @param text The text to retain.
+         * @param complete Whether the text ends a line.
+         */
+        private void retain(@NonNull String text, boolean complete) {
+            String entry = complete ? text + '\n' : text;
+            retained.add(entry);
+            retainedLength += entry.length();
+            while (retainedLength > MAX_RETAINED && retained.size() > 1) {
+                retainedLength -= retained.poll().length();
+            }
+        }
+
+        /**
+         * Returns the retained output, including the current incomplete line.
+         *
+         * @return The retained output.
+         */
+        private synchronized @NonNull String getRetained() {
+            StringBuilder result = new StringBuilder(retainedLength + lineLength);
+            for (String entry : retained) {
+                result.append(entry);
+            }
+            result.append(new String(line, 0, lineLength, StandardCharsets.UTF_8));
+            return result.toString();
+        }
+
+        /**
+         * Clears the retained output and the current line.
+         */
+        private synchronized void clear() {
+            lineLength = 0;
+            retained.clear();
+            retainedLength = 0;
+        }
+
+    }
+
+    private final @NonNull LineScanner stdout = new LineScanner();
+
+    private final @NonNull LineScanner stderr = new LineScanner();
+
+    private final @NonNull Set<@NonNull String> signatures = new LinkedHashSet<>();
+
+    private final @NonNull List<@NonNull List<@NonNull String>> abortConditions = new ArrayList<>();
+
+    private final @NonNull Set<@NonNull String> seen = new HashSet<>();
+
+    private int overlap;
+
+    private @Nullable Runnable abortHandler;
+
+    private @Nullable String abortReason;
+
+    /**
+     * Adds a signature that is searched for in the output. Whether it was seen can be queried with
+     * {@link #hasSeen(String)}.
+     *
+     * @param signature The text to search for. Must not span over several lines.
+     */
+    synchronized void watch(@NonNull String signature) {
+        signatures.add(signature);
+        overlap = Math.max(overlap, signature.getBytes(StandardCharsets.UTF_8).length - 1);
+    }
+
+    /**
+     * Adds an abort condition: as soon as all of the given signatures have been seen, the process is aborted.
+     *
+     * @param conditionSignatures The signatures that all have to be seen.
+     */
+    synchronized void abortOn(@NonNull String @NonNull ... conditionSignatures) {
+        for (String signature : conditionSignatures) {
+            watch(signature);
+        }
+        abortConditions.add(Arrays.asList(conditionSignatures));
+    }
+
+    /**
+     * Sets the handler that aborts the process. It is called at most once, by the thread that writes the output.
+     * If an abort condition was met before, it is called immediately.
+     *
+     * @param abortHandler The handler that aborts the process; <code>null</code> to remove it.
+     */
+    void setAbortHandler(@Nullable Runnable abortHandler) {
+        boolean callNow;
+        synchronized (this) {
+            this.abortHandler = abortHandler;
+            callNow = abortHandler != null && abortReason != null;
+        }
+        if (callNow) {
+            abortHandler.run();
+        }
+    }
+
+    /**
+     * Returns the stream to write the standard output of the process to.
+     *
+     * @return The standard output stream.
+     */
+    @NonNull OutputStream getStdout() {
+        return stdout;
+    }
+
+    /**
+     * Returns the stream to write the error output of the process to.
+     *
+     * @return The error output stream.
+     */
+    @NonNull OutputStream getStderr() {
+        return stderr;
+    }
+
+    /**
+     * Returns the length of the overlap of the chunks of overlong lines.
+     *
+     * @return The length of the longest signature minus one.
+     */
+    private synchronized int getOverlap() {
+        return overlap;
+    }
+
+    /**
+     * Scans a line (or a chunk of an overlong line) for the signatures, and aborts the process if an abort condition
+     * is met.
+     *
+     * @param text The line to scan.
+     */
+    private void scan(@NonNull String text) {
+        Runnable handler = null;
+        synchronized (this) {
+            for (String signature : signatures) {
+                if (!seen.contains(signature) && text.contains(signature)) {
+                    seen.add(signature);
+                }
+            }
+
+            if (abortReason == null) {
+                for (List<String> condition : abortConditions) {
+                    if (seen.containsAll(condition)) {
+                        abortReason = String.join(", ", condition);
+                        handler = abortHandler;
+                        break;
+                    }
+                }
+            }
+        }
+
+        if (handler != null) {
+            LOGGER.logInfo2("Aborting process, since it printed the known failure signature: ", abortReason);
+            handler.run();
+        }
+    }
+
+    /**
+     * Checks whether the given signature was seen in the output.
+     *
+     * @param signature The signature, as passed to {@link #watch(String)} or {@link #abortOn(String...)}.
+     *
+     * @return Whether the signature was seen.
+     */
+    synchronized boolean hasSeen(@NonNull String signature) {
+        return seen.contains(signature);
+    }
+
+    /**
+     * Checks whether an abort condition was met.
+     *
+     * @return Whether the process was (or should have been) aborted.
+     */
+    synchronized boolean isAborted() {
+        return abortReason != null;
+    }
+
+    /**
+     * Returns the retained output: the end of the standard output, followed by the end of the error output.
+     *
+     * @return The retained output.
+     */
+    @NonNull String getOutput() {
+        return stdout.getRetained() + stderr.getRetained();
+    }
+
+    /**
+     * Scans the last lines of the output, if they are not terminated by a line break. Call this after the process
+     * has finished.
+     */
+    void finish() {
+        stdout.flush();
+        stderr.flush();
+    }
+
+    /**
+     * Clears the output and the seen signatures, e.g. before the process is retried. The signatures and abort
+     * conditions are kept.
+     */
+    void reset() {
+        stdout.clear();
+        stderr.clear();
+        synchronized (this) {
+            seen.clear();
+            abortReason = null;
+        }
+    }
+
+}
@@ -0,0 +1,359 @@
+/*
+ * Copyright 2020 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kconfigreader;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ProcessBuilder.Redirect;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+
+/**
+ * Tracks whether a process and all of its descendants have terminated. Processes are tagged with a unique
+ * environment variable, which is inherited by all child processes. A process tree is finished if no process in
+ * <code>/proc</code> carries the tag anymore. This also finds descendants that were re-parented to init, e.g.
+ * daemons started by make.
+ * <p>
+ * Tracking requires a Linux <code>/proc</code> file system; see {@link #isSupported()}.
+ * </p>
+ *
+ * @author Adam
+ */
+public class ProcessTreeTracker {
+
+    /**
+     * The name of the environment variable that is used to tag processes.
+     */
+    static final @NonNull String TAG_VARIABLE = "KH_PROCESS_TREE_TAG";
+
+    private static final @NonNull File PROC = new File("/proc");
+
+    /**
+     * The number of clock ticks per second, in which <code>/proc/&lt;pid&gt;/stat</code> reports CPU times
+     * (<code>USER_HZ</code>, which is 100 on all common architectures).
+     */
+    private static final long CLOCK_TICKS = 100;
+
+    private static final int STAT_STATE = 3;
+
+    private static final int STAT_UTIME = 14;
+
+    private static final int STAT_CSTIME = 17;
+
+    private @NonNull String tag;
+
+    /**
+     * Regularly samples the peak memory usage and the CPU time of the processes of a tracker, while they are
+     * running. Does nothing if tracking is not {@link ProcessTreeTracker#isSupported() supported}. The interval
+     * starts short, so that short-lived processes are sampled, too, and doubles up to a maximum.
+     */
+    static final class Sampler extends Thread {
+
+        private static final long MIN_INTERVAL = 10;
+
+        private static final long MAX_INTERVAL = 200;
+
+        private final @NonNull ProcessTreeTracker tracker;
+
+        private volatile boolean stopped;
+
+        private long peak;
+
+        private long cpuTime;
+
+        /**
+         * Creates and starts a sampler.
+         *
+         * @param tracker The tracker of the processes to sample.
+         */
+        Sampler(@NonNull ProcessTreeTracker tracker) {
+            super("Process tree sampler");
+            this.tracker = tracker;
+            setDaemon(true);
+            if (isSupported()) {
+                start();
+            }
+        }
+
+        @Override
+        public void run() {
+            long interval = MIN_INTERVAL;
+            while (!stopped) {
+                sample();
+                try {
+                    Thread.sleep(interval);
+                } catch (InterruptedException e) {
+                    // stopped
+                }
+                interval = Math.min(interval * 2, MAX_INTERVAL);
+            }
+        }
+
+        /**
+         * Takes one sample. The peak resident set size of a process only grows, so a late sample is sufficient.
+         */
+        private synchronized void sample() {
+            try {
+                long[] usage = tracker.getUsage();
+                peak = Math.max(peak, usage[0]);
+                cpuTime = Math.max(cpuTime, usage[1]);
+            } catch (IOException e) {
+                stopped = true;
+            }
+        }
+
+        /**
+         * Stops sampling. Afterwards, the results can be queried.
+         */
+        void stopSampling() {
+            stopped = true;
+            interrupt();
+            try {
+                join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Returns the largest peak memory usage of the sampled processes.
+         *
+         * @return The peak resident set size in bytes; 0 if unknown.
+         */
+        synchronized long getPeakResidentSetSize() {
+            return peak;
+        }
+
+        /**
+         * Returns the largest sampled CPU time of the processes. Processes that terminate between two samples and
+         * are not waited for by another tagged process are missed.
+         *
+         * @return The CPU time in milliseconds; 0 if unknown.
+         */
+        synchronized long getCpuTime() {
+            return cpuTime;
+        }
+
+    }
+
+    /**
+     * Creates a tracker with a new unique tag.
+     */
+    public ProcessTreeTracker() {
+        this.tag = TAG_VARIABLE + "=" + UUID.randomUUID().toString();
+    }
+
+    /**
+     * Tags the process that will be started by the given {@link ProcessBuilder}, so that it and its descendants are
+     * tracked by this tracker.
+     *
+     * @param processBuilder The process builder to tag.
+     */
+    public void tag(@NonNull ProcessBuilder processBuilder) {
+        processBuilder.environment().put(TAG_VARIABLE, tag.substring(TAG_VARIABLE.length() + 1));
+    }
+
+    /**
+     * Whether tracking is supported on this system.
+     *
+     * @return <code>true</code> if the <code>/proc</code> file system is available.
+     */
+    public static boolean isSupported() {
+        return new File(PROC, "self/environ").isFile();
+    }
+
+    /**
+     * Checks whether all tagged processes have terminated.
+     *
+     * @return <code>true</code> if no running process carries the tag of this tracker.
+     *
+     * @throws IOException If the <code>/proc</code> file system cannot be read.
+     */
+    public boolean isFinished() throws IOException {
+        boolean finished = true;
+        for (File process : listProcesses()) {
+            if (isTagged(process)) {
+                finished = false;
+                break;
+            }
+        }
+        return finished;
+    }
+
+    /**
+     * Kills all tagged processes that are currently running with <code>SIGKILL</code>.
+     *
+     * @throws IOException If the <code>/proc</code> file system cannot be read or <code>kill</code> can't be executed.
+     */
+    public void kill() throws IOException {
+        List<@NonNull String> command = new ArrayList<>();
+        command.add("kill");
+        command.add("-KILL");
+        for (File process : listProcesses()) {
+            if (isTagged(process)) {
+                command.add(process.getName());
+            }
+        }
+
+        if (command.size() > 2) {
+            ProcessBuilder processBuilder = new ProcessBuilder(command);
+            // processes that terminated in the meantime make kill fail; this is not an error
+            processBuilder.redirectErrorStream(true);
+            processBuilder.redirectOutput(Redirect.appendTo(new File("/dev/null")));
+            try {
+                processBuilder.start().waitFor();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Returns the largest peak resident set size (<code>VmHWM</code>) of the tagged processes that are currently
+     * running. Sample this regularly to find the peak memory usage of a process tree.
+     *
+     * @return The peak resident set size in bytes; 0 if no tagged process is running.
+     *
+     * @throws IOException If the <code>/proc</code> file system cannot be read.
+     */
+    public long getPeakResidentSetSize() throws IOException {
+        return getUsage()[0];
+    }
+
+    /**
+     * Returns the CPU time (user and system) used by the tagged processes that are currently running, including
+     * their terminated children that they have waited for. Sample this regularly to find the CPU time of a process
+     * tree: the CPU time of a terminated process moves to its parent, so the largest sample is a close lower bound.
+     *
+     * @return The CPU time in milliseconds; 0 if no tagged process is running.
+     *
+     * @throws IOException If the <code>/proc</code> file system cannot be read.
+     */
+    public long getCpuTime() throws IOException {
+        return getUsage()[1];
+    }
+
+    /**
+     * Reads the peak resident set size and the CPU time of all tagged processes in a single pass over
+     * <code>/proc</code>.
+     *
+     * @return The largest peak resident set size in bytes and the sum of the CPU times in milliseconds.
+     *
+     * @throws IOException If the <code>/proc</code> file system cannot be read.
+     */
+    private long @NonNull [] getUsage() throws IOException {
+        long[] result = new long[2];
+        for (File process : listProcesses()) {
+            if (isTagged(process)) {
+                result[0] = Math.max(result[0], readPeakResidentSetSize(process));
+                result[1] += readCpuTime(process);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Lists the directories of all processes in <code>/proc</code>.
+     *
+     * @return The process directories.
+     *
+     * @throws IOException If the <code>/proc</code> file system cannot be read.
+     */
+    private static @NonNull File @NonNull [] listProcesses() throws IOException {
+        File[] processes = PROC.listFiles((dir, name) -> !name.isEmpty() && Character.isDigit(name.charAt(0)));
+        if (processes == null) {
+            throw new IOException("Can't list " + PROC);
+        }
+        return processes;
+    }
+
+    /**
+     * Reads the peak resident set size of the given process.
+     *
+     * @param process The <code>/proc/&lt;pid&gt;</code> directory of the process.
+     *
+     * @return The peak resident set size in bytes; 0 if it can't be read.
+     */
+    private static long readPeakResidentSetSize(@NonNull File process) {
+        long result = 0;
+        try {
+            for (String line : Files.readAllLines(new File(process, "status").toPath(), StandardCharsets.UTF_8)) {
+                // e.g. "VmHWM:    123456 kB"
+                if (line.startsWith("VmHWM:")) {
+                    String[] parts = line.substring("VmHWM:".length()).trim().split("\\s+");
+                    result = Long.parseLong(parts[0]) * 1024;
+                    break;
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // process has terminated in the meantime
+        }
+        return result;
+    }
+
+    /**
+     * Reads the CPU time of the given process from <code>/proc/&lt;pid&gt;/stat</code>: the user and system time of
+     * the process and of its terminated children that it has waited for.
+     *
+     * @param process The <code>/proc/&lt;pid&gt;</code> directory of the process.
+     *
+     * @return The CPU time in milliseconds; 0 if it can't be read.
+     */
+    private static long readCpuTime(@NonNull File process) {
+        long result = 0;
+        try {
+            String stat = new String(Files.readAllBytes(new File(process, "stat").toPath()), StandardCharsets.UTF_8);
+            // the command name in parentheses may contain spaces; the fields after it start with the state (3)
+            String[] fields = stat.substring(stat.lastIndexOf(')') + 2).trim().split(" ");
+            long ticks = 0;
+            for (int field = STAT_UTIME; field <= STAT_CSTIME; field++) {
+                ticks += Long.parseLong(fields[field - STAT_STATE]);
+            }
+            result = ticks * 1000 / CLOCK_TICKS;
+        } catch (IOException | RuntimeException e) {
+            // process has terminated in the meantime
+        }
+        return result;
+    }
+
+    /**
+     * Checks whether the environment of the given process contains the tag. Zombie processes have an empty
+     * environment and are thus not considered as running.
+     *
+     * @param process The <code>/proc/&lt;pid&gt;</code> directory of the process.
+     *
+     * @return Whether the process is tagged.
+     */
+    private boolean isTagged(@NonNull File process) {
+        boolean tagged = false;
+        try {
+            // each entry is terminated by a 0 byte
+            String environment = new String(Files.readAllBytes(new File(process, "environ").toPath()),
+                    StandardCharsets.UTF_8);
+            tagged = environment.startsWith(tag + '\0') || environment.contains('\0' + tag + '\0');
+        } catch (IOException e) {
+            // process has terminated in the meantime or belongs to another user
+        }
+        return tagged;
+    }
+
+}
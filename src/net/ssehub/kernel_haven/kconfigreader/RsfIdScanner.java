@@ -0,0 +1,115 @@
+/*
+ * Copyright 2020 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kconfigreader;
+
+import net.ssehub.kernel_haven.util.FormatException;
+
+/**
+ * Finds the symbol IDs (e.g. <code>S@3432434</code>) in the text of a condition in the RSF output of dumpconf. The
+ * text is fed in chunks, as it is delivered by the XML parser; an ID may span several chunks. The IDs are parsed
+ * directly into <code>int</code>s, without creating any strings.
+ *
+ * @author Adam
+ */
+final class RsfIdScanner {
+
+    private static final int STATE_TEXT = 0;
+
+    private static final int STATE_S = 1;
+
+    private static final int STATE_AT = 2;
+
+    private static final int STATE_DIGITS = 3;
+
+    private int state;
+
+    private long value;
+
+    private int excludedId;
+
+    private IntSet result;
+
+    /**
+     * Starts scanning a new text.
+     *
+     * @param excludedId The ID of the variable that the condition belongs to. This will not be added to the result.
+     * @param result The set to add the found IDs to.
+     */
+    void reset(int excludedId, IntSet result) {
+        this.excludedId = excludedId;
+        this.result = result;
+        this.state = STATE_TEXT;
+    }
+
+    /**
+     * Scans the next chunk of the text.
+     *
+     * @param chars The buffer containing the chunk.
+     * @param start The start index of the chunk in the buffer.
+     * @param length The length of the chunk.
+     *
+     * @throws FormatException If an ID is too large.
+     */
+    void feed(char[] chars, int start, int length) throws FormatException {
+        for (int i = start; i < start + length; i++) {
+            char c = chars[i];
+
+            if (state == STATE_DIGITS) {
+                if (c >= '0' && c <= '9') {
+                    value = value * 10 + (c - '0');
+                    if (value > Integer.MAX_VALUE) {
+                        throw new FormatException("Invalid ID in condition: too large");
+                    }
+                    continue;
+                }
+                finishId();
+            }
+
+            if (c == 'S') {
+                state = STATE_S;
+            } else if (c == '@' && state == STATE_S) {
+                state = STATE_AT;
+            } else if (c >= '0' && c <= '9' && state == STATE_AT) {
+                state = STATE_DIGITS;
+                value = c - '0';
+            } else {
+                state = STATE_TEXT;
+            }
+        }
+    }
+
+    /**
+     * Finishes scanning the text. Must be called after the last chunk was {@link #feed(char[], int, int) fed}.
+     */
+    void finish() {
+        if (state == STATE_DIGITS) {
+            finishId();
+        }
+        state = STATE_TEXT;
+    }
+
+    /**
+     * Adds the ID that was just completely read to the result.
+     */
+    private void finishId() {
+        if ((int) value != excludedId) {
+            result.add((int) value);
+        }
+        state = STATE_TEXT;
+    }
+
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2020 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kconfigreader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+
+/**
+ * A private shadow of a source tree, used to apply fixes without modifying the source tree itself. The shadow
+ * consists of symbolic links to all top level entries of the source tree, except for the
+ * {@link #override(String, byte[]) overridden} files, which are written to the shadow instead. Processes that run in
+ * the shadow directory (e.g. make with the rewritten Makefile, or KconfigReader with a root Kconfig file) see the
+ * fixed tree, while other processes can read the original tree concurrently.
+ * <p>
+ * Shadows and directories that contain them must only be deleted with {@link #deleteRecursively(File)}, which does
+ * not follow the symbolic links into the source tree.
+ * </p>
+ *
+ * @author Adam
+ */
+final class ShadowTree {
+
+    private final @NonNull File sourceTree;
+
+    private final @NonNull File directory;
+
+    private final @NonNull Map<@NonNull String, byte @NonNull []> overrides = new HashMap<>();
+
+    /**
+     * Creates a shadow of the given source tree. The shadow is not created on disk until {@link #create()} is
+     * called.
+     *
+     * @param sourceTree The source tree to shadow.
+     * @param directory The directory to create the shadow in. Must be outside of the source tree.
+     */
+    ShadowTree(@NonNull File sourceTree, @NonNull File directory) {
+        this.sourceTree = sourceTree.getAbsoluteFile();
+        this.directory = directory.getAbsoluteFile();
+    }
+
+    /**
+     * Replaces a top level file of the source tree in the shadow. If the file does not exist in the source tree, it
+     * is added to the shadow.
+     *
+     * @param name The name of the top level file.
+     * @param content The content of the file in the shadow.
+     */
+    void override(@NonNull String name, byte @NonNull [] content) {
+        overrides.put(name, content);
+    }
+
+    /**
+     * Creates the shadow on disk. A previous shadow in the same directory is replaced.
+     *
+     * @return The directory of the shadow.
+     *
+     * @throws IOException If creating the links or files fails.
+     */
+    @NonNull File create() throws IOException {
+        deleteRecursively(directory);
+        Files.createDirectories(directory.toPath());
+
+        File[] entries = sourceTree.listFiles();
+        if (entries == null) {
+            throw new IOException("Can't list " + sourceTree);
+        }
+        for (File entry : entries) {
+            if (!overrides.containsKey(entry.getName())) {
+                Files.createSymbolicLink(new File(directory, entry.getName()).toPath(), entry.toPath());
+            }
+        }
+        for (Map.Entry<@NonNull String, byte @NonNull []> override : overrides.entrySet()) {
+            Files.write(new File(directory, override.getKey()).toPath(), override.getValue());
+        }
+
+        return directory;
+    }
+
+    /**
+     * Returns the directory of the shadow.
+     *
+     * @return The directory of the shadow.
+     */
+    @NonNull File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Deletes the shadow from disk. The source tree is not touched.
+     *
+     * @throws IOException If deleting fails.
+     */
+    void delete() throws IOException {
+        deleteRecursively(directory);
+    }
+
+    /**
+     * Deletes the given file or directory recursively, without following symbolic links. Unlike a plain recursive
+     * delete, this can't delete the source tree through the links of a shadow (or the <code>source</code> link that
+     * Linux creates in its output directory).
+     *
+     * @param file The file or directory to delete. Nothing happens if it does not exist.
+     *
+     * @throws IOException If deleting fails.
+     */
+    static void deleteRecursively(@NonNull File file) throws IOException {
+        if (!Files.exists(file.toPath(), LinkOption.NOFOLLOW_LINKS)) {
+            return;
+        }
+
+        Files.walkFileTree(file.toPath(), new SimpleFileVisitor<Path>() {
+
+            @Override
+            public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) throws IOException {
+                Files.delete(path);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                if (exc != null) {
+                    throw exc;
+                }
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+        });
+    }
+
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright 2020 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kconfigreader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import net.ssehub.kernel_haven.util.Logger;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+import net.ssehub.kernel_haven.variability_model.SourceLocation;
+import net.ssehub.kernel_haven.variability_model.VariabilityVariable;
+
+/**
+ * Finds the definitions of Kconfig symbols by scanning all <code>Kconfig*</code> files of a source tree. The
+ * directories are walked and the files are scanned in parallel by a {@link ForkJoinPool}; the found locations are
+ * merged in the order of the (sorted) paths, so that the result does not depend on the scheduling. If a
+ * {@link KconfigLocationIndex} is given, only the Kconfig files that changed since the last run are read.
+ *
+ * @author Adam
+ */
+class SourceLocationFinder {
+
+    private static final Logger LOGGER = Logger.get();
+
+    private static final @NonNull KconfigDefinitionScanner ALL_DEFINITIONS = new KconfigDefinitionScanner();
+
+    /**
+     * A symbol definition found in a Kconfig file.
+     */
+    static final class Definition {
+
+        private final @NonNull String variable;
+
+        private final @NonNull SourceLocation location;
+
+        /**
+         * Creates a definition.
+         *
+         * @param variable The name of the variable, including the <code>CONFIG_</code> prefix.
+         * @param location The location of the definition.
+         */
+        Definition(@NonNull String variable, @NonNull SourceLocation location) {
+            this.variable = variable;
+            this.location = location;
+        }
+
+        /**
+         * Returns the name of the defined variable.
+         *
+         * @return The variable name, including the <code>CONFIG_</code> prefix.
+         */
+        @NonNull String getVariable() {
+            return variable;
+        }
+
+        /**
+         * Returns the location of the definition.
+         *
+         * @return The location, relative to the source tree.
+         */
+        @NonNull SourceLocation getLocation() {
+            return location;
+        }
+
+    }
+
+    /**
+     * Walks a directory: sub-directories are forked as new tasks, Kconfig files are scanned directly.
+     */
+    private final class DirectoryTask extends RecursiveTask<@NonNull List<@NonNull Definition>> {
+
+        private static final long serialVersionUID = -2424245187096787263L;
+
+        private final @NonNull File dir;
+
+        private final @NonNull String relativePath;
+
+        /**
+         * Creates a task for the given directory.
+         *
+         * @param dir The directory to walk.
+         * @param relativePath The path of the directory relative to the source tree; empty for the root.
+         */
+        DirectoryTask(@NonNull File dir, @NonNull String relativePath) {
+            this.dir = dir;
+            this.relativePath = relativePath;
+        }
+
+        @Override
+        protected @NonNull List<@NonNull Definition> compute() {
+            File[] children = dir.listFiles();
+            if (children == null) {
+                LOGGER.logWarning("Can't list " + dir);
+                return Collections.emptyList();
+            }
+            Arrays.sort(children);
+
+            // one slot per child, so that the results are merged in the sorted order
+            List<DirectoryTask> subTasks = new ArrayList<>();
+            List<List<@NonNull Definition>> results = new ArrayList<>(children.length);
+            for (File child : children) {
+                String childPath = relativePath + child.getName();
+                if (child.isDirectory()) {
+                    if (!child.getName().startsWith(".")) {
+                        DirectoryTask task = new DirectoryTask(child, childPath + "/");
+                        task.fork();
+                        subTasks.add(task);
+                        results.add(null);
+                    }
+                } else if (child.getName().startsWith("Kconfig")) {
+                    results.add(getDefinitions(child, childPath));
+                }
+            }
+
+            List<@NonNull Definition> result = new ArrayList<>();
+            int taskIndex = 0;
+            for (List<@NonNull Definition> childResult : results) {
+                if (childResult == null) {
+                    childResult = subTasks.get(taskIndex++).join();
+                }
+                result.addAll(childResult);
+            }
+            return result;
+        }
+
+    }
+
+    private final @NonNull File sourceTree;
+
+    private final @NonNull Map<@NonNull String, ?> variables;
+
+    private final @NonNull KconfigDefinitionScanner scanner;
+
+    private final @Nullable KconfigLocationIndex index;
+
+    /**
+     * Creates a finder for the given source tree, which reads all Kconfig files.
+     *
+     * @param sourceTree The root of the source tree.
+     * @param variables The variables to find; only the keys (the variable names, including the <code>CONFIG_</code>
+     *      prefix) are read, concurrently.
+     */
+    SourceLocationFinder(@NonNull File sourceTree, @NonNull Map<@NonNull String, ?> variables) {
+        this(sourceTree, variables, null);
+    }
+
+    /**
+     * Creates a finder for the given source tree.
+     *
+     * @param sourceTree The root of the source tree.
+     * @param variables The variables to find; only the keys (the variable names, including the <code>CONFIG_</code>
+     *      prefix) are read, concurrently.
+     * @param index The index of the source tree to look up unchanged Kconfig files in; it is updated with the
+     *      changed files. <code>null</code> if all files should be read.
+     */
+    SourceLocationFinder(@NonNull File sourceTree, @NonNull Map<@NonNull String, ?> variables,
+            @Nullable KconfigLocationIndex index) {
+        this.sourceTree = sourceTree;
+        this.variables = variables;
+        this.scanner = new KconfigDefinitionScanner(variables.keySet());
+        this.index = index;
+    }
+
+    /**
+     * Finds the definitions of all variables in the source tree.
+     *
+     * @return The definitions, ordered by path and line number.
+     */
+    @NonNull List<@NonNull Definition> find() {
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        try {
+            return pool.invoke(new DirectoryTask(sourceTree, ""));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Returns the definitions of the variables in a single Kconfig file.
+     *
+     * @param file The Kconfig file.
+     * @param relativePath The path of the file relative to the source tree.
+     *
+     * @return The definitions in the file, ordered by line number.
+     */
+    private @NonNull List<@NonNull Definition> getDefinitions(@NonNull File file, @NonNull String relativePath) {
+        List<@NonNull Definition> result = new ArrayList<>();
+        try {
+            KconfigLocationIndex index = this.index;
+            if (index != null) {
+                for (Definition definition : index.getDefinitions(file, relativePath)) {
+                    if (variables.containsKey(definition.getVariable())) {
+                        result.add(definition);
+                    }
+                }
+
+            } else {
+                File location = new File(relativePath);
+                scanner.scanFile(file,
+                    (variable, line) -> result.add(new Definition(variable, new SourceLocation(location, line))));
+            }
+
+        } catch (IOException e) {
+            LOGGER.logException("Could not read kconfig-file", e);
+        }
+        return result;
+    }
+
+    /**
+     * Finds all symbol definitions in the content of a Kconfig file.
+     *
+     * @param content The content of the Kconfig file.
+     * @param relativePath The path of the file relative to the source tree.
+     *
+     * @return The definitions in the file, ordered by line number.
+     */
+    static @NonNull List<@NonNull Definition> scan(@NonNull ByteBuffer content, @NonNull String relativePath) {
+        List<@NonNull Definition> result = new ArrayList<>();
+        File location = new File(relativePath);
+        ALL_DEFINITIONS.scan(content,
+            (variable, line) -> result.add(new Definition(variable, new SourceLocation(location, line))));
+        return result;
+    }
+
+    /**
+     * Adds the given definitions as {@link SourceLocation}s to the variables.
+     *
+     * @param definitions The definitions to add, in the order they should appear at the variables.
+     * @param vars The variables to add the locations to.
+     */
+    static void addLocations(@NonNull List<@NonNull Definition> definitions,
+            @NonNull Map<@NonNull String, VariabilityVariable> vars) {
+
+        for (Definition definition : definitions) {
+            VariabilityVariable var = vars.get(definition.getVariable());
+            if (var != null) {
+                var.addLocation(definition.getLocation());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2020 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kconfigreader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.regex.Pattern;
+
+import net.ssehub.kernel_haven.kconfigreader.KconfigReaderExtractor.DumpconfVersion;
+import net.ssehub.kernel_haven.util.Logger;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * Inspects a source tree before any process is executed on it, to detect the quirks of old trees up front. Without
+ * this, the {@link KconfigReaderWrapper} only finds them by letting make, gcc or KconfigReader fail and retrying
+ * with a fix. The analyzer detects:
+ * <ul>
+ *     <li>whether the tree is a Linux or BusyBox tree at all ({@link #getTreeType()}),</li>
+ *     <li>a Makefile with a syntax that current versions of make reject ({@link #hasObsoleteMakeSyntax()}),</li>
+ *     <li>a Kconfig parser with the old grammar, which requires the {@link DumpconfVersion#BUSYBOX} version of
+ *         dumpconf ({@link #hasObsoleteKconfigGrammar()}),</li>
+ *     <li>a missing top level Kconfig file ({@link #needsArchKconfig(String)}).</li>
+ * </ul>
+ *
+ * @author Adam
+ */
+public class SourceTreeAnalyzer {
+
+    /**
+     * The type of a source tree.
+     */
+    public static enum TreeType {
+
+        /**
+         * A Linux source tree: Kconfig parser in <code>scripts/kconfig</code>, Kconfig files in the root or in
+         * <code>arch</code>.
+         */
+        LINUX,
+
+        /**
+         * A BusyBox source tree: Kconfig parser in <code>scripts/kconfig</code>, root Kconfig file
+         * <code>Config.in</code>.
+         */
+        BUSYBOX,
+
+        /**
+         * Neither a Linux nor a BusyBox tree; e.g. no Kconfig parser found.
+         */
+        UNKNOWN;
+
+    }
+
+    /**
+     * The rules of old Linux Makefiles that current versions of make reject with "mixed implicit and normal rules".
+     * See {@link KconfigReaderWrapper#prepareLinux()}.
+     */
+    static final @NonNull String @NonNull [] OBSOLETE_MAKE_RULES = {
+        "config %config:",
+        "/ %/: prepare scripts FORCE",
+    };
+
+    private static final Logger LOGGER = Logger.get();
+
+    private static final @NonNull Pattern P_ENV = Pattern.compile("\\bP_ENV\\b");
+
+    private static final @NonNull Pattern E_LIST = Pattern.compile("\\bE_LIST\\b");
+
+    private static final @NonNull Pattern E_CHOICE = Pattern.compile("\\bE_CHOICE\\b");
+
+    private final @NonNull File sourceTree;
+
+    private final @NonNull TreeType treeType;
+
+    private final boolean obsoleteMakeSyntax;
+
+    private final boolean obsoleteKconfigGrammar;
+
+    private final boolean rootKconfig;
+
+    /**
+     * Analyzes the given source tree. Only a few files are read; no process is executed.
+     *
+     * @param sourceTree The root of the source tree.
+     */
+    public SourceTreeAnalyzer(@NonNull File sourceTree) {
+        this.sourceTree = sourceTree;
+        this.rootKconfig = new File(sourceTree, "Kconfig").isFile();
+
+        boolean kconfigParser = new File(sourceTree, "scripts/kconfig").isDirectory();
+        if (kconfigParser && (rootKconfig || new File(sourceTree, "arch").isDirectory())) {
+            treeType = TreeType.LINUX;
+        } else if (kconfigParser && new File(sourceTree, "Config.in").isFile()) {
+            treeType = TreeType.BUSYBOX;
+        } else {
+            treeType = TreeType.UNKNOWN;
+        }
+
+        boolean obsoleteRules = false;
+        String makefile = read("Makefile");
+        if (makefile != null) {
+            for (String rule : OBSOLETE_MAKE_RULES) {
+                if (makefile.contains(rule)) {
+                    obsoleteRules = true;
+                    break;
+                }
+            }
+        }
+        this.obsoleteMakeSyntax = obsoleteRules;
+
+        // the Linux version of dumpconf uses P_ENV and E_LIST, the BusyBox version uses E_CHOICE instead
+        String exprHeader = read("scripts/kconfig/expr.h");
+        this.obsoleteKconfigGrammar = exprHeader != null && !P_ENV.matcher(exprHeader).find()
+                && !E_LIST.matcher(exprHeader).find() && E_CHOICE.matcher(exprHeader).find();
+    }
+
+    /**
+     * Reads a file of the source tree.
+     *
+     * @param path The path of the file, relative to the source tree.
+     *
+     * @return The content of the file; <code>null</code> if it does not exist or can't be read.
+     */
+    private @Nullable String read(@NonNull String path) {
+        File file = new File(sourceTree, path);
+        String result = null;
+        if (file.isFile()) {
+            try {
+                result = new String(Files.readAllBytes(file.toPath()), StandardCharsets.ISO_8859_1);
+            } catch (IOException e) {
+                LOGGER.logException("Can't read " + file, e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the type of the source tree.
+     *
+     * @return The type of the tree.
+     */
+    public @NonNull TreeType getTreeType() {
+        return treeType;
+    }
+
+    /**
+     * Whether the top level Makefile contains rules that current versions of make reject ("mixed implicit and
+     * normal rules: deprecated syntax"). Such Makefiles need to be rewritten temporarily before make is executed.
+     *
+     * @return Whether the Makefile uses an obsolete syntax.
+     */
+    public boolean hasObsoleteMakeSyntax() {
+        return obsoleteMakeSyntax;
+    }
+
+    /**
+     * Whether the Kconfig parser of the tree uses the old grammar (no <code>P_ENV</code> and <code>E_LIST</code>,
+     * but <code>E_CHOICE</code> in <code>scripts/kconfig/expr.h</code>). dumpconf must then be compiled as
+     * {@link DumpconfVersion#BUSYBOX}, even for Linux trees.
+     *
+     * @return Whether the Kconfig parser uses the old grammar.
+     */
+    public boolean hasObsoleteKconfigGrammar() {
+        return obsoleteKconfigGrammar;
+    }
+
+    /**
+     * Returns the dumpconf version that has to be compiled against this tree.
+     *
+     * @param configured The configured dumpconf version.
+     *
+     * @return {@link DumpconfVersion#BUSYBOX} if the Kconfig parser uses the old grammar, otherwise the configured
+     *      version.
+     */
+    public @NonNull DumpconfVersion getDumpconfVersion(@NonNull DumpconfVersion configured) {
+        return obsoleteKconfigGrammar ? DumpconfVersion.BUSYBOX : configured;
+    }
+
+    /**
+     * Whether the top level Kconfig file exists.
+     *
+     * @return Whether <code>Kconfig</code> exists in the root of the tree.
+     */
+    public boolean hasRootKconfig() {
+        return rootKconfig;
+    }
+
+    /**
+     * Whether the Kconfig file of the given architecture has to be copied to the root of the tree, because old
+     * Linux versions have no top level Kconfig file.
+     *
+     * @param arch The architecture to analyze.
+     *
+     * @return Whether the tree has no root Kconfig file, but one for the architecture.
+     */
+    public boolean needsArchKconfig(@NonNull String arch) {
+        return !rootKconfig && new File(sourceTree, "arch/" + arch + "/Kconfig").isFile();
+    }
+
+    @Override
+    public @NonNull String toString() {
+        return "SourceTreeAnalyzer [type=" + treeType + ", obsoleteMakeSyntax=" + obsoleteMakeSyntax
+                + ", obsoleteKconfigGrammar=" + obsoleteKconfigGrammar + ", rootKconfig=" + rootKconfig + "]";
+    }
+
+}
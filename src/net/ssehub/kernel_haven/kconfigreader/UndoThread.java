@@ -16,7 +16,10 @@
  */
 package net.ssehub.kernel_haven.kconfigreader;
 
+import java.io.IOException;
+
 import net.ssehub.kernel_haven.util.Logger;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
 
 /**
  * 
@@ -24,12 +27,21 @@ import net.ssehub.kernel_haven.util.Logger;
  * older Linux versions.
  * This threat waits a specified time before applying the undo operation to avoid concurrent operations.
  * This is required since the operations of the {@link KconfigReaderWrapper} are run in separate {@link Process}es.
+ * If a {@link ProcessTreeTracker} is given, the undo operation is applied as soon as all tracked processes have
+ * terminated; the wait time is then only used as a safety timeout.
  * @author El-Sharkawy
  */
 public abstract class UndoThread extends Thread {
     
+    /**
+     * How often (in ms) the {@link ProcessTreeTracker} is polled.
+     */
+    private static final long POLL_INTERVAL = 50;
+    
     private long waitTime;
     
+    private @Nullable ProcessTreeTracker tracker;
+    
     /**
      * Creates a new {@link UndoThread} instance to specify a new undo operation.
      * @param waitTime Specifies how long to wait (in ms) before applying {@link #revertOperation()}.
@@ -38,6 +50,20 @@ public abstract class UndoThread extends Thread {
         this.waitTime = waitTime;
     }
     
+    /**
+     * Creates a new {@link UndoThread} instance, which applies the undo operation as soon as the tracked processes
+     * have terminated. If tracking is not {@link ProcessTreeTracker#isSupported() supported}, this behaves like
+     * {@link #UndoThread(long)}.
+     * @param tracker The tracker of the processes that must terminate before {@link #revertOperation()} is applied.
+     * @param safetyTimeout Specifies how long to wait (in ms) at most before applying {@link #revertOperation()}.
+     */
+    public UndoThread(@Nullable ProcessTreeTracker tracker, long safetyTimeout) {
+        this.waitTime = safetyTimeout;
+        if (ProcessTreeTracker.isSupported()) {
+            this.tracker = tracker;
+        }
+    }
+    
     /**
      * Specifies the undo operation to be applied after waiting.
      */
@@ -52,7 +78,10 @@ public abstract class UndoThread extends Thread {
         do {
             now = System.currentTimeMillis();
             try {
-                Thread.sleep(waitTime);
+                if (isTrackedTreeFinished()) {
+                    break;
+                }
+                Thread.sleep(tracker != null ? Math.min(POLL_INTERVAL, waitTime) : waitTime);
             } catch (InterruptedException e) {
                 // Very unlikely that this happens.
                 Logger.get().logException("UndoThread interrupted while waiting", e);
@@ -63,6 +92,26 @@ public abstract class UndoThread extends Thread {
         revertOperation();
     }
     
+    /**
+     * Checks whether the tracked processes have terminated.
+     * 
+     * @return <code>true</code> if all tracked processes have terminated, <code>false</code> if they are still
+     *      running or no tracker is used.
+     */
+    private boolean isTrackedTreeFinished() {
+        boolean finished = false;
+        ProcessTreeTracker tracker = this.tracker;
+        if (tracker != null) {
+            try {
+                finished = tracker.isFinished();
+            } catch (IOException e) {
+                Logger.get().logException("Can't track processes, waiting for the safety timeout", e);
+                this.tracker = null;
+            }
+        }
+        return finished;
+    }
+    
     /**
      * Short hand to start and join the {@link UndoThread.
      */
@@ -25,10 +25,29 @@ import org.junit.runners.Suite.SuiteClasses;
  */
 @RunWith(Suite.class)
 @SuiteClasses({
+    CnfBuilderTest.class,
     ConverterTest.class,
+    DimacsHeaderParserTest.class,
+    ExtractionReportTest.class,
+    HeapSizerTest.class,
+    IntIntMapTest.class,
+    IntSetTest.class,
+    KconfigCnfEncoderTest.class,
+    KconfigChangeAnalyzerTest.class,
+    KconfigDefinitionScannerTest.class,
+    KconfigLocationIndexTest.class,
     KconfigReaderExtractorTest.class,
     KconfigReaderWrapperTest.class,
     KconfigReaderExtractorTestLinux.class,
+    KconfigSourceCollectorTest.class,
+    ModelCacheTest.class,
+    OutputMonitorTest.class,
+    ProcessTreeTrackerTest.class,
+    RsfIdScannerTest.class,
+    ShadowTreeTest.class,
+    SourceLocationFinderTest.class,
+    SourceTreeAnalyzerTest.class,
+    SyntheticScaleTest.class,
     TristateVariableTest.class,
     UndoOperationTest.class,
     })
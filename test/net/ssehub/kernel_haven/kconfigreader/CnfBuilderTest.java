@@ -0,0 +1,140 @@
+/*
+ * Copyright 2020 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kconfigreader;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests the {@link CnfBuilder}.
+ *
+ * @author Adam
+ */
+public class CnfBuilderTest {
+
+    /**
+     * Tests that constants and trivial gates are folded without creating variables or clauses.
+     */
+    @Test
+    public void testFolding() {
+        CnfBuilder cnf = new CnfBuilder();
+        int a = cnf.newVariable("A");
+        int b = cnf.newVariable("B");
+
+        assertThat(cnf.and(a, CnfBuilder.TRUE), is(a));
+        assertThat(cnf.and(a, CnfBuilder.FALSE), is(CnfBuilder.FALSE));
+        assertThat(cnf.and(a, -a), is(CnfBuilder.FALSE));
+        assertThat(cnf.and(a, a), is(a));
+        assertThat(cnf.and(), is(CnfBuilder.TRUE));
+        assertThat(cnf.or(a, CnfBuilder.TRUE), is(CnfBuilder.TRUE));
+        assertThat(cnf.or(a, -a), is(CnfBuilder.TRUE));
+        assertThat(cnf.or(b, CnfBuilder.FALSE), is(b));
+        assertThat(cnf.iff(a, a), is(CnfBuilder.TRUE));
+        assertThat(cnf.iff(a, CnfBuilder.TRUE), is(a));
+        assertThat(cnf.ite(CnfBuilder.TRUE, a, b), is(a));
+        assertThat(cnf.ite(a, b, b), is(b));
+
+        assertThat(cnf.getNumVariables(), is(2));
+        assertThat(cnf.getNumClauses(), is(0));
+    }
+
+    /**
+     * Tests that structurally equal gates are created only once, regardless of the order of their inputs.
+     */
+    @Test
+    public void testGateReuse() {
+        CnfBuilder cnf = new CnfBuilder();
+        int a = cnf.newVariable("A");
+        int b = cnf.newVariable("B");
+
+        int and = cnf.and(a, b);
+        assertThat(cnf.and(b, a), is(and));
+        assertThat(cnf.or(-a, -b), is(-and));
+        assertThat(cnf.getNumVariables(), is(3));
+        assertThat(cnf.getNumClauses(), is(3));
+    }
+
+    /**
+     * Tests that satisfied clauses are dropped and false literals are removed.
+     *
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testAddClause() throws IOException {
+        CnfBuilder cnf = new CnfBuilder();
+        int a = cnf.newVariable("A");
+        int b = cnf.newVariable("B");
+
+        cnf.addClause(a, -a);
+        cnf.addClause(a, CnfBuilder.TRUE);
+        cnf.addClause(b, a, CnfBuilder.FALSE, b);
+        cnf.addImplication(CnfBuilder.TRUE, a, b);
+
+        File file = File.createTempFile("cnf_builder", ".dimacs");
+        try {
+            cnf.write(file);
+            assertThat(Files.readAllLines(file.toPath()),
+                    is(Arrays.asList("c 1 A", "c 2 B", "p cnf 2 2", "1 2 0", "-1 2 0")));
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Tests the pairwise and the sequential encoding of "at most one" by checking all assignments.
+     *
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testAtMostOne() throws IOException {
+        for (int size : new int[] {3, 9}) {
+            CnfBuilder cnf = new CnfBuilder();
+            int[] literals = new int[size];
+            for (int i = 0; i < size; i++) {
+                literals[i] = cnf.newVariable("V" + i);
+            }
+            cnf.addAtMostOne(literals);
+
+            File file = File.createTempFile("cnf_builder", ".dimacs");
+            try {
+                cnf.write(file);
+                DimacsSolver solver = new DimacsSolver(file);
+
+                for (int bits = 0; bits < 1 << size; bits++) {
+                    Map<String, Boolean> assignment = new HashMap<>();
+                    for (int i = 0; i < size; i++) {
+                        assignment.put("V" + i, (bits & 1 << i) != 0);
+                    }
+                    assertThat(assignment.toString(), solver.isSatisfiable(assignment),
+                            is(Integer.bitCount(bits) <= 1));
+                }
+            } finally {
+                file.delete();
+            }
+        }
+    }
+
+}
@@ -26,16 +26,23 @@ import static org.junit.Assert.fail;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.junit.Test;
 
 import net.ssehub.kernel_haven.util.FormatException;
+import net.ssehub.kernel_haven.util.Util;
 import net.ssehub.kernel_haven.util.null_checks.NonNull;
 import net.ssehub.kernel_haven.variability_model.HierarchicalVariable;
+import net.ssehub.kernel_haven.variability_model.SourceLocation;
 import net.ssehub.kernel_haven.variability_model.VariabilityModel;
 import net.ssehub.kernel_haven.variability_model.VariabilityModelDescriptor.Attribute;
+import net.ssehub.kernel_haven.variability_model.VariabilityModelDescriptor.ConstraintFileType;
 import net.ssehub.kernel_haven.variability_model.VariabilityVariable;
 
 /**
@@ -128,6 +135,56 @@ public class ConverterTest {
         // can't check file name, since it will be copied
     }
     
+    /**
+     * Tests that the statistics of the DIMACS file are calculated while it is copied.
+     * @throws IOException unwanted.
+     * @throws FormatException unwanted.
+     */
+    @Test
+    public void testDimacsStatistics() throws IOException, FormatException {
+        Converter converter = init(DIMACS_PATH);
+
+        VariabilityModel vm = converter.convert();
+        assertThat(Files.readAllBytes(vm.getConstraintModel().toPath()),
+                is(Files.readAllBytes(new File(DIMACS_PATH.getPath() + ".dimacs").toPath())));
+        
+        DimacsStatistics statistics = converter.getDimacsStatistics();
+        assertThat(statistics.getNumVariables(), is(5));
+        assertThat(statistics.getNumClauses(), is(7));
+        assertThat(statistics.getMaxClauseWidth(), is(5));
+        assertThat(statistics.getOccurrences(1), is(4));
+        assertThat(statistics.getOccurrences(3), is(3));
+        assertThat(statistics.getOccurrences(4), is(5));
+        assertThat(statistics.getOccurrences(6), is(0));
+    }
+    
+    /**
+     * Tests that the converter moves the DIMACS file if it may take ownership of it.
+     * @throws IOException unwanted.
+     * @throws FormatException unwanted.
+     */
+    @Test
+    public void testTakeOwnership() throws IOException, FormatException {
+        File tmpDir = Files.createTempDirectory("converter_test").toFile();
+        try {
+            File outputBase = new File(tmpDir, "output");
+            File dimacs = new File(outputBase.getPath() + ".dimacs");
+            Util.copyFile(new File(DIMACS_PATH.getPath() + ".dimacs"), dimacs);
+            Util.copyFile(new File(DIMACS_PATH.getPath() + ".rsf"), new File(outputBase.getPath() + ".rsf"));
+            byte[] content = Files.readAllBytes(dimacs.toPath());
+            
+            Converter converter = new Converter(outputBase, true);
+            VariabilityModel vm = converter.convert();
+            
+            assertThat(dimacs.exists(), is(false));
+            assertThat(Files.readAllBytes(vm.getConstraintModel().toPath()), is(content));
+            assertThat(vm.getVariables().size(), is(3));
+            
+        } finally {
+            Util.deleteFolder(tmpDir);
+        }
+    }
+    
     /**
      * Tests if the converter correctly detects wrong format (first name, then number).
      * @throws IOException unwanted.
@@ -209,6 +266,77 @@ public class ConverterTest {
         converter.convert();
     }
     
+    /**
+     * Tests whether unexpected tags in the RSF structure throw an error.
+     * @throws FormatException wanted.
+     * @throws IOException unwanted.
+     */
+    @Test(expected = FormatException.class)
+    public void testUnexpectedTagInRsf() throws IOException, FormatException {
+        Converter converter = init(new File("testdata/testmodel10"));
+        converter.convert();
+    }
+    
+    /**
+     * Tests whether malformed XML in the RSF file throws an error.
+     * @throws FormatException wanted.
+     * @throws IOException unwanted.
+     */
+    @Test(expected = FormatException.class)
+    public void testMalformedRsf() throws IOException, FormatException {
+        Converter converter = init(new File("testdata/testmodel11"));
+        converter.convert();
+    }
+    
+    /**
+     * Tests that the source locations written by dumpconf are read in the order of the RSF file.
+     * @throws FormatException unwanted.
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testSourceLocations() throws IOException, FormatException {
+        Converter converter = init(new File("testdata/testmodel12"));
+        VariabilityModel vm = converter.convert();
+        
+        Map<String, List<SourceLocation>> locations = converter.getSourceLocations();
+        assertThat(locations.keySet(), is(new HashSet<>(Arrays.asList("CONFIG_ALPHA", "CONFIG_BETA",
+                "CONFIG_GAMMA"))));
+        assertThat(locations.get("CONFIG_ALPHA"), is(Arrays.asList(
+                new SourceLocation(new File("/src/linux/Kconfig"), 3))));
+        assertThat(locations.get("CONFIG_BETA"), is(Arrays.asList(
+                new SourceLocation(new File("init/Kconfig"), 12),
+                new SourceLocation(new File("init/Kconfig"), 20))));
+        assertThat(locations.get("CONFIG_GAMMA"), is(Arrays.asList(
+                new SourceLocation(new File("arch/x86/Kconfig & more"), 7))));
+        
+        // locations are not added to the variables by the converter
+        assertThat(vm.getVariableMap().get("CONFIG_BETA").getSourceLocations(), nullValue());
+    }
+    
+    /**
+     * Tests that an RSF file without location attributes results in no source locations.
+     * @throws FormatException unwanted.
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testNoSourceLocations() throws IOException, FormatException {
+        Converter converter = init(DIMACS_PATH);
+        converter.convert();
+        
+        assertThat(converter.getSourceLocations().isEmpty(), is(true));
+    }
+    
+    /**
+     * Tests whether an invalid line attribute throws an error.
+     * @throws FormatException wanted.
+     * @throws IOException unwanted.
+     */
+    @Test(expected = FormatException.class)
+    public void testInvalidSourceLocation() throws IOException, FormatException {
+        Converter converter = init(new File("testdata/testmodel13"));
+        converter.convert();
+    }
+    
     /**
      * Tests whether choices with explicit names are handled properly.
      * @throws FormatException unwanted.
@@ -442,6 +570,58 @@ public class ConverterTest {
         assertThat(d.getNestingDepth(), is(1));
     }
     
+    /**
+     * Tests that converting only the RSF file yields the same variables, types, hierarchy and constraint usage as a
+     * full conversion, but no constraint model.
+     * 
+     * @throws IOException unwanted.
+     * @throws FormatException unwanted.
+     */
+    @Test
+    public void testConvertRsf() throws IOException, FormatException {
+        for (File path : new File[] {DIMACS_PATH, new File("testdata/dependencies"),
+            new File("testdata/hierarchy/simple")}) {
+            
+            VariabilityModel full = init(path).convert();
+            VariabilityModel rsfOnly = init(path).convertRsf();
+            
+            assertThat(rsfOnly.getConstraintModel(), nullValue());
+            assertThat(rsfOnly.getDescriptor().getConstraintFileType(), is(ConstraintFileType.UNKNOWN));
+            assertThat(rsfOnly.getDescriptor().hasAttribute(Attribute.CONSTRAINT_USAGE), is(true));
+            assertThat(rsfOnly.getDescriptor().hasAttribute(Attribute.HIERARCHICAL), is(true));
+            
+            // KconfigReader adds CONFIG_MODULES to the DIMACS model, even if it is not defined in the Kconfig files
+            Set<String> fullNames = new HashSet<>(full.getVariableMap().keySet());
+            if (!rsfOnly.getVariableMap().containsKey("CONFIG_MODULES")) {
+                fullNames.remove("CONFIG_MODULES");
+            }
+            assertThat(rsfOnly.getVariableMap().keySet(), is(fullNames));
+            for (VariabilityVariable var : rsfOnly.getVariables()) {
+                VariabilityVariable fullVar = full.getVariableMap().get(var.getName());
+                assertThat(var.getType(), is(fullVar.getType()));
+                assertThat(var.getDimacsNumber(), is(0));
+                
+                HierarchicalVariable parent = ((HierarchicalVariable) var).getParent();
+                HierarchicalVariable fullParent = ((HierarchicalVariable) fullVar).getParent();
+                if (fullParent == null) {
+                    assertThat(parent, nullValue());
+                } else {
+                    assertThat(parent.getName(), is(fullParent.getName()));
+                }
+                
+                Set<String> used = new HashSet<>();
+                for (VariabilityVariable usedVar : var.getVariablesUsedInConstraints()) {
+                    used.add(usedVar.getName());
+                }
+                Set<String> fullUsed = new HashSet<>();
+                for (VariabilityVariable usedVar : fullVar.getVariablesUsedInConstraints()) {
+                    fullUsed.add(usedVar.getName());
+                }
+                assertThat(used, is(fullUsed));
+            }
+        }
+    }
+    
     /**
      * Asserts that the two sets of variables are the same (compares the names).
      * 
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2020 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kconfigreader;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.util.FormatException;
+import net.ssehub.kernel_haven.variability_model.VariabilityVariable;
+
+/**
+ * Tests the {@link DimacsHeaderParser}.
+ *
+ * @author Adam
+ */
+public class DimacsHeaderParserTest {
+
+    private File dimacsFile;
+
+    /**
+     * Creates the temporary DIMACS file.
+     *
+     * @throws IOException unwanted.
+     */
+    @Before
+    public void setUp() throws IOException {
+        dimacsFile = File.createTempFile("header_test", ".dimacs");
+    }
+
+    /**
+     * Deletes the temporary DIMACS file.
+     */
+    @After
+    public void tearDown() {
+        dimacsFile.delete();
+    }
+
+    /**
+     * Writes the given content to the DIMACS file and parses it.
+     *
+     * @param content The content of the DIMACS file.
+     * @return The parsed variables, by name.
+     *
+     * @throws IOException unwanted.
+     * @throws FormatException If the parser throws it.
+     */
+    private Map<String, VariabilityVariable> parse(String content) throws IOException, FormatException {
+        Files.write(dimacsFile.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        Set<VariabilityVariable> variables = new DimacsHeaderParser(dimacsFile).parse();
+        Map<String, VariabilityVariable> result = new HashMap<>();
+        for (VariabilityVariable var : variables) {
+            result.put(var.getName(), var);
+        }
+        return result;
+    }
+
+    /**
+     * Tests tristate pairing, lone _MODULE variables, names with spaces and that the clauses are not read.
+     *
+     * @throws IOException unwanted.
+     * @throws FormatException unwanted.
+     */
+    @Test
+    public void testVariables() throws IOException, FormatException {
+        Map<String, VariabilityVariable> vars = parse("c 2 A_MODULE\nc 1 A\nc 3 B_MODULE\nc 4 S=a  b\n"
+                + "p cnf 4 1\nthis is no clause\n");
+
+        assertThat(vars.size(), is(3));
+
+        assertThat(vars.get("CONFIG_A"), instanceOf(TristateVariable.class));
+        assertThat(vars.get("CONFIG_A").getDimacsNumber(), is(1));
+        assertThat(((TristateVariable) vars.get("CONFIG_A")).getModuleNumber(), is(2));
+
+        assertThat(vars.get("CONFIG_B_MODULE").getType(), is("bool"));
+        assertThat(vars.get("CONFIG_B_MODULE").getDimacsNumber(), is(3));
+
+        assertThat(vars.get("CONFIG_S=a  b").getDimacsNumber(), is(4));
+    }
+
+    /**
+     * Tests windows line breaks, a missing line break at the end and non-ASCII names.
+     *
+     * @throws IOException unwanted.
+     * @throws FormatException unwanted.
+     */
+    @Test
+    public void testLineBreaksAndEncoding() throws IOException, FormatException {
+        Map<String, VariabilityVariable> vars = parse("c 1 A\r\nc 2 S=\u00e4\u20ac\r\nc 3 C");
+
+        assertThat(vars.size(), is(3));
+        assertThat(vars.get("CONFIG_A").getDimacsNumber(), is(1));
+        assertThat(vars.get("CONFIG_S=\u00e4\u20ac").getDimacsNumber(), is(2));
+        assertThat(vars.get("CONFIG_C").getDimacsNumber(), is(3));
+    }
+
+    /**
+     * Tests lines that are longer than the read buffer and span several buffers.
+     *
+     * @throws IOException unwanted.
+     * @throws FormatException unwanted.
+     */
+    @Test
+    public void testLongLines() throws IOException, FormatException {
+        StringBuilder content = new StringBuilder();
+        StringBuilder longName = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            longName.append((char) ('A' + i % 26));
+        }
+        content.append("c 1 ").append(longName).append('\n');
+        for (int i = 2; i < 10000; i++) {
+            content.append("c ").append(i).append(" VAR_").append(i).append('\n');
+        }
+        content.append("p cnf 9999 0\n");
+
+        Map<String, VariabilityVariable> vars = parse(content.toString());
+
+        assertThat(vars.size(), is(9999));
+        assertThat(vars.get("CONFIG_" + longName).getDimacsNumber(), is(1));
+        assertThat(vars.get("CONFIG_VAR_9999").getDimacsNumber(), is(9999));
+    }
+
+    /**
+     * Tests that a number that is not parseable throws an exception.
+     *
+     * @throws IOException unwanted.
+     * @throws FormatException wanted.
+     */
+    @Test(expected = FormatException.class)
+    public void testInvalidNumber() throws IOException, FormatException {
+        parse("c 1 A\nc 99999999999 B\np cnf 2 0\n");
+    }
+
+    /**
+     * Tests that a missing name throws an exception.
+     *
+     * @throws IOException unwanted.
+     * @throws FormatException wanted.
+     */
+    @Test(expected = FormatException.class)
+    public void testMissingName() throws IOException, FormatException {
+        parse("c 1\np cnf 1 0\n");
+    }
+
+    /**
+     * Tests that a line that is neither a comment nor the problem line throws an exception.
+     *
+     * @throws IOException unwanted.
+     * @throws FormatException wanted.
+     */
+    @Test(expected = FormatException.class)
+    public void testNoComment() throws IOException, FormatException {
+        parse("c 1 A\ncc 2 B\np cnf 2 0\n");
+    }
+
+}
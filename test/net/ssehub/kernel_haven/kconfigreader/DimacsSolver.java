@@ -0,0 +1,174 @@
+/*
+ * Copyright 2020 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kconfigreader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A small DPLL solver for the DIMACS files of the tests. Reads the variable names from the comments, like the
+ * {@link DimacsHeaderParser}, and checks whether the formula is satisfiable under a partial assignment of named
+ * variables. Only meant for small models.
+ *
+ * @author Adam
+ */
+public class DimacsSolver {
+
+    private Map<String, Integer> variables = new HashMap<>();
+
+    private int numVariables;
+
+    private List<int[]> clauses = new ArrayList<>();
+
+    /**
+     * Reads a DIMACS file.
+     *
+     * @param file The DIMACS file.
+     *
+     * @throws IOException If reading the file fails.
+     */
+    public DimacsSolver(File file) throws IOException {
+        List<Integer> clause = new ArrayList<>();
+        for (String line : Files.readAllLines(file.toPath())) {
+            line = line.trim();
+            if (line.startsWith("c ")) {
+                String[] parts = line.split(" ", 3);
+                variables.put(parts[2], Integer.parseInt(parts[1]));
+
+            } else if (line.startsWith("p ")) {
+                numVariables = Integer.parseInt(line.split("\\s+")[2]);
+
+            } else if (!line.isEmpty()) {
+                for (String literal : line.split("\\s+")) {
+                    int value = Integer.parseInt(literal);
+                    if (value == 0) {
+                        clauses.add(toArray(clause));
+                        clause.clear();
+                    } else {
+                        clause.add(value);
+                    }
+                }
+            }
+        }
+        if (!clause.isEmpty()) {
+            // last clause without terminating 0
+            clauses.add(toArray(clause));
+        }
+    }
+
+    /**
+     * Returns the named variables.
+     *
+     * @return Variable name -> DIMACS number.
+     */
+    public Map<String, Integer> getVariables() {
+        return variables;
+    }
+
+    /**
+     * Checks whether the formula is satisfiable if the given variables have the given values.
+     *
+     * @param assignment Variable name -> value. Variables that are not contained may have any value.
+     *
+     * @return Whether the formula is satisfiable under the assignment.
+     */
+    public boolean isSatisfiable(Map<String, Boolean> assignment) {
+        int[] values = new int[numVariables + 1];
+        for (Map.Entry<String, Boolean> entry : assignment.entrySet()) {
+            Integer variable = variables.get(entry.getKey());
+            if (variable == null) {
+                throw new IllegalArgumentException("Unknown variable " + entry.getKey());
+            }
+            values[variable] = entry.getValue() ? 1 : -1;
+        }
+        return solve(values);
+    }
+
+    /**
+     * Checks whether the formula is satisfiable under the given partial assignment.
+     *
+     * @param assignment The value of each variable: 1 for true, -1 for false, 0 if not assigned yet.
+     *
+     * @return Whether the formula is satisfiable.
+     */
+    private boolean solve(int[] assignment) {
+        int[] values = assignment.clone();
+
+        // unit propagation
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int[] clause : clauses) {
+                int unassigned = 0;
+                int lastUnassigned = 0;
+                boolean satisfied = false;
+                for (int literal : clause) {
+                    int value = values[Math.abs(literal)];
+                    if (value == 0) {
+                        unassigned++;
+                        lastUnassigned = literal;
+                    } else if (value > 0 == literal > 0) {
+                        satisfied = true;
+                        break;
+                    }
+                }
+                if (!satisfied) {
+                    if (unassigned == 0) {
+                        return false;
+                    }
+                    if (unassigned == 1) {
+                        values[Math.abs(lastUnassigned)] = lastUnassigned > 0 ? 1 : -1;
+                        changed = true;
+                    }
+                }
+            }
+        }
+
+        for (int variable = 1; variable < values.length; variable++) {
+            if (values[variable] == 0) {
+                values[variable] = 1;
+                if (solve(values)) {
+                    return true;
+                }
+                values[variable] = -1;
+                return solve(values);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Converts a list of literals to an array.
+     *
+     * @param literals The literals.
+     *
+     * @return The literals as an array.
+     */
+    private static int[] toArray(List<Integer> literals) {
+        int[] result = new int[literals.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = literals.get(i);
+        }
+        return result;
+    }
+
+}
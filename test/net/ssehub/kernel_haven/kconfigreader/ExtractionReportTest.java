@@ -0,0 +1,137 @@
+/*
+ * Copyright 2020 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kconfigreader;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.kconfigreader.ExtractionReport.ProcessRecord;
+import net.ssehub.kernel_haven.util.FormatException;
+import net.ssehub.kernel_haven.util.io.json.JsonBoolean;
+import net.ssehub.kernel_haven.util.io.json.JsonList;
+import net.ssehub.kernel_haven.util.io.json.JsonObject;
+
+/**
+ * Tests the {@link ExtractionReport}.
+ *
+ * @author Adam
+ */
+@SuppressWarnings("null")
+public class ExtractionReportTest {
+
+    /**
+     * Tests that phases are recorded and summed up by name.
+     *
+     * @throws InterruptedException unwanted.
+     */
+    @Test
+    public void testPhases() throws InterruptedException {
+        ExtractionReport report = new ExtractionReport("x86", new File("linux"));
+        long start = ExtractionReport.now();
+        Thread.sleep(20);
+        report.addPhase("prepare", start);
+        report.addPhase("convert", ExtractionReport.now());
+        report.addPhase("convert", ExtractionReport.now());
+
+        assertThat(report.getPhaseTime("prepare") >= 20, is(true));
+        assertThat(report.getPhaseTime("convert") >= 0, is(true));
+        assertThat(report.getPhaseTime("kconfigreader"), is(-1L));
+        assertThat(report.getWallTime(), is(-1L));
+
+        report.finish(true);
+        assertThat(report.getWallTime() >= report.getPhaseTime("prepare"), is(true));
+    }
+
+    /**
+     * Tests the JSON representation, including the entries of an included report.
+     *
+     * @throws FormatException unwanted.
+     */
+    @Test
+    public void testToJson() throws FormatException {
+        ExtractionReport shared = new ExtractionReport("", new File("linux"));
+        shared.addPhase("prepare", ExtractionReport.now());
+        shared.addFix("makefile_rewrite", true);
+        shared.addProcess(new ProcessRecord("make", Arrays.asList("make", "allyesconfig", "prepare"), true, 1500,
+                4200, 64L * 1024 * 1024));
+
+        ExtractionReport report = new ExtractionReport("arm", new File("linux"));
+        report.include(shared);
+        report.addPhase("kconfigreader", ExtractionReport.now());
+        report.addProcess(new ProcessRecord("KconfigReader", Arrays.asList("java"), false, 20, -1, -1));
+        report.setCached(false);
+        report.finish(false);
+
+        JsonObject json = report.toJson();
+        assertThat(json.getString("arch"), is("arm"));
+        assertThat(json.getString("sourceTree"), is(new File("linux").getAbsolutePath()));
+        assertThat(json.getElement("success"), is(JsonBoolean.FALSE));
+        assertThat(json.getElement("cached"), is(JsonBoolean.FALSE));
+
+        JsonList phases = json.getList("phases");
+        assertThat(phases.getSize(), is(2));
+        assertThat(((JsonObject) phases.get(0)).getString("name"), is("prepare"));
+        assertThat(((JsonObject) phases.get(1)).getString("name"), is("kconfigreader"));
+
+        JsonList fixes = json.getList("fixes");
+        assertThat(fixes.getSize(), is(1));
+        assertThat(((JsonObject) fixes.get(0)).getString("name"), is("makefile_rewrite"));
+        assertThat(((JsonObject) fixes.get(0)).getElement("success"), is(JsonBoolean.TRUE));
+
+        JsonList processes = json.getList("processes");
+        assertThat(processes.getSize(), is(2));
+        JsonObject make = (JsonObject) processes.get(0);
+        assertThat(make.getString("name"), is("make"));
+        assertThat(make.getList("command").getSize(), is(3));
+        assertThat(make.getLong("wallTimeMs"), is(1500L));
+        assertThat(make.getLong("cpuTimeMs"), is(4200L));
+        assertThat(make.getLong("peakRssBytes"), is(64L * 1024 * 1024));
+        assertThat(((JsonObject) processes.get(1)).getLong("cpuTimeMs"), is(-1L));
+    }
+
+    /**
+     * Tests writing the report to a file.
+     *
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testWrite() throws IOException {
+        File dir = new File("testdata/tmp_reports");
+        File file = new File(dir, "report.json");
+        try {
+            ExtractionReport report = new ExtractionReport("x86", new File("linux"));
+            report.finish(true);
+            report.write(file);
+
+            String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            assertThat(content, is(report.toJson().toString()));
+            assertThat(dir.listFiles().length, is(1));
+        } finally {
+            file.delete();
+            dir.delete();
+        }
+    }
+
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2020 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kconfigreader;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.util.Util;
+
+/**
+ * Tests the {@link HeapSizer}.
+ *
+ * @author Adam
+ */
+@SuppressWarnings("null")
+public class HeapSizerTest {
+
+    private static final File SOURCE_TREE = new File("testdata/sources");
+
+    private static final File TMP_DIR = new File("testdata/tmp_heap_sizer");
+
+    /**
+     * Creates the temporary directory.
+     */
+    @Before
+    public void setUp() {
+        TMP_DIR.mkdir();
+    }
+
+    /**
+     * Deletes the temporary directory.
+     *
+     * @throws IOException If deleting fails.
+     */
+    @After
+    public void tearDown() throws IOException {
+        Util.deleteFolder(TMP_DIR);
+    }
+
+    /**
+     * Tests that the symbols of all reachable Kconfig files of the architecture are counted.
+     */
+    @Test
+    public void testEstimateSymbols() {
+        HeapSizer sizer = new HeapSizer(TMP_DIR, SOURCE_TREE);
+
+        assertThat(sizer.estimateSymbols("x86"), is(4L));
+        assertThat(sizer.estimateSymbols("arm"), is(3L));
+    }
+
+    /**
+     * Tests that the initial heap without a recorded peak is derived from the number of symbols.
+     */
+    @Test
+    public void testInitialHeapFromSymbols() {
+        HeapSizer sizer = new HeapSizer(TMP_DIR, SOURCE_TREE);
+
+        long expected = Math.min(HeapSizer.MIN_HEAP + 4 * HeapSizer.HEAP_PER_SYMBOL / 1024, sizer.getMaxHeap());
+        assertThat(sizer.getInitialHeap("x86"), is(Math.max(HeapSizer.MIN_HEAP, expected)));
+    }
+
+    /**
+     * Tests that a recorded peak is used for the initial heap of the same architecture only, and that it is
+     * persisted in the resource directory.
+     */
+    @Test
+    public void testInitialHeapFromRecordedPeak() {
+        HeapSizer sizer = new HeapSizer(TMP_DIR, SOURCE_TREE);
+        long symbolHeap = sizer.getInitialHeap("arm");
+
+        sizer.recordPeak("x86", 400L * 1024 * 1024, 1000);
+
+        // a new instance reads the recorded peak from the resource directory
+        HeapSizer other = new HeapSizer(TMP_DIR, SOURCE_TREE);
+        assertThat(other.getInitialHeap("x86"), is(Math.min(500L, other.getMaxHeap())));
+        assertThat(other.getInitialHeap("arm"), is(symbolHeap));
+
+        // a different source tree does not use the peak
+        HeapSizer otherTree = new HeapSizer(TMP_DIR, new File("testdata/pseudoLinux"));
+        assertThat(otherTree.getInitialHeap("x86"), is(HeapSizer.MIN_HEAP));
+    }
+
+    /**
+     * Tests that the heap does not grow from run to run, since the recorded peak contains more than the heap.
+     */
+    @Test
+    public void testInitialHeapDoesNotGrow() {
+        HeapSizer sizer = new HeapSizer(TMP_DIR, SOURCE_TREE);
+
+        sizer.recordPeak("x86", 600L * 1024 * 1024, 512);
+        assertThat(sizer.getInitialHeap("x86"), is(Math.min(512L, sizer.getMaxHeap())));
+
+        sizer.recordPeak("x86", 300L * 1024 * 1024, 512);
+        assertThat(sizer.getInitialHeap("x86"), is(Math.min(375L, sizer.getMaxHeap())));
+    }
+
+    /**
+     * Tests that the available memory is shared by the concurrent runs.
+     */
+    @Test
+    public void testMaxHeap() {
+        long gib = 1024L * 1024 * 1024;
+
+        assertThat(HeapSizer.computeMaxHeap(10 * gib, 1), is(9216L));
+        assertThat(HeapSizer.computeMaxHeap(10 * gib, 4), is(2304L));
+        assertThat(HeapSizer.computeMaxHeap(gib, 8), is(HeapSizer.MIN_HEAP));
+        assertThat(HeapSizer.computeMaxHeap(-1, 2), is(Long.MAX_VALUE));
+    }
+
+    /**
+     * Tests that the heap is doubled for retries, but not beyond the maximum heap.
+     */
+    @Test
+    public void testRetryHeap() {
+        HeapSizer sizer = new HeapSizer(TMP_DIR, SOURCE_TREE);
+        long max = sizer.getMaxHeap();
+
+        assertThat(sizer.getRetryHeap(max), is(-1L));
+        assertThat(sizer.getRetryHeap(max / 2 + 1), is(max));
+        if (max >= 2 * HeapSizer.MIN_HEAP) {
+            assertThat(sizer.getRetryHeap(HeapSizer.MIN_HEAP), is(2 * HeapSizer.MIN_HEAP));
+        }
+    }
+
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2020 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kconfigreader;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests the {@link IntIntMap}.
+ *
+ * @author Adam
+ */
+public class IntIntMapTest {
+
+    /**
+     * Tests putting and getting values, including replacing values and special keys.
+     */
+    @Test
+    public void testPutAndGet() {
+        IntIntMap map = new IntIntMap(2);
+        map.put(0, 10);
+        map.put(-5, 20);
+        map.put(Integer.MAX_VALUE, 30);
+
+        assertThat(map.get(0, -1), is(10));
+        assertThat(map.get(-5, -1), is(20));
+        assertThat(map.get(Integer.MAX_VALUE, -1), is(30));
+        assertThat(map.get(1, -1), is(-1));
+        assertThat(map.size(), is(3));
+
+        map.put(-5, 21);
+        assertThat(map.get(-5, -1), is(21));
+        assertThat(map.size(), is(3));
+    }
+
+    /**
+     * Compares the map with a {@link HashMap} for many random keys, so that the table grows several times.
+     */
+    @Test
+    public void testRandomAgainstHashMap() {
+        Random random = new Random(42);
+        IntIntMap map = new IntIntMap(0);
+        Map<Integer, Integer> expected = new HashMap<>();
+
+        for (int i = 0; i < 10000; i++) {
+            int key = random.nextInt(5000) - 2500;
+            map.put(key, i);
+            expected.put(key, i);
+        }
+
+        assertThat(map.size(), is(expected.size()));
+        for (int key = -2600; key < 2600; key++) {
+            Integer value = expected.get(key);
+            assertThat(map.get(key, -1), is(value != null ? value : -1));
+        }
+    }
+
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2020 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kconfigreader;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Tests the {@link IntSet}.
+ *
+ * @author Adam
+ */
+public class IntSetTest {
+
+    /**
+     * Tests adding values, including duplicates and special values.
+     */
+    @Test
+    public void testAdd() {
+        IntSet set = new IntSet();
+        assertThat(set.add(0), is(true));
+        assertThat(set.add(Integer.MIN_VALUE), is(true));
+        assertThat(set.add(7), is(true));
+        assertThat(set.add(0), is(false));
+
+        assertThat(set.size(), is(3));
+        assertThat(set.contains(0), is(true));
+        assertThat(set.contains(Integer.MIN_VALUE), is(true));
+        assertThat(set.contains(8), is(false));
+
+        int[] values = set.toArray();
+        Arrays.sort(values);
+        assertThat(values, is(new int[] {Integer.MIN_VALUE, 0, 7}));
+    }
+
+    /**
+     * Compares the set with a {@link HashSet} for many random values, so that the table grows several times.
+     */
+    @Test
+    public void testRandomAgainstHashSet() {
+        Random random = new Random(42);
+        IntSet set = new IntSet();
+        Set<Integer> expected = new HashSet<>();
+
+        for (int i = 0; i < 10000; i++) {
+            int value = random.nextInt();
+            assertThat(set.add(value), is(expected.add(value)));
+        }
+
+        assertThat(set.size(), is(expected.size()));
+        Set<Integer> actual = new HashSet<>();
+        for (int value : set.toArray()) {
+            actual.add(value);
+        }
+        assertThat(actual, is(expected));
+    }
+
+}
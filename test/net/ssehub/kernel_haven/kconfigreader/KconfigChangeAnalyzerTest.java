@@ -0,0 +1,121 @@
+/*
+ * Copyright 2020 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kconfigreader;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+/**
+ * Tests the {@link KconfigChangeAnalyzer}.
+ * 
+ * @author Adam
+ */
+public class KconfigChangeAnalyzerTest {
+    
+    private static final File SOURCE_TREE = new File("testdata/sources");
+    
+    /**
+     * Tests that the Kconfig files reachable via source statements are relevant, including missing ones, but not
+     * other Kconfig files.
+     * 
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testKconfigFiles() throws IOException {
+        KconfigChangeAnalyzer analyzer = new KconfigChangeAnalyzer(SOURCE_TREE, "x86");
+        
+        assertThat(analyzer.isRelevant("Kconfig"), is(true));
+        assertThat(analyzer.isRelevant("init/sub/Kconfig.sub"), is(true));
+        assertThat(analyzer.isRelevant("arch/x86/Kconfig.cpu"), is(true));
+        assertThat(analyzer.isRelevant("drivers/missing/Kconfig"), is(true));
+        
+        assertThat(analyzer.isRelevant("drivers/unused/Kconfig"), is(false));
+        assertThat(analyzer.isRelevant("arch/arm/Kconfig"), is(false));
+    }
+    
+    /**
+     * Tests that the relevant files depend on the architecture.
+     * 
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testOtherArch() throws IOException {
+        KconfigChangeAnalyzer analyzer = new KconfigChangeAnalyzer(SOURCE_TREE, "arm");
+        
+        assertThat(analyzer.isRelevant("arch/arm/Kconfig"), is(true));
+        assertThat(analyzer.isRelevant("arch/arm/Makefile"), is(true));
+        assertThat(analyzer.isRelevant("arch/x86/Kconfig.cpu"), is(false));
+        assertThat(analyzer.isRelevant("arch/x86/Makefile"), is(false));
+    }
+    
+    /**
+     * Tests that the Kconfig parser and the Makefiles are relevant, but other files are not.
+     * 
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testBuildFiles() throws IOException {
+        KconfigChangeAnalyzer analyzer = new KconfigChangeAnalyzer(SOURCE_TREE, "x86");
+        
+        assertThat(analyzer.isRelevant("scripts/kconfig/zconf.y"), is(true));
+        assertThat(analyzer.isRelevant("scripts/kconfig/lxdialog/menubox.c"), is(true));
+        assertThat(analyzer.isRelevant("Makefile"), is(true));
+        assertThat(analyzer.isRelevant("arch/x86/Makefile"), is(true));
+        
+        assertThat(analyzer.isRelevant("scripts/Makefile.build"), is(false));
+        assertThat(analyzer.isRelevant("kernel/sched/core.c"), is(false));
+        assertThat(analyzer.isRelevant("init/Makefile"), is(false));
+    }
+    
+    /**
+     * Tests that the top level Kconfig file is relevant, if the root is the Kconfig file of the architecture (since
+     * creating it changes the root).
+     * 
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testWithoutTopLevelKconfig() throws IOException {
+        KconfigChangeAnalyzer analyzer = new KconfigChangeAnalyzer(new File("testdata/sources/drivers"), "x86");
+        
+        assertThat(analyzer.isRelevant("Kconfig"), is(true));
+        assertThat(analyzer.isRelevant("arch/x86/Kconfig"), is(true));
+        assertThat(analyzer.isRelevant("unused/Kconfig"), is(false));
+    }
+    
+    /**
+     * Tests filtering a list of changed files.
+     * 
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testGetRelevantChanges() throws IOException {
+        KconfigChangeAnalyzer analyzer = new KconfigChangeAnalyzer(SOURCE_TREE, "x86");
+        
+        assertThat(analyzer.getRelevantChanges(Arrays.asList("README", "kernel/fork.c", "drivers/unused/Kconfig")),
+                is(Collections.emptyList()));
+        assertThat(analyzer.getRelevantChanges(Arrays.asList("README", "./init/Kconfig", "scripts/kconfig/conf.c")),
+                is(Arrays.asList("./init/Kconfig", "scripts/kconfig/conf.c")));
+    }
+    
+}
@@ -0,0 +1,317 @@
+/*
+ * Copyright 2020 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kconfigreader;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.util.FormatException;
+import net.ssehub.kernel_haven.util.Util;
+import net.ssehub.kernel_haven.variability_model.VariabilityModel;
+
+/**
+ * Tests the {@link KconfigCnfEncoder}.
+ *
+ * @author Adam
+ */
+public class KconfigCnfEncoderTest {
+
+    private static final File TMP_DIR = new File("testdata/tmp_cnf_encoder");
+
+    /**
+     * Creates the temporary directory.
+     *
+     * @throws IOException unwanted.
+     */
+    @Before
+    public void setUp() throws IOException {
+        Util.deleteFolder(TMP_DIR);
+        TMP_DIR.mkdir();
+    }
+
+    /**
+     * Deletes the temporary directory.
+     *
+     * @throws IOException unwanted.
+     */
+    @After
+    public void tearDown() throws IOException {
+        Util.deleteFolder(TMP_DIR);
+    }
+
+    /**
+     * Encodes the given RSF file.
+     *
+     * @param rsfFile The RSF file.
+     *
+     * @return A solver for the written DIMACS file.
+     *
+     * @throws IOException unwanted.
+     * @throws FormatException If the encoder rejects the file.
+     */
+    private static DimacsSolver encode(File rsfFile) throws IOException, FormatException {
+        File dimacsFile = new File(TMP_DIR, "model.dimacs");
+        new KconfigCnfEncoder(rsfFile).encode(dimacsFile);
+        return new DimacsSolver(dimacsFile);
+    }
+
+    /**
+     * Encodes the given symbols.
+     *
+     * @param symbols The XML of the symbols, as written by dumpconf.
+     *
+     * @return A solver for the written DIMACS file.
+     *
+     * @throws IOException unwanted.
+     * @throws FormatException If the encoder rejects the symbols.
+     */
+    private static DimacsSolver encode(String symbols) throws IOException, FormatException {
+        File rsfFile = new File(TMP_DIR, "model.rsf");
+        Files.write(rsfFile.toPath(), ("\n.\n<submenu>\n<menu flags=\"0\">\n" + symbols + "</menu>\n</submenu>\n")
+                .getBytes(StandardCharsets.UTF_8));
+        return encode(rsfFile);
+    }
+
+    /**
+     * Creates an assignment of variables.
+     *
+     * @param values Pairs of variable name and value.
+     *
+     * @return The assignment.
+     */
+    private static Map<String, Boolean> assignment(Object... values) {
+        Map<String, Boolean> result = new HashMap<>();
+        for (int i = 0; i < values.length; i += 2) {
+            result.put((String) values[i], (Boolean) values[i + 1]);
+        }
+        return result;
+    }
+
+    /**
+     * Tests that the encoded models are equivalent to the ones of KconfigReader in the testdata: for each
+     * assignment of the variables of KconfigReader, both formulas are either satisfiable or not.
+     *
+     * @throws IOException unwanted.
+     * @throws FormatException unwanted.
+     */
+    @Test
+    public void testEquivalentToKconfigReader() throws IOException, FormatException {
+        String[] models = {"dependencies", "testmodel6", "testmodel8", "hierarchy", "hierarchy/simple",
+            "hierarchy/multiple", "hierarchy/alternating"};
+
+        for (String model : models) {
+            DimacsSolver encoded = encode(new File("testdata/" + model + ".rsf"));
+            DimacsSolver kconfigReader = new DimacsSolver(new File("testdata/" + model + ".dimacs"));
+
+            List<String> variables = new ArrayList<>(kconfigReader.getVariables().keySet());
+            for (String variable : variables) {
+                assertThat(model + ": " + variable, encoded.getVariables().containsKey(variable), is(true));
+            }
+
+            for (int bits = 0; bits < 1 << variables.size(); bits++) {
+                Map<String, Boolean> assignment = new HashMap<>();
+                for (int i = 0; i < variables.size(); i++) {
+                    assignment.put(variables.get(i), (bits & 1 << i) != 0);
+                }
+                assertThat(model + ": " + assignment, encoded.isSatisfiable(assignment),
+                        is(kconfigReader.isSatisfiable(assignment)));
+            }
+        }
+    }
+
+    /**
+     * Tests the tristate semantics of selects and defaults of invisible symbols.
+     *
+     * @throws IOException unwanted.
+     * @throws FormatException unwanted.
+     */
+    @Test
+    public void testSelectAndDefault() throws IOException, FormatException {
+        DimacsSolver solver = encode(""
+                + "<symbol type=\"boolean\" flags=\"0\" id=\"1\"><name>MODULES</name>\n"
+                + "<property type=\"prompt\"><text><![CDATA[Modules]]></text></property></symbol>\n"
+                + "<symbol type=\"tristate\" flags=\"0\" id=\"2\"><name>A</name>\n"
+                + "<property type=\"prompt\"><text><![CDATA[A]]></text></property>\n"
+                + "<property type=\"select\"><expr>S@3</expr></property></symbol>\n"
+                + "<symbol type=\"tristate\" flags=\"0\" id=\"3\"><name>B</name>\n"
+                + "<property type=\"default\"><expr>y</expr><visible><expr>S@4</expr></visible></property>"
+                + "</symbol>\n"
+                + "<symbol type=\"boolean\" flags=\"0\" id=\"4\"><name>C</name>\n"
+                + "<property type=\"prompt\"><text><![CDATA[C]]></text></property></symbol>\n");
+
+        // A=m selects B=m
+        assertThat(solver.isSatisfiable(assignment("MODULES", true, "A", false, "A_MODULE", true, "C", false,
+                "B", false, "B_MODULE", true)), is(true));
+        assertThat(solver.isSatisfiable(assignment("MODULES", true, "A", false, "A_MODULE", true, "C", false,
+                "B", false, "B_MODULE", false)), is(false));
+        assertThat(solver.isSatisfiable(assignment("MODULES", true, "A", false, "A_MODULE", true, "C", false,
+                "B", true)), is(false));
+
+        // the default of B is y, if C is selected
+        assertThat(solver.isSatisfiable(assignment("A", false, "A_MODULE", false, "C", true, "B", true)), is(true));
+        assertThat(solver.isSatisfiable(assignment("A", false, "A_MODULE", false, "C", true, "B", false)),
+                is(false));
+        assertThat(solver.isSatisfiable(assignment("A", false, "A_MODULE", false, "C", false, "B", false,
+                "B_MODULE", false)), is(true));
+
+        // m requires MODULES
+        assertThat(solver.isSatisfiable(assignment("MODULES", false, "A_MODULE", true)), is(false));
+    }
+
+    /**
+     * Tests that <code>MODULES</code> is added and false, if it is not defined.
+     *
+     * @throws IOException unwanted.
+     * @throws FormatException unwanted.
+     */
+    @Test
+    public void testModulesNotDefined() throws IOException, FormatException {
+        DimacsSolver solver = encode(""
+                + "<symbol type=\"tristate\" flags=\"0\" id=\"1\"><name>A</name>\n"
+                + "<property type=\"prompt\"><text><![CDATA[A]]></text></property></symbol>\n");
+
+        assertThat(solver.getVariables().keySet(), is(new HashSet<>(Arrays.asList("A", "A_MODULE", "MODULES"))));
+        assertThat(solver.isSatisfiable(assignment("MODULES", true)), is(false));
+        assertThat(solver.isSatisfiable(assignment("A_MODULE", true)), is(false));
+        assertThat(solver.isSatisfiable(assignment("A", true)), is(true));
+        assertThat(solver.isSatisfiable(assignment("A", false)), is(true));
+    }
+
+    /**
+     * Tests that compared values of non-boolean symbols get variables in the form of KconfigReader, of which at
+     * most one is true.
+     *
+     * @throws IOException unwanted.
+     * @throws FormatException unwanted.
+     */
+    @Test
+    public void testNonBooleanComparison() throws IOException, FormatException {
+        DimacsSolver solver = encode(""
+                + "<symbol type=\"integer\" flags=\"0\" id=\"1\"><name>NUM</name>\n"
+                + "<property type=\"prompt\"><text><![CDATA[Number]]></text></property></symbol>\n"
+                + "<symbol type=\"boolean\" flags=\"0\" id=\"2\"><name>FIVE</name>\n"
+                + "<property type=\"prompt\"><text><![CDATA[Five]]></text><visible><expr>(S@1='5')</expr>"
+                + "</visible></property></symbol>\n"
+                + "<symbol type=\"boolean\" flags=\"0\" id=\"3\"><name>NOT_SIX</name>\n"
+                + "<property type=\"prompt\"><text><![CDATA[Not six]]></text><visible><expr>(S@1!='6 6')</expr>"
+                + "</visible></property></symbol>\n");
+
+        assertThat(solver.getVariables().containsKey("NUM=5"), is(true));
+        assertThat(solver.getVariables().containsKey("NUM=6 6"), is(true));
+        assertThat(solver.isSatisfiable(assignment("FIVE", true, "NUM=5", false)), is(false));
+        assertThat(solver.isSatisfiable(assignment("FIVE", true, "NOT_SIX", true)), is(true));
+        assertThat(solver.isSatisfiable(assignment("NUM=5", true, "NUM=6 6", true)), is(false));
+        assertThat(solver.isSatisfiable(assignment("NOT_SIX", true, "NUM=6 6", true)), is(false));
+    }
+
+    /**
+     * Tests a tristate choice: in y mode exactly one value is y, in m mode several values may be m.
+     *
+     * @throws IOException unwanted.
+     * @throws FormatException unwanted.
+     */
+    @Test
+    public void testTristateChoice() throws IOException, FormatException {
+        DimacsSolver solver = encode(""
+                + "<symbol type=\"boolean\" flags=\"0\" id=\"1\"><name>MODULES</name>\n"
+                + "<property type=\"prompt\"><text><![CDATA[Modules]]></text></property></symbol>\n"
+                + "<symbol type=\"tristate\" flags=\"16\" id=\"2\">\n"
+                + "<property type=\"choice\"><expr>(S@3 ^ (S@4))</expr></property>\n"
+                + "<property type=\"prompt\"><text><![CDATA[Choice]]></text></property></symbol>\n"
+                + "<symbol type=\"tristate\" flags=\"32\" id=\"3\"><name>X</name>\n"
+                + "<property type=\"prompt\"><text><![CDATA[X]]></text><visible><expr>S@2</expr></visible>"
+                + "</property>\n<property type=\"choice\"><expr>S@2</expr></property></symbol>\n"
+                + "<symbol type=\"tristate\" flags=\"32\" id=\"4\"><name>Z</name>\n"
+                + "<property type=\"prompt\"><text><![CDATA[Z]]></text><visible><expr>S@2</expr></visible>"
+                + "</property>\n<property type=\"choice\"><expr>S@2</expr></property></symbol>\n");
+
+        // visible, non-optional choice is selected
+        assertThat(solver.isSatisfiable(assignment("CHOICE_1", false, "CHOICE_1_MODULE", false)), is(false));
+
+        assertThat(solver.isSatisfiable(assignment("CHOICE_1", true, "X", true, "Z", true)), is(false));
+        assertThat(solver.isSatisfiable(assignment("CHOICE_1", true, "X", false, "Z", false)), is(false));
+        assertThat(solver.isSatisfiable(assignment("CHOICE_1", true, "X", true, "Z", false, "Z_MODULE", false)),
+                is(true));
+        // in y mode, the other values can't be m
+        assertThat(solver.isSatisfiable(assignment("CHOICE_1", true, "X", true, "Z", false, "Z_MODULE", true)),
+                is(false));
+        assertThat(solver.isSatisfiable(assignment("CHOICE_1_MODULE", true, "X_MODULE", true, "Z_MODULE", true)),
+                is(true));
+        assertThat(solver.isSatisfiable(assignment("CHOICE_1_MODULE", true, "X", true)), is(false));
+    }
+
+    /**
+     * Tests that the DIMACS file can be read by the {@link Converter}, like the output of KconfigReader.
+     *
+     * @throws IOException unwanted.
+     * @throws FormatException unwanted.
+     */
+    @Test
+    public void testConvert() throws IOException, FormatException {
+        File outputBase = new File(TMP_DIR, "dependencies");
+        Files.copy(new File("testdata/dependencies.rsf").toPath(), new File(TMP_DIR, "dependencies.rsf").toPath());
+        new KconfigCnfEncoder(new File(TMP_DIR, "dependencies.rsf")).encode(new File(TMP_DIR, "dependencies.dimacs"));
+
+        VariabilityModel vm = new Converter(outputBase).convert();
+
+        assertThat(vm.getVariableMap().keySet(), is(new Converter(new File("testdata/dependencies")).convert()
+                .getVariableMap().keySet()));
+        assertThat(vm.getVariableMap().get("CONFIG_C"), instanceOf(TristateVariable.class));
+        TristateVariable c = (TristateVariable) vm.getVariableMap().get("CONFIG_C");
+        assertThat(c.getModuleNumber(), not(c.getDimacsNumber()));
+        assertThat(vm.getVariableMap().get("CONFIG_E").getDimacsNumber() > 0, is(true));
+    }
+
+    /**
+     * Tests that invalid expressions and references to unknown symbols are rejected.
+     *
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testInvalidExpressions() throws IOException {
+        String[] invalid = {"(S@1 || S@1", "S@2", "(S@1 &amp;&amp; S@1))", "(S@1 ^ S@1)", "UNKNOWN", "ERROR"};
+        for (String expression : invalid) {
+            try {
+                encode("<symbol type=\"boolean\" flags=\"0\" id=\"1\"><name>A</name>\n"
+                        + "<property type=\"prompt\"><text><![CDATA[A]]></text><visible><expr>" + expression
+                        + "</expr></visible></property></symbol>\n");
+                fail("Expected FormatException for " + expression);
+            } catch (FormatException e) {
+                // expected
+            }
+        }
+    }
+
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2020 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kconfigreader;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests the {@link KconfigDefinitionScanner}.
+ *
+ * @author Adam
+ */
+@SuppressWarnings("null")
+public class KconfigDefinitionScannerTest {
+
+    /**
+     * Scans the given content.
+     *
+     * @param scanner The scanner to use.
+     * @param content The content of the Kconfig file.
+     *
+     * @return The found definitions as "variable:line" strings.
+     */
+    private static List<String> scan(KconfigDefinitionScanner scanner, String content) {
+        List<String> result = new ArrayList<>();
+        scanner.scan(ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8)),
+            (variable, line) -> result.add(variable + ":" + line));
+        return result;
+    }
+
+    /**
+     * Tests that <code>config</code> and <code>menuconfig</code> are only recognized as complete keywords at the
+     * start of a line.
+     */
+    @Test
+    public void testKeywords() {
+        String content = "mainmenu \"Test\"\n"
+                + "config A\n"
+                + "\tbool \"A\"\n"
+                + "menuconfig B\n"
+                + "  config C # comment\n"
+                + "configD\n"
+                + "kconfig E\n"
+                + "\tdepends on config F\n"
+                + "config\n"
+                + "config\tG_2\n";
+
+        assertThat(scan(new KconfigDefinitionScanner(), content),
+                is(Arrays.asList("CONFIG_A:2", "CONFIG_B:4", "CONFIG_C:5", "CONFIG_G_2:10")));
+    }
+
+    /**
+     * Tests that comments are skipped.
+     */
+    @Test
+    public void testComments() {
+        String content = "# config A\n"
+                + "  # menuconfig B\n"
+                + "config C\n";
+
+        assertThat(scan(new KconfigDefinitionScanner(), content), is(Arrays.asList("CONFIG_C:3")));
+    }
+
+    /**
+     * Tests that help texts are skipped until a line that is indented less than the first help line.
+     */
+    @Test
+    public void testHelp() {
+        String content = "config A\n"
+                + "\tbool\n"
+                + "\thelp\n"
+                + "\t  config NOT_A\n"
+                + "\n"
+                + "\t  menuconfig NOT_B\n"
+                + "\t    config NOT_C\n"
+                + "config B\n"
+                + "\t---help---\n"
+                + "\t  Text.\n"
+                + "\tconfig C\n"
+                + "config D\n"
+                + "\thelp\n"
+                + "config E\n";
+
+        assertThat(scan(new KconfigDefinitionScanner(), content),
+                is(Arrays.asList("CONFIG_A:1", "CONFIG_B:8", "CONFIG_C:11", "CONFIG_D:12", "CONFIG_E:14")));
+    }
+
+    /**
+     * Tests that Windows line endings and a missing final line break are handled.
+     */
+    @Test
+    public void testLineEndings() {
+        String content = "config A\r\n\r\nconfig B\r\n\thelp\r\n\t  text\r\nconfig C";
+
+        assertThat(scan(new KconfigDefinitionScanner(), content),
+                is(Arrays.asList("CONFIG_A:1", "CONFIG_B:3", "CONFIG_C:6")));
+    }
+
+    /**
+     * Tests that a scanner for a set of variables only reports these.
+     */
+    @Test
+    public void testFilter() {
+        KconfigDefinitionScanner scanner = new KconfigDefinitionScanner(
+                Arrays.asList("CONFIG_A", "CONFIG_AB", "CONFIG_C", "NO_PREFIX"));
+        String content = "config A\nconfig B\nconfig AB\nconfig ABC\nconfig C\nconfig NO_PREFIX\nconfig PREFIX\n";
+
+        assertThat(scan(scanner, content), is(Arrays.asList("CONFIG_A:1", "CONFIG_AB:3", "CONFIG_C:5")));
+        assertThat(scan(new KconfigDefinitionScanner(Arrays.asList()), content), is(Arrays.asList()));
+    }
+
+    /**
+     * Tests scanning a file that is large enough to be memory-mapped.
+     *
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testLargeFile() throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            content.append("config SYMBOL_").append(i).append("\n\tbool \"Symbol\"\n\thelp\n\t  Some help.\n\n");
+        }
+
+        File file = File.createTempFile("Kconfig", "");
+        try {
+            Files.write(file.toPath(), content.toString().getBytes(StandardCharsets.UTF_8));
+            assertThat(file.length() > 64 * 1024, is(true));
+
+            List<String> result = new ArrayList<>();
+            new KconfigDefinitionScanner(Arrays.asList("CONFIG_SYMBOL_0", "CONFIG_SYMBOL_4999"))
+                    .scanFile(file, (variable, line) -> result.add(variable + ":" + line));
+
+            assertThat(result, is(Arrays.asList("CONFIG_SYMBOL_0:1", "CONFIG_SYMBOL_4999:24996")));
+        } finally {
+            file.delete();
+        }
+    }
+
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2020 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kconfigreader;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.kconfigreader.SourceLocationFinder.Definition;
+import net.ssehub.kernel_haven.util.Util;
+
+/**
+ * Tests the {@link KconfigLocationIndex}.
+ *
+ * @author Adam
+ */
+@SuppressWarnings("null")
+public class KconfigLocationIndexTest {
+
+    private static final File TMP_DIR = new File("testdata/tmp_location_index");
+
+    private static final File SOURCE_TREE = new File(TMP_DIR, "source");
+
+    private static final File RESOURCE_DIR = new File(TMP_DIR, "res");
+
+    private static final Map<String, Object> VARIABLES = new HashMap<>();
+
+    static {
+        for (String name : new String[] {"CONFIG_A", "CONFIG_B", "CONFIG_C", "CONFIG_D"}) {
+            VARIABLES.put(name, name);
+        }
+    }
+
+    /**
+     * Creates the temporary source tree.
+     *
+     * @throws IOException unwanted.
+     */
+    @Before
+    public void setUp() throws IOException {
+        writeKconfig("Kconfig", "config A\n\tbool\n");
+        writeKconfig("init/Kconfig", "\nconfig B\n\tbool\n");
+        writeKconfig("drivers/Kconfig", "config C\n\tbool\n");
+        RESOURCE_DIR.mkdir();
+    }
+
+    /**
+     * Deletes the temporary directory.
+     *
+     * @throws IOException If deleting fails.
+     */
+    @After
+    public void tearDown() throws IOException {
+        Util.deleteFolder(TMP_DIR);
+    }
+
+    /**
+     * Writes a Kconfig file in the temporary source tree. The modification time is set to the past, so that the
+     * file is not considered as racily modified by the index.
+     *
+     * @param path The path relative to the source tree.
+     * @param content The content of the file.
+     *
+     * @throws IOException unwanted.
+     */
+    private static void writeKconfig(String path, String content) throws IOException {
+        File file = new File(SOURCE_TREE, path);
+        file.getParentFile().mkdirs();
+        long modified = file.isFile() ? file.lastModified() : System.currentTimeMillis() - 60000;
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        file.setLastModified(modified + 1000);
+    }
+
+    /**
+     * Runs the finder with a freshly loaded index and stores the index afterwards.
+     *
+     * @param expectedReadFiles The number of Kconfig files that should have been read.
+     *
+     * @return The found definitions as "variable@file:line" strings.
+     *
+     * @throws IOException unwanted.
+     */
+    private static List<String> find(int expectedReadFiles) throws IOException {
+        KconfigLocationIndex index = KconfigLocationIndex.load(RESOURCE_DIR, SOURCE_TREE);
+        List<Definition> definitions = new SourceLocationFinder(SOURCE_TREE, VARIABLES, index).find();
+        index.save();
+
+        assertThat(index.getReadFiles(), is(expectedReadFiles));
+
+        List<String> result = new ArrayList<>();
+        for (Definition definition : definitions) {
+            result.add(definition.getVariable() + "@"
+                    + definition.getLocation().getSource().getPath().replace(File.separatorChar, '/') + ":"
+                    + definition.getLocation().getLineNumber());
+        }
+        return result;
+    }
+
+    /**
+     * Tests that a second run with an unchanged source tree does not read any Kconfig file.
+     *
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testUnchanged() throws IOException {
+        List<String> expected = Arrays.asList("CONFIG_A@Kconfig:1", "CONFIG_C@drivers/Kconfig:1",
+                "CONFIG_B@init/Kconfig:2");
+
+        assertThat(find(3), is(expected));
+        assertThat(find(0), is(expected));
+    }
+
+    /**
+     * Tests that changed, added and removed Kconfig files are reflected in the index.
+     *
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testChanges() throws IOException {
+        find(3);
+
+        writeKconfig("init/Kconfig", "config B\n\tbool\n\nconfig D\n\tbool\n");
+        writeKconfig("init/Kconfig.new", "config A\n");
+        new File(SOURCE_TREE, "drivers/Kconfig").delete();
+
+        List<String> expected = Arrays.asList("CONFIG_A@Kconfig:1", "CONFIG_B@init/Kconfig:1",
+                "CONFIG_D@init/Kconfig:4", "CONFIG_A@init/Kconfig.new:1");
+        assertThat(find(2), is(expected));
+        assertThat(find(0), is(expected));
+    }
+
+    /**
+     * Tests that a file that was only touched is read to compare its hash, but is still found afterwards.
+     *
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testTouched() throws IOException {
+        find(3);
+
+        File file = new File(SOURCE_TREE, "Kconfig");
+        file.setLastModified(file.lastModified() + 5000);
+
+        List<String> expected = Arrays.asList("CONFIG_A@Kconfig:1", "CONFIG_C@drivers/Kconfig:1",
+                "CONFIG_B@init/Kconfig:2");
+        assertThat(find(1), is(expected));
+        assertThat(find(0), is(expected));
+    }
+
+    /**
+     * Tests that an index that is kept for several walks counts the read files per walk and removes files that were
+     * deleted between the walks.
+     *
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testKeptIndex() throws IOException {
+        KconfigLocationIndex index = KconfigLocationIndex.load(RESOURCE_DIR, SOURCE_TREE);
+        index.beginRun();
+        assertThat(new SourceLocationFinder(SOURCE_TREE, VARIABLES, index).find().size(), is(3));
+        index.save();
+        assertThat(index.getReadFiles(), is(3));
+
+        File file = new File(SOURCE_TREE, "drivers/Kconfig");
+        long modified = file.lastModified();
+        file.delete();
+
+        index.beginRun();
+        assertThat(new SourceLocationFinder(SOURCE_TREE, VARIABLES, index).find().size(), is(2));
+        index.save();
+        assertThat(index.getReadFiles(), is(0));
+
+        // same size and modification time: only read again if it was removed from the index
+        writeKconfig("drivers/Kconfig", "config C\n\tbool\n");
+        file.setLastModified(modified);
+        assertThat(find(1).size(), is(3));
+    }
+
+    /**
+     * Tests that a corrupt index file is ignored and rebuilt.
+     *
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testCorruptIndex() throws IOException {
+        find(3);
+
+        File indexDir = new File(RESOURCE_DIR, "location_index");
+        for (File indexFile : indexDir.listFiles()) {
+            Files.write(indexFile.toPath(), new byte[] {0, 0, 0, 1, 0, 0, 0, 42});
+        }
+
+        assertThat(find(3).size(), is(3));
+        assertThat(find(0).size(), is(3));
+    }
+
+}
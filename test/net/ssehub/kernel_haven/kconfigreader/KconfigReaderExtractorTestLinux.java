@@ -17,11 +17,24 @@
 package net.ssehub.kernel_haven.kconfigreader;
 
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.assertThat;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 
@@ -31,11 +44,17 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import net.ssehub.kernel_haven.SetUpException;
+import net.ssehub.kernel_haven.kconfigreader.KconfigReaderExtractor.RevisionConsumer;
 import net.ssehub.kernel_haven.test_utils.RunOnlyOnLinux;
 import net.ssehub.kernel_haven.test_utils.TestConfiguration;
 import net.ssehub.kernel_haven.util.ExtractorException;
+import net.ssehub.kernel_haven.util.FormatException;
 import net.ssehub.kernel_haven.util.Util;
+import net.ssehub.kernel_haven.util.io.json.JsonObject;
+import net.ssehub.kernel_haven.variability_model.SourceLocation;
 import net.ssehub.kernel_haven.variability_model.VariabilityModel;
+import net.ssehub.kernel_haven.variability_model.VariabilityModelDescriptor.Attribute;
+import net.ssehub.kernel_haven.variability_model.VariabilityModelDescriptor.ConstraintFileType;
 import net.ssehub.kernel_haven.variability_model.VariabilityVariable;
 
 /**
@@ -106,4 +125,413 @@ public class KconfigReaderExtractorTestLinux {
         assertThat(vars.get("CONFIG_MODULES").getType(), is("bool"));
     }
     
+    /**
+     * Tests that a full extraction with {@link KconfigReaderExtractor#FIND_LOCATIONS} uses the source locations
+     * reported by dumpconf, relative to the source tree.
+     * 
+     * @throws SetUpException unwanted.
+     * @throws ExtractorException unwanted.
+     */
+    @Test
+    public void testFullRunSourceLocations() throws SetUpException, ExtractorException {
+        Properties props = new Properties();
+        
+        props.setProperty("resource_dir", RESOURCE_DIR.getPath());
+        props.setProperty("source_tree", "testdata/pseudoLinux/");
+        props.setProperty("arch", "x86");
+        props.setProperty(KconfigReaderExtractor.FIND_LOCATIONS.getKey(), "true");
+        TestConfiguration config = new TestConfiguration(props);
+        
+        KconfigReaderExtractor extractor = new KconfigReaderExtractor();
+        extractor.init(config);
+        
+        VariabilityModel vm = extractor.runOnFile(new File("testdata/pseudoLinux"));
+        
+        Map<String, VariabilityVariable> vars = vm.getVariableMap();
+        assertThat(vars.get("CONFIG_A").getSourceLocations(),
+                is(Arrays.asList(new SourceLocation(new File("Kconfig"), 1))));
+        assertThat(vars.get("CONFIG_B").getSourceLocations(),
+                is(Arrays.asList(new SourceLocation(new File("Kconfig"), 4))));
+        assertThat(vars.get("CONFIG_C").getSourceLocations(),
+                is(Arrays.asList(new SourceLocation(new File("Kconfig"), 8))));
+        assertThat(vm.getDescriptor().hasAttribute(Attribute.SOURCE_LOCATIONS), is(true));
+    }
+    
+    /**
+     * Tests that a full run on testdata/pseudoLinux produces an extraction report and writes it.
+     * 
+     * @throws SetUpException unwanted.
+     * @throws ExtractorException unwanted.
+     */
+    @Test
+    public void testFullRunReport() throws SetUpException, ExtractorException {
+        Properties props = new Properties();
+        
+        props.setProperty("resource_dir", RESOURCE_DIR.getPath());
+        props.setProperty("source_tree", "testdata/pseudoLinux/");
+        props.setProperty("arch", "x86");
+        props.setProperty(KconfigReaderExtractor.WRITE_REPORTS.getKey(), "true");
+        TestConfiguration config = new TestConfiguration(props);
+        
+        KconfigReaderExtractor extractor = new KconfigReaderExtractor();
+        extractor.init(config);
+        assertThat(extractor.getReport("x86"), nullValue());
+        
+        extractor.runOnFile(new File("testdata/pseudoLinux"));
+        
+        ExtractionReport report = extractor.getReport("x86");
+        assertThat(report, notNullValue());
+        assertThat(report.getWallTime() >= 0, is(true));
+        for (String phase : Arrays.asList("cache_lookup", "prepare", "compile_dumpconf", "kconfigreader", "convert")) {
+            assertThat(phase, report.getPhaseTime(phase) >= 0, is(true));
+        }
+        assertThat(report.getPhaseTime("source_locations"), is(-1L));
+        
+        File[] written = new File(new File(RESOURCE_DIR, KconfigReaderExtractor.class.getName()), "reports")
+                .listFiles();
+        assertThat(written.length, is(1));
+        assertThat(written[0].getName().endsWith("_x86.json"), is(true));
+    }
+    
+    /**
+     * Tests extracting several architectures of testdata/pseudoLinux in a single run.
+     * 
+     * @throws SetUpException unwanted.
+     * @throws ExtractorException unwanted.
+     */
+    @Test
+    public void testRunOnArchitectures() throws SetUpException, ExtractorException {
+        Properties props = new Properties();
+        
+        props.setProperty("resource_dir", RESOURCE_DIR.getPath());
+        props.setProperty("source_tree", "testdata/pseudoLinux/");
+        props.setProperty("arch", "x86");
+        props.setProperty(KconfigReaderExtractor.ARCHITECTURES.getKey(), "x86, arm, mips");
+        TestConfiguration config = new TestConfiguration(props);
+        
+        KconfigReaderExtractor extractor = new KconfigReaderExtractor();
+        extractor.init(config);
+        
+        Map<String, VariabilityModel> models = extractor.runOnArchitectures();
+        
+        assertThat(models.keySet(), is(new LinkedHashSet<>(Arrays.asList("x86", "arm", "mips"))));
+        for (VariabilityModel vm : models.values()) {
+            assertThat(vm.getConstraintModel().isFile(), is(true));
+            assertThat(vm.getVariableMap().get("CONFIG_A"), notNullValue());
+            assertThat(vm.getVariableMap().get("CONFIG_C").getType(), is("tristate"));
+            assertThat(vm.getVariableMap().size(), is(4));
+        }
+    }
+    
+    /**
+     * Tests that a second extraction of an unchanged tree is served from the model cache.
+     * 
+     * @throws SetUpException unwanted.
+     * @throws ExtractorException unwanted.
+     */
+    @Test
+    public void testModelCache() throws SetUpException, ExtractorException {
+        Properties props = new Properties();
+        
+        props.setProperty("resource_dir", RESOURCE_DIR.getPath());
+        props.setProperty("source_tree", "testdata/pseudoLinux/");
+        props.setProperty("arch", "x86");
+        props.setProperty(KconfigReaderExtractor.MODEL_CACHE.getKey(), "true");
+        TestConfiguration config = new TestConfiguration(props);
+        
+        KconfigReaderExtractor extractor = new KconfigReaderExtractor();
+        extractor.init(config);
+        
+        VariabilityModel first = extractor.runOnFile(new File("testdata/pseudoLinux"));
+        
+        File cacheDir = new File(Util.getExtractorResourceDir(config, KconfigReaderExtractor.class), "model_cache");
+        assertThat(cacheDir.listFiles().length, is(1));
+        
+        VariabilityModel second = extractor.runOnFile(new File("testdata/pseudoLinux"));
+        assertThat(second.getVariableMap().keySet(), is(first.getVariableMap().keySet()));
+        assertThat(second.getConstraintModel().isFile(), is(true));
+        assertThat(cacheDir.listFiles().length, is(1));
+    }
+    
+    /**
+     * Tests extracting several revisions of a git repository in parallel worktrees: the models are passed on in the
+     * order of the revisions, a failing revision does not stop the batch, and the worktrees are removed afterwards.
+     * 
+     * @throws SetUpException unwanted.
+     * @throws ExtractorException unwanted.
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testRunOnRevisions() throws SetUpException, ExtractorException, IOException {
+        File repo = new File(RESOURCE_DIR, "repo");
+        String first = createRepository(repo);
+        
+        for (String variable : new String[] {"D", "E"}) {
+            addVariable(repo, variable);
+        }
+        
+        Properties props = new Properties();
+        props.setProperty("resource_dir", RESOURCE_DIR.getPath());
+        props.setProperty("source_tree", repo.getPath());
+        props.setProperty("arch", "x86");
+        props.setProperty(KconfigReaderExtractor.REVISIONS.getKey(), first + ", does-not-exist, " + first + "..HEAD");
+        props.setProperty(KconfigReaderExtractor.MAX_PARALLEL_REVISIONS.getKey(), "2");
+        TestConfiguration config = new TestConfiguration(props);
+        
+        KconfigReaderExtractor extractor = new KconfigReaderExtractor();
+        extractor.init(config);
+        
+        List<String> revisions = new ArrayList<>();
+        List<Integer> sizes = new ArrayList<>();
+        List<String> failed = new ArrayList<>();
+        extractor.runOnRevisions(new RevisionConsumer() {
+            
+            @Override
+            public void accept(String revision, VariabilityModel model) {
+                revisions.add(revision);
+                sizes.add(model.getVariableMap().size());
+            }
+            
+            @Override
+            public void failed(String revision, ExtractorException exception) {
+                revisions.add(revision);
+                failed.add(revision);
+            }
+        });
+        
+        String[] commits = git(repo, "rev-list", "--reverse", "HEAD").trim().split("\n");
+        assertThat(revisions, is(Arrays.asList(first, "does-not-exist", commits[1], commits[2])));
+        assertThat(failed, is(Arrays.asList("does-not-exist")));
+        assertThat(sizes, is(Arrays.asList(4, 5, 6)));
+        
+        // worktrees are removed, the repository is untouched
+        assertThat(git(repo, "worktree", "list", "--porcelain").split("\n")[0],
+                is("worktree " + repo.getCanonicalPath()));
+        assertThat(git(repo, "worktree", "list", "--porcelain").contains("detached"), is(false));
+        assertThat(git(repo, "status", "--porcelain"), is(""));
+        File worktreeDir = new File(Util.getExtractorResourceDir(config, KconfigReaderExtractor.class), "worktrees");
+        for (File dir : worktreeDir.listFiles()) {
+            assertThat(Arrays.asList(dir.list()), is(Arrays.asList("lock")));
+        }
+    }
+    
+    /**
+     * Tests that revisions which change no file relevant for the variability model re-use the model of the previous
+     * revision, if incremental extraction is enabled.
+     * 
+     * @throws SetUpException unwanted.
+     * @throws ExtractorException unwanted.
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testRunOnRevisionsIncrementally() throws SetUpException, ExtractorException, IOException {
+        File repo = new File(RESOURCE_DIR, "repo");
+        String first = createRepository(repo);
+        
+        Files.write(new File(repo, "README").toPath(), "readme\n".getBytes());
+        git(repo, "add", "README");
+        git(repo, "commit", "--quiet", "-m", "readme");
+        addVariable(repo, "D");
+        Files.write(new File(repo, "README").toPath(), "changed\n".getBytes());
+        git(repo, "commit", "--quiet", "-a", "-m", "readme changed");
+        
+        Properties props = new Properties();
+        props.setProperty("resource_dir", RESOURCE_DIR.getPath());
+        props.setProperty("source_tree", repo.getPath());
+        props.setProperty("arch", "x86");
+        props.setProperty(KconfigReaderExtractor.REVISIONS.getKey(), first + ", " + first + "..HEAD");
+        props.setProperty(KconfigReaderExtractor.MAX_PARALLEL_REVISIONS.getKey(), "2");
+        props.setProperty(KconfigReaderExtractor.INCREMENTAL_REVISIONS.getKey(), "true");
+        TestConfiguration config = new TestConfiguration(props);
+        
+        KconfigReaderExtractor extractor = new KconfigReaderExtractor();
+        extractor.init(config);
+        
+        List<VariabilityModel> models = new ArrayList<>();
+        extractor.runOnRevisions((revision, model) -> models.add(model));
+        
+        assertThat(models.size(), is(4));
+        assertThat(models.get(1), sameInstance(models.get(0)));
+        assertThat(models.get(2).getVariableMap().size(), is(5));
+        assertThat(models.get(3), sameInstance(models.get(2)));
+    }
+    
+    /**
+     * Tests an extraction that only runs dumpconf, without KconfigReader.
+     * 
+     * @throws SetUpException unwanted.
+     * @throws ExtractorException unwanted.
+     * @throws FormatException unwanted.
+     */
+    @Test
+    public void testDumpconfOnly() throws SetUpException, ExtractorException, FormatException {
+        Properties props = new Properties();
+        props.setProperty("resource_dir", RESOURCE_DIR.getPath());
+        props.setProperty("source_tree", "testdata/pseudoLinux/");
+        props.setProperty("arch", "x86");
+        props.setProperty(KconfigReaderExtractor.DUMPCONF_ONLY.getKey(), "true");
+        props.setProperty(KconfigReaderExtractor.MODEL_CACHE.getKey(), "true");
+        props.setProperty(KconfigReaderExtractor.FIND_LOCATIONS.getKey(), "true");
+        TestConfiguration config = new TestConfiguration(props);
+        
+        KconfigReaderExtractor extractor = new KconfigReaderExtractor();
+        extractor.init(config);
+        
+        VariabilityModel vm = extractor.runOnFile(new File("testdata/pseudoLinux"));
+        
+        assertThat(vm.getConstraintModel(), nullValue());
+        assertThat(vm.getDescriptor().getConstraintFileType(), is(ConstraintFileType.UNKNOWN));
+        assertThat(vm.getDescriptor().hasAttribute(Attribute.SOURCE_LOCATIONS), is(true));
+        
+        Map<String, VariabilityVariable> vars = vm.getVariableMap();
+        assertThat(vars.keySet(), is(new HashSet<>(Arrays.asList("CONFIG_A", "CONFIG_B", "CONFIG_C"))));
+        assertThat(vars.get("CONFIG_C").getType(), is("tristate"));
+        assertThat(vars.get("CONFIG_B").getVariablesUsedInConstraints(),
+                is(Collections.singleton(vars.get("CONFIG_A"))));
+        assertThat(vars.get("CONFIG_B").getSourceLocations().get(0).getLineNumber(), is(4));
+        
+        List<String> processes = new ArrayList<>();
+        for (Object process : extractor.getReport("x86").toJson().getList("processes")) {
+            processes.add(((JsonObject) process).getString("name"));
+        }
+        assertThat(processes.contains("dumpconf"), is(true));
+        assertThat(processes.contains("KconfigReader"), is(false));
+        
+        // models without constraint model are not cached
+        File cacheDir = new File(Util.getExtractorResourceDir(config, KconfigReaderExtractor.class), "model_cache");
+        assertThat(!cacheDir.exists() || cacheDir.list().length == 0, is(true));
+    }
+    
+    /**
+     * Tests an extraction that encodes the output of dumpconf with the {@link KconfigCnfEncoder} instead of running
+     * KconfigReader.
+     * 
+     * @throws SetUpException unwanted.
+     * @throws ExtractorException unwanted.
+     * @throws IOException unwanted.
+     * @throws FormatException unwanted.
+     */
+    @Test
+    public void testJavaCnfEncoder() throws SetUpException, ExtractorException, IOException, FormatException {
+        Properties props = new Properties();
+        props.setProperty("resource_dir", RESOURCE_DIR.getPath());
+        props.setProperty("source_tree", "testdata/pseudoLinux/");
+        props.setProperty("arch", "x86");
+        props.setProperty(KconfigReaderExtractor.JAVA_CNF_ENCODER.getKey(), "true");
+        TestConfiguration config = new TestConfiguration(props);
+        
+        KconfigReaderExtractor extractor = new KconfigReaderExtractor();
+        extractor.init(config);
+        
+        VariabilityModel vm = extractor.runOnFile(new File("testdata/pseudoLinux"));
+        
+        assertThat(vm.getDescriptor().getConstraintFileType(), is(ConstraintFileType.DIMACS));
+        Map<String, VariabilityVariable> vars = vm.getVariableMap();
+        assertThat(vars.keySet(), is(new HashSet<>(Arrays.asList("CONFIG_A", "CONFIG_B", "CONFIG_C",
+                "CONFIG_MODULES"))));
+        assertThat(((TristateVariable) vars.get("CONFIG_C")).getModuleNumber(),
+                not(vars.get("CONFIG_C").getDimacsNumber()));
+        
+        // B depends on A
+        DimacsSolver solver = new DimacsSolver(vm.getConstraintModel());
+        Map<String, Boolean> assignment = new HashMap<>();
+        assignment.put("A", false);
+        assignment.put("B", true);
+        assertThat(solver.isSatisfiable(assignment), is(false));
+        assignment.put("A", true);
+        assertThat(solver.isSatisfiable(assignment), is(true));
+        
+        List<String> processes = new ArrayList<>();
+        for (Object process : extractor.getReport("x86").toJson().getList("processes")) {
+            processes.add(((JsonObject) process).getString("name"));
+        }
+        assertThat(processes.contains("dumpconf"), is(true));
+        assertThat(processes.contains("KconfigReader"), is(false));
+    }
+    
+    /**
+     * Tests that {@link KconfigReaderExtractor#runIncrementally(VariabilityModel, java.util.Collection)} only
+     * re-extracts the model if a relevant file changed.
+     * 
+     * @throws SetUpException unwanted.
+     * @throws ExtractorException unwanted.
+     */
+    @Test
+    public void testRunIncrementally() throws SetUpException, ExtractorException {
+        Properties props = new Properties();
+        props.setProperty("resource_dir", RESOURCE_DIR.getPath());
+        props.setProperty("source_tree", "testdata/pseudoLinux/");
+        props.setProperty("arch", "x86");
+        TestConfiguration config = new TestConfiguration(props);
+        
+        KconfigReaderExtractor extractor = new KconfigReaderExtractor();
+        extractor.init(config);
+        
+        VariabilityModel previous = extractor.runOnFile(new File("testdata/pseudoLinux"));
+        
+        assertThat(extractor.runIncrementally(previous, Arrays.asList("README", "kernel/fork.c")),
+                sameInstance(previous));
+        
+        VariabilityModel changed = extractor.runIncrementally(previous, Arrays.asList("README", "Kconfig"));
+        assertThat(changed, not(sameInstance(previous)));
+        assertThat(changed.getVariableMap().size(), is(4));
+    }
+    
+    /**
+     * Creates a git repository with the files of testdata/pseudoLinux that are needed for an extraction.
+     * 
+     * @param repo The directory of the repository to create.
+     * 
+     * @return The hash of the first commit.
+     * 
+     * @throws IOException If creating the repository fails.
+     */
+    private static String createRepository(File repo) throws IOException {
+        File kconfigDir = new File(repo, "scripts/kconfig");
+        kconfigDir.mkdirs();
+        for (String file : new String[] {"Kconfig", "Makefile", "scripts/kconfig/expr.h", "scripts/kconfig/list.h",
+            "scripts/kconfig/lkc.h", "scripts/kconfig/lkc_proto.h", "scripts/kconfig/zconf.tab.o"}) {
+            Util.copyFile(new File("testdata/pseudoLinux", file), new File(repo, file));
+        }
+        Files.write(new File(repo, ".gitignore").toPath(), "test.log\n".getBytes());
+        git(repo, "init", "--quiet");
+        git(repo, "add", "-A");
+        git(repo, "commit", "--quiet", "-m", "first");
+        return git(repo, "rev-parse", "HEAD").trim();
+    }
+    
+    /**
+     * Commits a new boolean variable to the top level Kconfig file of the given repository.
+     * 
+     * @param repo The repository.
+     * @param variable The name of the variable to add.
+     * 
+     * @throws IOException If changing or committing the Kconfig file fails.
+     */
+    private static void addVariable(File repo, String variable) throws IOException {
+        Files.write(new File(repo, "Kconfig").toPath(), ("\nconfig " + variable + "\n    bool \"Variable "
+                + variable + "\"\n").getBytes(), StandardOpenOption.APPEND);
+        git(repo, "commit", "--quiet", "-a", "-m", variable);
+    }
+    
+    /**
+     * Executes git.
+     * 
+     * @param dir The working directory.
+     * @param arguments The arguments for git.
+     * 
+     * @return The standard output of git.
+     * 
+     * @throws IOException If git fails.
+     */
+    private static String git(File dir, String... arguments) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.addAll(Arrays.asList("git", "-c", "user.name=test", "-c", "user.email=test@example.com"));
+        command.addAll(Arrays.asList(arguments));
+        ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+        assertThat(Util.executeProcess(new ProcessBuilder(command).directory(dir), "git", stdout,
+                new ByteArrayOutputStream(), 0), is(true));
+        return stdout.toString();
+    }
+    
 }
@@ -18,6 +18,7 @@ package net.ssehub.kernel_haven.kconfigreader;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.junit.Assert.assertThat;
 
 import java.io.BufferedReader;
@@ -25,8 +26,15 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Stream;
 
 import org.junit.After;
 import org.junit.Before;
@@ -34,8 +42,12 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import net.ssehub.kernel_haven.kconfigreader.KconfigReaderExtractor.DumpconfVersion;
+import net.ssehub.kernel_haven.kconfigreader.KconfigReaderExtractor.PrepareMode;
 import net.ssehub.kernel_haven.test_utils.RunOnlyOnLinux;
+import net.ssehub.kernel_haven.util.FormatException;
 import net.ssehub.kernel_haven.util.Util;
+import net.ssehub.kernel_haven.util.io.json.JsonList;
+import net.ssehub.kernel_haven.util.io.json.JsonObject;
 
 /**
  * Tests the KconfigReaderWrapper. These tests can only run on Linux, since
@@ -91,6 +103,27 @@ public class KconfigReaderWrapperTest {
         dumpconfExe.delete();
     }
 
+    /**
+     * Tests that a second call to compileDumpconf re-uses the cached executable instead of compiling again.
+     * 
+     * @throws IOException
+     *             unwanted.
+     */
+    @Test
+    public void testCompileDumpconfCached() throws IOException {
+        File first = wrapper.compileDumpconf();
+        assertThat(first, notNullValue());
+        long modified = first.lastModified();
+
+        KconfigReaderWrapper other = new KconfigReaderWrapper(RESOURCE_DIR, LINUX_DIR, DumpconfVersion.LINUX);
+        File second = other.compileDumpconf();
+
+        assertThat(second, is(first));
+        assertThat(second.canExecute(), is(true));
+        assertThat(second.length(), is(first.length()));
+        assertThat(second.lastModified() >= modified, is(true));
+    }
+
     /**
      * Tests if dumpconf.exe is created by compileDumpconf and if the file is
      * executable.
@@ -146,4 +179,325 @@ public class KconfigReaderWrapperTest {
             file.delete();
         }
     }
+
+    /**
+     * Tests running KconfigReader in a persistent JVM twice, which re-uses the worker JVM.
+     * 
+     * @throws IOException
+     *             unwanted.
+     */
+    @Test
+    public void testRunKconfigReaderPersistentJvm() throws IOException {
+        File dumpconfExe = new File("testdata/dumpconf");
+        dumpconfExe.setExecutable(true);
+        wrapper.setPersistentJvm(true);
+
+        for (int i = 0; i < 2; i++) {
+            File basepath = wrapper.runKconfigReader(dumpconfExe, "x86", 0);
+            assertThat(basepath, notNullValue());
+
+            File dimacs = new File(basepath.getAbsoluteFile() + ".dimacs");
+            assertThat(dimacs.isFile(), is(true));
+            KconfigReaderExtractor.deleteAllFiles(basepath);
+        }
+    }
+
+    /**
+     * Tests that a failing KconfigReader run in a persistent JVM is reported as failure.
+     * 
+     * @throws IOException
+     *             unwanted.
+     */
+    @Test
+    public void testRunKconfigReaderPersistentJvmFailure() throws IOException {
+        File dumpconfExe = new File("testdata/dumpconf");
+        dumpconfExe.setExecutable(true);
+
+        KconfigReaderWrapper noKconfig = new KconfigReaderWrapper(RESOURCE_DIR, RESOURCE_DIR, DumpconfVersion.BUSYBOX);
+        noKconfig.setPersistentJvm(true);
+
+        assertThat(noKconfig.runKconfigReader(dumpconfExe, "x86", 0), nullValue());
+    }
+
+    /**
+     * Tests that {@link PrepareMode#KCONFIG_ONLY} skips make if the Kconfig parser is up to date, and otherwise
+     * falls back to the full preparation if the targeted build does not produce an up to date parser.
+     * 
+     * @throws IOException
+     *             unwanted.
+     */
+    @Test
+    public void testPrepareKconfigOnly() throws IOException {
+        File sourceTree = new File(RESOURCE_DIR, "linux");
+        File kconfigDir = new File(sourceTree, "scripts/kconfig");
+        kconfigDir.mkdirs();
+        Util.copyFile(new File(LINUX_DIR, "Makefile"), new File(sourceTree, "Makefile"));
+        Util.copyFile(new File(LINUX_DIR, "scripts/kconfig/lkc.h"), new File(kconfigDir, "lkc.h"));
+        Util.copyFile(new File(LINUX_DIR, "scripts/kconfig/zconf.tab.o"), new File(kconfigDir, "zconf.tab.o"));
+        File log = new File(sourceTree, "test.log");
+
+        KconfigReaderWrapper prepareWrapper = new KconfigReaderWrapper(RESOURCE_DIR, sourceTree,
+                DumpconfVersion.LINUX);
+        prepareWrapper.setPrepareMode(PrepareMode.KCONFIG_ONLY);
+
+        // parser is newer than its sources -> no make call
+        new File(kconfigDir, "lkc.h").setLastModified(10000);
+        new File(kconfigDir, "zconf.tab.o").setLastModified(20000);
+        assertThat(prepareWrapper.prepareLinux(), is(true));
+        assertThat(log.exists(), is(false));
+
+        // source is newer -> make allyesconfig does not update the parser in the pseudo tree -> full prepare
+        new File(kconfigDir, "lkc.h").setLastModified(30000);
+        assertThat(prepareWrapper.prepareLinux(), is(true));
+        List<String> lines = Files.readAllLines(log.toPath());
+        assertThat(lines, is(Arrays.asList("Make allyesconfig called", "Make allyesconfig called",
+                "Make prepare called")));
+    }
+
+    /**
+     * Tests that make is aborted right away if it prints that the Makefile uses an obsolete syntax, instead of
+     * waiting for it to exit.
+     * 
+     * @throws IOException
+     *             unwanted.
+     */
+    @Test(timeout = 20000)
+    public void testPrepareAbortsOnObsoleteMakeSyntax() throws IOException {
+        File sourceTree = new File(RESOURCE_DIR, "linux");
+        sourceTree.mkdirs();
+        Files.write(new File(sourceTree, "Makefile").toPath(), Arrays.asList(
+                "allyesconfig prepare:",
+                "\t@echo 'Makefile:1: *** mixed implicit and normal rules: deprecated syntax'; sleep 60"));
+
+        KconfigReaderWrapper prepareWrapper = new KconfigReaderWrapper(RESOURCE_DIR, sourceTree,
+                DumpconfVersion.LINUX);
+        ExtractionReport report = new ExtractionReport("x86", sourceTree);
+
+        long start = System.currentTimeMillis();
+        // the Makefile contains nothing to fix, so the preparation fails
+        assertThat(prepareWrapper.prepareLinux(report), is(false));
+        assertThat(System.currentTimeMillis() - start < 10000, is(true));
+    }
+
+    /**
+     * Tests that a Makefile with an obsolete syntax is rewritten before make runs for the first time, and restored
+     * afterwards.
+     * 
+     * @throws IOException
+     *             unwanted.
+     * @throws FormatException
+     *             unwanted.
+     */
+    @Test
+    public void testPrepareFixesObsoleteMakeSyntaxUpFront() throws IOException, FormatException {
+        File sourceTree = new File(RESOURCE_DIR, "linux");
+        sourceTree.mkdirs();
+        File makefile = new File(sourceTree, "Makefile");
+        List<String> content = Arrays.asList(
+                "config %config:",
+                "\techo \"Make $@ called\" >> test.log",
+                "prepare:",
+                "\techo \"Make prepare called\" >> test.log");
+        Files.write(makefile.toPath(), content);
+
+        KconfigReaderWrapper prepareWrapper = new KconfigReaderWrapper(RESOURCE_DIR, sourceTree,
+                DumpconfVersion.LINUX);
+        ExtractionReport report = new ExtractionReport("x86", sourceTree);
+
+        assertThat(prepareWrapper.prepareLinux(report), is(true));
+        assertThat(Files.readAllLines(new File(sourceTree, "test.log").toPath()),
+                is(Arrays.asList("Make allyesconfig called", "Make prepare called")));
+        assertThat(Files.readAllLines(makefile.toPath()), is(content));
+
+        JsonObject json = report.toJson();
+        assertThat(json.getList("processes").getSize(), is(1));
+        JsonList fixes = json.getList("fixes");
+        assertThat(fixes.getSize(), is(1));
+        assertThat(((JsonObject) fixes.get(0)).getString("name"), is("makefile_rewrite"));
+    }
+
+    /**
+     * Tests that the Kconfig file of the architecture is copied before KconfigReader runs for the first time, if the
+     * tree has no top level Kconfig file.
+     * 
+     * @throws IOException
+     *             unwanted.
+     * @throws FormatException
+     *             unwanted.
+     */
+    @Test
+    public void testRunKconfigReaderWithArchKconfigUpFront() throws IOException, FormatException {
+        File sourceTree = new File(RESOURCE_DIR, "linux");
+        File archDir = new File(sourceTree, "arch/x86");
+        archDir.mkdirs();
+        new File(sourceTree, "scripts/kconfig").mkdirs();
+        Util.copyFile(new File(LINUX_DIR, "Kconfig"), new File(archDir, "Kconfig"));
+        File dumpconfExe = new File("testdata/dumpconf");
+        dumpconfExe.setExecutable(true);
+
+        KconfigReaderWrapper archWrapper = new KconfigReaderWrapper(RESOURCE_DIR, sourceTree,
+                DumpconfVersion.LINUX);
+        ExtractionReport report = new ExtractionReport("x86", sourceTree);
+
+        File basepath = archWrapper.runKconfigReader(dumpconfExe, "x86", 0, report);
+        assertThat(basepath, notNullValue());
+        assertThat(new File(basepath.getAbsoluteFile() + ".dimacs").isFile(), is(true));
+        assertThat(new File(sourceTree, "Kconfig").exists(), is(false));
+        KconfigReaderExtractor.deleteAllFiles(basepath);
+
+        JsonObject json = report.toJson();
+        assertThat(json.getList("processes").getSize(), is(1));
+        assertThat(((JsonObject) json.getList("fixes").get(0)).getString("name"), is("arch_kconfig_copy"));
+    }
+
+
+    /**
+     * Tests running only dumpconf, without KconfigReader.
+     * 
+     * @throws IOException
+     *             unwanted.
+     * @throws FormatException
+     *             unwanted.
+     */
+    @Test
+    public void testRunDumpconf() throws IOException, FormatException {
+        File dumpconfExe = new File("testdata/dumpconf");
+        dumpconfExe.setExecutable(true);
+        ExtractionReport report = new ExtractionReport("x86", LINUX_DIR);
+
+        File basepath = wrapper.runDumpconf(dumpconfExe, "x86", 0, report);
+        assertThat(basepath, notNullValue());
+        try {
+            File rsf = new File(basepath.getAbsoluteFile() + ".rsf");
+            assertThat(rsf.isFile(), is(true));
+            assertThat(new String(Files.readAllBytes(rsf.toPath())).contains("<name>C</name>"), is(true));
+            assertThat(new File(basepath.getAbsoluteFile() + ".dimacs").exists(), is(false));
+        } finally {
+            KconfigReaderExtractor.deleteAllFiles(basepath);
+        }
+
+        JsonList processes = report.toJson().getList("processes");
+        assertThat(processes.getSize(), is(1));
+        assertThat(((JsonObject) processes.get(0)).getString("name"), is("dumpconf"));
+    }
+
+    /**
+     * Tests that running only dumpconf on an old Linux version without a top level Kconfig file starts at the
+     * Kconfig file of the architecture, without creating the top level one.
+     * 
+     * @throws IOException
+     *             unwanted.
+     * @throws FormatException
+     *             unwanted.
+     */
+    @Test
+    public void testRunDumpconfWithArchKconfig() throws IOException, FormatException {
+        File sourceTree = new File(RESOURCE_DIR, "linux");
+        File archDir = new File(sourceTree, "arch/x86");
+        archDir.mkdirs();
+        new File(sourceTree, "scripts/kconfig").mkdirs();
+        Util.copyFile(new File(LINUX_DIR, "Kconfig"), new File(archDir, "Kconfig"));
+        File dumpconfExe = new File("testdata/dumpconf");
+        dumpconfExe.setExecutable(true);
+
+        KconfigReaderWrapper archWrapper = new KconfigReaderWrapper(RESOURCE_DIR, sourceTree,
+                DumpconfVersion.LINUX);
+        ExtractionReport report = new ExtractionReport("x86", sourceTree);
+
+        File basepath = archWrapper.runDumpconf(dumpconfExe, "x86", 0, report);
+        assertThat(basepath, notNullValue());
+        try {
+            File rsf = new File(basepath.getAbsoluteFile() + ".rsf");
+            assertThat(new String(Files.readAllBytes(rsf.toPath())).contains("<name>C</name>"), is(true));
+        } finally {
+            KconfigReaderExtractor.deleteAllFiles(basepath);
+        }
+        assertThat(new File(sourceTree, "Kconfig").exists(), is(false));
+        assertThat(report.toJson().getList("fixes").getSize(), is(0));
+
+        // without any Kconfig file, dumpconf fails
+        Files.delete(new File(archDir, "Kconfig").toPath());
+        assertThat(new KconfigReaderWrapper(RESOURCE_DIR, sourceTree, DumpconfVersion.LINUX)
+                .runDumpconf(dumpconfExe, "x86", 0, null), nullValue());
+    }
+
+    /**
+     * Tests that a read-only source tree of an old Linux version is extracted without modifying it: make builds into
+     * a private output directory, and the Makefile rewrite and the root Kconfig file are placed in shadows.
+     * 
+     * @throws IOException
+     *             unwanted.
+     * @throws FormatException
+     *             unwanted.
+     */
+    @Test
+    public void testReadOnlySourceTree() throws IOException, FormatException {
+        File sourceTree = new File(RESOURCE_DIR, "linux");
+        File kconfigDir = new File(sourceTree, "scripts/kconfig");
+        kconfigDir.mkdirs();
+        new File(sourceTree, "arch/x86").mkdirs();
+        for (String file : new String[] {"expr.h", "list.h", "lkc.h", "lkc_proto.h", "zconf.tab.o"}) {
+            Util.copyFile(new File(LINUX_DIR, "scripts/kconfig/" + file), new File(kconfigDir, file));
+        }
+        Util.copyFile(new File(LINUX_DIR, "Kconfig"), new File(sourceTree, "arch/x86/Kconfig"));
+        Files.write(new File(sourceTree, "Makefile").toPath(), Arrays.asList(
+                "config %config:",
+                "\techo \"Make $@ called\" >> $(O)/test.log",
+                "prepare:",
+                "\techo \"Make prepare called\" >> $(O)/test.log"));
+        Map<String, String> before = snapshot(sourceTree);
+
+        KconfigReaderWrapper readOnlyWrapper = new KconfigReaderWrapper(new File(RESOURCE_DIR, "res"), sourceTree,
+                DumpconfVersion.LINUX);
+        readOnlyWrapper.setReadOnlySourceTree(true);
+        ExtractionReport report = new ExtractionReport("x86", sourceTree);
+        File dumpconfExe = new File("testdata/dumpconf");
+        dumpconfExe.setExecutable(true);
+
+        try {
+            assertThat(readOnlyWrapper.prepareLinux(report), is(true));
+            assertThat(readOnlyWrapper.compileDumpconf(report), notNullValue());
+            File basepath = readOnlyWrapper.runKconfigReader(dumpconfExe, "x86", 0, report);
+            assertThat(basepath, notNullValue());
+            assertThat(new File(basepath.getAbsoluteFile() + ".dimacs").isFile(), is(true));
+            KconfigReaderExtractor.deleteAllFiles(basepath);
+
+            File[] workDirs = new File(RESOURCE_DIR, "res/out_of_tree").listFiles();
+            assertThat(workDirs.length, is(1));
+            assertThat(Files.readAllLines(new File(workDirs[0], "build/test.log").toPath()),
+                    is(Arrays.asList("Make allyesconfig called", "Make prepare called")));
+        } finally {
+            readOnlyWrapper.cleanUp();
+        }
+
+        assertThat(snapshot(sourceTree), is(before));
+        assertThat(new File(RESOURCE_DIR, "res/out_of_tree").list().length, is(0));
+
+        JsonList fixes = report.toJson().getList("fixes");
+        assertThat(fixes.getSize(), is(2));
+        assertThat(((JsonObject) fixes.get(0)).getString("name"), is("makefile_rewrite"));
+        assertThat(((JsonObject) fixes.get(1)).getString("name"), is("arch_kconfig_copy"));
+    }
+
+    /**
+     * Creates a snapshot of all files in the given directory.
+     * 
+     * @param dir The directory.
+     * 
+     * @return The relative paths of all files, mapped to their size and modification time.
+     * 
+     * @throws IOException
+     *             If walking the directory fails.
+     */
+    private static Map<String, String> snapshot(File dir) throws IOException {
+        Map<String, String> result = new TreeMap<>();
+        try (Stream<Path> files = Files.walk(dir.toPath())) {
+            files.forEach((path) -> {
+                File file = path.toFile();
+                result.put(dir.toPath().relativize(path).toString(), file.length() + "@" + file.lastModified());
+            });
+        }
+        return result;
+    }
+
 }
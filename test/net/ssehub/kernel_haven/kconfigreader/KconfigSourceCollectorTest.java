@@ -0,0 +1,95 @@
+/*
+ * Copyright 2020 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kconfigreader;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+/**
+ * Tests the {@link KconfigSourceCollector}.
+ * 
+ * @author Adam
+ */
+public class KconfigSourceCollectorTest {
+    
+    private static final File SOURCE_TREE = new File("testdata/sources");
+    
+    /**
+     * Tests that all files reachable via source statements are collected, including missing ones.
+     * 
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testCollect() throws IOException {
+        KconfigSourceCollector collector = new KconfigSourceCollector(SOURCE_TREE, "x86");
+        
+        Set<String> expected = new TreeSet<>(Arrays.asList("Kconfig", "init/Kconfig", "init/sub/Kconfig.sub",
+                "arch/x86/Kconfig", "arch/x86/Kconfig.cpu", "drivers/missing/Kconfig"));
+        assertThat(collector.collect(), is(expected));
+    }
+    
+    /**
+     * Tests that the architecture is used for resolving source statements.
+     * 
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testCollectOtherArch() throws IOException {
+        KconfigSourceCollector collector = new KconfigSourceCollector(SOURCE_TREE, "arm");
+        
+        Set<String> expected = new TreeSet<>(Arrays.asList("Kconfig", "init/Kconfig", "init/sub/Kconfig.sub",
+                "arch/arm/Kconfig", "drivers/missing/Kconfig"));
+        assertThat(collector.collect(), is(expected));
+    }
+    
+    /**
+     * Tests that the Kconfig file of the architecture is used as root, if there is no top level Kconfig file.
+     */
+    @Test
+    public void testRootWithoutTopLevelKconfig() {
+        KconfigSourceCollector collector = new KconfigSourceCollector(new File("testdata/sources/drivers"), "x86");
+        
+        assertThat(collector.getRootKconfig(), is("arch/x86/Kconfig"));
+    }
+    
+    /**
+     * Tests parsing the different forms of source statements.
+     */
+    @Test
+    public void testGetSourcedPath() {
+        KconfigSourceCollector collector = new KconfigSourceCollector(SOURCE_TREE, "arm");
+        
+        assertThat(collector.getSourcedPath("source \"a/Kconfig\"", "Kconfig"), is("a/Kconfig"));
+        assertThat(collector.getSourcedPath("\tsource a/Kconfig", "Kconfig"), is("a/Kconfig"));
+        assertThat(collector.getSourcedPath("source \"arch/$ARCH/Kconfig\"", "Kconfig"), is("arch/arm/Kconfig"));
+        assertThat(collector.getSourcedPath("osource \"$(SRCARCH)/Kconfig\"", "Kconfig"), is("arm/Kconfig"));
+        assertThat(collector.getSourcedPath("rsource \"b/Kconfig\"", "a/Kconfig"), is("a/b/Kconfig"));
+        assertThat(collector.getSourcedPath("orsource \"../Kconfig.x\"", "a/b/Kconfig"), is("a/Kconfig.x"));
+        assertThat(collector.getSourcedPath("config SOURCE", "Kconfig"), nullValue());
+        assertThat(collector.getSourcedPath("# source \"a/Kconfig\"", "Kconfig"), nullValue());
+    }
+
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2020 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kconfigreader;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.kconfigreader.KconfigReaderExtractor.DumpconfVersion;
+import net.ssehub.kernel_haven.util.FormatException;
+import net.ssehub.kernel_haven.util.Util;
+import net.ssehub.kernel_haven.variability_model.VariabilityModel;
+import net.ssehub.kernel_haven.variability_model.VariabilityModelDescriptor.Attribute;
+
+/**
+ * Tests the {@link ModelCache}.
+ * 
+ * @author Adam
+ */
+@SuppressWarnings("null")
+public class ModelCacheTest {
+    
+    private static final File SOURCE_TREE = new File("testdata/sources");
+    
+    private static final File TMP_DIR = new File("testdata/tmp_model_cache");
+    
+    /**
+     * Creates the temporary directory.
+     */
+    @Before
+    public void setUp() {
+        TMP_DIR.mkdir();
+    }
+    
+    /**
+     * Deletes the temporary directory.
+     * 
+     * @throws IOException If deleting fails.
+     */
+    @After
+    public void tearDown() throws IOException {
+        Util.deleteFolder(TMP_DIR);
+    }
+    
+    /**
+     * Tests that the key is stable for the same inputs and different for different architectures, dumpconf
+     * versions, make parameters and constraint encoders.
+     * 
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testKeyInputs() throws IOException {
+        String key = ModelCache.computeKey(SOURCE_TREE, "x86", DumpconfVersion.LINUX, Collections.emptyList());
+        
+        assertThat(ModelCache.computeKey(SOURCE_TREE, "x86", DumpconfVersion.LINUX, Collections.emptyList()),
+                is(key));
+        assertThat(ModelCache.computeKey(SOURCE_TREE, "arm", DumpconfVersion.LINUX, Collections.emptyList()),
+                not(key));
+        assertThat(ModelCache.computeKey(SOURCE_TREE, "x86", DumpconfVersion.BUSYBOX, Collections.emptyList()),
+                not(key));
+        assertThat(ModelCache.computeKey(SOURCE_TREE, "x86", DumpconfVersion.LINUX, Arrays.asList("CC=gcc-4.8")),
+                not(key));
+        assertThat(ModelCache.computeKey(SOURCE_TREE, "x86", DumpconfVersion.LINUX, Collections.emptyList(), false),
+                is(key));
+        assertThat(ModelCache.computeKey(SOURCE_TREE, "x86", DumpconfVersion.LINUX, Collections.emptyList(), true),
+                not(key));
+    }
+    
+    /**
+     * Tests that the key only changes if a reachable Kconfig file changes.
+     * 
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testKeyChangesWithReachableKconfig() throws IOException {
+        File tree = new File(TMP_DIR, "tree");
+        copyFolder(SOURCE_TREE, tree);
+        String key = ModelCache.computeKey(tree, "x86", DumpconfVersion.LINUX, Collections.emptyList());
+        
+        // not reachable from the root Kconfig file
+        Files.write(new File(tree, "drivers/unused/Kconfig").toPath(), "\n".getBytes(), StandardOpenOption.APPEND);
+        assertThat(ModelCache.computeKey(tree, "x86", DumpconfVersion.LINUX, Collections.emptyList()), is(key));
+        
+        // reachable via rsource
+        Files.write(new File(tree, "init/sub/Kconfig.sub").toPath(), "\n".getBytes(), StandardOpenOption.APPEND);
+        String newKey = ModelCache.computeKey(tree, "x86", DumpconfVersion.LINUX, Collections.emptyList());
+        assertThat(newKey, not(key));
+        
+        // a sourced file that was missing before
+        new File(tree, "drivers/missing").mkdir();
+        Files.write(new File(tree, "drivers/missing/Kconfig").toPath(), "\n".getBytes());
+        assertThat(ModelCache.computeKey(tree, "x86", DumpconfVersion.LINUX, Collections.emptyList()), not(newKey));
+    }
+    
+    /**
+     * Tests writing and reading an entry.
+     * 
+     * @throws IOException unwanted.
+     * @throws FormatException unwanted.
+     */
+    @Test
+    public void testWriteRead() throws IOException, FormatException {
+        ModelCache cache = new ModelCache(new File(TMP_DIR, "cache"), 1024 * 1024);
+        VariabilityModel model = new Converter(new File("testdata/hierarchy/simple")).convert();
+        
+        assertThat(cache.read("abc"), nullValue());
+        cache.write("abc", model);
+        
+        VariabilityModel read = cache.read("abc");
+        assertThat(read, notNullValue());
+        assertThat(read.getVariableMap().keySet(), is(model.getVariableMap().keySet()));
+        assertThat(read.getDescriptor().hasAttribute(Attribute.HIERARCHICAL), is(true));
+        assertThat(read.getConstraintModel().isFile(), is(true));
+        assertThat(Files.readAllBytes(read.getConstraintModel().toPath()),
+                is(Files.readAllBytes(model.getConstraintModel().toPath())));
+    }
+    
+    /**
+     * Tests that the least recently used entries are removed if the cache grows too large.
+     * 
+     * @throws IOException unwanted.
+     * @throws FormatException unwanted.
+     */
+    @Test
+    public void testEviction() throws IOException, FormatException {
+        File cacheDir = new File(TMP_DIR, "cache");
+        VariabilityModel model = new Converter(new File("testdata/hierarchy/simple")).convert();
+        
+        // find out how large a single entry is
+        new ModelCache(cacheDir, Long.MAX_VALUE).write("size", model);
+        long entrySize = 0;
+        for (File file : new File(cacheDir, "size").listFiles()) {
+            entrySize += file.length();
+        }
+        Util.deleteFolder(cacheDir);
+        
+        ModelCache cache = new ModelCache(cacheDir, entrySize * 2);
+        cache.write("a", model);
+        new File(cacheDir, "a").setLastModified(System.currentTimeMillis() - 20000);
+        cache.write("b", model);
+        new File(cacheDir, "b").setLastModified(System.currentTimeMillis() - 10000);
+        
+        // reading a marks it as recently used, so b is evicted
+        assertThat(cache.read("a"), notNullValue());
+        cache.write("c", model);
+        
+        assertThat(cache.read("a"), notNullValue());
+        assertThat(cache.read("b"), nullValue());
+        assertThat(cache.read("c"), notNullValue());
+    }
+    
+    /**
+     * Recursively copies a folder.
+     * 
+     * @param from The folder to copy.
+     * @param to The destination.
+     * 
+     * @throws IOException If copying fails.
+     */
+    private static void copyFolder(File from, File to) throws IOException {
+        to.mkdirs();
+        for (File file : from.listFiles()) {
+            if (file.isDirectory()) {
+                copyFolder(file, new File(to, file.getName()));
+            } else {
+                Files.copy(file.toPath(), new File(to, file.getName()).toPath());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2020 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kconfigreader;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Tests the {@link OutputMonitor}.
+ *
+ * @author Adam
+ */
+@SuppressWarnings("null")
+public class OutputMonitorTest {
+
+    /**
+     * Writes the given text to the given stream.
+     *
+     * @param out The stream to write to.
+     * @param text The text to write.
+     *
+     * @throws IOException unwanted.
+     */
+    private static void write(OutputStream out, String text) throws IOException {
+        out.write(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Tests that watched signatures are found in both streams, also in lines that are written in several parts.
+     *
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testWatch() throws IOException {
+        OutputMonitor monitor = new OutputMonitor();
+        monitor.watch("P_ENV");
+        monitor.watch("E_LIST");
+        monitor.watch("not printed");
+
+        write(monitor.getStdout(), "zconf.y:12: error: 'P_");
+        assertThat(monitor.hasSeen("P_ENV"), is(false));
+        write(monitor.getStdout(), "ENV' undeclared\nsecond line\n");
+        write(monitor.getStderr(), "error: 'E_LIST' undeclared");
+        assertThat(monitor.hasSeen("P_ENV"), is(true));
+        assertThat(monitor.hasSeen("E_LIST"), is(false));
+
+        monitor.finish();
+        assertThat(monitor.hasSeen("E_LIST"), is(true));
+        assertThat(monitor.hasSeen("not printed"), is(false));
+        assertThat(monitor.isAborted(), is(false));
+        assertThat(monitor.getOutput(), is("zconf.y:12: error: 'P_ENV' undeclared\nsecond line\n"
+                + "error: 'E_LIST' undeclared\n"));
+    }
+
+    /**
+     * Tests that the abort handler is called once, as soon as all signatures of a condition have been seen.
+     *
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testAbort() throws IOException {
+        OutputMonitor monitor = new OutputMonitor();
+        monitor.abortOn("P_ENV", "E_LIST");
+        AtomicInteger aborted = new AtomicInteger();
+        monitor.setAbortHandler(aborted::incrementAndGet);
+
+        write(monitor.getStderr(), "error: P_ENV\n");
+        assertThat(aborted.get(), is(0));
+        write(monitor.getStdout(), "error: E_LIST\n");
+        assertThat(aborted.get(), is(1));
+        assertThat(monitor.isAborted(), is(true));
+
+        write(monitor.getStdout(), "error: E_LIST\n");
+        assertThat(aborted.get(), is(1));
+
+        monitor.reset();
+        assertThat(monitor.isAborted(), is(false));
+        assertThat(monitor.hasSeen("P_ENV"), is(false));
+        assertThat(monitor.getOutput(), is(""));
+        write(monitor.getStdout(), "P_ENV E_LIST\n");
+        assertThat(aborted.get(), is(2));
+    }
+
+    /**
+     * Tests that a handler that is set after the abort condition was met is called immediately.
+     *
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testLateAbortHandler() throws IOException {
+        OutputMonitor monitor = new OutputMonitor();
+        monitor.abortOn("assertion failed");
+        write(monitor.getStderr(), "java.lang.AssertionError: assertion failed: kconfig file does not exist\n");
+
+        AtomicInteger aborted = new AtomicInteger();
+        monitor.setAbortHandler(aborted::incrementAndGet);
+        assertThat(aborted.get(), is(1));
+    }
+
+    /**
+     * Tests that signatures in overlong lines are found, even if they span over the chunks that the line is
+     * scanned in.
+     *
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testOverlongLine() throws IOException {
+        OutputMonitor monitor = new OutputMonitor();
+        monitor.watch("java.lang.OutOfMemoryError");
+
+        StringBuilder line = new StringBuilder();
+        while (line.length() < OutputMonitor.MAX_LINE - 10) {
+            line.append('x');
+        }
+        line.append("java.lang.OutOfMemoryError: Java heap space");
+        write(monitor.getStdout(), line.toString());
+        assertThat(monitor.hasSeen("java.lang.OutOfMemoryError"), is(false));
+
+        write(monitor.getStdout(), "\n");
+        assertThat(monitor.hasSeen("java.lang.OutOfMemoryError"), is(true));
+        assertThat(monitor.getOutput(), is(line + "\n"));
+    }
+
+    /**
+     * Tests that only the end of a long output is retained.
+     *
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testRetainedOutputIsBounded() throws IOException {
+        OutputMonitor monitor = new OutputMonitor();
+        for (int i = 0; i < 100000; i++) {
+            write(monitor.getStdout(), "CC drivers/file" + i + ".o\n");
+        }
+
+        String output = monitor.getOutput();
+        assertThat(output.length() <= OutputMonitor.MAX_RETAINED, is(true));
+        assertThat(output.length() > OutputMonitor.MAX_RETAINED / 2, is(true));
+        assertThat(output.endsWith("CC drivers/file99999.o\n"), is(true));
+    }
+
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2020 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kconfigreader;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import net.ssehub.kernel_haven.test_utils.RunOnlyOnLinux;
+
+/**
+ * Tests the {@link ProcessTreeTracker}.
+ *
+ * @author Adam
+ */
+@RunWith(RunOnlyOnLinux.class)
+public class ProcessTreeTrackerTest {
+
+    /**
+     * Tests that a process tree is only finished after a detached child process has terminated.
+     *
+     * @throws IOException unwanted.
+     * @throws InterruptedException unwanted.
+     */
+    @Test
+    public void testDetachedChild() throws IOException, InterruptedException {
+        ProcessTreeTracker tracker = new ProcessTreeTracker();
+        assertThat(ProcessTreeTracker.isSupported(), is(true));
+        assertThat(tracker.isFinished(), is(true));
+
+        ProcessBuilder processBuilder = new ProcessBuilder("sh", "-c", "sleep 1 >/dev/null 2>&1 &");
+        tracker.tag(processBuilder);
+        Process process = processBuilder.start();
+        process.waitFor();
+
+        // the shell has terminated, but the sleep is still running
+        assertThat(tracker.isFinished(), is(false));
+
+        long started = System.currentTimeMillis();
+        while (!tracker.isFinished() && System.currentTimeMillis() - started < 10000) {
+            Thread.sleep(50);
+        }
+        assertThat(tracker.isFinished(), is(true));
+    }
+
+    /**
+     * Tests that processes with another tag are not tracked.
+     *
+     * @throws IOException unwanted.
+     * @throws InterruptedException unwanted.
+     */
+    @Test
+    public void testOtherTag() throws IOException, InterruptedException {
+        ProcessTreeTracker tracker = new ProcessTreeTracker();
+        ProcessTreeTracker other = new ProcessTreeTracker();
+
+        ProcessBuilder processBuilder = new ProcessBuilder("sleep", "1");
+        other.tag(processBuilder);
+        Process process = processBuilder.start();
+        try {
+            assertThat(tracker.isFinished(), is(true));
+            assertThat(other.isFinished(), is(false));
+        } finally {
+            process.destroy();
+            process.waitFor();
+        }
+    }
+
+    /**
+     * Tests that the peak resident set size of running tagged processes is found.
+     *
+     * @throws IOException unwanted.
+     * @throws InterruptedException unwanted.
+     */
+    @Test
+    public void testPeakResidentSetSize() throws IOException, InterruptedException {
+        ProcessTreeTracker tracker = new ProcessTreeTracker();
+        assertThat(tracker.getPeakResidentSetSize(), is(0L));
+
+        ProcessBuilder processBuilder = new ProcessBuilder("sleep", "1");
+        tracker.tag(processBuilder);
+        Process process = processBuilder.start();
+        try {
+            assertThat(tracker.getPeakResidentSetSize() > 0, is(true));
+        } finally {
+            process.destroy();
+            process.waitFor();
+        }
+    }
+
+    /**
+     * Tests that the CPU time of running tagged processes is found.
+     *
+     * @throws IOException unwanted.
+     * @throws InterruptedException unwanted.
+     */
+    @Test
+    public void testCpuTime() throws IOException, InterruptedException {
+        ProcessTreeTracker tracker = new ProcessTreeTracker();
+        assertThat(tracker.getCpuTime(), is(0L));
+
+        ProcessBuilder processBuilder = new ProcessBuilder("sh", "-c", "while :; do :; done");
+        tracker.tag(processBuilder);
+        Process process = processBuilder.start();
+        try {
+            ProcessTreeTracker.Sampler sampler = new ProcessTreeTracker.Sampler(tracker);
+            Thread.sleep(500);
+            sampler.stopSampling();
+
+            assertThat(sampler.getCpuTime() > 0, is(true));
+            assertThat(sampler.getPeakResidentSetSize() > 0, is(true));
+        } finally {
+            process.destroy();
+            process.waitFor();
+        }
+    }
+
+    /**
+     * Tests that all processes of a tree are killed, including children of the started process.
+     *
+     * @throws IOException unwanted.
+     * @throws InterruptedException unwanted.
+     */
+    @Test(timeout = 20000)
+    public void testKill() throws IOException, InterruptedException {
+        ProcessTreeTracker tracker = new ProcessTreeTracker();
+        tracker.kill(); // nothing to kill
+
+        ProcessBuilder processBuilder = new ProcessBuilder("sh", "-c", "sleep 60 & sleep 60; wait");
+        tracker.tag(processBuilder);
+        Process process = processBuilder.start();
+        try {
+            Thread.sleep(200);
+            assertThat(tracker.isFinished(), is(false));
+
+            tracker.kill();
+            process.waitFor();
+            Thread.sleep(200);
+            assertThat(tracker.isFinished(), is(true));
+        } finally {
+            process.destroy();
+            process.waitFor();
+        }
+    }
+
+}
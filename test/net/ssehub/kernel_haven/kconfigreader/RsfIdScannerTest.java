@@ -0,0 +1,107 @@
+/*
+ * Copyright 2020 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kconfigreader;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.util.FormatException;
+
+/**
+ * Tests the {@link RsfIdScanner}.
+ *
+ * @author Adam
+ */
+public class RsfIdScannerTest {
+
+    /**
+     * Scans the given text, split into chunks of the given size.
+     *
+     * @param text The text to scan.
+     * @param chunkSize The size of the chunks to feed.
+     * @param excludedId The ID to exclude.
+     *
+     * @return The found IDs in sorted order.
+     *
+     * @throws FormatException unwanted.
+     */
+    private static int[] scan(String text, int chunkSize, int excludedId) throws FormatException {
+        IntSet result = new IntSet();
+        RsfIdScanner scanner = new RsfIdScanner();
+        scanner.reset(excludedId, result);
+
+        char[] chars = text.toCharArray();
+        for (int i = 0; i < chars.length; i += chunkSize) {
+            scanner.feed(chars, i, Math.min(chunkSize, chars.length - i));
+        }
+        scanner.finish();
+
+        int[] ids = result.toArray();
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    /**
+     * Tests finding IDs in a condition, excluding the ID of the variable itself.
+     *
+     * @throws FormatException unwanted.
+     */
+    @Test
+    public void testIds() throws FormatException {
+        String text = "S@12 && (S@345 || !S@12)S@7";
+        assertThat(scan(text, 1000, 0), is(new int[] {7, 12, 345}));
+        assertThat(scan(text, 1000, 12), is(new int[] {7, 345}));
+    }
+
+    /**
+     * Tests that IDs that are split across chunks are found.
+     *
+     * @throws FormatException unwanted.
+     */
+    @Test
+    public void testChunks() throws FormatException {
+        String text = "xS@31750096 S@31750688SS@5";
+        for (int chunkSize = 1; chunkSize < 6; chunkSize++) {
+            assertThat(scan(text, chunkSize, 0), is(new int[] {5, 31750096, 31750688}));
+        }
+    }
+
+    /**
+     * Tests that incomplete IDs and other text is ignored.
+     *
+     * @throws FormatException unwanted.
+     */
+    @Test
+    public void testNoIds() throws FormatException {
+        assertThat(scan("S@ S S@x @12 s@3 S@-4", 1000, 0), is(new int[0]));
+    }
+
+    /**
+     * Tests that IDs that exceed the int range throw an exception.
+     *
+     * @throws FormatException wanted.
+     */
+    @Test(expected = FormatException.class)
+    public void testTooLarge() throws FormatException {
+        scan("S@2147483648", 1000, 0);
+    }
+
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2020 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kconfigreader;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import net.ssehub.kernel_haven.test_utils.RunOnlyOnLinux;
+
+/**
+ * Tests the {@link ShadowTree}.
+ *
+ * @author Adam
+ */
+@RunWith(RunOnlyOnLinux.class)
+public class ShadowTreeTest {
+
+    private static final File TMP_DIR = new File("testdata/tmp_shadow");
+
+    private static final File TREE = new File(TMP_DIR, "tree");
+
+    private static final File SHADOW = new File(TMP_DIR, "shadow");
+
+    /**
+     * Creates a small source tree.
+     *
+     * @throws IOException unwanted.
+     */
+    @Before
+    public void setUp() throws IOException {
+        new File(TREE, "arch/x86").mkdirs();
+        Files.write(new File(TREE, "Makefile").toPath(), Collections.singletonList("config %config:"));
+        Files.write(new File(TREE, "arch/x86/Kconfig").toPath(), Collections.singletonList("config A"));
+    }
+
+    /**
+     * Deletes the test directory.
+     *
+     * @throws IOException unwanted.
+     */
+    @After
+    public void tearDown() throws IOException {
+        ShadowTree.deleteRecursively(TMP_DIR);
+    }
+
+    /**
+     * Tests that the shadow shows the source tree with the overridden files, without modifying the source tree.
+     *
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testCreate() throws IOException {
+        ShadowTree shadow = new ShadowTree(TREE, SHADOW);
+        shadow.override("Makefile", "%config %config:\n".getBytes());
+        shadow.override("Kconfig", "source \"arch/x86/Kconfig\"\n".getBytes());
+
+        File dir = shadow.create();
+        assertThat(dir, is(SHADOW.getAbsoluteFile()));
+        assertThat(Files.readAllLines(new File(dir, "Makefile").toPath()),
+                is(Collections.singletonList("%config %config:")));
+        assertThat(Files.readAllLines(new File(dir, "Kconfig").toPath()),
+                is(Collections.singletonList("source \"arch/x86/Kconfig\"")));
+        assertThat(Files.readAllLines(new File(dir, "arch/x86/Kconfig").toPath()),
+                is(Collections.singletonList("config A")));
+
+        assertThat(Files.readAllLines(new File(TREE, "Makefile").toPath()),
+                is(Collections.singletonList("config %config:")));
+        assertThat(new File(TREE, "Kconfig").exists(), is(false));
+    }
+
+    /**
+     * Tests that deleting a shadow, or a directory that contains one, does not delete the source tree behind the
+     * links.
+     *
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testDeleteKeepsSourceTree() throws IOException {
+        ShadowTree shadow = new ShadowTree(TREE, new File(SHADOW, "nested"));
+        shadow.create();
+        Files.createSymbolicLink(new File(SHADOW, "source").toPath(), TREE.getAbsoluteFile().toPath());
+
+        ShadowTree.deleteRecursively(SHADOW);
+
+        assertThat(SHADOW.exists(), is(false));
+        assertThat(new File(TREE, "arch/x86/Kconfig").isFile(), is(true));
+        String[] entries = TREE.list();
+        Arrays.sort(entries);
+        assertThat(entries, is(new String[] {"Makefile", "arch"}));
+    }
+
+    /**
+     * Tests that creating a shadow again replaces the previous one.
+     *
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testRecreate() throws IOException {
+        ShadowTree shadow = new ShadowTree(TREE, SHADOW);
+        shadow.override("Kconfig", "first\n".getBytes());
+        shadow.create();
+
+        shadow.override("Kconfig", "second\n".getBytes());
+        shadow.create();
+        assertThat(Files.readAllLines(new File(SHADOW, "Kconfig").toPath()), is(Collections.singletonList("second")));
+
+        shadow.delete();
+        assertThat(SHADOW.exists(), is(false));
+        assertThat(TREE.isDirectory(), is(true));
+    }
+
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2020 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kconfigreader;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.kconfigreader.SourceLocationFinder.Definition;
+import net.ssehub.kernel_haven.util.Util;
+import net.ssehub.kernel_haven.variability_model.SourceLocation;
+import net.ssehub.kernel_haven.variability_model.VariabilityVariable;
+
+/**
+ * Tests the {@link SourceLocationFinder}.
+ *
+ * @author Adam
+ */
+@SuppressWarnings("null")
+public class SourceLocationFinderTest {
+
+    private static final File SOURCE_TREE = new File("testdata/sources");
+
+    private static final File TMP_DIR = new File("testdata/tmp_location_finder");
+
+    /**
+     * Creates a variable map with the given variables.
+     *
+     * @param names The names of the variables.
+     *
+     * @return The variable map.
+     */
+    private static Map<String, VariabilityVariable> createVariables(String... names) {
+        Map<String, VariabilityVariable> result = new HashMap<>();
+        for (String name : names) {
+            result.put(name, new VariabilityVariable(name, "bool"));
+        }
+        return result;
+    }
+
+    /**
+     * Converts the definitions to strings for easier comparison.
+     *
+     * @param definitions The definitions.
+     *
+     * @return A list of "variable@file:line" strings.
+     */
+    private static List<String> toStrings(List<Definition> definitions) {
+        List<String> result = new ArrayList<>();
+        for (Definition definition : definitions) {
+            SourceLocation location = definition.getLocation();
+            result.add(definition.getVariable() + "@" + location.getSource().getPath().replace(File.separatorChar, '/')
+                    + ":" + location.getLineNumber());
+        }
+        return result;
+    }
+
+    /**
+     * Tests that all Kconfig files in all directories are scanned and that the definitions are ordered by path.
+     */
+    @Test
+    public void testFindOrdered() {
+        Map<String, VariabilityVariable> vars = createVariables("CONFIG_ARM", "CONFIG_X86", "CONFIG_X86_CPU",
+                "CONFIG_INIT", "CONFIG_SUB", "CONFIG_NOT_DEFINED");
+
+        List<Definition> definitions = new SourceLocationFinder(SOURCE_TREE, vars).find();
+
+        assertThat(toStrings(definitions), is(Arrays.asList(
+                "CONFIG_ARM@arch/arm/Kconfig:1",
+                "CONFIG_X86@arch/x86/Kconfig:1",
+                "CONFIG_X86_CPU@arch/x86/Kconfig.cpu:1",
+                "CONFIG_INIT@init/Kconfig:1",
+                "CONFIG_SUB@init/sub/Kconfig.sub:1")));
+    }
+
+    /**
+     * Tests that a symbol defined in several files gets its locations in a deterministic order, regardless of how
+     * the files are scanned.
+     *
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testMultipleDefinitions() throws IOException {
+        try {
+            for (String dir : new String[] {"b", "a", "c/d", "c"}) {
+                File file = new File(TMP_DIR, dir + "/Kconfig");
+                file.getParentFile().mkdirs();
+                Files.write(file.toPath(),
+                        "# comment\nconfig A\n\tbool\nmenuconfig B\n".getBytes(StandardCharsets.UTF_8));
+            }
+
+            for (int i = 0; i < 5; i++) {
+                Map<String, VariabilityVariable> vars = createVariables("CONFIG_A", "CONFIG_B");
+                SourceLocationFinder.addLocations(new SourceLocationFinder(TMP_DIR, vars).find(), vars);
+
+                assertThat(vars.get("CONFIG_A").getSourceLocations(), is(Arrays.asList(
+                        new SourceLocation(new File("a/Kconfig"), 2),
+                        new SourceLocation(new File("b/Kconfig"), 2),
+                        new SourceLocation(new File("c/Kconfig"), 2),
+                        new SourceLocation(new File("c/d/Kconfig"), 2))));
+                assertThat(vars.get("CONFIG_B").getSourceLocations().get(0),
+                        is(new SourceLocation(new File("a/Kconfig"), 4)));
+            }
+        } finally {
+            Util.deleteFolder(TMP_DIR);
+        }
+    }
+
+}
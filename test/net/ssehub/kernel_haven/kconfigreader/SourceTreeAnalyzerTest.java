@@ -0,0 +1,159 @@
+/*
+ * Copyright 2020 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kconfigreader;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.kconfigreader.KconfigReaderExtractor.DumpconfVersion;
+import net.ssehub.kernel_haven.kconfigreader.SourceTreeAnalyzer.TreeType;
+import net.ssehub.kernel_haven.util.Util;
+
+/**
+ * Tests the {@link SourceTreeAnalyzer}.
+ *
+ * @author Adam
+ */
+public class SourceTreeAnalyzerTest {
+
+    private static final File TREE = new File("testdata/tmp_analyzer");
+
+    /**
+     * Creates an empty source tree.
+     */
+    @Before
+    public void setUp() {
+        new File(TREE, "scripts/kconfig").mkdirs();
+    }
+
+    /**
+     * Deletes the source tree.
+     *
+     * @throws IOException If deleting fails.
+     */
+    @After
+    public void tearDown() throws IOException {
+        Util.deleteFolder(TREE);
+    }
+
+    /**
+     * Writes a file of the source tree.
+     *
+     * @param path The path relative to the source tree.
+     * @param lines The content of the file.
+     *
+     * @throws IOException If writing fails.
+     */
+    private static void write(String path, String... lines) throws IOException {
+        File file = new File(TREE, path);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), Arrays.asList(lines));
+    }
+
+    /**
+     * Tests that the pseudo Linux tree of the other tests is analyzed as a current Linux tree.
+     */
+    @Test
+    public void testCurrentLinux() {
+        SourceTreeAnalyzer analyzer = new SourceTreeAnalyzer(new File("testdata/pseudoLinux"));
+
+        assertThat(analyzer.getTreeType(), is(TreeType.LINUX));
+        assertThat(analyzer.hasObsoleteMakeSyntax(), is(false));
+        assertThat(analyzer.hasObsoleteKconfigGrammar(), is(false));
+        assertThat(analyzer.getDumpconfVersion(DumpconfVersion.LINUX), is(DumpconfVersion.LINUX));
+        assertThat(analyzer.hasRootKconfig(), is(true));
+        assertThat(analyzer.needsArchKconfig("x86"), is(false));
+    }
+
+    /**
+     * Tests the detection of an old Linux tree, which needs all fixes.
+     *
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testOldLinux() throws IOException {
+        write("Makefile", "config %config: scripts_basic outputmakefile FORCE", "\t$(Q)$(MAKE) $@");
+        write("scripts/kconfig/expr.h", "enum expr_type {", "\tE_NONE, E_OR, E_AND, E_NOT, E_EQUAL, E_CHOICE,",
+                "};");
+        write("arch/i386/Kconfig", "mainmenu \"Linux Kernel Configuration\"");
+
+        SourceTreeAnalyzer analyzer = new SourceTreeAnalyzer(TREE);
+
+        assertThat(analyzer.getTreeType(), is(TreeType.LINUX));
+        assertThat(analyzer.hasObsoleteMakeSyntax(), is(true));
+        assertThat(analyzer.hasObsoleteKconfigGrammar(), is(true));
+        assertThat(analyzer.getDumpconfVersion(DumpconfVersion.LINUX), is(DumpconfVersion.BUSYBOX));
+        assertThat(analyzer.hasRootKconfig(), is(false));
+        assertThat(analyzer.needsArchKconfig("i386"), is(true));
+        assertThat(analyzer.needsArchKconfig("x86"), is(false));
+    }
+
+    /**
+     * Tests that the second obsolete Makefile rule is detected, too, and that a Kconfig parser with only one of the
+     * new grammar elements is not considered old.
+     *
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testPartiallyOld() throws IOException {
+        write("Makefile", "/ %/: prepare scripts FORCE");
+        write("scripts/kconfig/expr.h", "E_CHOICE, E_LIST,");
+        write("Kconfig");
+
+        SourceTreeAnalyzer analyzer = new SourceTreeAnalyzer(TREE);
+
+        assertThat(analyzer.hasObsoleteMakeSyntax(), is(true));
+        assertThat(analyzer.hasObsoleteKconfigGrammar(), is(false));
+    }
+
+    /**
+     * Tests the detection of BusyBox trees.
+     *
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testBusybox() throws IOException {
+        write("Config.in", "mainmenu \"BusyBox Configuration\"");
+
+        SourceTreeAnalyzer analyzer = new SourceTreeAnalyzer(TREE);
+
+        assertThat(analyzer.getTreeType(), is(TreeType.BUSYBOX));
+        assertThat(analyzer.hasObsoleteMakeSyntax(), is(false));
+        assertThat(analyzer.hasObsoleteKconfigGrammar(), is(false));
+    }
+
+    /**
+     * Tests that a directory without a Kconfig parser is not analyzed as source tree.
+     */
+    @Test
+    public void testUnknown() {
+        SourceTreeAnalyzer analyzer = new SourceTreeAnalyzer(new File("testdata/sources"));
+
+        assertThat(analyzer.getTreeType(), is(TreeType.UNKNOWN));
+        assertThat(analyzer.hasObsoleteMakeSyntax(), is(false));
+    }
+
+}
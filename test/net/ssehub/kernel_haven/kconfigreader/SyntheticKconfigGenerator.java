@@ -0,0 +1,632 @@
+/*
+ * Copyright 2020 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kconfigreader;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import net.ssehub.kernel_haven.variability_model.SourceLocation;
+
+/**
+ * Generates a synthetic, Linux-scale Kconfig model for scaling tests and benchmarks. For the same parameters and
+ * seed, the output is always the same. The generator writes:
+ * <ul>
+ *     <li>a pseudo source tree with Kconfig files ({@link #writeSourceTree(File)}),</li>
+ *     <li>the matching dumpconf output, including the source locations of the symbols
+ *         ({@link #writeRsf(File)}),</li>
+ *     <li>and the matching KconfigReader DIMACS output ({@link #writeDimacs(File)}).</li>
+ * </ul>
+ * The model contains boolean, tristate, string and int symbols, choices with 2 to 4 options, nested submenus and
+ * dependencies on previous symbols. The expected results of converting the model can be queried
+ * ({@link #getVariables()}, {@link #getParent(String)}, {@link #getLocation(String)},
+ * {@link #getUsedVariables(String)}).
+ *
+ * @author Adam
+ */
+public class SyntheticKconfigGenerator {
+
+    private static final int FLAG_CHOICE = 0x0010;
+
+    private static final int EVENT_OPEN = -1;
+
+    private static final int EVENT_CLOSE = -2;
+
+    /**
+     * A generated symbol.
+     */
+    private static final class Symbol {
+
+        private String variable;
+
+        private String name;
+
+        private String type;
+
+        private int id;
+
+        private boolean choice;
+
+        private int parent = -1;
+
+        private List<Integer> references = new ArrayList<>();
+
+        private String file;
+
+        private int line;
+
+    }
+
+    private long seed = 4711;
+
+    private int numSymbols = 1000;
+
+    private int maxDepth = 8;
+
+    private double tristateRatio = 0.45;
+
+    private double choiceRatio = 0.01;
+
+    private double constraintDensity = 2.0;
+
+    private int symbolsPerFile = 20;
+
+    private List<Symbol> symbols;
+
+    private Map<String, Symbol> symbolsByVariable;
+
+    /**
+     * The menu structure: symbol indices, {@link #EVENT_OPEN} and {@link #EVENT_CLOSE}.
+     */
+    private List<Integer> events;
+
+    private Map<String, StringBuilder> kconfigFiles;
+
+    /**
+     * Sets the seed of the random generator. Default: 4711.
+     *
+     * @param seed The seed.
+     * @return This generator.
+     */
+    public SyntheticKconfigGenerator seed(long seed) {
+        this.seed = seed;
+        symbols = null;
+        return this;
+    }
+
+    /**
+     * Sets the (approximate) number of symbols, including choices. Default: 1000.
+     *
+     * @param numSymbols The number of symbols.
+     * @return This generator.
+     */
+    public SyntheticKconfigGenerator symbols(int numSymbols) {
+        this.numSymbols = numSymbols;
+        symbols = null;
+        return this;
+    }
+
+    /**
+     * Sets the maximum nesting depth of the submenus. Default: 8.
+     *
+     * @param maxDepth The maximum depth.
+     * @return This generator.
+     */
+    public SyntheticKconfigGenerator maxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+        symbols = null;
+        return this;
+    }
+
+    /**
+     * Sets the ratio of tristate symbols. Default: 0.45.
+     *
+     * @param tristateRatio The ratio between 0 and 1.
+     * @return This generator.
+     */
+    public SyntheticKconfigGenerator tristateRatio(double tristateRatio) {
+        this.tristateRatio = tristateRatio;
+        symbols = null;
+        return this;
+    }
+
+    /**
+     * Sets the probability that a choice starts at a symbol. Default: 0.01.
+     *
+     * @param choiceRatio The probability between 0 and 1.
+     * @return This generator.
+     */
+    public SyntheticKconfigGenerator choiceRatio(double choiceRatio) {
+        this.choiceRatio = choiceRatio;
+        symbols = null;
+        return this;
+    }
+
+    /**
+     * Sets the average number of other symbols that a symbol depends on. Default: 2.
+     *
+     * @param constraintDensity The average number of dependencies per symbol.
+     * @return This generator.
+     */
+    public SyntheticKconfigGenerator constraintDensity(double constraintDensity) {
+        this.constraintDensity = constraintDensity;
+        symbols = null;
+        return this;
+    }
+
+    /**
+     * Sets the number of symbols per Kconfig file. Default: 20.
+     *
+     * @param symbolsPerFile The number of symbols per file.
+     * @return This generator.
+     */
+    public SyntheticKconfigGenerator symbolsPerFile(int symbolsPerFile) {
+        this.symbolsPerFile = symbolsPerFile;
+        symbols = null;
+        return this;
+    }
+
+    /**
+     * Generates the model, if this was not done yet for the current parameters.
+     */
+    private void generate() {
+        if (symbols != null) {
+            return;
+        }
+
+        Random random = new Random(seed);
+        symbols = new ArrayList<>(numSymbols);
+        symbolsByVariable = new HashMap<>();
+        events = new ArrayList<>();
+        kconfigFiles = new LinkedHashMap<>();
+
+        int depth = 0;
+        // the last symbol of each open level, which is the parent of the symbols in the next level
+        List<Integer> lastOfLevel = new ArrayList<>();
+        lastOfLevel.add(-1);
+        int choices = 0;
+
+        while (symbols.size() < numSymbols) {
+            int parent = depth > 0 ? lastOfLevel.get(depth - 1) : -1;
+
+            if (random.nextDouble() < choiceRatio && numSymbols - symbols.size() >= 3) {
+                Symbol choice = createSymbol(random, parent, "boolean");
+                choice.choice = true;
+                choice.variable = "CONFIG_CHOICE_" + (++choices);
+                int choiceIndex = symbols.size() - 1;
+                events.add(choiceIndex);
+
+                events.add(EVENT_OPEN);
+                int options = Math.min(2 + random.nextInt(3), numSymbols - symbols.size());
+                for (int i = 0; i < options; i++) {
+                    Symbol option = createSymbol(random, choiceIndex, "boolean");
+                    option.references.add(choiceIndex);
+                    events.add(symbols.size() - 1);
+                }
+                events.add(EVENT_CLOSE);
+                lastOfLevel.set(depth, choiceIndex);
+
+            } else {
+                double kind = random.nextDouble();
+                String type;
+                if (kind < tristateRatio) {
+                    type = "tristate";
+                } else if (kind < 0.95) {
+                    type = "boolean";
+                } else if (kind < 0.98) {
+                    type = "string";
+                } else {
+                    type = "integer";
+                }
+                createSymbol(random, parent, type);
+                int index = symbols.size() - 1;
+                events.add(index);
+                lastOfLevel.set(depth, index);
+            }
+
+            // change the nesting
+            int action = random.nextInt(8);
+            if (action == 0 && depth < maxDepth) {
+                events.add(EVENT_OPEN);
+                depth++;
+                if (lastOfLevel.size() <= depth) {
+                    lastOfLevel.add(-1);
+                }
+                lastOfLevel.set(depth, -1);
+            } else if (action == 1 && depth > 0) {
+                events.add(EVENT_CLOSE);
+                depth--;
+            }
+        }
+        while (depth-- > 0) {
+            events.add(EVENT_CLOSE);
+        }
+        for (Symbol symbol : symbols) {
+            symbolsByVariable.put(symbol.variable, symbol);
+        }
+
+        writeKconfigText(random);
+    }
+
+    /**
+     * Creates a new symbol with random dependencies on previous, non-choice symbols.
+     *
+     * @param random The random generator.
+     * @param parent The index of the parent symbol, -1 if none.
+     * @param type The type of the symbol.
+     *
+     * @return The created symbol, which is appended to {@link #symbols}.
+     */
+    private Symbol createSymbol(Random random, int parent, String type) {
+        int index = symbols.size();
+        Symbol symbol = new Symbol();
+        symbol.name = "SYNTH_" + index;
+        symbol.variable = "CONFIG_" + symbol.name;
+        symbol.type = type;
+        symbol.id = (int) (((index + 1) * 2654435761L) >>> 1) & Integer.MAX_VALUE;
+        symbol.parent = parent;
+
+        if (index > 0) {
+            int numReferences = random.nextInt((int) Math.round(constraintDensity * 2) + 1);
+            for (int i = 0; i < numReferences; i++) {
+                int reference = random.nextInt(index);
+                if (!symbols.get(reference).choice && !symbol.references.contains(reference)) {
+                    symbol.references.add(reference);
+                }
+            }
+        }
+
+        symbols.add(symbol);
+        return symbol;
+    }
+
+    /**
+     * Creates the text of the Kconfig files and records the locations of the symbols.
+     *
+     * @param random The random generator.
+     */
+    private void writeKconfigText(Random random) {
+        StringBuilder file = null;
+        String fileName = null;
+        int line = 0;
+        int inFile = 0;
+        boolean inChoice = false;
+
+        for (Symbol symbol : symbols) {
+            boolean option = symbol.parent != -1 && symbols.get(symbol.parent).choice;
+            if (inChoice && !option) {
+                file.append("endchoice\n\n");
+                line += 2;
+                inChoice = false;
+            }
+
+            if (file == null || (inFile >= symbolsPerFile && !option)) {
+                fileName = "drivers/synth" + kconfigFiles.size() + "/Kconfig";
+                file = new StringBuilder("# SPDX-License-Identifier: GPL-2.0-only\n#\n# Synthetic drivers\n#\n\n");
+                kconfigFiles.put(fileName, file);
+                line = 6;
+                inFile = 0;
+            }
+
+            symbol.file = fileName;
+            symbol.line = line;
+            inFile++;
+
+            if (symbol.choice) {
+                file.append("choice\n\tprompt \"Synthetic choice\"\n");
+                line += 2;
+                inChoice = true;
+            } else {
+                String kconfigType = symbol.type.equals("boolean") ? "bool"
+                        : symbol.type.equals("integer") ? "int" : symbol.type;
+                file.append(random.nextInt(10) == 0 ? "menuconfig " : "config ").append(symbol.name).append('\n');
+                file.append('\t').append(kconfigType).append(" \"Synthetic option ").append(symbol.name)
+                        .append("\"\n");
+                line += 2;
+            }
+
+            List<Integer> dependencies = new ArrayList<>(symbol.references);
+            if (option) {
+                // the choice is implicit for options
+                dependencies.remove(Integer.valueOf(symbol.parent));
+            }
+            if (!dependencies.isEmpty()) {
+                file.append("\tdepends on ");
+                for (int i = 0; i < dependencies.size(); i++) {
+                    if (i > 0) {
+                        file.append(" && ");
+                    }
+                    file.append(symbols.get(dependencies.get(i)).name);
+                }
+                file.append('\n');
+                line++;
+            }
+
+            if (!symbol.choice) {
+                file.append("\thelp\n");
+                int helpLines = 1 + random.nextInt(4);
+                for (int i = 0; i < helpLines; i++) {
+                    file.append("\t  Say Y here to enable this synthetic config option. It exists only for ")
+                            .append("testing.\n");
+                }
+                line += 1 + helpLines;
+            }
+
+            file.append('\n');
+            line++;
+        }
+        if (inChoice) {
+            file.append("endchoice\n");
+        }
+    }
+
+    /**
+     * Writes the pseudo source tree: a root <code>Kconfig</code> file that sources all generated Kconfig files.
+     *
+     * @param dir The root directory of the source tree. Created if it does not exist.
+     *
+     * @throws IOException If writing fails.
+     */
+    public void writeSourceTree(File dir) throws IOException {
+        generate();
+        StringBuilder root = new StringBuilder("mainmenu \"Synthetic Linux Kernel Configuration\"\n\n");
+        for (Map.Entry<String, StringBuilder> entry : kconfigFiles.entrySet()) {
+            File file = new File(dir, entry.getKey());
+            file.getParentFile().mkdirs();
+            Files.write(file.toPath(), entry.getValue().toString().getBytes(StandardCharsets.UTF_8));
+            root.append("source \"").append(entry.getKey()).append("\"\n");
+        }
+        Files.write(new File(dir, "Kconfig").toPath(), root.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Writes the dumpconf output in the format of the RSF file of KconfigReader.
+     *
+     * @param file The file to write.
+     *
+     * @throws IOException If writing fails.
+     */
+    public void writeRsf(File file) throws IOException {
+        generate();
+        try (BufferedWriter out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            out.write("\n.\n<submenu>\n");
+            for (int event : events) {
+                if (event == EVENT_OPEN) {
+                    out.write("<submenu>\n");
+                } else if (event == EVENT_CLOSE) {
+                    out.write("</submenu>\n");
+                } else {
+                    writeRsfMenu(out, symbols.get(event));
+                }
+            }
+            out.write("</submenu>\n");
+        }
+    }
+
+    /**
+     * Writes the menu of a single symbol.
+     *
+     * @param out The output to write to.
+     * @param symbol The symbol.
+     *
+     * @throws IOException If writing fails.
+     */
+    private void writeRsfMenu(BufferedWriter out, Symbol symbol) throws IOException {
+        String dependency = "y";
+        if (!symbol.references.isEmpty()) {
+            // dumpexpr writes each binary && in parentheses: ((S@a && S@b) && S@c)
+            StringBuilder expr = new StringBuilder();
+            for (int i = 0; i < symbol.references.size(); i++) {
+                if (i > 0) {
+                    expr.insert(0, '(').append(" &amp;&amp; ");
+                }
+                expr.append("S@").append(symbols.get(symbol.references.get(i)).id);
+                if (i > 0) {
+                    expr.append(')');
+                }
+            }
+            dependency = expr.toString();
+        }
+
+        out.write("<menu flags=\"0\" file=\"" + symbol.file + "\" line=\"" + symbol.line + "\">\n");
+        out.write("<symbol type=\"" + symbol.type + "\" flags=\"" + (symbol.choice ? FLAG_CHOICE : 0) + "\" id=\""
+                + symbol.id + "\">\n");
+        if (!symbol.choice) {
+            out.write("<name>" + symbol.name + "</name>\n");
+        }
+        out.write("<property type=\"prompt\"><text><![CDATA[Synthetic option]]></text><visible><expr>" + dependency
+                + "</expr></visible></property>\n");
+        out.write("</symbol>\n");
+        out.write("<dep>" + dependency + "</dep>\n");
+        out.write("</menu>\n");
+    }
+
+    /**
+     * Writes the DIMACS output of KconfigReader: the variable comments (including <code>MODULES</code>), the
+     * problem line and clauses for the dependencies, the tristate modules and the choices.
+     *
+     * @param file The file to write.
+     *
+     * @throws IOException If writing fails.
+     */
+    public void writeDimacs(File file) throws IOException {
+        generate();
+        StringBuilder header = new StringBuilder();
+        int[] numbers = new int[symbols.size()];
+        int[] moduleNumbers = new int[symbols.size()];
+        int number = 1;
+        for (int i = 0; i < symbols.size(); i++) {
+            Symbol symbol = symbols.get(i);
+            if (symbol.choice) {
+                continue;
+            }
+            switch (symbol.type) {
+            case "tristate":
+                numbers[i] = number;
+                header.append("c ").append(number++).append(' ').append(symbol.name).append('\n');
+                moduleNumbers[i] = number;
+                header.append("c ").append(number++).append(' ').append(symbol.name).append("_MODULE\n");
+                break;
+            case "boolean":
+                numbers[i] = number;
+                header.append("c ").append(number++).append(' ').append(symbol.name).append('\n');
+                break;
+            default:
+                header.append("c ").append(number++).append(' ').append(symbol.name).append("=1\n");
+                header.append("c ").append(number++).append(' ').append(symbol.name).append("=value with spaces\n");
+                break;
+            }
+        }
+        header.append("c ").append(number++).append(" MODULES\n");
+
+        List<String> clauses = new ArrayList<>();
+        for (int i = 0; i < symbols.size(); i++) {
+            Symbol symbol = symbols.get(i);
+            if (numbers[i] == 0) {
+                continue;
+            }
+            for (int reference : symbol.references) {
+                if (numbers[reference] != 0) {
+                    clauses.add("-" + numbers[i] + " " + numbers[reference] + " 0");
+                }
+            }
+            if (moduleNumbers[i] != 0) {
+                clauses.add("-" + numbers[i] + " -" + moduleNumbers[i] + " 0");
+            }
+            if (symbol.parent != -1 && symbols.get(symbol.parent).choice) {
+                // at most one option of a choice
+                for (int j = symbol.parent + 1; j < i; j++) {
+                    if (symbols.get(j).parent == symbol.parent && numbers[j] != 0) {
+                        clauses.add("-" + numbers[i] + " -" + numbers[j] + " 0");
+                    }
+                }
+            }
+        }
+
+        try (BufferedWriter out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            out.write(header.toString());
+            out.write("p cnf " + (number - 1) + " " + clauses.size() + "\n");
+            for (String clause : clauses) {
+                out.write(clause);
+                out.write('\n');
+            }
+        }
+    }
+
+    /**
+     * Writes the output of KconfigReader (<code>.rsf</code> and <code>.dimacs</code>), as read by the
+     * {@link Converter}.
+     *
+     * @param outputBase The base path of the output files.
+     *
+     * @throws IOException If writing fails.
+     */
+    public void writeOutput(File outputBase) throws IOException {
+        writeRsf(new File(outputBase.getPath() + ".rsf"));
+        writeDimacs(new File(outputBase.getPath() + ".dimacs"));
+    }
+
+    /**
+     * Returns the names of all variables that the {@link Converter} should create, including the choices and
+     * <code>CONFIG_MODULES</code>.
+     *
+     * @return The variable names.
+     */
+    public Set<String> getVariables() {
+        generate();
+        Set<String> result = new HashSet<>();
+        for (Symbol symbol : symbols) {
+            result.add(symbol.variable);
+        }
+        result.add("CONFIG_MODULES");
+        return result;
+    }
+
+    /**
+     * Returns the number of generated Kconfig files, excluding the root Kconfig file.
+     *
+     * @return The number of files.
+     */
+    public int getNumKconfigFiles() {
+        generate();
+        return kconfigFiles.size();
+    }
+
+    /**
+     * Returns the expected parent of a variable in the hierarchy.
+     *
+     * @param variable The variable name.
+     * @return The name of the parent variable, or <code>null</code> if it is at the top level.
+     */
+    public String getParent(String variable) {
+        Symbol symbol = getSymbol(variable);
+        return symbol.parent != -1 ? symbols.get(symbol.parent).variable : null;
+    }
+
+    /**
+     * Returns the location of the definition of a variable in the generated source tree.
+     *
+     * @param variable The variable name.
+     * @return The location, relative to the source tree.
+     */
+    public SourceLocation getLocation(String variable) {
+        Symbol symbol = getSymbol(variable);
+        return new SourceLocation(new File(symbol.file), symbol.line);
+    }
+
+    /**
+     * Returns the expected variables used in the constraints of a variable.
+     *
+     * @param variable The variable name.
+     * @return The names of the used variables.
+     */
+    public Set<String> getUsedVariables(String variable) {
+        Set<String> result = new HashSet<>();
+        for (int reference : getSymbol(variable).references) {
+            result.add(symbols.get(reference).variable);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the symbol of a variable.
+     *
+     * @param variable The variable name.
+     * @return The symbol.
+     *
+     * @throws IllegalArgumentException If there is no such variable.
+     */
+    private Symbol getSymbol(String variable) {
+        generate();
+        Symbol symbol = symbolsByVariable.get(variable);
+        if (symbol == null) {
+            throw new IllegalArgumentException("No such variable: " + variable);
+        }
+        return symbol;
+    }
+
+}
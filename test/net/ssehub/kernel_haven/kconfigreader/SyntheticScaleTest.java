@@ -0,0 +1,187 @@
+/*
+ * Copyright 2020 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kconfigreader;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.util.FormatException;
+import net.ssehub.kernel_haven.util.Util;
+import net.ssehub.kernel_haven.variability_model.HierarchicalVariable;
+import net.ssehub.kernel_haven.variability_model.SourceLocation;
+import net.ssehub.kernel_haven.variability_model.VariabilityModel;
+import net.ssehub.kernel_haven.variability_model.VariabilityVariable;
+
+/**
+ * Tests the {@link Converter}, the {@link SourceLocationFinder} and the {@link KconfigCnfEncoder} on a Linux-scale
+ * model created by the {@link SyntheticKconfigGenerator}.
+ *
+ * @author Adam
+ */
+@SuppressWarnings("null")
+public class SyntheticScaleTest {
+
+    private static final File TMP_DIR = new File("testdata/tmp_synthetic");
+
+    private static final int NUM_SYMBOLS = 20000;
+
+    private static SyntheticKconfigGenerator generator;
+
+    /**
+     * Generates the synthetic source tree and KconfigReader output.
+     *
+     * @throws IOException unwanted.
+     */
+    @BeforeClass
+    public static void generate() throws IOException {
+        Util.deleteFolder(TMP_DIR);
+        TMP_DIR.mkdir();
+        generator = new SyntheticKconfigGenerator().symbols(NUM_SYMBOLS).maxDepth(10).choiceRatio(0.1);
+        generator.writeSourceTree(new File(TMP_DIR, "src"));
+        generator.writeOutput(new File(TMP_DIR, "model"));
+    }
+
+    /**
+     * Deletes the temporary directory.
+     *
+     * @throws IOException unwanted.
+     */
+    @AfterClass
+    public static void cleanUp() throws IOException {
+        Util.deleteFolder(TMP_DIR);
+    }
+
+    /**
+     * Tests that the generator is deterministic.
+     *
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testDeterministic() throws IOException {
+        new SyntheticKconfigGenerator().symbols(NUM_SYMBOLS).maxDepth(10).choiceRatio(0.1)
+                .writeOutput(new File(TMP_DIR, "same"));
+        new SyntheticKconfigGenerator().symbols(NUM_SYMBOLS).maxDepth(10).choiceRatio(0.1).seed(42)
+                .writeOutput(new File(TMP_DIR, "other"));
+
+        byte[] model = Files.readAllBytes(new File(TMP_DIR, "model.rsf").toPath());
+        assertThat(Arrays.equals(Files.readAllBytes(new File(TMP_DIR, "same.rsf").toPath()), model), is(true));
+        assertThat(Arrays.equals(Files.readAllBytes(new File(TMP_DIR, "same.dimacs").toPath()),
+                Files.readAllBytes(new File(TMP_DIR, "model.dimacs").toPath())), is(true));
+        assertThat(Arrays.equals(Files.readAllBytes(new File(TMP_DIR, "other.rsf").toPath()), model), is(false));
+    }
+
+    /**
+     * Tests that the {@link Converter} creates the expected variables, hierarchy, constraint usages and source
+     * locations.
+     *
+     * @throws IOException unwanted.
+     * @throws FormatException unwanted.
+     */
+    @Test
+    public void testConverter() throws IOException, FormatException {
+        Converter converter = new Converter(new File(TMP_DIR, "model"));
+        VariabilityModel vm = converter.convert();
+        Map<String, List<SourceLocation>> locations = converter.getSourceLocations();
+
+        assertThat(vm.getVariableMap().keySet(), is(generator.getVariables()));
+
+        int maxDepth = 0;
+        int numChoices = 0;
+        for (VariabilityVariable variable : vm.getVariables()) {
+            String name = variable.getName();
+            if (name.startsWith("CONFIG_CHOICE_")) {
+                numChoices++;
+            }
+            if (name.equals("CONFIG_MODULES")) {
+                continue;
+            }
+
+            HierarchicalVariable hierarchical = (HierarchicalVariable) variable;
+            String parent = hierarchical.getParent() != null ? hierarchical.getParent().getName() : null;
+            assertThat(name, parent, is(generator.getParent(name)));
+            maxDepth = Math.max(maxDepth, hierarchical.getNestingDepth());
+
+            Set<String> used = new HashSet<>();
+            for (VariabilityVariable usedVariable : variable.getVariablesUsedInConstraints()) {
+                used.add(usedVariable.getName());
+            }
+            assertThat(name, used, is(generator.getUsedVariables(name)));
+
+            assertThat(name, locations.get(name).get(0), is(generator.getLocation(name)));
+        }
+        assertThat(maxDepth > 5, is(true));
+        assertThat(numChoices > 1000, is(true));
+    }
+
+    /**
+     * Tests that the {@link SourceLocationFinder} finds the definitions of all named symbols in the generated
+     * source tree, at the same locations as dumpconf reports.
+     */
+    @Test
+    public void testSourceLocationFinder() {
+        Map<String, VariabilityVariable> variables = new HashMap<>();
+        for (String name : generator.getVariables()) {
+            if (!name.startsWith("CONFIG_CHOICE_") && !name.equals("CONFIG_MODULES")) {
+                variables.put(name, new VariabilityVariable(name, "bool"));
+            }
+        }
+
+        SourceLocationFinder.addLocations(new SourceLocationFinder(new File(TMP_DIR, "src"), variables).find(),
+                variables);
+
+        for (VariabilityVariable variable : variables.values()) {
+            List<SourceLocation> found = variable.getSourceLocations();
+            assertThat(variable.getName(), found.size(), is(1));
+            assertThat(variable.getName(), found.get(0), is(generator.getLocation(variable.getName())));
+        }
+    }
+    
+    /**
+     * Tests that the {@link KconfigCnfEncoder} encodes the generated RSF file into a DIMACS file that the
+     * {@link Converter} reads like the one of KconfigReader.
+     *
+     * @throws IOException unwanted.
+     * @throws FormatException unwanted.
+     */
+    @Test
+    public void testCnfEncoder() throws IOException, FormatException {
+        File outputBase = new File(TMP_DIR, "encoded");
+        Files.copy(new File(TMP_DIR, "model.rsf").toPath(), new File(TMP_DIR, "encoded.rsf").toPath());
+        KconfigCnfEncoder encoder = new KconfigCnfEncoder(new File(TMP_DIR, "encoded.rsf"));
+        encoder.encode(new File(TMP_DIR, "encoded.dimacs"));
+
+        VariabilityModel vm = new Converter(outputBase).convert();
+
+        assertThat(vm.getVariableMap().keySet(), is(generator.getVariables()));
+        assertThat(encoder.getNumVariables() >= NUM_SYMBOLS, is(true));
+    }
+
+}
@@ -19,6 +19,7 @@ package net.ssehub.kernel_haven.kconfigreader;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Test;
 
 /**
@@ -55,5 +56,37 @@ public class UndoOperationTest {
         Assert.assertTrue("The UndoThread either did not perform the undo operation or did it to early",
             newCounterValue >= now + waitTime);
     }
+    
+    /**
+     * Tests that {@link UndoThread#revertOperation()} is applied as soon as the tracked process has terminated, not
+     * after the safety timeout.
+     * 
+     * @throws Exception unwanted.
+     */
+    @Test
+    public void testRevertAfterTrackedProcess() throws Exception {
+        Assume.assumeTrue(ProcessTreeTracker.isSupported());
+        AtomicLong counter = new AtomicLong();
+        long safetyTimeout = 60000;
+        
+        ProcessTreeTracker tracker = new ProcessTreeTracker();
+        UndoThread undo = new UndoThread(tracker, safetyTimeout) {
+            
+            @Override
+            public void revertOperation() {
+                counter.set(System.currentTimeMillis());
+            }
+        };
+        
+        ProcessBuilder processBuilder = new ProcessBuilder("sleep", "0.5");
+        tracker.tag(processBuilder);
+        long started = System.currentTimeMillis();
+        Process process = processBuilder.start();
+        undo.runAndJoin();
+        
+        Assert.assertFalse("Process still running when undo was applied", process.isAlive());
+        Assert.assertTrue("The UndoThread waited for the safety timeout",
+            counter.get() - started < safetyTimeout / 2);
+    }
 
 }